@@ -0,0 +1,22 @@
+package com.example.customized.dashboard.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler attached, so every result reports allocation
+ * rate next to throughput and average time. Accepts the usual JMH command line arguments,
+ * e.g. "FilterBenchmark -p rows=1000000 -p dimension=Account".
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
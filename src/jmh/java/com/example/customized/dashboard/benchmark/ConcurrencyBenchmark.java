@@ -0,0 +1,159 @@
+package com.example.customized.dashboard.benchmark;
+
+import com.example.customized.dashboard.model.Chart;
+import com.example.customized.dashboard.model.Dashboard;
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.TimeGrain;
+import com.example.customized.dashboard.repository.ChartRepository;
+import com.example.customized.dashboard.repository.JsonRepository;
+import com.example.customized.dashboard.service.AggregationService;
+import com.example.customized.dashboard.service.ChartService;
+import com.example.customized.dashboard.service.FilterResultCache;
+import com.example.customized.dashboard.service.FilterResultWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of in-flight dashboard loads: each invocation starts a wave of concurrent loads,
+ * each rendering a user's dashboard with its chart data and then saving a layout change that
+ * waits for its log fsync, and returns when all of them are done.
+ * Loads run either on a pool of 200 platform threads, the size of Tomcat's default request
+ * pool, or on one virtual thread each; the virtual mode needs Java 21 and fails on older JVMs.
+ * The time per wave divided by inFlight gives the time per load at that concurrency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class ConcurrencyBenchmark {
+
+    private static final int USERS = 10000;
+    private static final int CHARTS_PER_USER = 8;
+    private static final int PLATFORM_THREADS = 200;
+    private static final Dimension[] DIMENSIONS = Dimension.values();
+    private static final TimeGrain[] GROUP_BYS = {TimeGrain.MONTH, TimeGrain.QUARTER};
+
+    @Param({"200", "1000", "10000"})
+    private int inFlight;
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    private Path dir;
+    private ExecutorService executor;
+    private ChartRepository chartRepository;
+    private AggregationService aggregationService;
+    private ChartService chartService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        executor = "virtual".equals(threads) ? virtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(PLATFORM_THREADS);
+
+        dir = Files.createTempDirectory("concurrency-benchmark");
+        Path charts = dir.resolve("charts.json");
+        new ObjectMapper().writeValue(charts.toFile(), generateDashboards());
+        chartRepository = new ChartRepository(charts.toString(), dir.resolve("charts.wal").toString(), 0, true, 100000);
+        chartRepository.load();
+
+        JsonRepository jsonRepository = new JsonRepository();
+        ReflectionTestUtils.setField(jsonRepository, "factTable", SyntheticCostData.generate(1000000, 42L));
+        aggregationService = new AggregationService(65536, 262144, 0);
+        FilterResultWriter writer = new FilterResultWriter();
+        ReflectionTestUtils.setField(writer, "objectMapper", new ObjectMapper());
+
+        chartService = new ChartService();
+        ReflectionTestUtils.setField(chartService, "chartRepository", chartRepository);
+        ReflectionTestUtils.setField(chartService, "jsonRepository", jsonRepository);
+        ReflectionTestUtils.setField(chartService, "aggregationService", aggregationService);
+        ReflectionTestUtils.setField(chartService, "filterResultCache", new FilterResultCache(64L << 20));
+        ReflectionTestUtils.setField(chartService, "filterResultWriter", writer);
+        ReflectionTestUtils.setField(chartService, "streamThreshold", 65536);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        aggregationService.shutdown();
+        chartRepository.close();
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public int loadDashboards() throws Exception {
+        List<Future<Integer>> loads = new ArrayList<>(inFlight);
+        for (int i = 0; i < inFlight; i++) {
+            String userId = String.valueOf(i % USERS);
+            loads.add(executor.submit(() -> {
+                Map<String, Object> rendered = chartService.renderDashboard(userId, "2023-01-01", "2023-12-31");
+                chartService.updateChart(userId, "chart0", layout("chart0"), chartInfo(0));
+                return rendered.size();
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> load : loads) {
+            total += load.get();
+        }
+        return total;
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor(), looked up at run time so the module still compiles for Java 17
+    private static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later", e);
+        }
+    }
+
+    private static Map<String, Dashboard> generateDashboards() {
+        Map<String, Dashboard> dashboards = new LinkedHashMap<>();
+        for (int user = 0; user < USERS; user++) {
+            List<Chart.Layout> order = new ArrayList<>();
+            Map<String, Chart> charts = new LinkedHashMap<>();
+            for (int chart = 0; chart < CHARTS_PER_USER; chart++) {
+                order.add(layout("chart" + chart));
+                charts.put("chart" + chart, chartInfo(user + chart));
+            }
+            dashboards.put(String.valueOf(user), new Dashboard(order, charts));
+        }
+        return dashboards;
+    }
+
+    private static Chart.Layout layout(String chartId) {
+        return new Chart.Layout(chartId, 0, 0, 6, 4);
+    }
+
+    // A chart over one of the dimension and groupBy combinations, so users share cached results
+    private static Chart chartInfo(int variant) {
+        return new Chart("Chart " + variant, Chart.Type.LINE, null, null, DIMENSIONS[variant % DIMENSIONS.length],
+                GROUP_BYS[(variant / DIMENSIONS.length) % GROUP_BYS.length], 10, List.of(), Map.of());
+    }
+}
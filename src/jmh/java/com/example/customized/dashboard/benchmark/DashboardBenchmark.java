@@ -0,0 +1,150 @@
+package com.example.customized.dashboard.benchmark;
+
+import com.example.customized.dashboard.model.Chart;
+import com.example.customized.dashboard.model.ChartEntry;
+import com.example.customized.dashboard.model.Dashboard;
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.TimeGrain;
+import com.example.customized.dashboard.repository.ChartRepository;
+import com.example.customized.dashboard.service.ChartService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the ChartService read, add, update and delete paths against stores of 10 to
+ * 100,000 users with eight charts each, with and without waiting for the log fsync, and the
+ * JSON encoding of a dashboard response and decoding of an add or update request body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DashboardBenchmark {
+
+    private static final int CHARTS_PER_USER = 8;
+
+    @Param({"10", "1000", "100000"})
+    private int users;
+
+    @Param({"true", "false"})
+    private boolean syncWrites;
+
+    private Path dir;
+    private ChartRepository chartRepository;
+    private ChartService chartService;
+    private final AtomicLong chartIds = new AtomicLong();
+    private ObjectWriter dashboardWriter;
+    private ObjectReader chartEntryReader;
+    private byte[] chartEntryBody;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("dashboard-benchmark");
+        Path charts = dir.resolve("charts.json");
+        new ObjectMapper().writeValue(charts.toFile(), generateDashboards(users));
+
+        chartRepository = new ChartRepository(charts.toString(), dir.resolve("charts.wal").toString(), 0, syncWrites, 10000);
+        chartRepository.load();
+        chartService = new ChartService();
+        ReflectionTestUtils.setField(chartService, "chartRepository", chartRepository);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        dashboardWriter = objectMapper.writerFor(Dashboard.class);
+        chartEntryReader = objectMapper.readerFor(ChartEntry.class);
+        chartEntryBody = objectMapper.writeValueAsBytes(new ChartEntry(layout("chart0"), chartInfo("updated")));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        chartRepository.close();
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public Dashboard getDashboard() throws IOException {
+        return chartService.getDashboard(randomUser());
+    }
+
+    @Benchmark
+    public byte[] getDashboardJson() throws IOException {
+        // The response body of GET /api/dashboard/{userId}
+        return dashboardWriter.writeValueAsBytes(chartService.getDashboard(randomUser()));
+    }
+
+    @Benchmark
+    public ChartEntry readChartRequest() throws IOException {
+        // The request body of an add or update
+        return chartEntryReader.readValue(chartEntryBody);
+    }
+
+    @Benchmark
+    public void updateChart() throws IOException {
+        int chart = ThreadLocalRandom.current().nextInt(CHARTS_PER_USER);
+        chartService.updateChart(randomUser(), "chart" + chart, layout("chart" + chart), chartInfo("updated"));
+    }
+
+    @Benchmark
+    public void addAndDeleteChart() throws IOException {
+        // Adding and removing keeps the store size stable across iterations
+        String userId = randomUser();
+        String chartId = "bench" + chartIds.incrementAndGet();
+        chartService.addChartToDashboard(userId, layout(chartId), chartInfo(chartId));
+        chartService.deleteChart(userId, chartId);
+    }
+
+    private String randomUser() {
+        return String.valueOf(ThreadLocalRandom.current().nextInt(users));
+    }
+
+    private static Map<String, Dashboard> generateDashboards(int users) {
+        Map<String, Dashboard> dashboards = new LinkedHashMap<>();
+        for (int user = 0; user < users; user++) {
+            List<Chart.Layout> order = new ArrayList<>();
+            Map<String, Chart> charts = new LinkedHashMap<>();
+            for (int chart = 0; chart < CHARTS_PER_USER; chart++) {
+                order.add(layout("chart" + chart));
+                charts.put("chart" + chart, chartInfo("Chart " + chart));
+            }
+            dashboards.put(String.valueOf(user), new Dashboard(order, charts));
+        }
+        return dashboards;
+    }
+
+    private static Chart.Layout layout(String chartId) {
+        return new Chart.Layout(chartId, 0, 0, 6, 4);
+    }
+
+    private static Chart chartInfo(String title) {
+        return new Chart(title, Chart.Type.LINE, "time", "consumption", Dimension.CLOUD_PROVIDER, TimeGrain.MONTH,
+                null, List.of(), Map.of());
+    }
+}
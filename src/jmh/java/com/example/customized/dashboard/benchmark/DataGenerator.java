@@ -0,0 +1,177 @@
+package com.example.customized.dashboard.benchmark;
+
+import com.example.customized.dashboard.model.Chart;
+import com.example.customized.dashboard.model.CostField;
+import com.example.customized.dashboard.model.Dashboard;
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.FilterCondition;
+import com.example.customized.dashboard.model.TimeGrain;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Writes a synthetic dataset for load tests: cost records in the mockData.json format, the
+ * binary segment converted from them, and a charts.json of users with dashboards whose charts
+ * cover every dimension and groupBy. Start the application on the output directory with the
+ * properties printed at the end, then run {@link LoadTest} against it.
+ * <p>
+ * Options (defaults in brackets): --out [target/loadtest], --rows [1000000], --seed [42],
+ * --regions per provider [12], --accounts [2000], --services [40], --domains [30],
+ * --days [1095], --users [1000], --charts per user [8], --segment [true].
+ */
+public final class DataGenerator {
+
+    private static final Dimension[] DIMENSIONS = Dimension.values();
+
+    // Dashboards mostly show months; days and years are rarer
+    private static final TimeGrain[] GRAINS = {TimeGrain.MONTH, TimeGrain.MONTH, TimeGrain.MONTH, TimeGrain.QUARTER,
+            TimeGrain.QUARTER, TimeGrain.YEAR, TimeGrain.DAY};
+
+    private static final Chart.Type[] TYPES = Chart.Type.values();
+
+    private DataGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = new Options(args);
+        Path out = Path.of(options.string("out", "target/loadtest"));
+        long rows = options.number("rows", 1_000_000);
+        long seed = options.number("seed", 42);
+        SyntheticCostData.Shape defaults = SyntheticCostData.Shape.DEFAULT;
+        SyntheticCostData.Shape shape = new SyntheticCostData.Shape(
+                options.integer("regions", defaults.regionsPerProvider()),
+                options.integer("accounts", defaults.accounts()),
+                options.integer("services", defaults.services()),
+                options.integer("domains", defaults.domains()),
+                options.integer("days", defaults.days()));
+        int users = options.integer("users", 1000);
+        int charts = options.integer("charts", 8);
+        Files.createDirectories(out);
+
+        long start = System.nanoTime();
+        Path costData = out.resolve("mockData.json");
+        writeCostData(costData, rows, seed, shape);
+        System.out.printf("Wrote %d cost records to %s in %d ms%n", rows, costData, (System.nanoTime() - start) / 1_000_000);
+
+        Path segment = out.resolve("mockData.seg");
+        if (options.flag("segment", true)) {
+            SegmentConverter.main(new String[]{costData.toString(), segment.toString()});
+        }
+
+        start = System.nanoTime();
+        Path dashboards = out.resolve("charts.json");
+        new ObjectMapper().writeValue(dashboards.toFile(), generateDashboards(users, charts, seed, shape));
+        System.out.printf("Wrote %d dashboards of %d charts to %s in %d ms%n", users, charts, dashboards,
+                (System.nanoTime() - start) / 1_000_000);
+
+        // A fresh log and ingest file, so every run starts from the generated state
+        Files.deleteIfExists(out.resolve("charts.wal"));
+        Files.deleteIfExists(out.resolve("ingested.ndjson"));
+        System.out.println("Start the application with:");
+        System.out.printf("  --dashboard.data.segment-path=%s --dashboard.charts.path=%s --dashboard.charts.wal-path=%s"
+                        + " --dashboard.ingest.log-path=%s%n",
+                segment, dashboards, out.resolve("charts.wal"), out.resolve("ingested.ndjson"));
+    }
+
+    /**
+     * Streams generated cost records to a JSON array file, one record at a time.
+     *
+     * @param path  The file to write.
+     * @param rows  The number of records.
+     * @param seed  Seed for the random generator.
+     * @param shape The cardinalities.
+     * @throws IOException If the file cannot be written.
+     */
+    static void writeCostData(Path path, long rows, long seed, SyntheticCostData.Shape shape) throws IOException {
+        try (JsonGenerator generator = new ObjectMapper().getFactory().createGenerator(path.toFile(), JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            SyntheticCostData.generate(rows, seed, shape, (epochDay, fields, consumption, budget) -> {
+                writeRecord(generator, epochDay, fields, consumption, budget);
+                generator.writeRaw('\n');
+            });
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Writes one cost record in the mockData.json format.
+     *
+     * @param generator   The generator to write to.
+     * @param epochDay    The record's date.
+     * @param fields      The descriptive fields, in CostField order.
+     * @param consumption The record's consumption.
+     * @param budget      The record's budget.
+     * @throws IOException If the record cannot be written.
+     */
+    static void writeRecord(JsonGenerator generator, int epochDay, String[] fields, double consumption, double budget)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("date", LocalDate.ofEpochDay(epochDay).toString());
+        for (CostField field : CostField.values()) {
+            generator.writeStringField(field.getJsonName(), fields[field.ordinal()]);
+        }
+        generator.writeNumberField("consumption", consumption);
+        generator.writeNumberField("budget", budget);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Generates dashboards for users "0" to users - 1, with charts "chart0" to charts - 1 laid out
+     * two per row.
+     *
+     * @param users  The number of users.
+     * @param charts The number of charts per user.
+     * @param seed   Seed for the random generator.
+     * @param shape  The cardinalities of the cost data, for the values of chart filters.
+     * @return The dashboards by user ID.
+     */
+    static Map<String, Dashboard> generateDashboards(int users, int charts, long seed, SyntheticCostData.Shape shape) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Map<String, Dashboard> dashboards = new LinkedHashMap<>();
+        for (int user = 0; user < users; user++) {
+            List<Chart.Layout> order = new ArrayList<>(charts);
+            Map<String, Chart> chartInfos = new LinkedHashMap<>();
+            for (int chart = 0; chart < charts; chart++) {
+                String chartId = "chart" + chart;
+                order.add(new Chart.Layout(chartId, (chart % 2) * 6, (chart / 2) * 4, 6, 4));
+                chartInfos.put(chartId, randomChart(random, shape, "Chart " + chart));
+            }
+            dashboards.put(String.valueOf(user), new Dashboard(order, chartInfos));
+        }
+        return dashboards;
+    }
+
+    /**
+     * A chart of a random dimension and groupBy. Some charts show the top 10 keys only, and some
+     * are restricted to one provider or to a few domains.
+     *
+     * @param random The random generator.
+     * @param shape  The cardinalities of the cost data.
+     * @param title  The chart's title.
+     * @return The chart.
+     */
+    static Chart randomChart(SplittableRandom random, SyntheticCostData.Shape shape, String title) {
+        List<FilterCondition> filters = new ArrayList<>();
+        int filter = random.nextInt(10);
+        if (filter == 0) {
+            filters.add(FilterCondition.in(CostField.PROVIDER_NAME, List.of("AWS")));
+        } else if (filter == 1) {
+            filters.add(FilterCondition.in(CostField.DOMAIN,
+                    List.of("Domain" + random.nextInt(shape.domains()), "Domain" + random.nextInt(shape.domains()))));
+        }
+        return new Chart(title, TYPES[random.nextInt(TYPES.length)], "time", "consumption",
+                DIMENSIONS[random.nextInt(DIMENSIONS.length)], GRAINS[random.nextInt(GRAINS.length)],
+                random.nextBoolean() ? 10 : null, filters, Map.of());
+    }
+}
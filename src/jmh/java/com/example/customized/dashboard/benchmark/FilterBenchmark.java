@@ -0,0 +1,117 @@
+package com.example.customized.dashboard.benchmark;
+
+import com.example.customized.dashboard.controller.JsonController;
+import com.example.customized.dashboard.repository.FactTable;
+import com.example.customized.dashboard.repository.JsonRepository;
+import com.example.customized.dashboard.service.AggregationResult;
+import com.example.customized.dashboard.service.AggregationService;
+import com.example.customized.dashboard.service.DashboardMetrics;
+import com.example.customized.dashboard.service.FilterResultCache;
+import com.example.customized.dashboard.service.FilterResultWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures JsonController.filterData over synthetic data for every dimension, groupBy and
+ * maxDisplay combination, with and without rollups, unfiltered and with a broad (one provider)
+ * or selective (one account) record filter. The result cache is disabled so every invocation
+ * aggregates and serializes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class FilterBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    private int rows;
+
+    @Param({"CloudProvider", "Region", "Account", "Service", "FinancialDomain"})
+    private String dimension;
+
+    @Param({"day", "month", "quarter", "year"})
+    private String groupBy;
+
+    @Param({"all", "10"})
+    private String maxDisplay;
+
+    @Param({"true", "false"})
+    private boolean rollups;
+
+    @Param({"none", "provider", "account"})
+    private String filter;
+
+    private JsonController controller;
+    private AggregationService aggregationService;
+    private FilterResultWriter writer;
+    private MultiValueMap<String, String> params;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FactTable table = SyntheticCostData.generate(rows, 42L);
+        if (rollups) {
+            table.buildRollups();
+        }
+        JsonRepository jsonRepository = new JsonRepository();
+        ReflectionTestUtils.setField(jsonRepository, "factTable", table);
+
+        // Metrics stay on in production, so they are part of what is measured
+        DashboardMetrics metrics = new DashboardMetrics(new SimpleMeterRegistry());
+        aggregationService = new AggregationService(65536, 262144, 0, metrics);
+        controller = new JsonController();
+        ReflectionTestUtils.setField(controller, "metrics", metrics);
+        ReflectionTestUtils.setField(controller, "jsonRepository", jsonRepository);
+        ReflectionTestUtils.setField(controller, "aggregationService", aggregationService);
+        ReflectionTestUtils.setField(controller, "filterResultCache", new FilterResultCache(0));
+        writer = new FilterResultWriter();
+        ReflectionTestUtils.setField(writer, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(writer, "metrics", metrics);
+        ReflectionTestUtils.setField(controller, "filterResultWriter", writer);
+        ReflectionTestUtils.setField(controller, "streamThreshold", 65536);
+
+        params = new LinkedMultiValueMap<>();
+        if ("provider".equals(filter)) {
+            params.add("providerName", "AWS");
+        } else if ("account".equals(filter)) {
+            params.add("accountId", "Account 0");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        aggregationService.shutdown();
+    }
+
+    @Benchmark
+    public Object filterData() throws IOException {
+        // One year of a three-year history
+        Object body = controller.filterData(dimension, groupBy, "2023-01-01", "2023-12-31", maxDisplay, params).getBody();
+        if (body instanceof AggregationResult result) {
+            // Large results are serialized while the response is written
+            writer.write(result, OutputStream.nullOutputStream());
+        }
+        return body;
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.customized.dashboard.benchmark;
+
+import com.example.customized.dashboard.model.Chart;
+import com.example.customized.dashboard.model.ChartEntry;
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.TimeGrain;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a mix of dashboard and data requests against a running application and reports the
+ * latency percentiles and throughput of each kind of request. Generate the dataset with
+ * {@link DataGenerator} and start the application on it first; everything runs locally.
+ * <p>
+ * Each thread sends its next request as soon as the previous one is answered (a closed loop), so
+ * a slow response delays the requests behind it instead of being measured by them: the
+ * percentiles understate what clients arriving at a fixed rate would see once the server is
+ * saturated. Compare runs at the same thread count, and raise it until throughput stops growing
+ * to find the saturation point.
+ * <p>
+ * Options (defaults in brackets): --url [http://localhost:8080], --threads [16],
+ * --duration [60s], --warmup [10s], --users and --charts of the generated dashboards [1000, 8],
+ * --from and --to of the queried range [the generated history], --seed [1], and the relative
+ * weights --mix [dashboard:30,render:15,filter:35,update:10,ingest:5,budget:5].
+ */
+public final class LoadTest {
+
+    /**
+     * The kinds of request in the mix.
+     */
+    enum Operation {
+        // GET /api/dashboard/{userId}
+        DASHBOARD,
+        // GET /api/dashboard/{userId}/render
+        RENDER,
+        // GET /api/data/filter
+        FILTER,
+        // PUT /api/dashboard/{userId}/update/{chartId}
+        UPDATE,
+        // POST /api/data/ingest
+        INGEST,
+        // GET /api/budget/utilization
+        BUDGET
+    }
+
+    private static final Dimension[] DIMENSIONS = Dimension.values();
+
+    private static final TimeGrain[] GRAINS = TimeGrain.values();
+
+    // Records per ingested batch
+    private static final int INGEST_BATCH = 100;
+
+    private final HttpClient client;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String url;
+
+    private final int users;
+
+    private final int charts;
+
+    private final LocalDate from;
+
+    private final LocalDate to;
+
+    // Operations to draw from, each repeated by its weight
+    private final Operation[] mix;
+
+    private LoadTest(String url, int users, int charts, LocalDate from, LocalDate to, Operation[] mix) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.url = url;
+        this.users = users;
+        this.charts = charts;
+        this.from = from;
+        this.to = to;
+        this.mix = mix;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options(args);
+        SyntheticCostData.Shape shape = SyntheticCostData.Shape.DEFAULT;
+        LocalDate first = SyntheticCostData.FIRST_DAY;
+        LoadTest loadTest = new LoadTest(
+                options.string("url", "http://localhost:8080"),
+                options.integer("users", 1000),
+                options.integer("charts", 8),
+                LocalDate.parse(options.string("from", first.toString())),
+                LocalDate.parse(options.string("to", first.plusDays(shape.days() - 1).toString())),
+                parseMix(options.string("mix", "dashboard:30,render:15,filter:35,update:10,ingest:5,budget:5")));
+        int threads = options.integer("threads", 16);
+        Duration warmup = options.duration("warmup", Duration.ofSeconds(10));
+        Duration duration = options.duration("duration", Duration.ofSeconds(60));
+        long seed = options.number("seed", 1);
+
+        System.out.printf("%d threads against %s, %s warmup then %s measured%n", threads, loadTest.url, warmup, duration);
+        Map<Operation, Recorder> recorders = loadTest.run(threads, warmup, duration, seed);
+        report(recorders, duration);
+    }
+
+    /**
+     * @param mix Comma-separated operation:weight pairs, e.g. "filter:3,render:1".
+     * @return The operations, each repeated by its weight.
+     */
+    static Operation[] parseMix(String mix) {
+        List<Operation> operations = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected operation:weight in --mix: " + entry);
+            }
+            Operation operation = Operation.valueOf(parts[0].trim().toUpperCase());
+            for (int i = Integer.parseInt(parts[1].trim()); i > 0; i--) {
+                operations.add(operation);
+            }
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("--mix has no operations with a positive weight");
+        }
+        return operations.toArray(new Operation[0]);
+    }
+
+    private Map<Operation, Recorder> run(int threads, Duration warmup, Duration duration, long seed)
+            throws InterruptedException {
+        Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder());
+        }
+        long measureFrom = System.nanoTime() + warmup.toNanos();
+        long stopAt = measureFrom + duration.toNanos();
+        AtomicLong failures = new AtomicLong();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        SplittableRandom seeds = new SplittableRandom(seed);
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = seeds.split();
+            pool.execute(() -> {
+                while (true) {
+                    Operation operation = mix[random.nextInt(mix.length)];
+                    long start = System.nanoTime();
+                    if (start >= stopAt) {
+                        return;
+                    }
+                    int status;
+                    try {
+                        status = send(operation, random);
+                    } catch (IOException e) {
+                        // Counted as an error; the first few are printed to explain a failing run
+                        if (failures.incrementAndGet() <= 5) {
+                            System.err.println(operation + ": " + e);
+                        }
+                        status = -1;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    long end = System.nanoTime();
+                    if (start >= measureFrom) {
+                        recorders.get(operation).record(end - start, status < 200 || status >= 400);
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        // Allow the requests in flight at the end to finish
+        if (!pool.awaitTermination(warmup.plus(duration).toSeconds() + 60, TimeUnit.SECONDS)) {
+            pool.shutdownNow();
+        }
+        return recorders;
+    }
+
+    // Sends one request and returns its status, discarding the body
+    private int send(Operation operation, SplittableRandom random) throws IOException, InterruptedException {
+        String userId = String.valueOf(random.nextInt(users));
+        HttpRequest.Builder request = switch (operation) {
+            case DASHBOARD -> HttpRequest.newBuilder(uri("/api/dashboard/" + userId));
+            case RENDER -> HttpRequest.newBuilder(uri("/api/dashboard/" + userId + "/render?" + range(random)));
+            case FILTER -> HttpRequest.newBuilder(uri("/api/data/filter?dimension="
+                    + DIMENSIONS[random.nextInt(DIMENSIONS.length)].getApiName()
+                    + "&groupBy=" + GRAINS[random.nextInt(GRAINS.length)].getApiName()
+                    + "&" + range(random)
+                    + (random.nextBoolean() ? "&maxDisplay=10" : "")));
+            case UPDATE -> {
+                int chart = random.nextInt(charts);
+                ChartEntry entry = new ChartEntry(null,
+                        DataGenerator.randomChart(random, SyntheticCostData.Shape.DEFAULT, "Chart " + chart));
+                yield HttpRequest.newBuilder(uri("/api/dashboard/" + userId + "/update/chart" + chart))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(entry)));
+            }
+            case INGEST -> HttpRequest.newBuilder(uri("/api/data/ingest"))
+                    .header("Content-Type", "application/x-ndjson")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(ingestBatch(random)));
+            case BUDGET -> HttpRequest.newBuilder(uri("/api/budget/utilization?groupBy="
+                    + (random.nextBoolean() ? "month" : "quarter")));
+        };
+        HttpResponse<Void> response = client.send(request.timeout(Duration.ofSeconds(30)).build(),
+                HttpResponse.BodyHandlers.discarding());
+        return response.statusCode();
+    }
+
+    private URI uri(String path) {
+        return URI.create(url + path);
+    }
+
+    // A random range within the configured one, at least a month long
+    private String range(SplittableRandom random) {
+        long days = to.toEpochDay() - from.toEpochDay() + 1;
+        long start = random.nextLong(Math.max(1, days - 30));
+        long length = Math.min(days - start, 30 + random.nextLong(Math.max(1, days - start - 29)));
+        LocalDate rangeFrom = from.plusDays(start);
+        return "from=" + rangeFrom + "&to=" + rangeFrom.plusDays(length - 1);
+    }
+
+    // Records dated in the last week of the configured range, as newline-delimited JSON
+    private byte[] ingestBatch(SplittableRandom random) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(INGEST_BATCH * 200);
+        int lastDay = (int) to.toEpochDay();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            SyntheticCostData.generate(INGEST_BATCH, random.nextLong(), SyntheticCostData.Shape.DEFAULT,
+                    (epochDay, fields, consumption, budget) -> {
+                        DataGenerator.writeRecord(generator, lastDay - epochDay % 7, fields, consumption, budget);
+                        generator.writeRaw('\n');
+                    });
+        }
+        return out.toByteArray();
+    }
+
+    private static void report(Map<Operation, Recorder> recorders, Duration duration) {
+        double seconds = duration.toMillis() / 1000.0;
+        System.out.printf("%n%-10s %9s %7s %9s %9s %9s %9s %9s%n",
+                "operation", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        Recorder total = new Recorder();
+        for (Map.Entry<Operation, Recorder> entry : recorders.entrySet()) {
+            Recorder recorder = entry.getValue();
+            if (recorder.count() > 0) {
+                printRow(entry.getKey().name().toLowerCase(), recorder, seconds);
+                total.addAll(recorder);
+            }
+        }
+        printRow("total", total, seconds);
+    }
+
+    private static void printRow(String name, Recorder recorder, double seconds) {
+        long[] sorted = recorder.sorted();
+        System.out.printf("%-10s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", name, sorted.length, recorder.errors(),
+                sorted.length / seconds, millis(sorted, 0.5), millis(sorted, 0.99), millis(sorted, 0.999),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+    }
+
+    // The nearest-rank percentile of sorted nanosecond latencies, in milliseconds
+    private static double millis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, rank)] / 1e6;
+    }
+
+    /**
+     * Collects the latencies of one operation from every thread. Each latency is kept, since a
+     * run of a few minutes stays within a few million samples.
+     */
+    static final class Recorder {
+
+        private long[] latencies = new long[1024];
+
+        private int count;
+
+        private long errors;
+
+        synchronized void record(long nanos, boolean error) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            if (error) {
+                errors++;
+            }
+        }
+
+        synchronized void addAll(Recorder other) {
+            long[] sorted = other.sorted();
+            for (long nanos : sorted) {
+                record(nanos, false);
+            }
+            errors += other.errors();
+        }
+
+        synchronized int count() {
+            return count;
+        }
+
+        synchronized long errors() {
+            return errors;
+        }
+
+        synchronized long[] sorted() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.customized.dashboard.benchmark;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line options of the form --name=value, with defaults supplied by the caller.
+ */
+final class Options {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    /**
+     * @param args The command line arguments.
+     * @throws IllegalArgumentException If an argument is not of the form --name=value.
+     */
+    Options(String[] args) {
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value: " + arg);
+            }
+            values.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+    }
+
+    String string(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    int integer(String name, int defaultValue) {
+        return values.containsKey(name) ? Integer.parseInt(values.get(name)) : defaultValue;
+    }
+
+    long number(String name, long defaultValue) {
+        return values.containsKey(name) ? Long.parseLong(values.get(name)) : defaultValue;
+    }
+
+    boolean flag(String name, boolean defaultValue) {
+        return values.containsKey(name) ? Boolean.parseBoolean(values.get(name)) : defaultValue;
+    }
+
+    // A duration such as "30s", "5m" or "500ms"
+    Duration duration(String name, Duration defaultValue) {
+        String value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(value.endsWith("s") ? value.substring(0, value.length() - 1) : value));
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.customized.dashboard.benchmark;
+
+import com.example.customized.dashboard.repository.JsonRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * One-shot converter from the mock data JSON file to the binary segment the repository maps at
+ * startup. Run it again whenever the JSON file changes; records ingested through the API stay in
+ * the ingest log and are not part of the segment.
+ * <p>
+ * Usage: {@code SegmentConverter [json-file] [segment-file]}, defaulting to the mock data file
+ * and mockData.seg next to it.
+ */
+public final class SegmentConverter {
+
+    private SegmentConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        File json = new File(args.length > 0 ? args[0] : JsonRepository.MOCK_DATA_FILE_PATH);
+        Path segment = args.length > 1 ? Path.of(args[1])
+                : json.toPath().resolveSibling(json.getName().replaceFirst("\\.json$", "") + ".seg");
+
+        long start = System.nanoTime();
+        int rows = JsonRepository.writeSegment(json, segment);
+        System.out.printf("Wrote %d rows to %s in %d ms%n", rows, segment, (System.nanoTime() - start) / 1_000_000);
+    }
+}
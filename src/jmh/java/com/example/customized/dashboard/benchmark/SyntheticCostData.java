@@ -0,0 +1,109 @@
+package com.example.customized.dashboard.benchmark;
+
+import com.example.customized.dashboard.repository.FactTable;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic cost records with realistic dimension cardinalities: by default 3 providers,
+ * 12 regions per provider, 2,000 accounts with a skewed (few large, many small) distribution,
+ * 40 services and 30 financial domains, spread over three years of daily data.
+ */
+final class SyntheticCostData {
+
+    private static final String[] PROVIDERS = {"AWS", "Azure", "Google Cloud"};
+
+    // First day of the generated history
+    static final LocalDate FIRST_DAY = LocalDate.of(2022, 1, 1);
+
+    /**
+     * Cardinalities of the generated records.
+     *
+     * @param regionsPerProvider Distinct regions of each provider.
+     * @param accounts           Distinct accounts, shared by the providers.
+     * @param services           Distinct services.
+     * @param domains            Distinct financial domains.
+     * @param days               Days of history, starting at FIRST_DAY.
+     */
+    record Shape(int regionsPerProvider, int accounts, int services, int domains, int days) {
+
+        static final Shape DEFAULT = new Shape(12, 2000, 40, 30, 3 * 365);
+    }
+
+    /**
+     * Receives the generated records. The fields array is reused between records.
+     */
+    @FunctionalInterface
+    interface RecordSink {
+
+        void add(int epochDay, String[] fields, double consumption, double budget) throws IOException;
+    }
+
+    private SyntheticCostData() {
+    }
+
+    /**
+     * @param rows The number of cost records.
+     * @param seed Seed for the random generator, so runs are reproducible.
+     * @return A fact table of the generated records.
+     */
+    static FactTable generate(int rows, long seed) {
+        FactTable.Builder builder = new FactTable.Builder();
+        try {
+            generate(rows, seed, Shape.DEFAULT, builder::add);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Generates records into a sink, in the field order of FactTable.Builder.add: provider,
+     * region, account, service, domain.
+     *
+     * @param rows  The number of cost records.
+     * @param seed  Seed for the random generator, so runs are reproducible.
+     * @param shape The cardinalities.
+     * @param sink  Receives each record.
+     * @throws IOException If the sink fails.
+     */
+    static void generate(long rows, long seed, Shape shape, RecordSink sink) throws IOException {
+        // Pre-built value pools, so the generator does not allocate a string per row
+        String[][] regions = new String[PROVIDERS.length][shape.regionsPerProvider()];
+        for (int p = 0; p < PROVIDERS.length; p++) {
+            for (int r = 0; r < shape.regionsPerProvider(); r++) {
+                regions[p][r] = "region-" + p + "-" + r;
+            }
+        }
+        String[] accounts = pool("Account ", shape.accounts());
+        String[] services = pool("Service ", shape.services());
+        String[] domains = pool("Domain", shape.domains());
+
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] fields = new String[5];
+        int firstDay = (int) FIRST_DAY.toEpochDay();
+        for (long i = 0; i < rows; i++) {
+            int provider = random.nextInt(PROVIDERS.length);
+            int domain = random.nextInt(shape.domains());
+            fields[0] = PROVIDERS[provider];
+            fields[1] = regions[provider][random.nextInt(shape.regionsPerProvider())];
+            // Squaring a uniform value skews usage towards a few large accounts
+            double skew = random.nextDouble();
+            fields[2] = accounts[(int) (skew * skew * shape.accounts())];
+            fields[3] = services[random.nextInt(shape.services())];
+            fields[4] = domains[domain];
+            double consumption = Math.round(Math.exp(random.nextDouble() * 7) * 100) / 100.0;
+            sink.add(firstDay + random.nextInt(shape.days()), fields, consumption, 500 + domain * 100);
+        }
+    }
+
+    private static String[] pool(String prefix, int size) {
+        String[] values = new String[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = prefix + i;
+        }
+        return values;
+    }
+}
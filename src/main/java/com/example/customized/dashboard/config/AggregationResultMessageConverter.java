@@ -0,0 +1,51 @@
+package com.example.customized.dashboard.config;
+
+import com.example.customized.dashboard.service.AggregationResult;
+import com.example.customized.dashboard.service.FilterResultWriter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * Writes an {@link AggregationResult} returned by a controller directly to the response body
+ * as filter response JSON. Serialization happens while the response is written, on the request
+ * thread, so large results are streamed without being buffered first.
+ */
+public class AggregationResultMessageConverter extends AbstractHttpMessageConverter<AggregationResult> {
+
+    // Serializes the result token by token
+    private final FilterResultWriter filterResultWriter;
+
+    /**
+     * @param filterResultWriter Serializes aggregation results.
+     */
+    public AggregationResultMessageConverter(FilterResultWriter filterResultWriter) {
+        super(MediaType.APPLICATION_JSON);
+        this.filterResultWriter = filterResultWriter;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return AggregationResult.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        // Aggregation results are only ever written
+        return false;
+    }
+
+    @Override
+    protected AggregationResult readInternal(Class<? extends AggregationResult> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Aggregation results cannot be read", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(AggregationResult result, HttpOutputMessage outputMessage) throws IOException {
+        filterResultWriter.write(result, outputMessage.getBody());
+    }
+}
@@ -1,13 +1,22 @@
 package com.example.customized.dashboard.config;
 
+import com.example.customized.dashboard.service.FilterResultWriter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.List;
+
 // Marks this class as a configuration class for Spring
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    // Serializes aggregation results for the streaming message converter
+    @Autowired
+    private FilterResultWriter filterResultWriter;
+
     /**
      * Configures Cross-Origin Resource Sharing (CORS) for the application.
      * This allows the backend to handle requests from a different origin, typically the frontend.
@@ -20,5 +29,12 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedHeaders("*") // Allow all headers in the request
                 .allowCredentials(true); // Enable credentials (e.g., cookies, authorization headers)
     }
-}
 
+    /**
+     * Registers the converter that streams aggregation results, ahead of the default converters.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new AggregationResultMessageConverter(filterResultWriter));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.customized.dashboard.controller;
+
+import com.example.customized.dashboard.model.TimeGrain;
+import com.example.customized.dashboard.service.BudgetService;
+import com.example.customized.dashboard.service.BudgetUtilization;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+// Marks this class as a REST controller for the budget tracking endpoints
+@RestController
+@RequestMapping("/api/budget") // Base URL for all endpoints in this controller
+public class BudgetController {
+
+    // Tracks the consumption of each FinancialDomain against its budget
+    @Autowired
+    private BudgetService budgetService;
+
+    /**
+     * Returns the budget utilization of every FinancialDomain in one period, with the burn rate
+     * and the consumption projected to the end of the period.
+     *
+     * @param groupBy The length of the period: month, quarter or year (optional, default: "month").
+     * @param date    A day of the period, "yyyy-MM-dd" (optional, default: the latest record's date).
+     * @param asOf    The day up to which the period has elapsed (optional, default: the latest record's date).
+     * @return The utilization of each domain, ordered by domain name.
+     * @throws IOException If an error occurs while reading the data.
+     */
+    @GetMapping("/utilization")
+    public List<BudgetUtilization> getUtilizations(
+            @RequestParam(defaultValue = "month") String groupBy,
+            @RequestParam(required = false) String date,
+            @RequestParam(required = false) String asOf) throws IOException {
+        return budgetService.getUtilizations(grain(groupBy), epochDay(date), epochDay(asOf));
+    }
+
+    /**
+     * Returns the budget utilization of one FinancialDomain in one period.
+     *
+     * @param domain  The FinancialDomain.
+     * @param groupBy The length of the period: month, quarter or year (optional, default: "month").
+     * @param date    A day of the period, "yyyy-MM-dd" (optional, default: the latest record's date).
+     * @param asOf    The day up to which the period has elapsed (optional, default: the latest record's date).
+     * @return The domain's utilization.
+     * @throws IOException If an error occurs while reading the data.
+     */
+    @GetMapping("/utilization/{domain}")
+    public BudgetUtilization getUtilization(
+            @PathVariable String domain,
+            @RequestParam(defaultValue = "month") String groupBy,
+            @RequestParam(required = false) String date,
+            @RequestParam(required = false) String asOf) throws IOException {
+        BudgetUtilization utilization = budgetService.getUtilization(domain, grain(groupBy), epochDay(date), epochDay(asOf));
+        if (utilization == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No records for domain: " + domain);
+        }
+        return utilization;
+    }
+
+    // Budgets are monthly, so periods are months or longer
+    private static TimeGrain grain(String groupBy) {
+        TimeGrain grain = TimeGrain.fromApiName(groupBy);
+        if (grain == TimeGrain.DAY) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "groupBy must be month, quarter or year: " + groupBy);
+        }
+        return grain;
+    }
+
+    private static Integer epochDay(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return (int) LocalDate.parse(date).toEpochDay();
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid date: " + date, e);
+        }
+    }
+}
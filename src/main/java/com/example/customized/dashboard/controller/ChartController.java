@@ -1,8 +1,18 @@
 package com.example.customized.dashboard.controller;
 
+import com.example.customized.dashboard.model.ChartEntry;
+import com.example.customized.dashboard.model.Dashboard;
+import com.example.customized.dashboard.repository.VersionedDashboard;
 import com.example.customized.dashboard.service.ChartService;
+import com.example.customized.dashboard.service.LiveChartService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 import java.util.Map;
@@ -16,6 +26,10 @@ public class ChartController {
     @Autowired
     private ChartService chartService;
 
+    // Pushes changes of chart data to open dashboards
+    @Autowired
+    private LiveChartService liveChartService;
+
     /**
      * Endpoint to return mock data for testing.
      * 
@@ -29,34 +43,110 @@ public class ChartController {
 
     /**
      * Endpoint to fetch the dashboard data for a specific user.
+     * The response carries the dashboard version as a strong ETag; a request whose If-None-Match
+     * matches the current version is answered with 304 Not Modified and no body.
      * 
-     * @param userId The ID of the user whose dashboard data is to be fetched
-     * @return A map containing the dashboard data
-     * @throws IOException If there is an issue retrieving the dashboard data
+     * @param userId  The ID of the user whose dashboard data is to be fetched
+     * @param request The current request, checked for If-None-Match
+     * @return The dashboard data, or null if the dashboard was not modified
      */
     @GetMapping("/{userId}")
-    public Map<String, Object> getDashboard(@PathVariable String userId) throws IOException {
-        return chartService.getDashboard(userId);
+    public ResponseEntity<Dashboard> getDashboard(@PathVariable String userId, WebRequest request) {
+        VersionedDashboard dashboard = chartService.getVersionedDashboard(userId);
+        String etag = "\"" + dashboard.version() + "\"";
+        if (request.checkNotModified(etag)) {
+            // The 304 response and its ETag header are already set up
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).body(dashboard.dashboard());
+    }
+
+    /**
+     * Endpoint to fetch the changes to a user's dashboard after a version, the ETag of an earlier
+     * response, so a client can keep its copy in sync without fetching the whole dashboard.
+     * 
+     * @param userId The ID of the user whose dashboard changes are to be fetched
+     * @param since  A version returned by an earlier request, with or without the ETag quotes
+     * @return A map containing version, full and either the changed charts or the whole dashboard
+     */
+    @GetMapping("/{userId}/changes")
+    public Map<String, Object> getDashboardChanges(
+            @PathVariable String userId,
+            @RequestParam String since) {
+        long version;
+        try {
+            version = Long.parseLong(since.replace("\"", ""));
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid version: " + since, e);
+        }
+        return chartService.getDashboardChanges(userId, version);
+    }
+
+    /**
+     * Endpoint to fetch a user's dashboard together with the computed data of every chart,
+     * so a dashboard can be drawn with a single request.
+     * 
+     * @param userId The ID of the user whose dashboard is to be rendered
+     * @param from   Start date for filtering data
+     * @param to     End date for filtering data
+     * @return A map containing dashboardOrder, charts and the data of each chart by chart ID
+     * @throws IOException If there is an issue retrieving the dashboard or the data
+     */
+    @GetMapping("/{userId}/render")
+    public Map<String, Object> renderDashboard(
+            @PathVariable String userId,
+            @RequestParam String from,
+            @RequestParam String to) throws IOException {
+        try {
+            return chartService.renderDashboard(userId, from, to);
+        } catch (IllegalArgumentException e) {
+            // A from or to that is not a date, as in the filter endpoint
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Endpoint to follow a user's dashboard as a Server-Sent Events stream: a "snapshot" event
+     * with the data of every chart, then a "delta" event with the changed values whenever
+     * ingested or reloaded data changes a chart.
+     * 
+     * @param userId The ID of the user whose dashboard is to be followed
+     * @param from   Start date for filtering data
+     * @param to     End date for filtering data
+     * @return The event stream
+     * @throws IOException If there is an issue retrieving the dashboard or the data
+     */
+    @GetMapping(value = "/{userId}/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter liveDashboard(
+            @PathVariable String userId,
+            @RequestParam String from,
+            @RequestParam String to) throws IOException {
+        try {
+            return liveChartService.subscribe(userId, from, to);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
     }
 
     /**
      * Endpoint to add a new chart to the user's dashboard.
      * 
      * @param userId      The ID of the user
-     * @param requestBody A map containing dashboardInfo and chartInfo
+     * @param requestBody The dashboardInfo and chartInfo of the chart; both are required
      * @return A success message
      * @throws IOException If there is an issue adding the chart
      */
     @PostMapping("/{userId}/add")
     public String addChart(
             @PathVariable String userId,
-            @RequestBody Map<String, Object> requestBody) throws IOException {
-        // Extract dashboard information and chart information from the request body
-        Map<String, Object> dashboardInfo = (Map<String, Object>) requestBody.get("dashboardInfo");
-        Map<String, Object> chartInfo = (Map<String, Object>) requestBody.get("chartInfo");
-        
+            @RequestBody ChartEntry requestBody) throws IOException {
+        if (requestBody.dashboardInfo() == null || requestBody.dashboardInfo().id() == null
+                || requestBody.chartInfo() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "dashboardInfo with an id and chartInfo are required");
+        }
+
         // Delegate to the service layer to handle chart addition
-        chartService.addChartToDashboard(userId, dashboardInfo, chartInfo);
+        chartService.addChartToDashboard(userId, requestBody.dashboardInfo(), requestBody.chartInfo());
         return "Chart added successfully!";
     }
 
@@ -73,7 +163,9 @@ public class ChartController {
             @PathVariable String userId,
             @PathVariable String chartId) throws IOException {
         // Delegate to the service layer to handle chart deletion
-        chartService.deleteChart(userId, chartId);
+        if (!chartService.deleteChart(userId, chartId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No dashboard for user: " + userId);
+        }
         return "Chart deleted successfully!";
     }
 
@@ -82,7 +174,7 @@ public class ChartController {
      * 
      * @param userId       The ID of the user
      * @param chartId      The ID of the chart to be updated
-     * @param updatedChart A map containing the updated dashboardInfo and chartInfo
+     * @param updatedChart The updated dashboardInfo and chartInfo; a missing one is left unchanged
      * @return A success message
      * @throws IOException If there is an issue updating the chart
      */
@@ -90,13 +182,11 @@ public class ChartController {
     public String updateChart(
             @PathVariable String userId,
             @PathVariable String chartId,
-            @RequestBody Map<String, Object> updatedChart) throws IOException {
-        // Extract updated dashboard information and chart information from the request body
-        Map<String, Object> dashboardInfo = (Map<String, Object>) updatedChart.get("dashboardInfo");
-        Map<String, Object> chartInfo = (Map<String, Object>) updatedChart.get("chartInfo");
-
+            @RequestBody ChartEntry updatedChart) throws IOException {
         // Delegate to the service layer to handle chart update
-        chartService.updateChart(userId, chartId, dashboardInfo, chartInfo);
+        if (!chartService.updateChart(userId, chartId, updatedChart.dashboardInfo(), updatedChart.chartInfo())) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No dashboard for user: " + userId);
+        }
         return "Chart updated successfully!";
     }
 }
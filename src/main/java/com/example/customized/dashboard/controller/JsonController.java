@@ -1,14 +1,28 @@
 package com.example.customized.dashboard.controller;
 
+import com.example.customized.dashboard.model.FilterCondition;
+import com.example.customized.dashboard.model.FilterQuery;
+import com.example.customized.dashboard.repository.FactTable;
 import com.example.customized.dashboard.repository.JsonRepository;
+import com.example.customized.dashboard.service.AggregationResult;
+import com.example.customized.dashboard.service.AggregationService;
+import com.example.customized.dashboard.service.ApproximateAggregationService;
+import com.example.customized.dashboard.service.DashboardMetrics;
+import com.example.customized.dashboard.service.FilterResultCache;
+import com.example.customized.dashboard.service.FilterResultWriter;
+import com.example.customized.dashboard.service.LiveChartService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.io.InputStream;
+import java.util.Map;
 
 // Marks this class as a REST controller for JSON data-related endpoints
 @RestController
@@ -19,184 +33,149 @@ public class JsonController {
     @Autowired
     private JsonRepository jsonRepository;
 
-    // Date formatter to parse and format dates in "yyyy-MM-dd" format
-    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    // Aggregates the fact data for filter queries
+    @Autowired
+    private AggregationService aggregationService;
+
+    // Answers filter queries with approx=true from a sample of the rows
+    @Autowired
+    private ApproximateAggregationService approximateAggregationService;
+
+    // Caches serialized filter responses by normalized query and data version
+    @Autowired
+    private FilterResultCache filterResultCache;
+
+    // Serializes aggregation results into response bodies
+    @Autowired
+    private FilterResultWriter filterResultWriter;
+
+    // Pushes the changes of ingested or reloaded data to open dashboards
+    @Autowired
+    private LiveChartService liveChartService;
+
+    // Records the time spent normalizing filter requests
+    @Autowired
+    private DashboardMetrics metrics;
+
+    // Results with more (key, time period) values than this are streamed instead of cached
+    @Value("${dashboard.response.stream-threshold:65536}")
+    private int streamThreshold;
 
     /**
      * Filters and aggregates data based on specified parameters.
+     * Results up to the streaming threshold are serialized into a buffer and cached; larger
+     * results are written straight to the response as they are serialized.
+     * Records can be restricted by field values, e.g. "providerName=AWS,Azure&region=us-east-1",
+     * using the fields providerName, region, accountId, serviceName and domain, and by budget
+     * with minBudget and maxBudget.
+     * With approx=true the query is answered from a sample of bounded size, with an error bound
+     * per value and an estimate of the distinct accounts, wrapped in an object that describes
+     * the sample. An unknown dimension, unparsable dates, a malformed maxDisplay and malformed
+     * conditions are rejected with 400 Bad Request.
      *
      * @param dimension   The dimension for grouping data (e.g., "CloudProvider", "Region").
      * @param groupBy     The time grouping parameter (e.g., "month", "quarter", "year").
      * @param from        Start date for filtering data.
      * @param to          End date for filtering data.
      * @param maxDisplay  Maximum number of results to display (optional, default: "all").
-     * @return A list of aggregated data maps.
+     * @param approx      Whether to answer approximately from a sample (optional, default: false).
+     * @param params      All request parameters, read for the record conditions.
+     * @return The aggregated data as a JSON array, one entry per key.
      * @throws IOException If an error occurs while reading the data.
      */
     @GetMapping("/filter")
-    public List<Map<String, Object>> filterData(
+    public ResponseEntity<Object> filterData(
             @RequestParam String dimension,
             @RequestParam String groupBy,
             @RequestParam String from,
             @RequestParam String to,
-            @RequestParam(defaultValue = "all") String maxDisplay
+            @RequestParam(defaultValue = "all") String maxDisplay,
+            @RequestParam(defaultValue = "false") boolean approx,
+            @RequestParam MultiValueMap<String, String> params
     ) throws IOException {
-        // Retrieve all mock data from the repository
-        List<Map<String, Object>> allData = jsonRepository.readMockData();
-
-        // Parse the input date strings into LocalDate objects
-        LocalDate fromDate = LocalDate.parse(from, formatter);
-        LocalDate toDate = LocalDate.parse(to, formatter);
-
-        // Filter data based on the date range
-        List<Map<String, Object>> filteredData = allData.stream()
-                .filter(d -> filterByDate(fromDate, toDate, d))
-                .collect(Collectors.toList());
-
-        // Group data by the specified dimension
-        Map<String, List<Map<String, Object>>> groupedData = filteredData.stream()
-                .collect(Collectors.groupingBy(d -> getDimensionKey(d, dimension)));
-
-        // Aggregate data for each group
-        List<Map<String, Object>> aggregatedData = groupedData.entrySet().stream()
-                .map(entry -> aggregateData(entry.getKey(), entry.getValue(), groupBy, dimension))
-                .collect(Collectors.toList());
-
-        // Calculate the total consumption for each group
-        aggregatedData.forEach(entry -> {
-            List<Map<String, Object>> aggregatedValues = (List<Map<String, Object>>) entry.get("aggregatedValues");
-            double totalConsumption = aggregatedValues.stream()
-                    .mapToDouble(v -> ((Number) v.getOrDefault("totalConsumption", 0)).doubleValue())
-                    .sum();
-            entry.put("totalConsumptionSum", totalConsumption);
-        });
-
-        // Apply max display limit if specified
-        if (!"all".equalsIgnoreCase(maxDisplay)) {
-            int maxCount = Integer.parseInt(maxDisplay);
-            aggregatedData = aggregatedData.stream()
-                    .sorted((a, b) -> Double.compare(
-                            (Double) b.getOrDefault("totalConsumptionSum", 0.0),
-                            (Double) a.getOrDefault("totalConsumptionSum", 0.0)
-                    ))
-                    .limit(maxCount)
-                    .collect(Collectors.toList());
+        // Normalize the parameters so equivalent requests share a cache entry
+        long start = System.nanoTime();
+        FilterQuery query;
+        try {
+            query = FilterQuery.of(dimension, groupBy, from, to, maxDisplay, FilterCondition.parseAll(params));
+            if (query.dimension() == null) {
+                throw new IllegalArgumentException("Unknown dimension: " + dimension);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        metrics.stage(DashboardMetrics.Stage.PARSE, query.dimension(), query.grain(), start);
+        FactTable table = jsonRepository.getFactTable();
+        if (approx) {
+            // Answers take bounded time, so they are not cached
+            byte[] body = filterResultWriter.toJson(approximateAggregationService.aggregate(table, query));
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
         }
 
-        // Remove auxiliary field 'totalConsumptionSum' to keep the response clean
-        aggregatedData.forEach(entry -> entry.remove("totalConsumptionSum"));
+        // Serve the pre-serialized response, aggregating and serializing only on a miss;
+        // a large result is not cached but handed back through the holder to be streamed
+        AggregationResult[] large = new AggregationResult[1];
+        byte[] body = filterResultCache.get(query, table.version(), () -> {
+            AggregationResult result = aggregationService.aggregate(table, query);
+            if (result.bucketCount() > streamThreshold) {
+                large[0] = result;
+                return null;
+            }
+            return filterResultWriter.toJson(result);
+        });
+        if (body != null) {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+        }
 
-        return aggregatedData;
+        // Written by AggregationResultMessageConverter as it is serialized; if another request
+        // computed the same large result concurrently, it was not shared and is computed again
+        AggregationResult result = large[0] != null ? large[0] : aggregationService.aggregate(table, query);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(result);
     }
 
     /**
-     * Filters a single data entry by a date range.
+     * Returns hit, miss and eviction counts of the filter result cache.
      *
-     * @param from The start date.
-     * @param to   The end date.
-     * @param data The data entry to filter.
-     * @return True if the data entry is within the date range; otherwise, false.
+     * @return The cache statistics.
      */
-    private boolean filterByDate(LocalDate from, LocalDate to, Map<String, Object> data) {
-        String dateStr = (String) data.get("date");
-        LocalDate date = LocalDate.parse(dateStr, formatter);
-        return !date.isBefore(from) && !date.isAfter(to);
+    @GetMapping("/cache/stats")
+    public Map<String, Object> cacheStats() {
+        return filterResultCache.stats();
     }
 
     /**
-     * Extracts the grouping key for a data entry based on the specified dimension.
+     * Ingests a batch of cost records, sent as a JSON array or as newline-delimited JSON
+     * (application/x-ndjson). The records are logged and become visible to queries atomically,
+     * with a new data version, and open live dashboards are sent the changed chart values.
      *
-     * @param data      The data entry.
-     * @param dimension The grouping dimension.
-     * @return The key for grouping.
+     * @param body The records, in the format of mockData.json.
+     * @return The number of records ingested, the new data version and row count.
+     * @throws IOException If the records cannot be read or stored.
      */
-    private String getDimensionKey(Map<String, Object> data, String dimension) {
-        switch (dimension) {
-            case "CloudProvider":
-                return data.getOrDefault("providerName", "Unknown").toString();
-            case "Region":
-                return data.getOrDefault("providerName", "Unknown") + "-" + data.getOrDefault("region", "Unknown");
-            case "Account":
-                return data.getOrDefault("providerName", "Unknown") + "-" + data.getOrDefault("accountId", "Unknown");
-            case "Service":
-                return data.getOrDefault("providerName", "Unknown") + "-" + data.getOrDefault("serviceName", "Unknown");
-            case "FinancialDomain":
-                return data.getOrDefault("domain", "Unknown").toString();
-            default:
-                return "Unknown";
+    @PostMapping("/ingest")
+    public Map<String, Object> ingestData(InputStream body) throws IOException {
+        JsonRepository.IngestResult result;
+        try {
+            result = jsonRepository.ingest(body);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
         }
+        liveChartService.publish();
+        FactTable table = result.table();
+        return Map.of("ingested", result.ingested(), "dataVersion", table.version(), "rows", table.size());
     }
 
     /**
-     * Aggregates data for a specific group and time period.
+     * Reloads the mock data file and the ingest log. The data version is bumped, so cached
+     * results are discarded.
      *
-     * @param key      The grouping key.
-     * @param values   The list of data entries in the group.
-     * @param groupBy  The time grouping parameter.
-     * @param dimension The grouping dimension.
-     * @return A map containing aggregated data for the group.
-     */
-    private Map<String, Object> aggregateData(String key, List<Map<String, Object>> values, String groupBy, String dimension) {
-        // Group data by time period
-        Map<String, List<Map<String, Object>>> groupedByTime = values.stream()
-                .collect(Collectors.groupingBy(d -> groupByTime(d, groupBy)));
-
-        // Aggregate total consumption for each time period
-        List<Map<String, Object>> aggregatedValues = groupedByTime.entrySet().stream()
-                .map(entry -> {
-                    double totalConsumption = entry.getValue().stream()
-                            .mapToDouble(d -> {
-                                Object consumptionValue = d.get("consumption");
-                                if (consumptionValue instanceof Number) {
-                                    return ((Number) consumptionValue).doubleValue();
-                                } else {
-                                    return 0.0; // Default value
-                                }
-                            })
-                            .sum();
-                    Map<String, Object> result = new HashMap<>();
-                    result.put("timePeriod", entry.getKey());
-                    result.put("totalConsumption", totalConsumption);
-                    return result;
-                })
-                .collect(Collectors.toList());
-
-        // Construct the final result map
-        Map<String, Object> resultMap = new HashMap<>();
-        resultMap.put("key", key);
-
-        if ("FinancialDomain".equals(dimension)) {
-            // Include budget information for FinancialDomain
-            Object budget = values.get(0).get("budget");
-            resultMap.put("budget", budget);
-        }
-
-        resultMap.put("aggregatedValues", aggregatedValues);
-
-        return resultMap;
-    }
-
-    /**
-     * Groups a data entry by time period based on the specified grouping parameter.
-     *
-     * @param data    The data entry.
-     * @param groupBy The time grouping parameter.
-     * @return The time period key for grouping.
+     * @return The new data version and row count.
+     * @throws IOException If an error occurs while reading the data.
      */
-    private String groupByTime(Map<String, Object> data, String groupBy) {
-        String dateStr = (String) data.get("date");
-        LocalDate date = LocalDate.parse(dateStr, formatter);
-
-        switch (groupBy) {
-            case "month":
-                return date.getYear() + "-" + String.format("%02d", date.getMonthValue());
-            case "quarter":
-                int quarter = (date.getMonthValue() - 1) / 3 + 1;
-                return date.getYear() + "-Q" + quarter;
-            case "year":
-                return String.valueOf(date.getYear());
-            default:
-                return date.format(formatter);
-        }
+    @PostMapping("/reload")
+    public Map<String, Object> reloadData() throws IOException {
+        FactTable table = jsonRepository.reloadFactTable();
+        liveChartService.publish();
+        return Map.of("dataVersion", table.version(), "rows", table.size());
     }
 }
@@ -0,0 +1,112 @@
+package com.example.customized.dashboard.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration of one chart on a user's dashboard, the chartInfo of the API.
+ * Known properties are held typed; properties the backend does not know about are kept in
+ * extra and written back unchanged, so clients can store their own settings. So are values of
+ * known properties the backend does not recognize, such as a chart type added by a newer client.
+ *
+ * @param title      The chart title, or null.
+ * @param type       The chart type, or null if not set or not recognized.
+ * @param xAxis      The x axis property, or null.
+ * @param yAxis      The y axis property, or null.
+ * @param dimension  The grouping dimension, or null if not set or not recognized.
+ * @param groupBy    The time grouping, or null if not set or not recognized.
+ * @param maxDisplay Maximum number of keys to show, or null to show all.
+ * @param filters    Normalized conditions on the records shown; empty for none.
+ * @param extra      Other properties, in the order they were read, and the stored form of known
+ *                   properties that keep one.
+ */
+@JsonSerialize(using = DashboardCodecs.ChartSerializer.class)
+@JsonDeserialize(using = DashboardCodecs.ChartDeserializer.class)
+public record Chart(String title, Type type, String xAxis, String yAxis, Dimension dimension, TimeGrain groupBy,
+                    Integer maxDisplay, List<FilterCondition> filters, Map<String, Object> extra) {
+
+    public Chart {
+        filters = filters == null ? List.of() : List.copyOf(filters);
+        extra = extra == null || extra.isEmpty() ? Map.of() : Collections.unmodifiableMap(new LinkedHashMap<>(extra));
+    }
+
+    /**
+     * @return Whether the chart's type, dimension and groupBy are all recognized (or not set);
+     *         charts stored with other values are kept but not rendered.
+     */
+    public boolean recognized() {
+        return !extra.containsKey("type") && !extra.containsKey("dimension") && !extra.containsKey("groupBy");
+    }
+
+    /**
+     * Chart types the dashboard can draw.
+     */
+    public enum Type {
+        LINE("line"),
+        BAR("bar"),
+        PIE("pie"),
+        AREA("area"),
+        TREE_MAP("treeMap"),
+        TABLE("table");
+
+        // Name used by the API and in charts.json
+        private final String apiName;
+
+        Type(String apiName) {
+            this.apiName = apiName;
+        }
+
+        public String getApiName() {
+            return apiName;
+        }
+
+        /**
+         * @param apiName The chart type name (e.g., "line").
+         * @return The matching type, or null if the name is not known.
+         */
+        public static Type fromApiName(String apiName) {
+            for (Type type : values()) {
+                if (type.apiName.equals(apiName)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Position and size of a chart on the dashboard grid, an entry of dashboardOrder.
+     *
+     * @param id     The ID of the chart.
+     * @param x      The column of the chart's left edge.
+     * @param y      The row of the chart's top edge.
+     * @param width  The width, in columns.
+     * @param height The height, in rows.
+     * @param extra  Other properties, in the order they were read.
+     */
+    @JsonSerialize(using = DashboardCodecs.LayoutSerializer.class)
+    @JsonDeserialize(using = DashboardCodecs.LayoutDeserializer.class)
+    public record Layout(String id, int x, int y, int width, int height, Map<String, Object> extra) {
+
+        public Layout {
+            extra = extra == null || extra.isEmpty() ? Map.of() : Collections.unmodifiableMap(new LinkedHashMap<>(extra));
+        }
+
+        public Layout(String id, int x, int y, int width, int height) {
+            this(id, x, y, width, height, Map.of());
+        }
+
+        /**
+         * @param position A layout whose position and size are taken.
+         * @return This chart's layout moved to the position and size of the other layout.
+         */
+        public Layout movedTo(Layout position) {
+            return new Layout(id, position.x, position.y, position.width, position.height, extra);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.customized.dashboard.model;
+
+/**
+ * A chart together with its layout, as sent to add or update a chart and as returned for
+ * each changed chart of a dashboard delta.
+ *
+ * @param dashboardInfo The chart's layout (position, size).
+ * @param chartInfo     The chart's configuration.
+ */
+public record ChartEntry(Chart.Layout dashboardInfo, Chart chartInfo) {
+}
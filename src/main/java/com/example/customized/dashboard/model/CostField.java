@@ -0,0 +1,39 @@
+package com.example.customized.dashboard.model;
+
+/**
+ * Descriptive attributes of a cost record that are stored dictionary-encoded.
+ * Each constant carries the JSON property name used in mockData.json.
+ */
+public enum CostField {
+    PROVIDER_NAME("providerName"),
+    REGION("region"),
+    ACCOUNT_ID("accountId"),
+    SERVICE_NAME("serviceName"),
+    DOMAIN("domain");
+
+    // Name of the property in the JSON cost records
+    private final String jsonName;
+
+    CostField(String jsonName) {
+        this.jsonName = jsonName;
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    /**
+     * Resolves a JSON property name to its field.
+     *
+     * @param jsonName The property name (e.g., "providerName").
+     * @return The matching field, or null if the property is not a dimension attribute.
+     */
+    public static CostField fromJsonName(String jsonName) {
+        for (CostField field : values()) {
+            if (field.jsonName.equals(jsonName)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
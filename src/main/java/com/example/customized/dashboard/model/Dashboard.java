@@ -0,0 +1,203 @@
+package com.example.customized.dashboard.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A user's dashboard: the layout of each chart in display order (dashboardOrder) and the
+ * configuration of each chart by ID (charts). A dashboard is immutable; changes return a new
+ * dashboard that shares the unchanged parts with this one, so snapshots can be handed to any
+ * number of readers. The position of each chart in dashboardOrder is indexed by ID, so finding
+ * a chart's layout does not scan the list.
+ */
+@JsonSerialize(using = DashboardCodecs.DashboardSerializer.class)
+@JsonDeserialize(using = DashboardCodecs.DashboardDeserializer.class)
+public final class Dashboard {
+
+    // Dashboard of users without one
+    public static final Dashboard EMPTY = new Dashboard(List.of(), Map.of(), Map.of());
+
+    // Layout of each chart, in display order
+    private final List<Chart.Layout> dashboardOrder;
+
+    // Configuration of each chart by ID, in insertion order
+    private final Map<String, Chart> charts;
+
+    // Position of each chart ID in dashboardOrder; the first one if an ID is listed twice
+    private final Map<String, Integer> positions;
+
+    /**
+     * @param dashboardOrder The layout of each chart, in display order.
+     * @param charts         The configuration of each chart by ID.
+     */
+    public Dashboard(List<Chart.Layout> dashboardOrder, Map<String, Chart> charts) {
+        this(List.copyOf(dashboardOrder), Collections.unmodifiableMap(new LinkedHashMap<>(charts)), null);
+    }
+
+    // Takes the collections as they are; positions are indexed when null
+    private Dashboard(List<Chart.Layout> dashboardOrder, Map<String, Chart> charts, Map<String, Integer> positions) {
+        this.dashboardOrder = dashboardOrder;
+        this.charts = charts;
+        this.positions = positions == null ? index(dashboardOrder) : positions;
+    }
+
+    /**
+     * @return The layout of each chart, in display order.
+     */
+    public List<Chart.Layout> dashboardOrder() {
+        return dashboardOrder;
+    }
+
+    /**
+     * @return The configuration of each chart by ID.
+     */
+    public Map<String, Chart> charts() {
+        return charts;
+    }
+
+    /**
+     * @param chartId The ID of a chart.
+     * @return The chart's configuration, or null if it is not on the dashboard.
+     */
+    public Chart chart(String chartId) {
+        return charts.get(chartId);
+    }
+
+    /**
+     * @param chartId The ID of a chart.
+     * @return The chart's layout, or null if it is not listed in dashboardOrder.
+     */
+    public Chart.Layout layout(String chartId) {
+        int position = indexOf(chartId);
+        return position < 0 ? null : dashboardOrder.get(position);
+    }
+
+    /**
+     * @param chartId The ID of a chart.
+     * @return The position of the chart in dashboardOrder, or -1 if it is not listed.
+     */
+    public int indexOf(String chartId) {
+        Integer position = positions.get(chartId);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Adds a chart at the end of dashboardOrder, or replaces its layout in place if the chart
+     * is already listed, and sets its configuration.
+     *
+     * @param layout The chart's layout; its ID identifies the chart.
+     * @param chart  The chart's configuration.
+     * @return The changed dashboard.
+     */
+    public Dashboard withChart(Chart.Layout layout, Chart chart) {
+        String chartId = layout.id();
+        Map<String, Chart> newCharts = new LinkedHashMap<>(charts);
+        newCharts.put(chartId, chart);
+        int position = indexOf(chartId);
+        if (position >= 0) {
+            return new Dashboard(replaced(position, layout), Collections.unmodifiableMap(newCharts), positions);
+        }
+        List<Chart.Layout> newOrder = new ArrayList<>(dashboardOrder.size() + 1);
+        newOrder.addAll(dashboardOrder);
+        newOrder.add(layout);
+        Map<String, Integer> newPositions = new HashMap<>(positions);
+        newPositions.put(chartId, dashboardOrder.size());
+        return new Dashboard(Collections.unmodifiableList(newOrder), Collections.unmodifiableMap(newCharts),
+                Collections.unmodifiableMap(newPositions));
+    }
+
+    /**
+     * Changes a chart that is on the dashboard: its configuration is replaced if it has one, and
+     * its listed layout is moved to the position and size of the given layout. Other layout
+     * properties are kept. Charts that are not on the dashboard are not added.
+     *
+     * @param chartId The ID of the chart.
+     * @param layout  The new position and size, or null to keep the layout.
+     * @param chart   The new configuration, or null to keep the configuration.
+     * @return The changed dashboard, or this dashboard if nothing changes.
+     */
+    public Dashboard withUpdatedChart(String chartId, Chart.Layout layout, Chart chart) {
+        Map<String, Chart> newCharts = charts;
+        if (chart != null && charts.containsKey(chartId)) {
+            Map<String, Chart> copy = new LinkedHashMap<>(charts);
+            copy.put(chartId, chart);
+            newCharts = Collections.unmodifiableMap(copy);
+        }
+        List<Chart.Layout> newOrder = dashboardOrder;
+        int position = indexOf(chartId);
+        if (layout != null && position >= 0) {
+            newOrder = replaced(position, dashboardOrder.get(position).movedTo(layout));
+        }
+        if (newCharts == charts && newOrder == dashboardOrder) {
+            return this;
+        }
+        // The order of the IDs is unchanged, so the positions are shared
+        return new Dashboard(newOrder, newCharts, positions);
+    }
+
+    /**
+     * Removes a chart's configuration and every layout listed for it.
+     *
+     * @param chartId The ID of the chart.
+     * @return The changed dashboard, or this dashboard if the chart is not on it.
+     */
+    public Dashboard withoutChart(String chartId) {
+        if (!charts.containsKey(chartId) && indexOf(chartId) < 0) {
+            return this;
+        }
+        Map<String, Chart> newCharts = new LinkedHashMap<>(charts);
+        newCharts.remove(chartId);
+        List<Chart.Layout> newOrder = new ArrayList<>(dashboardOrder.size());
+        for (Chart.Layout layout : dashboardOrder) {
+            if (!Objects.equals(chartId, layout.id())) {
+                newOrder.add(layout);
+            }
+        }
+        return new Dashboard(Collections.unmodifiableList(newOrder), Collections.unmodifiableMap(newCharts), null);
+    }
+
+    // A copy of dashboardOrder with one layout replaced
+    private List<Chart.Layout> replaced(int position, Chart.Layout layout) {
+        List<Chart.Layout> newOrder = new ArrayList<>(dashboardOrder);
+        newOrder.set(position, layout);
+        return Collections.unmodifiableList(newOrder);
+    }
+
+    // Position of each chart ID in dashboardOrder, keeping the first of duplicates
+    private static Map<String, Integer> index(List<Chart.Layout> dashboardOrder) {
+        Map<String, Integer> positions = new HashMap<>(Math.max(16, dashboardOrder.size() * 2));
+        for (int i = 0; i < dashboardOrder.size(); i++) {
+            positions.putIfAbsent(dashboardOrder.get(i).id(), i);
+        }
+        return Collections.unmodifiableMap(positions);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Dashboard other)) {
+            return false;
+        }
+        return dashboardOrder.equals(other.dashboardOrder) && charts.equals(other.charts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(dashboardOrder, charts);
+    }
+
+    @Override
+    public String toString() {
+        return "Dashboard[dashboardOrder=" + dashboardOrder + ", charts=" + charts + "]";
+    }
+}
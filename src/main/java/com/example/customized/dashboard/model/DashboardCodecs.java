@@ -0,0 +1,388 @@
+package com.example.customized.dashboard.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming JSON codecs of the dashboard model. They know the schema of dashboards, so known
+ * properties are read token by token straight into typed fields and written from them, without
+ * the generic maps and the reflection of data binding. The JSON is the format of charts.json
+ * and the API: dashboardOrder entries {"id","x","y","width","height"} and chart entries
+ * {"title","type","xAxis","yAxis","dimension","groupBy","maxDisplay","filters"}.
+ * Unknown properties are read as generic values and written back after the known ones.
+ * Values of known chart properties that must survive as stored (a type, dimension or groupBy
+ * the backend does not know, and maxDisplay in its original form) are kept in the chart's
+ * extra under their own name and written back in their place.
+ * The codecs are attached to the model types, so every ObjectMapper uses them.
+ */
+public final class DashboardCodecs {
+
+    // Known chart properties, in the order of charts.json
+    private static final List<String> CHART_PROPERTIES =
+            List.of("title", "type", "xAxis", "yAxis", "dimension", "groupBy", "maxDisplay", "filters");
+
+    private DashboardCodecs() {
+    }
+
+    /**
+     * Writes a dashboard as {"dashboardOrder":[..],"charts":{..}}.
+     */
+    public static final class DashboardSerializer extends StdSerializer<Dashboard> {
+
+        public DashboardSerializer() {
+            super(Dashboard.class);
+        }
+
+        @Override
+        public void serialize(Dashboard dashboard, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("dashboardOrder");
+            for (Chart.Layout layout : dashboard.dashboardOrder()) {
+                writeLayout(layout, gen, provider);
+            }
+            gen.writeEndArray();
+            gen.writeObjectFieldStart("charts");
+            for (Map.Entry<String, Chart> entry : dashboard.charts().entrySet()) {
+                gen.writeFieldName(entry.getKey());
+                writeChart(entry.getValue(), gen, provider);
+            }
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Reads a dashboard; missing parts are empty, other properties and charts set to null are skipped.
+     */
+    public static final class DashboardDeserializer extends StdDeserializer<Dashboard> {
+
+        public DashboardDeserializer() {
+            super(Dashboard.class);
+        }
+
+        @Override
+        public Dashboard deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            expectObject(p, ctxt, Dashboard.class);
+            List<Chart.Layout> dashboardOrder = new ArrayList<>();
+            Map<String, Chart> charts = new LinkedHashMap<>();
+            for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+                JsonToken token = p.nextToken();
+                if ("dashboardOrder".equals(name) && token == JsonToken.START_ARRAY) {
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        if (p.currentToken() != JsonToken.VALUE_NULL) {
+                            dashboardOrder.add(readLayout(p, ctxt));
+                        }
+                    }
+                } else if ("charts".equals(name) && token == JsonToken.START_OBJECT) {
+                    for (String chartId = p.nextFieldName(); chartId != null; chartId = p.nextFieldName()) {
+                        if (p.nextToken() != JsonToken.VALUE_NULL) {
+                            charts.put(chartId, readChart(p, ctxt));
+                        }
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+            return new Dashboard(dashboardOrder, charts);
+        }
+
+        @Override
+        public Dashboard getNullValue(DeserializationContext ctxt) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a layout as {"id","x","y","width","height",..}.
+     */
+    public static final class LayoutSerializer extends StdSerializer<Chart.Layout> {
+
+        public LayoutSerializer() {
+            super(Chart.Layout.class);
+        }
+
+        @Override
+        public void serialize(Chart.Layout layout, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            writeLayout(layout, gen, provider);
+        }
+    }
+
+    /**
+     * Reads a layout; position and size are required and must be integers (numbers or numeric strings).
+     */
+    public static final class LayoutDeserializer extends StdDeserializer<Chart.Layout> {
+
+        public LayoutDeserializer() {
+            super(Chart.Layout.class);
+        }
+
+        @Override
+        public Chart.Layout deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            return readLayout(p, ctxt);
+        }
+    }
+
+    /**
+     * Writes a chart with its known properties first, in the order of charts.json.
+     */
+    public static final class ChartSerializer extends StdSerializer<Chart> {
+
+        public ChartSerializer() {
+            super(Chart.class);
+        }
+
+        @Override
+        public void serialize(Chart chart, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            writeChart(chart, gen, provider);
+        }
+    }
+
+    /**
+     * Reads a chart; malformed maxDisplay values and malformed filters are rejected. Unknown chart
+     * types, dimensions and groupings are kept as stored, and leave the chart out of rendering.
+     */
+    public static final class ChartDeserializer extends StdDeserializer<Chart> {
+
+        public ChartDeserializer() {
+            super(Chart.class);
+        }
+
+        @Override
+        public Chart deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            return readChart(p, ctxt);
+        }
+    }
+
+    private static void writeLayout(Chart.Layout layout, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("id", layout.id());
+        gen.writeNumberField("x", layout.x());
+        gen.writeNumberField("y", layout.y());
+        gen.writeNumberField("width", layout.width());
+        gen.writeNumberField("height", layout.height());
+        writeExtra(layout.extra(), gen, provider);
+        gen.writeEndObject();
+    }
+
+    private static Chart.Layout readLayout(JsonParser p, DeserializationContext ctxt) throws IOException {
+        expectObject(p, ctxt, Chart.Layout.class);
+        String id = null;
+        Integer x = null;
+        Integer y = null;
+        Integer width = null;
+        Integer height = null;
+        Map<String, Object> extra = null;
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            p.nextToken();
+            switch (name) {
+                case "id" -> id = textValue(p, ctxt, Chart.Layout.class, name);
+                case "x" -> x = intValue(p, ctxt, Chart.Layout.class, name);
+                case "y" -> y = intValue(p, ctxt, Chart.Layout.class, name);
+                case "width" -> width = intValue(p, ctxt, Chart.Layout.class, name);
+                case "height" -> height = intValue(p, ctxt, Chart.Layout.class, name);
+                default -> extra = readExtra(p, ctxt, extra, name);
+            }
+        }
+        if (x == null || y == null || width == null || height == null) {
+            ctxt.reportInputMismatch(Chart.Layout.class, "x, y, width and height are required");
+        }
+        return new Chart.Layout(id, x, y, width, height, extra);
+    }
+
+    private static void writeChart(Chart chart, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        Map<String, Object> extra = chart.extra();
+        gen.writeStartObject();
+        writeStringIfSet(gen, "title", chart.title());
+        writeKnownIfSet(gen, provider, extra, "type", chart.type() == null ? null : chart.type().getApiName());
+        writeStringIfSet(gen, "xAxis", chart.xAxis());
+        writeStringIfSet(gen, "yAxis", chart.yAxis());
+        writeKnownIfSet(gen, provider, extra, "dimension",
+                chart.dimension() == null ? null : chart.dimension().getApiName());
+        writeKnownIfSet(gen, provider, extra, "groupBy", chart.groupBy() == null ? null : chart.groupBy().getApiName());
+        // Without a stored form, written as a string, as the dashboard front end stores it
+        writeKnownIfSet(gen, provider, extra, "maxDisplay",
+                chart.maxDisplay() == null ? null : chart.maxDisplay().toString());
+        if (!chart.filters().isEmpty()) {
+            gen.writeObjectFieldStart("filters");
+            for (FilterCondition condition : chart.filters()) {
+                switch (condition.operator()) {
+                    case IN -> {
+                        gen.writeArrayFieldStart(condition.field().getJsonName());
+                        for (String value : condition.values()) {
+                            gen.writeString(value);
+                        }
+                        gen.writeEndArray();
+                    }
+                    case MIN_BUDGET -> gen.writeNumberField(FilterCondition.MIN_BUDGET, condition.threshold());
+                    case MAX_BUDGET -> gen.writeNumberField(FilterCondition.MAX_BUDGET, condition.threshold());
+                }
+            }
+            gen.writeEndObject();
+        }
+        for (Map.Entry<String, Object> entry : extra.entrySet()) {
+            if (!CHART_PROPERTIES.contains(entry.getKey())) {
+                provider.defaultSerializeField(entry.getKey(), entry.getValue(), gen);
+            }
+        }
+        gen.writeEndObject();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Chart readChart(JsonParser p, DeserializationContext ctxt) throws IOException {
+        expectObject(p, ctxt, Chart.class);
+        String title = null;
+        Chart.Type type = null;
+        String xAxis = null;
+        String yAxis = null;
+        Dimension dimension = null;
+        TimeGrain groupBy = null;
+        Integer maxDisplay = null;
+        List<FilterCondition> filters = List.of();
+        Map<String, Object> extra = null;
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "title" -> title = textValue(p, ctxt, Chart.class, name);
+                case "xAxis" -> xAxis = textValue(p, ctxt, Chart.class, name);
+                case "yAxis" -> yAxis = textValue(p, ctxt, Chart.class, name);
+                case "type" -> {
+                    String text = textValue(p, ctxt, Chart.class, name);
+                    type = Chart.Type.fromApiName(text);
+                    if (type == null && text != null) {
+                        extra = readExtra(p, ctxt, extra, name);
+                    }
+                }
+                case "dimension" -> {
+                    String text = textValue(p, ctxt, Chart.class, name);
+                    dimension = Dimension.fromApiName(text);
+                    if (dimension == null && text != null) {
+                        extra = readExtra(p, ctxt, extra, name);
+                    }
+                }
+                case "groupBy" -> {
+                    String text = textValue(p, ctxt, Chart.class, name);
+                    groupBy = grainOf(text);
+                    if (groupBy == null && text != null) {
+                        extra = readExtra(p, ctxt, extra, name);
+                    }
+                }
+                case "maxDisplay" -> {
+                    String text = textValue(p, ctxt, Chart.class, name);
+                    if (text != null && !"all".equalsIgnoreCase(text)) {
+                        maxDisplay = intValue(p, ctxt, Chart.class, name);
+                        if (maxDisplay < 0) {
+                            ctxt.reportInputMismatch(Chart.class, "maxDisplay must not be negative: %s", text);
+                        }
+                    }
+                    if (text != null) {
+                        extra = readExtra(p, ctxt, extra, name);
+                    }
+                }
+                case "filters" -> {
+                    if (token == JsonToken.START_OBJECT) {
+                        try {
+                            filters = FilterCondition.parseAll(ctxt.readValue(p, Map.class));
+                        } catch (IllegalArgumentException e) {
+                            ctxt.reportInputMismatch(Chart.class, "Invalid filters: %s", e.getMessage());
+                        }
+                    } else if (token != JsonToken.VALUE_NULL) {
+                        ctxt.reportInputMismatch(Chart.class, "filters must be an object");
+                    }
+                }
+                default -> extra = readExtra(p, ctxt, extra, name);
+            }
+        }
+        return new Chart(title, type, xAxis, yAxis, dimension, groupBy, maxDisplay, filters, extra);
+    }
+
+    // The grain with an API name; unlike TimeGrain.fromApiName, unknown names give null
+    private static TimeGrain grainOf(String apiName) {
+        for (TimeGrain grain : TimeGrain.values()) {
+            if (grain.getApiName().equals(apiName)) {
+                return grain;
+            }
+        }
+        return null;
+    }
+
+    private static void writeStringIfSet(JsonGenerator gen, String name, String value) throws IOException {
+        if (value != null) {
+            gen.writeStringField(name, value);
+        }
+    }
+
+    // Writes a known chart property, in its stored form if the chart kept one
+    private static void writeKnownIfSet(JsonGenerator gen, SerializerProvider provider, Map<String, Object> extra,
+                                        String name, String value) throws IOException {
+        if (extra.containsKey(name)) {
+            provider.defaultSerializeField(name, extra.get(name), gen);
+        } else {
+            writeStringIfSet(gen, name, value);
+        }
+    }
+
+    private static void writeExtra(Map<String, Object> extra, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        for (Map.Entry<String, Object> entry : extra.entrySet()) {
+            provider.defaultSerializeField(entry.getKey(), entry.getValue(), gen);
+        }
+    }
+
+    // Reads the current value as a generic value into the extra properties, created on first use
+    private static Map<String, Object> readExtra(JsonParser p, DeserializationContext ctxt, Map<String, Object> extra,
+                                                 String name) throws IOException {
+        Map<String, Object> properties = extra == null ? new LinkedHashMap<>() : extra;
+        properties.put(name, p.currentToken() == JsonToken.VALUE_NULL ? null : ctxt.readValue(p, Object.class));
+        return properties;
+    }
+
+    // The current scalar value as a string, or null for JSON null
+    private static String textValue(JsonParser p, DeserializationContext ctxt, Class<?> type, String name) throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isStructStart()) {
+            ctxt.reportInputMismatch(type, "%s must be a string", name);
+        }
+        return p.getValueAsString();
+    }
+
+    // The current value as an int: an integral number within the int range, or a string holding one
+    private static int intValue(JsonParser p, DeserializationContext ctxt, Class<?> type, String name) throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT && p.getNumberType() == JsonParser.NumberType.INT) {
+            return p.getIntValue();
+        }
+        if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+            double value = p.getDoubleValue();
+            if (value == Math.rint(value) && value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return (int) value;
+            }
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            try {
+                return Integer.parseInt(p.getText().trim());
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+        }
+        return (Integer) ctxt.reportInputMismatch(type, "%s must be an integer, not %s", name, p.getText());
+    }
+
+    private static void expectObject(JsonParser p, DeserializationContext ctxt, Class<?> type) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            ctxt.reportInputMismatch(type, "Expected a JSON object, not %s", p.currentToken());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.customized.dashboard.model;
+
+/**
+ * Dimensions the filter endpoint can group cost records by.
+ * A dimension key is built from one field, or from the provider name and a second field
+ * (e.g., "AWS-us-east-1" for Region), matching the keys exposed by the API.
+ */
+public enum Dimension {
+    CLOUD_PROVIDER("CloudProvider", CostField.PROVIDER_NAME, null),
+    REGION("Region", CostField.PROVIDER_NAME, CostField.REGION),
+    ACCOUNT("Account", CostField.PROVIDER_NAME, CostField.ACCOUNT_ID),
+    SERVICE("Service", CostField.PROVIDER_NAME, CostField.SERVICE_NAME),
+    FINANCIAL_DOMAIN("FinancialDomain", CostField.DOMAIN, null);
+
+    // Name used by the API and in charts.json
+    private final String apiName;
+
+    // Field providing the first (or only) part of the key
+    private final CostField first;
+
+    // Field providing the second part of the key, or null for single-field dimensions
+    private final CostField second;
+
+    Dimension(String apiName, CostField first, CostField second) {
+        this.apiName = apiName;
+        this.first = first;
+        this.second = second;
+    }
+
+    public String getApiName() {
+        return apiName;
+    }
+
+    public CostField getFirst() {
+        return first;
+    }
+
+    public CostField getSecond() {
+        return second;
+    }
+
+    /**
+     * Resolves an API dimension name.
+     *
+     * @param apiName The dimension name (e.g., "CloudProvider").
+     * @return The matching dimension, or null if the name is not known.
+     */
+    public static Dimension fromApiName(String apiName) {
+        for (Dimension dimension : values()) {
+            if (dimension.apiName.equals(apiName)) {
+                return dimension;
+            }
+        }
+        return null;
+    }
+}
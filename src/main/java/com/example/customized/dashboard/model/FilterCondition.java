@@ -0,0 +1,124 @@
+package com.example.customized.dashboard.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * One predicate a cost record must satisfy to be aggregated: a field's value is one of a set of
+ * values, or the record's budget lies on one side of a threshold.
+ * Conditions are normalized so equivalent filters compare equal and share cached results.
+ *
+ * @param operator  The kind of predicate.
+ * @param field     The field whose value is tested (IN only).
+ * @param values    The accepted values, sorted and distinct (IN only).
+ * @param threshold The budget threshold (MIN_BUDGET and MAX_BUDGET only).
+ */
+public record FilterCondition(Operator operator, CostField field, List<String> values, double threshold) {
+
+    // Parameter names of the budget thresholds
+    public static final String MIN_BUDGET = "minBudget";
+    public static final String MAX_BUDGET = "maxBudget";
+
+    /**
+     * Kinds of predicate, in the order normalized conditions are listed.
+     */
+    public enum Operator {
+        // The field's value is one of the values
+        IN,
+        // The budget is at least the threshold; records without a budget never match
+        MIN_BUDGET,
+        // The budget is at most the threshold; records without a budget never match
+        MAX_BUDGET
+    }
+
+    /**
+     * @param field  The field.
+     * @param values The accepted values.
+     * @return A condition accepting records whose field has one of the values.
+     */
+    public static FilterCondition in(CostField field, Collection<String> values) {
+        return new FilterCondition(Operator.IN, field, List.copyOf(new TreeSet<>(values)), Double.NaN);
+    }
+
+    /**
+     * @param threshold The lowest accepted budget.
+     * @return A condition accepting records with a budget of at least the threshold.
+     */
+    public static FilterCondition minBudget(double threshold) {
+        return new FilterCondition(Operator.MIN_BUDGET, null, List.of(), threshold);
+    }
+
+    /**
+     * @param threshold The highest accepted budget.
+     * @return A condition accepting records with a budget of at most the threshold.
+     */
+    public static FilterCondition maxBudget(double threshold) {
+        return new FilterCondition(Operator.MAX_BUDGET, null, List.of(), threshold);
+    }
+
+    /**
+     * Parses the conditions of a filter request or chart. A field is filtered by its JSON
+     * property name (e.g., "providerName=AWS,Azure"); values may be given as a comma-separated
+     * list, as a collection, or both. Budget thresholds are given as minBudget and maxBudget.
+     * Other names are ignored, so the request parameters can be passed as they are.
+     *
+     * @param filters The filter values by name; each value is a string, a number or a collection of them.
+     * @return The normalized conditions: one IN condition per filtered field in field order,
+     *         then the budget thresholds; empty if nothing is filtered.
+     * @throws IllegalArgumentException If a budget threshold is not a number.
+     */
+    public static List<FilterCondition> parseAll(Map<String, ?> filters) {
+        List<FilterCondition> conditions = new ArrayList<>();
+        for (CostField field : CostField.values()) {
+            Object value = filters.get(field.getJsonName());
+            if (value != null) {
+                conditions.add(in(field, split(value)));
+            }
+        }
+        Double minBudget = threshold(filters.get(MIN_BUDGET), true);
+        if (minBudget != null) {
+            conditions.add(minBudget(minBudget));
+        }
+        Double maxBudget = threshold(filters.get(MAX_BUDGET), false);
+        if (maxBudget != null) {
+            conditions.add(maxBudget(maxBudget));
+        }
+        return List.copyOf(conditions);
+    }
+
+    // The values of a filter, split at commas
+    private static List<String> split(Object value) {
+        List<String> values = new ArrayList<>();
+        for (Object item : value instanceof Collection ? (Collection<?>) value : List.of(value)) {
+            for (String part : String.valueOf(item).split(",")) {
+                if (!part.isBlank()) {
+                    values.add(part.trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    // The tightest of the thresholds given for a budget bound, or null if none is given
+    private static Double threshold(Object value, boolean lower) {
+        Double threshold = null;
+        for (String part : value == null ? List.<String>of() : split(value)) {
+            double parsed;
+            try {
+                parsed = Double.parseDouble(part);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Budget threshold must be a number: " + part, e);
+            }
+            if (Double.isNaN(parsed)) {
+                throw new IllegalArgumentException("Budget threshold must be a number: " + part);
+            }
+            if (threshold == null || (lower ? parsed > threshold : parsed < threshold)) {
+                threshold = parsed;
+            }
+        }
+        return threshold;
+    }
+}
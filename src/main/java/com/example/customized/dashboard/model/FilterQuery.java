@@ -0,0 +1,97 @@
+package com.example.customized.dashboard.model;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Normalized parameters of a filter request.
+ *
+ * @param dimension  The grouping dimension, or null if the requested name is not recognised.
+ * @param grain      The time grouping.
+ * @param fromDay    First day of the range (inclusive), as an epoch day.
+ * @param toDay      Last day of the range (inclusive), as an epoch day.
+ * @param maxDisplay Maximum number of keys to return, or {@link #ALL} for no limit.
+ * @param conditions Normalized conditions every aggregated record must satisfy; empty for none.
+ */
+public record FilterQuery(Dimension dimension, TimeGrain grain, int fromDay, int toDay, int maxDisplay,
+                          List<FilterCondition> conditions) {
+
+    // maxDisplay value meaning "return every key"
+    public static final int ALL = -1;
+
+    // Date formatter to parse dates in "yyyy-MM-dd" format
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * Parses the raw request parameters of the filter endpoint.
+     *
+     * @param dimension  The dimension name (e.g., "CloudProvider").
+     * @param groupBy    The time grouping (e.g., "month").
+     * @param from       Start date, "yyyy-MM-dd".
+     * @param to         End date, "yyyy-MM-dd".
+     * @param maxDisplay A non-negative number, or "all".
+     * @return The normalized query.
+     * @throws IllegalArgumentException If a date cannot be parsed or maxDisplay is negative or
+     *                                  not a number.
+     */
+    public static FilterQuery of(String dimension, String groupBy, String from, String to, String maxDisplay) {
+        return of(dimension, groupBy, from, to, maxDisplay, List.of());
+    }
+
+    /**
+     * Parses the raw request parameters of the filter endpoint, with record conditions.
+     *
+     * @param dimension  The dimension name (e.g., "CloudProvider").
+     * @param groupBy    The time grouping (e.g., "month").
+     * @param from       Start date, "yyyy-MM-dd".
+     * @param to         End date, "yyyy-MM-dd".
+     * @param maxDisplay A non-negative number, or "all".
+     * @param conditions Conditions normalized by {@link FilterCondition#parseAll}.
+     * @return The normalized query.
+     * @throws IllegalArgumentException If a date cannot be parsed or maxDisplay is negative or
+     *                                  not a number.
+     */
+    public static FilterQuery of(String dimension, String groupBy, String from, String to, String maxDisplay,
+                                 List<FilterCondition> conditions) {
+        int limit = ALL;
+        if (!"all".equalsIgnoreCase(maxDisplay)) {
+            // NumberFormatException is an IllegalArgumentException
+            limit = Integer.parseInt(maxDisplay);
+            if (limit < 0) {
+                throw new IllegalArgumentException("maxDisplay must not be negative: " + maxDisplay);
+            }
+        }
+        return new FilterQuery(
+                Dimension.fromApiName(dimension),
+                TimeGrain.fromApiName(groupBy),
+                epochDay(from),
+                epochDay(to),
+                limit,
+                List.copyOf(conditions));
+    }
+
+    // Parses a "yyyy-MM-dd" date into an epoch day
+    private static int epochDay(String date) {
+        try {
+            return (int) LocalDate.parse(date, formatter).toEpochDay();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + date, e);
+        }
+    }
+
+    /**
+     * @return True if the result carries each key's budget (FinancialDomain only).
+     */
+    public boolean includesBudget() {
+        return dimension == Dimension.FINANCIAL_DOMAIN;
+    }
+
+    /**
+     * @return True if only records satisfying the conditions are aggregated.
+     */
+    public boolean isFiltered() {
+        return !conditions.isEmpty();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.customized.dashboard.model;
+
+import java.time.LocalDate;
+
+/**
+ * Time grouping supported by the filter endpoint.
+ * Dates are handled as epoch days and mapped to integer bucket ids, so rows can be bucketed
+ * without allocating LocalDate instances; labels are only produced for the buckets returned.
+ */
+public enum TimeGrain {
+    DAY("day"),
+    MONTH("month"),
+    QUARTER("quarter"),
+    YEAR("year");
+
+    // Name used by the API's groupBy parameter
+    private final String apiName;
+
+    TimeGrain(String apiName) {
+        this.apiName = apiName;
+    }
+
+    public String getApiName() {
+        return apiName;
+    }
+
+    /**
+     * Resolves a groupBy value. Unknown values group by day, as the API always has.
+     *
+     * @param apiName The groupBy value (e.g., "month").
+     * @return The matching grain.
+     */
+    public static TimeGrain fromApiName(String apiName) {
+        for (TimeGrain grain : values()) {
+            if (grain.apiName.equals(apiName)) {
+                return grain;
+            }
+        }
+        return DAY;
+    }
+
+    /**
+     * Maps an epoch day to the id of the bucket containing it.
+     * Bucket ids increase with time, so sorting by id sorts chronologically.
+     *
+     * @param epochDay The day, as returned by LocalDate.toEpochDay().
+     * @return The bucket id.
+     */
+    public int bucketOf(int epochDay) {
+        if (this == DAY) {
+            return epochDay;
+        }
+        int yearMonth = yearMonthOf(epochDay);
+        int year = yearMonth / 12;
+        int month = yearMonth % 12; // 0-based
+        switch (this) {
+            case MONTH:
+                return yearMonth;
+            case QUARTER:
+                return year * 4 + month / 3;
+            default:
+                return year;
+        }
+    }
+
+    /**
+     * Returns the first day of a bucket.
+     *
+     * @param bucket The bucket id.
+     * @return The first day of the bucket, as an epoch day.
+     */
+    public int firstDay(int bucket) {
+        switch (this) {
+            case MONTH:
+                return (int) LocalDate.of(bucket / 12, bucket % 12 + 1, 1).toEpochDay();
+            case QUARTER:
+                return (int) LocalDate.of(bucket / 4, (bucket % 4) * 3 + 1, 1).toEpochDay();
+            case YEAR:
+                return (int) LocalDate.of(bucket, 1, 1).toEpochDay();
+            default:
+                return bucket;
+        }
+    }
+
+    /**
+     * Formats a bucket id as the time period label returned by the API
+     * ("2023-01-31", "2023-01", "2023-Q1" or "2023").
+     *
+     * @param bucket The bucket id.
+     * @return The label.
+     */
+    public String label(int bucket) {
+        switch (this) {
+            case MONTH:
+                return (bucket / 12) + "-" + String.format("%02d", bucket % 12 + 1);
+            case QUARTER:
+                return (bucket / 4) + "-Q" + (bucket % 4 + 1);
+            case YEAR:
+                return String.valueOf(bucket);
+            default:
+                return LocalDate.ofEpochDay(bucket).toString();
+        }
+    }
+
+    /**
+     * Computes year * 12 + (month - 1) for an epoch day using the civil-from-days algorithm,
+     * avoiding any object allocation on the per-row path.
+     */
+    private static int yearMonthOf(int epochDay) {
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 12 + month - 1;
+    }
+}
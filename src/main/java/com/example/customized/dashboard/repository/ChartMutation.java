@@ -0,0 +1,78 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.Chart;
+import com.example.customized.dashboard.model.Dashboard;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A single change to one user's dashboard, as recorded in the charts write-ahead log.
+ * The same record is applied to the in-memory store when the change is made and when the log
+ * is replayed at startup. Applying a mutation is idempotent, so replaying a record that is
+ * already contained in the snapshot leaves the dashboards unchanged.
+ *
+ * @param op        The operation: "add", "update", "delete" or "put".
+ * @param userId    The ID of the user whose dashboard changes.
+ * @param chartId   The ID of the chart that changes ("update" and "delete").
+ * @param layout    The chart's layout entry in dashboardOrder ("add" and "update").
+ * @param chart     The chart's configuration ("add" and "update").
+ * @param dashboard The user's complete dashboard ("put"); null removes the user.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ChartMutation(String op, String userId, String chartId,
+                            Chart.Layout layout, Chart chart, Dashboard dashboard) {
+
+    public static ChartMutation add(String userId, Chart.Layout layout, Chart chart) {
+        return new ChartMutation("add", userId, layout.id(), layout, chart, null);
+    }
+
+    public static ChartMutation update(String userId, String chartId, Chart.Layout layout, Chart chart) {
+        return new ChartMutation("update", userId, chartId, layout, chart, null);
+    }
+
+    public static ChartMutation delete(String userId, String chartId) {
+        return new ChartMutation("delete", userId, chartId, null, null, null);
+    }
+
+    public static ChartMutation put(String userId, Dashboard dashboard) {
+        return new ChartMutation("put", userId, null, null, null, dashboard);
+    }
+
+    /**
+     * @return True if the mutation changes an existing chart, so it applies only to users that
+     *         have a dashboard.
+     */
+    public boolean requiresDashboard() {
+        return "update".equals(op) || "delete".equals(op);
+    }
+
+    /**
+     * Applies the mutation to a user's dashboard without modifying it. Updating or deleting a
+     * chart of a user without a dashboard leaves the user without one.
+     *
+     * @param current The user's current dashboard, or null if the user has none.
+     * @return The new dashboard, or null if the user is removed or has none; unchanged parts are
+     *         shared with the current one.
+     */
+    public Dashboard applyTo(Dashboard current) {
+        if ("put".equals(op)) {
+            return dashboard;
+        }
+        if (current == null && requiresDashboard()) {
+            return null;
+        }
+        Dashboard base = current == null ? Dashboard.EMPTY : current;
+        switch (op) {
+            case "add":
+                // Add the chart, or replace its layout if it is already on the dashboard
+                return base.withChart(layout, chart);
+            case "update":
+                // Update the chart's information and its layout's position and size
+                return base.withUpdatedChart(chartId, layout, chart);
+            case "delete":
+                // Remove the chart from the charts map and the dashboardOrder list
+                return base.withoutChart(chartId);
+            default:
+                throw new IllegalArgumentException("Unknown dashboard operation: " + op);
+        }
+    }
+}
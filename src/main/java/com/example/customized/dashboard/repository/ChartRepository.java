@@ -1,87 +1,631 @@
 package com.example.customized.dashboard.repository;
 
+import com.example.customized.dashboard.model.Dashboard;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Dashboard store backed by a snapshot file (charts.json) and an append-only write-ahead log.
+ * Dashboards are held in memory; every change is applied there and appended to the log as one
+ * small JSON line. A background writer thread appends queued records in batches with a single
+ * fsync per batch (group commit) and periodically folds the log into a fresh snapshot.
+ * At startup the snapshot is loaded and the log tail replayed on top of it.
+ * If a batch cannot be appended, whatever part of it reached the log is cut off again and its
+ * changes, with the queued changes made on top of them, are rolled back in memory, so the store
+ * never serves or snapshots a change that the log does not hold.
+ * <p>
+ * Each user's dashboard is an immutable snapshot that is swapped atomically on every change,
+ * so reads never lock. Changes are serialized per user through striped locks: changes to the
+ * same user are linearizable, while changes to different users proceed in parallel. A shared
+ * commit lock is only taken exclusively while compaction captures a snapshot.
+ */
 // Marks this class as a Spring Repository, responsible for data access
 @Repository
 public class ChartRepository {
 
-    // File path where the charts data is stored
-    private static final String CHARTS_FILE_PATH = "src/main/resources/data/charts.json";
+    private static final Logger log = LoggerFactory.getLogger(ChartRepository.class);
 
-    // ObjectMapper is used for JSON serialization and deserialization
-    private final ObjectMapper objectMapper;
+    // Number of lock stripes used to serialize changes per user
+    private static final int LOCK_STRIPES = 64;
 
-    // Constructor initializes the ObjectMapper instance
-    public ChartRepository() {
-        this.objectMapper = new ObjectMapper();
+    // File path where the charts snapshot is stored
+    private final String chartsFilePath;
+
+    // File path of the write-ahead log holding changes made since the last snapshot
+    private final String walFilePath;
+
+    // How long the log writer waits to gather more changes into one batch
+    private final long flushDelayMs;
+
+    // Whether a change is only acknowledged once its log record has been fsynced
+    private final boolean syncWrites;
+
+    // Number of logged changes after which the log is compacted into a new snapshot
+    private final int compactThreshold;
+
+    // Readers and writers of snapshots and log records, built once: the type is resolved and
+    // the serializers are looked up when they are created rather than on every call
+    private final ObjectReader snapshotReader;
+    private final ObjectWriter snapshotWriter;
+    private final ObjectReader mutationReader;
+    private final ObjectWriter mutationWriter;
+
+    // Authoritative dashboards of all users, as immutable snapshots with their versions
+    private final Map<String, VersionedDashboard> chartsData = new ConcurrentHashMap<>();
+
+    // Version given to the dashboards loaded at startup. Derived from the clock, so versions
+    // handed out by an earlier run of the store are lower and never match a current version
+    private final long baseVersion = System.currentTimeMillis() << 20;
+
+    // Source of dashboard versions; every change gets a higher version than the previous one
+    private final AtomicLong versions = new AtomicLong(baseVersion);
+
+    // Locks serializing changes per user; a user always maps to the same stripe
+    private final ReentrantLock[] userLocks = new ReentrantLock[LOCK_STRIPES];
+
+    // Held shared while a change is applied and queued, exclusively while compaction
+    // captures a snapshot, so the snapshot matches the records written to the log
+    private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+
+    // Log records waiting to be written by the log writer
+    private final BlockingQueue<PendingRecord> pending = new LinkedBlockingQueue<>();
+
+    // Open write-ahead log; only used by the log writer (and during startup and shutdown)
+    private FileChannel wal;
+
+    // End of the last complete record in the log; only used by the log writer
+    private long walEnd;
+
+    // Number of records in the log since the last snapshot; only used by the log writer
+    private int loggedSinceSnapshot;
+
+    // Versioned dashboard returned for users without one; its version is below every real version
+    private static final VersionedDashboard EMPTY_VERSIONED_DASHBOARD = VersionedDashboard.of(0, Dashboard.EMPTY);
+
+    // Background thread writing log records and compacting the log
+    private Thread writer;
+
+    // Cleared on shutdown to stop the log writer once the queue is empty
+    private volatile boolean running;
+
+    // Latency of dashboard reads and of changes, including the wait for durability
+    private final Timer readTimer;
+    private final Timer writeTimer;
+
+    // Latency and size of log batch appends, fsync included
+    private final Timer walWriteTimer;
+    private final DistributionSummary walBatchBytes;
+
+    // Latency and size of charts.json snapshot writes
+    private final Timer snapshotWriteTimer;
+    private final DistributionSummary snapshotBytes;
+
+    /**
+     * Creates a repository that records no metrics.
+     *
+     * @param chartsFilePath   File path of the charts snapshot
+     * @param walFilePath      File path of the write-ahead log
+     * @param flushDelayMs     Time the log writer waits to batch changes
+     * @param syncWrites       Whether changes wait until their log record is fsynced
+     * @param compactThreshold Logged changes after which a new snapshot is written
+     */
+    public ChartRepository(String chartsFilePath, String walFilePath, long flushDelayMs, boolean syncWrites,
+                           int compactThreshold) {
+        this(chartsFilePath, walFilePath, flushDelayMs, syncWrites, compactThreshold, new CompositeMeterRegistry());
     }
 
     /**
-     * Reads the entire charts.json file and returns it as a Map.
-     * 
-     * @return A Map containing all charts data, or an empty Map if the file does not exist
-     * @throws IOException If there is an issue reading the file
+     * @param chartsFilePath   File path of the charts snapshot
+     * @param walFilePath      File path of the write-ahead log
+     * @param flushDelayMs     Time the log writer waits to batch changes
+     * @param syncWrites       Whether changes wait until their log record is fsynced
+     * @param compactThreshold Logged changes after which a new snapshot is written
+     * @param meterRegistry    Registry of the read, write and file write metrics
      */
-    public Map<String, Object> readCharts() throws IOException {
-        File file = new File(CHARTS_FILE_PATH);
-        if (!file.exists()) {
-            // If the file does not exist, return an empty Map
-            return new HashMap<>();
+    @Autowired
+    public ChartRepository(
+            @Value("${dashboard.charts.path:src/main/resources/data/charts.json}") String chartsFilePath,
+            @Value("${dashboard.charts.wal-path:src/main/resources/data/charts.wal}") String walFilePath,
+            @Value("${dashboard.charts.flush-delay-ms:0}") long flushDelayMs,
+            @Value("${dashboard.charts.sync-writes:true}") boolean syncWrites,
+            @Value("${dashboard.charts.compact-threshold:10000}") int compactThreshold,
+            MeterRegistry meterRegistry) {
+        this.readTimer = operationTimer(meterRegistry, "read");
+        this.writeTimer = operationTimer(meterRegistry, "write");
+        this.walWriteTimer = fileWriteTimer(meterRegistry, "dashboard.charts.wal.write", "Time to append and fsync a batch of log records");
+        this.walBatchBytes = DistributionSummary.builder("dashboard.charts.wal.batch.bytes")
+                .description("Size of the log record batches appended to charts.wal")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.snapshotWriteTimer = fileWriteTimer(meterRegistry, "dashboard.charts.snapshot.write", "Time to write charts.json");
+        this.snapshotBytes = DistributionSummary.builder("dashboard.charts.snapshot.bytes")
+                .description("Size of the charts.json snapshots written")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.chartsFilePath = chartsFilePath;
+        this.walFilePath = walFilePath;
+        this.flushDelayMs = flushDelayMs;
+        this.syncWrites = syncWrites;
+        this.compactThreshold = compactThreshold;
+        ObjectMapper objectMapper = new ObjectMapper();
+        TypeReference<Map<String, Dashboard>> snapshotType = new TypeReference<>() {};
+        this.snapshotReader = objectMapper.readerFor(snapshotType);
+        this.snapshotWriter = objectMapper.writerFor(snapshotType);
+        this.mutationReader = objectMapper.readerFor(ChartMutation.class);
+        this.mutationWriter = objectMapper.writerFor(ChartMutation.class);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            userLocks[i] = new ReentrantLock();
         }
-        // Deserialize the JSON content into a Map
-        return objectMapper.readValue(file, new TypeReference<>() {});
     }
 
     /**
-     * Writes the entire charts data to the charts.json file.
+     * Loads the snapshot, replays the write-ahead log and starts the log writer.
+     *
+     * @throws IOException If there is an issue reading the snapshot or the log
+     */
+    @PostConstruct
+    public void load() throws IOException {
+        File file = new File(chartsFilePath);
+        chartsData.clear();
+        if (file.exists()) {
+            // Deserialize the JSON content straight into immutable dashboards
+            Map<String, Dashboard> snapshot = snapshotReader.readValue(file);
+            snapshot.forEach((userId, dashboard) -> {
+                if (dashboard != null) {
+                    chartsData.put(userId, VersionedDashboard.of(baseVersion, dashboard));
+                }
+            });
+        }
+
+        Path walPath = Path.of(walFilePath).toAbsolutePath();
+        Files.createDirectories(walPath.getParent());
+        wal = openLog(walPath);
+        loggedSinceSnapshot = replay();
+
+        running = true;
+        writer = new Thread(this::runWriter, "charts-wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Opens the write-ahead log for reading and appending
+    FileChannel openLog(Path walPath) throws IOException {
+        return FileChannel.open(walPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Writes all queued changes, compacts the log into a snapshot and closes it.
+     *
+     * @throws IOException If there is an issue writing the snapshot
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // The writer has stopped, so the log can be used from this thread
+        compact();
+        wal.close();
+    }
+
+    /**
+     * Returns all charts data. The dashboards are immutable snapshots; no lock is taken.
+     * 
+     * @return A Map containing all charts data, or an empty Map if there is none
+     */
+    public Map<String, Dashboard> readCharts() {
+        long start = System.nanoTime();
+        Map<String, Dashboard> charts = dashboards();
+        readTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return charts;
+    }
+
+    /**
+     * Replaces all charts data. Users missing from the new data are removed.
      * 
      * @param chartsData A Map containing all charts data
-     * @throws IOException If there is an issue writing to the file
+     * @throws IOException If there is an issue writing the changes
      */
-    public void writeCharts(Map<String, Object> chartsData) throws IOException {
-        // Serialize the Map into JSON and write it to the file
-        objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(CHARTS_FILE_PATH), chartsData);
+    public void writeCharts(Map<String, Dashboard> chartsData) throws IOException {
+        long start = System.nanoTime();
+        List<ChartMutation> mutations = new ArrayList<>();
+        List<CompletableFuture<Void>> durable = new ArrayList<>();
+        // Exclude every other change so the replacement is atomic
+        commitLock.writeLock().lock();
+        try {
+            for (String userId : this.chartsData.keySet()) {
+                if (!chartsData.containsKey(userId)) {
+                    mutations.add(ChartMutation.put(userId, null));
+                }
+            }
+            chartsData.forEach((userId, dashboard) -> mutations.add(ChartMutation.put(userId, dashboard)));
+            for (ChartMutation mutation : mutations) {
+                durable.add(applyAndLog(mutation, encode(mutation)));
+            }
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+        for (CompletableFuture<Void> future : durable) {
+            awaitDurable(future);
+        }
+        writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
 
     /**
-     * Reads the dashboard data for a specific user.
+     * Reads the dashboard data for a specific user without locking.
      * 
      * @param userId The ID of the user whose dashboard data is to be read
-     * @return A Map containing the user's dashboard data, or a default structure if not found
-     * @throws IOException If there is an issue reading the file
+     * @return An immutable snapshot of the user's dashboard data, or an empty dashboard if not found
      */
-    @SuppressWarnings("unchecked")
-	public Map<String, Object> readDashboard(String userId) throws IOException {
-        // Read the entire charts data
-        Map<String, Object> chartsData = readCharts();
-        // Return the user's dashboard data or a default structure if not found
-        return (Map<String, Object>) chartsData.getOrDefault(
-                userId,
-                Map.of("dashboardOrder", new java.util.ArrayList<>(), "charts", new HashMap<>())
-        );
+    public Dashboard readDashboard(String userId) {
+        return readVersionedDashboard(userId).dashboard();
     }
 
     /**
-     * Writes the dashboard data for a specific user to the charts.json file.
+     * Reads the dashboard of a user together with its versions, without locking. The version
+     * changes with every change to the dashboard, and the dashboard and versions always match.
+     *
+     * @param userId The ID of the user whose dashboard is to be read
+     * @return The user's dashboard and versions, or an empty dashboard with version 0 if not found
+     */
+    public VersionedDashboard readVersionedDashboard(String userId) {
+        long start = System.nanoTime();
+        VersionedDashboard userDashboard = chartsData.get(userId);
+        readTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        // Return a default structure for users without a dashboard
+        return userDashboard == null ? EMPTY_VERSIONED_DASHBOARD : userDashboard;
+    }
+
+    /**
+     * Replaces the dashboard data for a specific user.
      * 
      * @param userId        The ID of the user whose dashboard data is to be written
-     * @param userDashboard A Map containing the user's dashboard data
-     * @throws IOException If there is an issue writing to the file
+     * @param userDashboard The user's dashboard data
+     * @throws IOException If there is an issue writing the change
+     */
+    public void writeDashboard(String userId, Dashboard userDashboard) throws IOException {
+        apply(ChartMutation.put(userId, userDashboard));
+    }
+
+    /**
+     * Applies a change to a user's dashboard and appends it to the write-ahead log.
+     * The cost of the write is proportional to the size of the change, not of the store.
+     * Only the user's lock stripe is held, so changes to other users are not blocked.
+     * With sync-writes enabled the call returns once the change is durable.
+     *
+     * @param mutation The change to apply
+     * @return False if the change updates or deletes a chart of a user without a dashboard;
+     *         it is then neither applied nor logged
+     * @throws IOException If the change could not be written to the log
+     */
+    public boolean apply(ChartMutation mutation) throws IOException {
+        long start = System.nanoTime();
+        // Encode the log record before taking any lock
+        byte[] line = encode(mutation);
+
+        CompletableFuture<Void> durable;
+        ReentrantLock userLock = userLocks[Math.floorMod(mutation.userId().hashCode(), LOCK_STRIPES)];
+        commitLock.readLock().lock();
+        userLock.lock();
+        try {
+            if (mutation.requiresDashboard() && !chartsData.containsKey(mutation.userId())) {
+                return false;
+            }
+            durable = applyAndLog(mutation, line);
+        } finally {
+            userLock.unlock();
+            commitLock.readLock().unlock();
+        }
+        awaitDurable(durable);
+        writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    // Applies a mutation in memory and queues its log record with the dashboard it replaced;
+    // the caller holds the user's lock, so records of one user are queued in the order they
+    // were applied
+    private CompletableFuture<Void> applyAndLog(ChartMutation mutation, byte[] line) {
+        VersionedDashboard previous = chartsData.get(mutation.userId());
+        applyInMemory(mutation);
+        PendingRecord record = new PendingRecord(mutation.userId(), previous, line, new CompletableFuture<>());
+        pending.add(record);
+        return record.durable();
+    }
+
+    // Encodes a mutation as one log line
+    private byte[] encode(ChartMutation mutation) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        mutationWriter.writeValue(line, mutation);
+        line.write('\n');
+        return line.toByteArray();
+    }
+
+    // Swaps in the mutated snapshot of the affected user's dashboard, with a new version; the
+    // caller holds the user's lock, so versions of one user increase in the order of its changes
+    private void applyInMemory(ChartMutation mutation) {
+        VersionedDashboard current = chartsData.get(mutation.userId());
+        Dashboard updated = mutation.applyTo(current == null ? null : current.dashboard());
+        if (updated == null) {
+            chartsData.remove(mutation.userId());
+        } else {
+            long version = versions.incrementAndGet();
+            chartsData.put(mutation.userId(), VersionedDashboard.next(current, version, mutation, updated));
+        }
+    }
+
+    // Waits for a record to be fsynced when synchronous writes are enabled
+    private void awaitDurable(CompletableFuture<Void> durable) throws IOException {
+        if (!syncWrites) {
+            return;
+        }
+        try {
+            durable.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the dashboard change to be written", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to write the dashboard change", e.getCause());
+        }
+    }
+
+    /**
+     * Log writer loop: takes all queued records, appends them with one fsync and completes
+     * their futures, then compacts the log once it holds enough records.
      */
-    public void writeDashboard(String userId, Map<String, Object> userDashboard) throws IOException {
-        // Read the existing charts data
-        Map<String, Object> chartsData = readCharts();
-        // Update the specific user's dashboard data
-        chartsData.put(userId, userDashboard);
-        // Write the updated charts data back to the file
-        writeCharts(chartsData);
+    private void runWriter() {
+        List<PendingRecord> batch = new ArrayList<>();
+        while (running || !pending.isEmpty()) {
+            try {
+                PendingRecord first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                if (flushDelayMs > 0) {
+                    // Give concurrent changes a chance to join this batch
+                    Thread.sleep(flushDelayMs);
+                }
+                batch.add(first);
+                pending.drainTo(batch);
+                writeBatch(batch);
+                batch.clear();
+
+                if (loggedSinceSnapshot >= compactThreshold) {
+                    compact();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                log.error("Failed to compact {} into {}", walFilePath, chartsFilePath, e);
+            }
+        }
+    }
+
+    // Appends a batch of records to the log and fsyncs once. On failure the log is cut back to
+    // its last complete record and the batch is rolled back
+    private void writeBatch(List<PendingRecord> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            if (wal.size() > walEnd) {
+                // Left over from a failed append that could not be cut off at the time
+                wal.truncate(walEnd);
+            }
+            int size = 0;
+            for (PendingRecord record : batch) {
+                size += record.line().length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (PendingRecord record : batch) {
+                buffer.put(record.line());
+            }
+            buffer.flip();
+            long position = walEnd;
+            while (buffer.hasRemaining()) {
+                position += wal.write(buffer, position);
+            }
+            wal.force(false);
+            walEnd = position;
+            walWriteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            walBatchBytes.record(size);
+            loggedSinceSnapshot += batch.size();
+            batch.forEach(record -> record.durable().complete(null));
+        } catch (IOException e) {
+            log.error("Failed to append to {}", walFilePath, e);
+            try {
+                wal.truncate(walEnd);
+            } catch (IOException truncateError) {
+                // Retried before the next append
+                e.addSuppressed(truncateError);
+            }
+            rollBack(batch, e);
+        }
+    }
+
+    /**
+     * Restores the dashboards replaced by the records of a failed batch and fails their
+     * changes. Changes still queued were applied on top of them, so they are rolled back and
+     * failed too. The commit lock is held exclusively, so no change is applied meanwhile and
+     * undoing the records in reverse order restores the state before the batch.
+     */
+    private void rollBack(List<PendingRecord> batch, IOException cause) {
+        commitLock.writeLock().lock();
+        try {
+            List<PendingRecord> failed = new ArrayList<>(batch);
+            pending.drainTo(failed);
+            for (int i = failed.size() - 1; i >= 0; i--) {
+                PendingRecord record = failed.get(i);
+                if (record.previous() == null) {
+                    chartsData.remove(record.userId());
+                } else {
+                    chartsData.put(record.userId(), record.previous());
+                }
+            }
+            failed.forEach(record -> record.durable().completeExceptionally(cause));
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Folds the log into a new snapshot. Records still queued are written first while holding
+     * the commit lock exclusively, so the captured state matches the log exactly; the snapshot is then written
+     * to a temporary file that atomically replaces charts.json, and the log is truncated.
+     * Changes made meanwhile stay queued and go into the emptied log.
+     */
+    private void compact() throws IOException {
+        Map<String, Dashboard> snapshot;
+        commitLock.writeLock().lock();
+        try {
+            List<PendingRecord> batch = new ArrayList<>();
+            pending.drainTo(batch);
+            writeBatch(batch);
+            if (loggedSinceSnapshot == 0) {
+                return;
+            }
+            // Dashboards are immutable snapshots, so a shallow copy is a consistent snapshot
+            snapshot = dashboards();
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+
+        Path target = Path.of(chartsFilePath).toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        long start = System.nanoTime();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            snapshotWriter.writeValue(temp.toFile(), snapshot);
+            snapshotBytes.record(Files.size(temp));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshotWriteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        // The snapshot now contains every logged change; a crash before this point only
+        // replays records that are already in the snapshot, which is harmless
+        wal.truncate(0);
+        wal.force(true);
+        walEnd = 0;
+        loggedSinceSnapshot = 0;
+    }
+
+    /**
+     * Replays the log on top of the loaded snapshot. A torn record at the end of the log,
+     * left by a crash during an append, is discarded. Replay stops at the first record that
+     * cannot be read: it and the records after it are moved to a ".corrupt" file next to the
+     * log and reported, and the store starts with the changes before it.
+     *
+     * @return The number of records replayed
+     */
+    private int replay() throws IOException {
+        byte[] content = Files.readAllBytes(Path.of(walFilePath));
+        int replayed = 0;
+        int start = 0;
+        while (start < content.length) {
+            int end = start;
+            while (end < content.length && content[end] != '\n') {
+                end++;
+            }
+            if (end == content.length) {
+                // The last record has no terminating newline, so it was never fully written
+                log.warn("Discarding incomplete record at the end of {}", walFilePath);
+                break;
+            }
+            try {
+                applyInMemory(mutationReader.readValue(content, start, end - start));
+            } catch (IOException | IllegalArgumentException e) {
+                Path corrupt = Path.of(walFilePath + ".corrupt");
+                Files.write(corrupt, Arrays.copyOfRange(content, start, content.length));
+                log.error("Stopped replaying {} at an unreadable record after {} records; moved the remaining {} bytes to {}",
+                        walFilePath, replayed, content.length - start, corrupt, e);
+                break;
+            }
+            replayed++;
+            start = end + 1;
+        }
+        // New records are appended after the last complete record
+        wal.truncate(start);
+        walEnd = start;
+        return replayed;
+    }
+
+    // The dashboards of all users, by user ID
+    private Map<String, Dashboard> dashboards() {
+        Map<String, Dashboard> dashboards = new LinkedHashMap<>();
+        chartsData.forEach((userId, dashboard) -> dashboards.put(userId, dashboard.dashboard()));
+        return dashboards;
+    }
+
+    // A log record waiting to be written, with the user's dashboard before the change (null if
+    // it had none) and the future completed once it is durable
+    private record PendingRecord(String userId, VersionedDashboard previous, byte[] line,
+                                 CompletableFuture<Void> durable) {
+    }
+
+    // Timer of dashboard reads or changes
+    private static Timer operationTimer(MeterRegistry registry, String operation) {
+        return Timer.builder("dashboard.charts.operation")
+                .description("Latency of dashboard reads and changes; changes include the wait for durability")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    // Timer of a file write, fsync included
+    private static Timer fileWriteTimer(MeterRegistry registry, String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1000))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
     }
 }
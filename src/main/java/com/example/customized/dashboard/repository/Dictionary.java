@@ -0,0 +1,74 @@
+package com.example.customized.dashboard.repository;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary encoding for a string column: each distinct value is assigned a dense int code
+ * in first-seen order, so rows only store ints and values are decoded when a response is built.
+ * Codes are never reassigned, so a dictionary can grow while ingested rows are appended and be
+ * shared by every snapshot of a fact table. Values are only added by a single writer at a time;
+ * lookups and decoding are safe from any thread.
+ */
+public class Dictionary {
+
+    // Code assigned to each distinct value
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+
+    // Distinct values, indexed by code; replaced by a larger copy when full
+    private volatile String[] values = new String[16];
+
+    // Number of distinct values; written after the value it counts is visible
+    private volatile int size;
+
+    /**
+     * Returns the code for a value, assigning the next free code if the value is new.
+     *
+     * @param value The value to encode.
+     * @return The value's code.
+     */
+    public int encode(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = size;
+            String[] current = values;
+            if (code == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[code] = value;
+            values = current;
+            size = code + 1;
+            codes.put(value, code);
+        }
+        return code;
+    }
+
+    /**
+     * Looks up the code of a value without assigning one.
+     *
+     * @param value The value to look up.
+     * @return The value's code, or -1 if the value has never been encoded.
+     */
+    public int codeOf(String value) {
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Decodes a code back to its value.
+     *
+     * @param code The code.
+     * @return The value.
+     */
+    public String decode(int code) {
+        return values[code];
+    }
+
+    /**
+     * @return The number of distinct values.
+     */
+    public int size() {
+        return size;
+    }
+}
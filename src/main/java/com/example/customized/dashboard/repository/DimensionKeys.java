@@ -0,0 +1,206 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.Dimension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps each row of a fact table to a dense key code for one grouping dimension.
+ * Composite keys (provider + region, account or service) are resolved through a small
+ * (firstCode, secondCode) lookup table built at load time, so no key strings are created per row.
+ */
+public class DimensionKeys {
+
+    // Key name used by the API when a dimension is not recognised
+    static final String UNKNOWN_KEY = "Unknown";
+
+    // Per-row codes of the first key field (null when every row maps to the "Unknown" key)
+    private final IntColumn firstCodes;
+
+    // Per-row codes of the second key field, or null for single-field dimensions
+    private final IntColumn secondCodes;
+
+    // Number of distinct second-field values, used as the stride of the pair table
+    private final int secondCardinality;
+
+    // Key code for each (first, second) pair, indexed by first * secondCardinality + second
+    private final int[] pairCodes;
+
+    // Key names indexed by key code
+    private final String[] names;
+
+    private DimensionKeys(IntColumn firstCodes, IntColumn secondCodes, int secondCardinality, int[] pairCodes, String[] names) {
+        this.firstCodes = firstCodes;
+        this.secondCodes = secondCodes;
+        this.secondCardinality = secondCardinality;
+        this.pairCodes = pairCodes;
+        this.names = names;
+    }
+
+    /**
+     * Builds the key index for a dimension.
+     *
+     * @param dimension The dimension, or null for an unrecognised dimension name.
+     * @param table     The fact table whose rows are indexed.
+     * @return The key index.
+     */
+    static DimensionKeys build(Dimension dimension, FactTable table) {
+        return index(dimension, table, null, 0);
+    }
+
+    /**
+     * Extends a key index to the rows appended to a fact table. Existing key codes are kept and
+     * pairs seen for the first time get the next free codes, so rollups and results built with
+     * this index stay valid; this index itself is left unchanged.
+     *
+     * @param dimension The dimension this index was built for, or null.
+     * @param table     The fact table with the appended rows.
+     * @param fromRow   The first appended row.
+     * @return The key index of the extended table.
+     */
+    DimensionKeys extend(Dimension dimension, FactTable table, int fromRow) {
+        return index(dimension, table, this, fromRow);
+    }
+
+    /**
+     * Moves a key index to a table holding the same rows in another order, keeping every key code.
+     *
+     * @param dimension The dimension this index was built for, or null.
+     * @param table     The table with the reordered rows.
+     * @return The key index of the reordered table.
+     */
+    DimensionKeys rebase(Dimension dimension, FactTable table) {
+        if (dimension == null) {
+            return this;
+        }
+        IntColumn secondCodes = dimension.getSecond() == null ? null : table.codes(dimension.getSecond());
+        return new DimensionKeys(table.codes(dimension.getFirst()), secondCodes, secondCardinality, pairCodes, names);
+    }
+
+    /**
+     * Restores a key index from the pairs saved by {@link #pairs()}, without scanning the rows.
+     *
+     * @param dimension The dimension, or null for an unrecognised dimension name.
+     * @param table     The fact table whose rows are indexed.
+     * @param pairs     The saved pairs, or null for single-field dimensions.
+     * @return The key index.
+     */
+    static DimensionKeys fromPairs(Dimension dimension, FactTable table, int[] pairs) {
+        if (dimension == null || dimension.getSecond() == null) {
+            // Single-field keys are taken from the dictionary alone
+            return build(dimension, table);
+        }
+        Dictionary first = table.dictionary(dimension.getFirst());
+        Dictionary second = table.dictionary(dimension.getSecond());
+        int stride = second.size();
+        int[] pairCodes = new int[first.size() * stride];
+        Arrays.fill(pairCodes, -1);
+        String[] names = new String[pairs.length / 2];
+        for (int code = 0; code < names.length; code++) {
+            int firstCode = pairs[2 * code];
+            int secondCode = pairs[2 * code + 1];
+            pairCodes[firstCode * stride + secondCode] = code;
+            names[code] = first.decode(firstCode) + "-" + second.decode(secondCode);
+        }
+        return new DimensionKeys(table.codes(dimension.getFirst()), table.codes(dimension.getSecond()), stride,
+                pairCodes, names);
+    }
+
+    /**
+     * @return The (first, second) field codes of each key, flattened in key code order, or null
+     *         when keys are not composite.
+     */
+    int[] pairs() {
+        if (pairCodes == null) {
+            return null;
+        }
+        int[] pairs = new int[2 * names.length];
+        for (int pair = 0; pair < pairCodes.length; pair++) {
+            int code = pairCodes[pair];
+            if (code >= 0) {
+                pairs[2 * code] = pair / secondCardinality;
+                pairs[2 * code + 1] = pair % secondCardinality;
+            }
+        }
+        return pairs;
+    }
+
+    // Indexes rows [fromRow, table.size()) on top of a previous index of the rows before them
+    private static DimensionKeys index(Dimension dimension, FactTable table, DimensionKeys previous, int fromRow) {
+        if (dimension == null) {
+            // Every row falls into a single "Unknown" group
+            return previous != null ? previous : new DimensionKeys(null, null, 0, null, new String[]{UNKNOWN_KEY});
+        }
+        Dictionary first = table.dictionary(dimension.getFirst());
+        IntColumn firstCodes = table.codes(dimension.getFirst());
+        if (dimension.getSecond() == null) {
+            // Single-field keys reuse the field's dictionary codes directly
+            String[] names = new String[first.size()];
+            for (int code = 0; code < names.length; code++) {
+                names[code] = first.decode(code);
+            }
+            return new DimensionKeys(firstCodes, null, 0, null, names);
+        }
+
+        Dictionary second = table.dictionary(dimension.getSecond());
+        IntColumn secondCodes = table.codes(dimension.getSecond());
+        int stride = second.size();
+        int[] pairCodes = new int[first.size() * stride];
+        Arrays.fill(pairCodes, -1);
+        List<String> names = new ArrayList<>();
+        if (previous != null) {
+            // Carry over the codes of the pairs already seen, re-laid out for the new stride
+            for (int code = 0; code < previous.pairCodes.length; code++) {
+                if (previous.pairCodes[code] >= 0) {
+                    int firstCode = code / previous.secondCardinality;
+                    int secondCode = code % previous.secondCardinality;
+                    pairCodes[firstCode * stride + secondCode] = previous.pairCodes[code];
+                }
+            }
+            names.addAll(Arrays.asList(previous.names));
+        }
+
+        // Assign key codes to the pairs that actually occur, in first-seen order
+        for (int row = fromRow; row < table.size(); row++) {
+            int firstCode = firstCodes.get(row);
+            int secondCode = secondCodes.get(row);
+            int pair = firstCode * stride + secondCode;
+            if (pairCodes[pair] < 0) {
+                pairCodes[pair] = names.size();
+                names.add(first.decode(firstCode) + "-" + second.decode(secondCode));
+            }
+        }
+        return new DimensionKeys(firstCodes, secondCodes, stride, pairCodes, names.toArray(new String[0]));
+    }
+
+    /**
+     * @param row The row index.
+     * @return The key code of the row.
+     */
+    public int keyOf(int row) {
+        if (firstCodes == null) {
+            return 0;
+        }
+        if (secondCodes == null) {
+            return firstCodes.get(row);
+        }
+        return pairCodes[firstCodes.get(row) * secondCardinality + secondCodes.get(row)];
+    }
+
+    /**
+     * @return The number of distinct keys; key codes range from 0 to size() - 1.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @param code The key code.
+     * @return The key as returned by the API.
+     */
+    public String name(int code) {
+        return names[code];
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.customized.dashboard.repository;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * A fact table column of doubles. The first rows may be read from a memory-mapped segment
+ * file, which keeps them off the heap; the remaining rows are held in a heap array.
+ */
+final class DoubleColumn {
+
+    // Values of the mapped rows, or null when the column has none
+    private final DoubleBuffer mapped;
+
+    // Number of rows read from the mapped buffer
+    final int mappedRows;
+
+    // Values of the rows after the mapped ones, indexed by row - mappedRows
+    final double[] heap;
+
+    DoubleColumn(DoubleBuffer mapped, double[] heap) {
+        this.mapped = mapped;
+        this.mappedRows = mapped == null ? 0 : mapped.limit();
+        this.heap = heap;
+    }
+
+    /**
+     * @param row The row index.
+     * @return The row's value.
+     */
+    double get(int row) {
+        return row < mappedRows ? mapped.get(row) : heap[row - mappedRows];
+    }
+
+    /**
+     * @param heap The new heap rows.
+     * @return A column with the same mapped rows and the given heap rows.
+     */
+    DoubleColumn withHeap(double[] heap) {
+        return new DoubleColumn(mapped, heap);
+    }
+}
@@ -0,0 +1,604 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.CostField;
+import com.example.customized.dashboard.model.Dimension;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
+
+/**
+ * Columnar representation of the cost records.
+ * Dates are stored as epoch days, descriptive fields as dictionary codes and amounts in
+ * primitive columns, so queries can scan rows without boxing or per-row object allocation.
+ * The first rows may be memory-mapped from a segment file and live off the heap; rows loaded
+ * from JSON or ingested later are held in heap arrays.
+ * Rows are stored as a few runs, each sorted by date (ties keep their load order), so a date
+ * range maps to one contiguous slice per run. Each run is split into monthly partitions whose
+ * date ranges are kept on the heap: a slice is found from the partitions and a binary search
+ * within the partition at each end, so rows outside the range are never read. A loaded table has a single
+ * run; ingested batches extend the last run when they start on or after its last date and
+ * otherwise add a run, until the heap runs are merged again.
+ * A table is an immutable snapshot: appending rows produces a new table that shares the column
+ * arrays, writing only past the end of the rows this table can see.
+ * Filters on field values use per-field inverted indexes, built on first use and extended along
+ * with the rows on append.
+ */
+public class FactTable {
+
+    // Source of data versions; every table built gets a higher version than the previous one
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    // Version of the data held by this table, used to invalidate cached results
+    private final long version = VERSIONS.incrementAndGet();
+
+    // Number of rows
+    private final int size;
+
+    // Date of each row, as epoch days; the heap arrays may have room for rows beyond size
+    private final IntColumn dates;
+
+    // Dictionary codes of each row, indexed by CostField ordinal
+    private final IntColumn[] codes;
+
+    // Dictionaries for each field, indexed by CostField ordinal; shared by every snapshot
+    private final Dictionary[] dictionaries;
+
+    // Consumption amount of each row
+    private final DoubleColumn consumption;
+
+    // Budget of each row, NaN when the record has no budget
+    private final DoubleColumn budget;
+
+    // Rows written to the heap arrays, shared by the snapshots that share the arrays; only
+    // the snapshot whose size equals it may append in place
+    private final AtomicInteger written;
+
+    // End (exclusive) of each run; run r covers rows [runEnds[r - 1], runEnds[r])
+    private final int[] runEnds;
+
+    // Monthly partitions of each run, in date order
+    private final Partition[][] partitions;
+
+    // Earliest and latest date of any row
+    private final int minDate;
+    private final int maxDate;
+
+    // Shared by the snapshots that extend one another by appends, which keep row numbers and
+    // key codes; a table with different rows or keys gets a new lineage
+    private final Object lineage;
+
+    // Grouping keys for each dimension, indexed by Dimension ordinal
+    private final DimensionKeys[] dimensionKeys;
+
+    // Grouping key used for unrecognised dimension names
+    private final DimensionKeys unknownKeys;
+
+    // Pre-aggregated rollups, or null when they are disabled or not built yet
+    private volatile RollupCube rollups;
+
+    // Inverted index of each field, indexed by CostField ordinal; built when a filter first needs it
+    private final AtomicReferenceArray<InvertedIndex> invertedIndexes =
+            new AtomicReferenceArray<>(CostField.values().length);
+
+    /**
+     * Creates a snapshot over columns; the dimension keys are obtained from the key source once
+     * the columns are in place.
+     */
+    private FactTable(int size, IntColumn dates, IntColumn[] codes, Dictionary[] dictionaries, DoubleColumn consumption,
+                      DoubleColumn budget, AtomicInteger written, int[] runEnds, Partition[][] knownPartitions,
+                      Object lineage, BiFunction<Dimension, FactTable, DimensionKeys> keySource) {
+        this.size = size;
+        this.dates = dates;
+        this.codes = codes;
+        this.dictionaries = dictionaries;
+        this.consumption = consumption;
+        this.budget = budget;
+        this.written = written;
+        this.runEnds = runEnds;
+        this.lineage = lineage;
+        this.partitions = new Partition[runEnds.length][];
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int run = 0; run < runEnds.length; run++) {
+            Partition[] known = knownPartitions != null && run < knownPartitions.length ? knownPartitions[run] : null;
+            Partition[] runPartitions = Partition.index(known, this, runStart(run), runEnds[run]);
+            partitions[run] = runPartitions;
+            min = Math.min(min, runPartitions[0].minDate());
+            max = Math.max(max, runPartitions[runPartitions.length - 1].maxDate());
+        }
+        this.minDate = min;
+        this.maxDate = max;
+
+        // Resolve composite dimension keys once, so queries only look up ints
+        this.dimensionKeys = new DimensionKeys[Dimension.values().length];
+        for (Dimension dimension : Dimension.values()) {
+            dimensionKeys[dimension.ordinal()] = keySource.apply(dimension, this);
+        }
+        this.unknownKeys = DimensionKeys.build(null, this);
+    }
+
+    // Creates a single-run heap table from rows in any order
+    private static FactTable sorted(int size, int[] dates, int[][] codes, Dictionary[] dictionaries,
+                                    double[] consumption, double[] budget) {
+        int[] order = sortedOrder(dates, size);
+        IntColumn[] sortedCodes = new IntColumn[codes.length];
+        for (int field = 0; field < codes.length; field++) {
+            sortedCodes[field] = new IntColumn(null, permute(codes[field], order));
+        }
+        return new FactTable(size, new IntColumn(null, permute(dates, order)), sortedCodes, dictionaries,
+                new DoubleColumn(null, permute(consumption, order)), new DoubleColumn(null, permute(budget, order)),
+                new AtomicInteger(size), size == 0 ? new int[0] : new int[]{size}, null, new Object(),
+                DimensionKeys::build);
+    }
+
+    /**
+     * Creates a table whose rows are all read from mapped segment buffers.
+     *
+     * @param dates        The date column.
+     * @param codes        The code columns, indexed by CostField ordinal.
+     * @param dictionaries The dictionaries of the code columns.
+     * @param consumption  The consumption column.
+     * @param budget       The budget column.
+     * @param runEnds      The end of each date-sorted run.
+     * @param partitions   The monthly partitions of each run, or null to compute them from the rows.
+     * @param keyPairs     Per Dimension ordinal, the (first, second) codes of each composite key
+     *                     in key code order, or null for single-field dimensions.
+     * @return The table.
+     */
+    static FactTable mapped(IntBuffer dates, IntBuffer[] codes, Dictionary[] dictionaries, DoubleBuffer consumption,
+                            DoubleBuffer budget, int[] runEnds, Partition[][] partitions, int[][] keyPairs) {
+        IntColumn[] codeColumns = new IntColumn[codes.length];
+        for (int field = 0; field < codes.length; field++) {
+            codeColumns[field] = new IntColumn(codes[field], new int[0]);
+        }
+        int size = dates.limit();
+        return new FactTable(size, new IntColumn(dates, new int[0]), codeColumns, dictionaries,
+                new DoubleColumn(consumption, new double[0]), new DoubleColumn(budget, new double[0]),
+                new AtomicInteger(size), runEnds, partitions, new Object(),
+                (dimension, table) -> DimensionKeys.fromPairs(dimension, table, keyPairs[dimension.ordinal()]));
+    }
+
+    /**
+     * Appends a batch of rows and returns the resulting snapshot; this table is not modified and
+     * stays valid for readers that still hold it.
+     * The batch is sorted by date and written after the existing rows, in place when this is the
+     * latest snapshot of its heap arrays and they have room. It extends the last run when it
+     * starts on or after the last date, and becomes a new run otherwise. The dimension keys and
+     * rollups are extended with the new rows only, except when there would be more than maxRuns
+     * runs: then the heap rows are merged into one run, with the same keys, and the rollups are
+     * left to be rebuilt.
+     * Appends must not run concurrently with each other.
+     *
+     * @param batch   The rows to append.
+     * @param maxRuns The number of runs above which the heap rows are merged into a single run.
+     * @return The new snapshot, or this table if the batch is empty.
+     */
+    public FactTable append(Builder batch, int maxRuns) {
+        if (batch.size == 0) {
+            return this;
+        }
+        int newSize = Math.addExact(size, batch.size);
+        int mappedRows = dates.mappedRows;
+        int[] order = sortedOrder(batch.dates, batch.size);
+
+        // Write into the shared heap arrays when no later snapshot has written past this one
+        int[] newDates = dates.heap;
+        int[][] newCodes = new int[codes.length][];
+        for (int field = 0; field < codes.length; field++) {
+            newCodes[field] = codes[field].heap;
+        }
+        double[] newConsumption = consumption.heap;
+        double[] newBudget = budget.heap;
+        AtomicInteger newWritten = written;
+        if (newSize - mappedRows > newDates.length || !written.compareAndSet(size, newSize)) {
+            int heapRows = size - mappedRows;
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+                    Math.max(newSize - mappedRows, heapRows + (long) (heapRows >> 1)));
+            newDates = Arrays.copyOf(newDates, capacity);
+            for (int field = 0; field < codes.length; field++) {
+                newCodes[field] = Arrays.copyOf(newCodes[field], capacity);
+            }
+            newConsumption = Arrays.copyOf(newConsumption, capacity);
+            newBudget = Arrays.copyOf(newBudget, capacity);
+            newWritten = new AtomicInteger(newSize);
+        }
+
+        // Translate the batch's dictionary codes to this table's codes
+        int[][] remap = new int[codes.length][];
+        for (int field = 0; field < codes.length; field++) {
+            Dictionary batchDictionary = batch.dictionaries[field];
+            remap[field] = new int[batchDictionary.size()];
+            for (int code = 0; code < remap[field].length; code++) {
+                remap[field][code] = dictionaries[field].encode(batchDictionary.decode(code));
+            }
+        }
+        for (int i = 0; i < batch.size; i++) {
+            int source = order[i];
+            int index = size - mappedRows + i;
+            newDates[index] = batch.dates[source];
+            for (int field = 0; field < codes.length; field++) {
+                newCodes[field][index] = remap[field][batch.codes[field][source]];
+            }
+            newConsumption[index] = batch.consumption[source];
+            newBudget[index] = batch.budget[source];
+        }
+
+        int[] newRunEnds;
+        if (runEnds.length > 0 && batch.dates[order[0]] >= maxDate) {
+            // The batch continues the date order of the last run
+            newRunEnds = runEnds.clone();
+            newRunEnds[newRunEnds.length - 1] = newSize;
+        } else {
+            newRunEnds = Arrays.copyOf(runEnds, runEnds.length + 1);
+            newRunEnds[runEnds.length] = newSize;
+        }
+
+        IntColumn[] codeColumns = new IntColumn[codes.length];
+        for (int field = 0; field < codes.length; field++) {
+            codeColumns[field] = codes[field].withHeap(newCodes[field]);
+        }
+        FactTable table = new FactTable(newSize, dates.withHeap(newDates), codeColumns, dictionaries,
+                consumption.withHeap(newConsumption), budget.withHeap(newBudget), newWritten, newRunEnds,
+                Arrays.copyOf(partitions, newRunEnds.length), lineage,
+                (dimension, extended) -> keys(dimension).extend(dimension, extended, size));
+        if (newRunEnds.length > maxRuns) {
+            // Too many runs for range queries to stay cheap: merge the heap rows into one
+            return table.mergeHeapRuns();
+        }
+        RollupCube cube = rollups;
+        if (cube != null) {
+            table.rollups = cube.append(table, size);
+        }
+        for (CostField field : CostField.values()) {
+            InvertedIndex index = invertedIndexes.get(field.ordinal());
+            if (index != null) {
+                table.invertedIndexes.set(field.ordinal(), index.extend(table, field, size));
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Sorts the heap rows into a single run. The mapped rows keep their runs; a run that
+     * continues from the mapped rows into the heap rows is split at the boundary.
+     * The rows are only reordered, so the dimension keys keep their codes.
+     */
+    private FactTable mergeHeapRuns() {
+        int mappedRows = dates.mappedRows;
+        int heapRows = size - mappedRows;
+        int[] order = sortedOrder(dates.heap, heapRows);
+        IntColumn[] sortedCodes = new IntColumn[codes.length];
+        for (int field = 0; field < codes.length; field++) {
+            sortedCodes[field] = codes[field].withHeap(permute(codes[field].heap, order));
+        }
+
+        int mappedRuns = 0;
+        while (mappedRuns < runEnds.length && runStart(mappedRuns) < mappedRows) {
+            mappedRuns++;
+        }
+        int[] newRunEnds = Arrays.copyOf(runEnds, mappedRuns + (heapRows > 0 ? 1 : 0));
+        if (mappedRuns > 0) {
+            newRunEnds[mappedRuns - 1] = Math.min(newRunEnds[mappedRuns - 1], mappedRows);
+        }
+        if (heapRows > 0) {
+            newRunEnds[mappedRuns] = size;
+        }
+        return new FactTable(size, dates.withHeap(permute(dates.heap, order)), sortedCodes, dictionaries,
+                consumption.withHeap(permute(consumption.heap, order)), budget.withHeap(permute(budget.heap, order)),
+                new AtomicInteger(size), newRunEnds, Arrays.copyOf(partitions, mappedRuns), new Object(),
+                (dimension, merged) -> keys(dimension).rebase(dimension, merged));
+    }
+
+    /**
+     * @return The data version; a reloaded table always has a higher version.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return The number of rows in the table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of date-sorted runs the rows are stored in.
+     */
+    public int runCount() {
+        return runEnds.length;
+    }
+
+    /**
+     * @param run The run index.
+     * @return The first row of the run.
+     */
+    public int runStart(int run) {
+        return run == 0 ? 0 : runEnds[run - 1];
+    }
+
+    /**
+     * @param run The run index.
+     * @return The end (exclusive) of the run's rows.
+     */
+    public int runEnd(int run) {
+        return runEnds[run];
+    }
+
+    /**
+     * @param run The run index.
+     * @return The run's monthly partitions, in date order; the array must not be modified.
+     */
+    public Partition[] partitions(int run) {
+        return partitions[run];
+    }
+
+    /**
+     * @return The earliest date of any row; undefined for an empty table.
+     */
+    public int minDate() {
+        return minDate;
+    }
+
+    /**
+     * @return The latest date of any row; undefined for an empty table.
+     */
+    public int maxDate() {
+        return maxDate;
+    }
+
+    /**
+     * Finds the first row of a run dated on or after a day.
+     *
+     * @param run      The run index.
+     * @param epochDay The day.
+     * @return The index of the first row of the run with date >= epochDay, or runEnd(run) if
+     *         there is none.
+     */
+    public int lowerBound(int run, int epochDay) {
+        // Find the first partition with rows dated on or after the day from the metadata alone
+        Partition[] runPartitions = partitions[run];
+        int first = 0;
+        int last = runPartitions.length;
+        while (first < last) {
+            int mid = (first + last) >>> 1;
+            if (runPartitions[mid].maxDate() < epochDay) {
+                first = mid + 1;
+            } else {
+                last = mid;
+            }
+        }
+        if (first == runPartitions.length) {
+            return runEnds[run];
+        }
+        Partition partition = runPartitions[first];
+        if (partition.minDate() >= epochDay) {
+            return partition.startRow();
+        }
+
+        // The day falls within the partition: search its rows only
+        int low = partition.startRow();
+        int high = partition.endRow();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dates.get(mid) < epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the end (exclusive) of the rows of a run dated on or before a day.
+     *
+     * @param run      The run index.
+     * @param epochDay The day.
+     * @return The index of the first row of the run with date > epochDay, or runEnd(run) if
+     *         there is none.
+     */
+    public int upperBound(int run, int epochDay) {
+        return epochDay == Integer.MAX_VALUE ? runEnds[run] : lowerBound(run, epochDay + 1);
+    }
+
+    /**
+     * @param row The row index.
+     * @return The row's date as an epoch day.
+     */
+    public int date(int row) {
+        return dates.get(row);
+    }
+
+    /**
+     * @param row The row index.
+     * @return The row's consumption.
+     */
+    public double consumption(int row) {
+        return consumption.get(row);
+    }
+
+    /**
+     * @param row The row index.
+     * @return The row's budget, or NaN if the record had none.
+     */
+    public double budget(int row) {
+        return budget.get(row);
+    }
+
+    /**
+     * @param field The field.
+     * @return The dictionary of the field's values.
+     */
+    public Dictionary dictionary(CostField field) {
+        return dictionaries[field.ordinal()];
+    }
+
+    /**
+     * @param dimension The dimension, or null for an unrecognised dimension name.
+     * @return The row-to-key mapping for the dimension.
+     */
+    public DimensionKeys keys(Dimension dimension) {
+        return dimension == null ? unknownKeys : dimensionKeys[dimension.ordinal()];
+    }
+
+    /**
+     * @return The table's rollups, or null if none have been built.
+     */
+    public RollupCube rollups() {
+        return rollups;
+    }
+
+    /**
+     * Builds the rollups of this table and attaches them, so queries can use them.
+     */
+    public void buildRollups() {
+        rollups = RollupCube.build(this);
+    }
+
+    /**
+     * Attaches rollups built for this table, or for a table it extends and then brought up to
+     * date with {@link RollupCube#append}.
+     *
+     * @param rollups The rollups.
+     */
+    void attachRollups(RollupCube rollups) {
+        this.rollups = rollups;
+    }
+
+    /**
+     * @param base Another table.
+     * @return True if this table is base or was produced from it by appends alone, so rows and
+     *         key codes of base are valid in this table.
+     */
+    public boolean extendsTable(FactTable base) {
+        return lineage == base.lineage && size >= base.size;
+    }
+
+    // Per-row codes of a field, shared with DimensionKeys
+    IntColumn codes(CostField field) {
+        return codes[field.ordinal()];
+    }
+
+    /**
+     * Returns the inverted index of a field, building it on first use. Concurrent first uses may
+     * each build it; one of the indexes is kept. Building runs outside of any lock, so callers on
+     * virtual threads do not pin their carrier.
+     */
+    InvertedIndex invertedIndex(CostField field) {
+        InvertedIndex index = invertedIndexes.get(field.ordinal());
+        if (index == null) {
+            index = InvertedIndex.build(this, field);
+            if (!invertedIndexes.compareAndSet(field.ordinal(), null, index)) {
+                index = invertedIndexes.get(field.ordinal());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Computes the row order that sorts rows by date, keeping load order for equal
+     * dates. Each (date, row) pair is packed into a long so a primitive sort can be used.
+     */
+    private static int[] sortedOrder(int[] dates, int size) {
+        long[] packed = new long[size];
+        for (int row = 0; row < size; row++) {
+            packed[row] = ((long) dates[row] << 32) | row;
+        }
+        Arrays.sort(packed);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) packed[i];
+        }
+        return order;
+    }
+
+    // Copies a column into the given row order
+    private static int[] permute(int[] column, int[] order) {
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = column[order[i]];
+        }
+        return result;
+    }
+
+    // Copies a column into the given row order
+    private static double[] permute(double[] column, int[] order) {
+        double[] result = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = column[order[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Accumulates rows into growable primitive arrays and produces an immutable table.
+     */
+    public static class Builder {
+
+        private int size;
+        private int[] dates = new int[1024];
+        private final int[][] codes = new int[CostField.values().length][1024];
+        private final Dictionary[] dictionaries = new Dictionary[CostField.values().length];
+        private double[] consumption = new double[1024];
+        private double[] budget = new double[1024];
+
+        public Builder() {
+            for (int field = 0; field < dictionaries.length; field++) {
+                dictionaries[field] = new Dictionary();
+            }
+        }
+
+        /**
+         * Appends a row.
+         *
+         * @param epochDay    The record date as an epoch day.
+         * @param fields      The record's field values, indexed by CostField ordinal.
+         * @param consumption The consumption amount.
+         * @param budget      The budget, or NaN if the record has none.
+         */
+        public void add(int epochDay, String[] fields, double consumption, double budget) {
+            if (size == dates.length) {
+                grow();
+            }
+            dates[size] = epochDay;
+            for (int field = 0; field < codes.length; field++) {
+                codes[field][size] = dictionaries[field].encode(fields[field]);
+            }
+            this.consumption[size] = consumption;
+            this.budget[size] = budget;
+            size++;
+        }
+
+        /**
+         * @return The number of rows added.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return The built table, as a single run sorted by date.
+         */
+        public FactTable build() {
+            return sorted(size, dates, codes, dictionaries, consumption, budget);
+        }
+
+        // Doubles the capacity of every column
+        private void grow() {
+            int capacity = dates.length * 2;
+            dates = Arrays.copyOf(dates, capacity);
+            for (int field = 0; field < codes.length; field++) {
+                codes[field] = Arrays.copyOf(codes[field], capacity);
+            }
+            consumption = Arrays.copyOf(consumption, capacity);
+            budget = Arrays.copyOf(budget, capacity);
+        }
+    }
+}
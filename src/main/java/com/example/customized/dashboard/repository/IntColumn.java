@@ -0,0 +1,41 @@
+package com.example.customized.dashboard.repository;
+
+import java.nio.IntBuffer;
+
+/**
+ * A fact table column of ints. The first rows may be read from a memory-mapped segment file,
+ * which keeps them off the heap; the remaining rows are held in a heap array.
+ */
+final class IntColumn {
+
+    // Values of the mapped rows, or null when the column has none
+    private final IntBuffer mapped;
+
+    // Number of rows read from the mapped buffer
+    final int mappedRows;
+
+    // Values of the rows after the mapped ones, indexed by row - mappedRows
+    final int[] heap;
+
+    IntColumn(IntBuffer mapped, int[] heap) {
+        this.mapped = mapped;
+        this.mappedRows = mapped == null ? 0 : mapped.limit();
+        this.heap = heap;
+    }
+
+    /**
+     * @param row The row index.
+     * @return The row's value.
+     */
+    int get(int row) {
+        return row < mappedRows ? mapped.get(row) : heap[row - mappedRows];
+    }
+
+    /**
+     * @param heap The new heap rows.
+     * @return A column with the same mapped rows and the given heap rows.
+     */
+    IntColumn withHeap(int[] heap) {
+        return new IntColumn(mapped, heap);
+    }
+}
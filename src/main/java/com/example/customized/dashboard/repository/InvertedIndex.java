@@ -0,0 +1,73 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.CostField;
+
+/**
+ * Inverted index of one field of a fact table: for each dictionary code, the bitmap of the rows
+ * holding it. A filter on a few values of a field reads the bitmaps of those values instead of
+ * the field's codes of every row.
+ */
+final class InvertedIndex {
+
+    // Rows of each dictionary code, indexed by code
+    private final RowBitmap[] rows;
+
+    private InvertedIndex(RowBitmap[] rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * Indexes a field of every row of a table, in one pass over the field's codes.
+     *
+     * @param table The fact table.
+     * @param field The field.
+     * @return The index.
+     */
+    static InvertedIndex build(FactTable table, CostField field) {
+        return index(table, field, new RowBitmap[0], 0);
+    }
+
+    /**
+     * Extends the index to the rows appended to a table; the bitmaps of codes that do not occur
+     * in the appended rows are shared, and this index is left unchanged.
+     *
+     * @param table   The fact table with the appended rows.
+     * @param field   The field this index was built for.
+     * @param fromRow The first appended row.
+     * @return The index of the extended table.
+     */
+    InvertedIndex extend(FactTable table, CostField field, int fromRow) {
+        return index(table, field, rows, fromRow);
+    }
+
+    /**
+     * @param code A dictionary code of the field.
+     * @return The rows holding the code.
+     */
+    RowBitmap rows(int code) {
+        return code >= 0 && code < rows.length ? rows[code] : RowBitmap.EMPTY;
+    }
+
+    // Adds rows [fromRow, table.size()) to the bitmaps of a previous index of the rows before them
+    private static InvertedIndex index(FactTable table, CostField field, RowBitmap[] previous, int fromRow) {
+        RowBitmap.Builder[] builders = new RowBitmap.Builder[table.dictionary(field).size()];
+        IntColumn codes = table.codes(field);
+        for (int row = fromRow; row < table.size(); row++) {
+            int code = codes.get(row);
+            RowBitmap.Builder builder = builders[code];
+            if (builder == null) {
+                builder = builders[code] = new RowBitmap.Builder(code < previous.length ? previous[code] : RowBitmap.EMPTY);
+            }
+            builder.add(row);
+        }
+        RowBitmap[] rows = new RowBitmap[builders.length];
+        for (int code = 0; code < rows.length; code++) {
+            if (builders[code] != null) {
+                rows[code] = builders[code].build();
+            } else {
+                rows[code] = code < previous.length ? previous[code] : RowBitmap.EMPTY;
+            }
+        }
+        return new InvertedIndex(rows);
+    }
+}
@@ -1,20 +1,102 @@
 package com.example.customized.dashboard.repository;
 
+import com.example.customized.dashboard.model.CostField;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
 
 // Marks this class as a Spring Repository for data access
 @Repository
 public class JsonRepository {
 
+    private static final Logger log = LoggerFactory.getLogger(JsonRepository.class);
+
     // Path to the mock data JSON file
-    private static final String MOCK_DATA_FILE_PATH = "src/main/resources/data/mockData.json";
+    public static final String MOCK_DATA_FILE_PATH = "src/main/resources/data/mockData.json";
+
+    // Date format of ingested records and of the ingest log; dates such as 2023-02-30 are rejected
+    private static final DateTimeFormatter DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("uuuu-MM-dd").withResolverStyle(ResolverStyle.STRICT);
+
+    // Date format of the mock data file, which has always been read with the default SMART
+    // resolver; it clamps the file's dates such as 2023-02-30 to the end of the month
+    private static final DateTimeFormatter MOCK_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    // Value used for descriptive fields missing from a record
+    private static final String UNKNOWN_VALUE = "Unknown";
+
+    // ObjectMapper is used for JSON parsing; it is thread-safe and reused across calls
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Whether month/quarter/year rollups are materialized when the data is loaded
+    @Value("${dashboard.rollup.enabled:true}")
+    private boolean rollupsEnabled;
+
+    // Binary segment converted from the mock data; mapped instead of parsing the JSON when it exists
+    @Value("${dashboard.data.segment-path:src/main/resources/data/mockData.seg}")
+    private String segmentPath;
+
+    // Append-only log of ingested cost records, one JSON object per line
+    @Value("${dashboard.ingest.log-path:src/main/resources/data/ingested.ndjson}")
+    private String ingestLogPath;
+
+    // Whether each ingested batch is forced to disk before it becomes visible
+    @Value("${dashboard.ingest.sync-writes:true}")
+    private boolean ingestSyncWrites;
+
+    // Number of date-sorted runs above which ingested rows are merged into a single run
+    @Value("${dashboard.ingest.max-runs:16}")
+    private int ingestMaxRuns;
+
+    // Columnar copy of the mock data and the ingested records, loaded on first use; replaced by
+    // a new snapshot on every ingested batch, so readers always see a consistent table
+    private volatile FactTable factTable;
+
+    // Ingest log, opened for appending on the first ingested batch
+    private FileChannel ingestLog;
+
+    // End of the last batch completely written to the ingest log
+    private long ingestLogEnd;
+
+    // Serializes loading, appending and publishing snapshots; a lock rather than a monitor, so
+    // virtual threads waiting for file I/O under it do not pin their carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Builds rollups in the background, so loading and merging runs never wait for them
+    private final ExecutorService rollupBuilder = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "rollup-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Reads all data from the mockData.json file.
@@ -23,14 +105,368 @@ public class JsonRepository {
      * @throws IOException If there is an issue reading the file
      */
     public List<Map<String, Object>> readMockData() throws IOException {
-        // ObjectMapper is used for JSON parsing
-        ObjectMapper objectMapper = new ObjectMapper();
-        
         // Reads and parses the JSON file into a List of Maps
         return objectMapper.readValue(
                 new File(MOCK_DATA_FILE_PATH), // Path to the JSON file
                 new TypeReference<List<Map<String, Object>>>() {} // Type reference for deserialization
         );
     }
-}
 
+    /**
+     * Returns the cost data as a columnar fact table: the mock data followed by the ingested
+     * records. The files are loaded once and the rollups are built in the background; later
+     * calls return the latest snapshot.
+     *
+     * @return The fact table
+     * @throws IOException If there is an issue reading the files
+     */
+    public FactTable getFactTable() throws IOException {
+        FactTable table = factTable;
+        if (table == null) {
+            lock.lock();
+            try {
+                table = factTable;
+                if (table == null) {
+                    table = loadFactTable();
+                    factTable = table;
+                    scheduleRollups(table);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Re-reads the mock data file and the ingest log and replaces the fact table.
+     * The new table has a higher data version, which invalidates cached filter results.
+     *
+     * @return The new fact table
+     * @throws IOException If there is an issue reading the files
+     */
+    public FactTable reloadFactTable() throws IOException {
+        lock.lock();
+        try {
+            FactTable table = loadFactTable();
+            factTable = table;
+            scheduleRollups(table);
+            return table;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ingests a batch of cost records: a JSON array, a single record, or newline-delimited
+     * records. The batch is parsed before any lock is taken; it is then appended to the ingest
+     * log and added to the fact table as a new snapshot, which is published atomically.
+     * Records are validated like the mock data: each needs a date, missing descriptive fields
+     * become "Unknown" and non-numeric consumption counts as 0.
+     *
+     * @param body The request body
+     * @return The snapshot that includes the batch, and the number of records it added
+     * @throws IOException              If the body cannot be read or the log cannot be written
+     * @throws IllegalArgumentException If the body is not valid JSON or a record is invalid
+     */
+    public IngestResult ingest(InputStream body) throws IOException {
+        FactTable.Builder batch = new FactTable.Builder();
+        ByteArrayOutputStream logRecords = new ByteArrayOutputStream();
+        try (JsonParser parser = objectMapper.getFactory().createParser(body);
+             JsonGenerator log = objectMapper.getFactory().createGenerator(logRecords)) {
+            // One record per line, without the default separator between root values
+            log.setRootValueSeparator(null);
+            String[] fields = new String[CostField.values().length];
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token == JsonToken.START_OBJECT) {
+                readRecord(parser, batch, fields, DATE_FORMATTER, log);
+                token = parser.nextToken();
+            }
+            if (array ? token != JsonToken.END_ARRAY || parser.nextToken() != null : token != null) {
+                throw new JsonParseException(parser, "Expected cost record objects, found " + token);
+            }
+        } catch (JsonProcessingException | DateTimeException e) {
+            throw new IllegalArgumentException("Invalid cost records: " + e.getMessage(), e);
+        }
+        return append(batch, logRecords.toByteArray());
+    }
+
+    /**
+     * Stops the rollup builder and closes the ingest log when the application shuts down.
+     *
+     * @throws IOException If the log cannot be closed
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            rollupBuilder.shutdownNow();
+            if (ingestLog != null) {
+                ingestLog.close();
+                ingestLog = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Logs a parsed batch and publishes the snapshot that includes it. Batches are appended one
+     * at a time, and the log is written first, so every visible row survives a restart. A batch
+     * whose write fails is cut off the log again, so it is neither replayed nor followed by the
+     * next batch.
+     */
+    private IngestResult append(FactTable.Builder batch, byte[] logRecords) throws IOException {
+        lock.lock();
+        try {
+            FactTable table = getFactTable();
+            if (batch.size() == 0) {
+                return new IngestResult(table, 0);
+            }
+            if (ingestLog == null) {
+                ingestLog = openIngestLog(Path.of(ingestLogPath));
+                ingestLogEnd = ingestLog.size();
+            }
+            try {
+                if (ingestLog.size() > ingestLogEnd) {
+                    // Left over from a failed batch that could not be cut off at the time
+                    ingestLog.truncate(ingestLogEnd);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(logRecords);
+                while (buffer.hasRemaining()) {
+                    ingestLog.write(buffer);
+                }
+                if (ingestSyncWrites) {
+                    ingestLog.force(false);
+                }
+            } catch (IOException e) {
+                try {
+                    ingestLog.truncate(ingestLogEnd);
+                } catch (IOException truncateError) {
+                    // Retried before the next batch
+                    e.addSuppressed(truncateError);
+                }
+                throw e;
+            }
+            ingestLogEnd += logRecords.length;
+
+            FactTable appended = table.append(batch, ingestMaxRuns);
+            factTable = appended;
+            if (!appended.extendsTable(table)) {
+                // The runs were merged, which leaves the rollups to be rebuilt
+                scheduleRollups(appended);
+            }
+            return new IngestResult(appended, batch.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Opens the ingest log for appending
+    FileChannel openIngestLog(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Builds the rollups of a table in the background. Snapshots appended to the table in the
+     * meantime are covered by bringing the rollups up to date with their rows and attaching them
+     * to the latest snapshot; later appends carry them forward. Queries scan the rows until then.
+     */
+    private void scheduleRollups(FactTable base) {
+        if (!rollupsEnabled) {
+            return;
+        }
+        rollupBuilder.execute(() -> {
+            if (!isLatest(base)) {
+                // Superseded by a reload or a merge, which schedule their own build
+                return;
+            }
+            RollupCube cube = RollupCube.build(base);
+            lock.lock();
+            try {
+                FactTable latest = factTable;
+                if (latest.extendsTable(base)) {
+                    latest.attachRollups(cube.append(latest, base.size()));
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    // Whether the latest snapshot is the table or extends it
+    private boolean isLatest(FactTable table) {
+        FactTable latest = factTable;
+        return latest != null && latest.extendsTable(table);
+    }
+
+    /**
+     * Loads the mock data and replays the ingest log into a new fact table. The mock data is
+     * mapped from its binary segment when one exists and is not older than the JSON file, with
+     * the ingested records appended on the heap; otherwise the JSON file is parsed.
+     */
+    private FactTable loadFactTable() throws IOException {
+        Path segment = Path.of(segmentPath);
+        Path json = Path.of(MOCK_DATA_FILE_PATH);
+        if (Files.exists(segment)) {
+            if (!Files.exists(json) || Files.getLastModifiedTime(segment).compareTo(Files.getLastModifiedTime(json)) >= 0) {
+                FactTable.Builder batch = new FactTable.Builder();
+                replayIngestLog(batch);
+                return SegmentFile.read(segment).append(batch, ingestMaxRuns);
+            }
+            // The JSON changed since it was converted, so the segment would serve outdated data
+            log.warn("Ignoring {}, which is older than {}; convert the JSON file again", segment, json);
+        }
+        FactTable.Builder builder = readJsonFile(json.toFile());
+        replayIngestLog(builder);
+        return builder.build();
+    }
+
+    /**
+     * Converts a JSON array of cost records into the binary segment that is mapped at startup
+     * instead of parsing the JSON.
+     *
+     * @param json    The cost records, in the format of mockData.json
+     * @param segment The segment file to write
+     * @return The number of rows written
+     * @throws IOException If the records cannot be read or the segment cannot be written
+     */
+    public static int writeSegment(File json, Path segment) throws IOException {
+        FactTable table = new JsonRepository().readJsonFile(json).build();
+        SegmentFile.write(table, segment);
+        return table.size();
+    }
+
+    /**
+     * Parses a JSON array of cost records.
+     *
+     * @param file The JSON file
+     * @return A builder holding the records
+     * @throws IOException If the file cannot be read or is not an array of cost records
+     */
+    FactTable.Builder readJsonFile(File file) throws IOException {
+        FactTable.Builder builder = new FactTable.Builder();
+        try (JsonParser parser = objectMapper.getFactory().createParser(file)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of cost records in " + file);
+            }
+            String[] fields = new String[CostField.values().length];
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                readRecord(parser, builder, fields, MOCK_DATE_FORMATTER, null);
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Adds the records of the ingest log to a builder. A final line without a line break is a
+     * batch whose write was interrupted; it was never published and is cut off the log.
+     */
+    private void replayIngestLog(FactTable.Builder builder) throws IOException {
+        Path path = Path.of(ingestLogPath);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Find the end of the last complete line, reading backwards a block at a time
+            long length = channel.size();
+            ByteBuffer block = ByteBuffer.allocate(8192);
+            scan:
+            while (length > 0) {
+                long blockStart = Math.max(0, length - block.capacity());
+                block.clear().limit((int) (length - blockStart));
+                while (block.hasRemaining() && channel.read(block, blockStart + block.position()) >= 0) {
+                    // Keep reading until the block is full
+                }
+                for (int i = block.position() - 1; i >= 0; i--, length--) {
+                    if (block.get(i) == '\n') {
+                        break scan;
+                    }
+                }
+            }
+            if (length < channel.size()) {
+                channel.truncate(length);
+            }
+        }
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(path.toFile())) {
+            String[] fields = new String[CostField.values().length];
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                readRecord(parser, builder, fields, DATE_FORMATTER, null);
+            }
+        }
+    }
+
+    /**
+     * Reads one cost record object and appends it to the builder, and to the log if one is given.
+     * Missing descriptive fields become "Unknown" and non-numeric consumption counts as 0,
+     * matching how the filter endpoint has always treated such records. Objects and arrays given
+     * for the date, the amounts or a descriptive field are rejected.
+     */
+    private void readRecord(JsonParser parser, FactTable.Builder builder, String[] fields, DateTimeFormatter dates,
+                            JsonGenerator log) throws IOException {
+        Arrays.fill(fields, UNKNOWN_VALUE);
+        String date = null;
+        double consumption = 0.0;
+        double budget = Double.NaN;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            CostField field = CostField.fromJsonName(name);
+            if (token.isStructStart() && (field != null || "date".equals(name) || "consumption".equals(name)
+                    || "budget".equals(name))) {
+                throw new JsonParseException(parser, name + " must be a single value, not " + token);
+            }
+            if ("date".equals(name)) {
+                date = parser.getValueAsString();
+            } else if ("consumption".equals(name)) {
+                consumption = token.isNumeric() ? parser.getDoubleValue() : 0.0;
+            } else if ("budget".equals(name)) {
+                budget = token.isNumeric() ? parser.getDoubleValue() : Double.NaN;
+            } else if (field != null && token != JsonToken.VALUE_NULL) {
+                fields[field.ordinal()] = parser.getValueAsString();
+            } else {
+                // Skip unrelated properties, including nested values
+                parser.skipChildren();
+            }
+        }
+
+        if (date == null) {
+            throw new JsonParseException(parser, "Cost record without a date");
+        }
+        int epochDay = (int) LocalDate.parse(date, dates).toEpochDay();
+        builder.add(epochDay, fields, consumption, budget);
+        if (log != null) {
+            writeRecord(log, epochDay, fields, consumption, budget);
+        }
+    }
+
+    // Writes a normalized record as one line of the ingest log
+    private static void writeRecord(JsonGenerator log, int epochDay, String[] fields, double consumption, double budget) throws IOException {
+        log.writeStartObject();
+        log.writeStringField("date", LocalDate.ofEpochDay(epochDay).format(DATE_FORMATTER));
+        for (CostField field : CostField.values()) {
+            log.writeStringField(field.getJsonName(), fields[field.ordinal()]);
+        }
+        log.writeNumberField("consumption", consumption);
+        if (!Double.isNaN(budget)) {
+            log.writeNumberField("budget", budget);
+        }
+        log.writeEndObject();
+        log.writeRaw('\n');
+    }
+
+    /**
+     * Outcome of an ingested batch.
+     *
+     * @param table    The snapshot that includes the batch.
+     * @param ingested The number of records added.
+     */
+    public record IngestResult(FactTable table, int ingested) {
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.CostField;
+import com.example.customized.dashboard.model.TimeGrain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One calendar month of a date-sorted run of a fact table, with the metadata needed to decide
+ * whether a query can skip it without reading its rows: the date range, and per field the
+ * range of dictionary codes and a small bloom filter of the codes present.
+ * Partitions are kept on the heap even when the rows are memory-mapped, so pruning never
+ * pages in rows outside the queried range.
+ */
+public final class Partition {
+
+    // Bloom filter size per field, in 64-bit words
+    static final int BLOOM_WORDS = 4;
+
+    // Rows [startRow, endRow) of the fact table
+    private final int startRow;
+    private final int endRow;
+
+    // Earliest and latest date of the rows, as epoch days
+    private final int minDate;
+    private final int maxDate;
+
+    // Smallest and largest dictionary code of each field, indexed by CostField ordinal
+    private final int[] minCodes;
+    private final int[] maxCodes;
+
+    // Bloom filter of the codes of each field; field f uses words [f * BLOOM_WORDS, (f + 1) * BLOOM_WORDS)
+    private final long[] blooms;
+
+    Partition(int startRow, int endRow, int minDate, int maxDate, int[] minCodes, int[] maxCodes, long[] blooms) {
+        this.startRow = startRow;
+        this.endRow = endRow;
+        this.minDate = minDate;
+        this.maxDate = maxDate;
+        this.minCodes = minCodes;
+        this.maxCodes = maxCodes;
+        this.blooms = blooms;
+    }
+
+    /**
+     * Splits rows of a run into monthly partitions, reusing partitions already computed for the
+     * run: known partitions that lie within the rows are kept, and only the rows after them are
+     * read. When those rows continue the month of the last kept partition, it is extended with
+     * them rather than rebuilt, so appending rows never reads the rows already partitioned.
+     *
+     * @param known    The partitions previously computed for rows of the run starting at
+     *                 startRow, or null.
+     * @param table    The fact table.
+     * @param startRow The first row of the run.
+     * @param endRow   The end (exclusive) of the run.
+     * @return The partitions covering [startRow, endRow), in date order.
+     */
+    static Partition[] index(Partition[] known, FactTable table, int startRow, int endRow) {
+        List<Partition> partitions = new ArrayList<>();
+        if (known != null) {
+            for (Partition partition : known) {
+                if (partition.endRow > endRow) {
+                    break;
+                }
+                partitions.add(partition);
+            }
+        }
+        int row = partitions.isEmpty() ? startRow : partitions.get(partitions.size() - 1).endRow;
+
+        CostField[] fields = CostField.values();
+        while (row < endRow) {
+            int month = TimeGrain.MONTH.bucketOf(table.date(row));
+            int nextMonth = TimeGrain.MONTH.firstDay(month + 1);
+            Partition last = partitions.isEmpty() ? null : partitions.get(partitions.size() - 1);
+            int start;
+            int minDate;
+            int[] minCodes;
+            int[] maxCodes;
+            long[] blooms;
+            if (last != null && last.endRow == row && TimeGrain.MONTH.bucketOf(last.maxDate) == month) {
+                // The rows continue the last partition's month: extend a copy of it
+                partitions.remove(partitions.size() - 1);
+                start = last.startRow;
+                minDate = last.minDate;
+                minCodes = last.minCodes.clone();
+                maxCodes = last.maxCodes.clone();
+                blooms = last.blooms.clone();
+            } else {
+                start = row;
+                minDate = table.date(row);
+                minCodes = new int[fields.length];
+                maxCodes = new int[fields.length];
+                blooms = new long[fields.length * BLOOM_WORDS];
+                Arrays.fill(minCodes, Integer.MAX_VALUE);
+                Arrays.fill(maxCodes, Integer.MIN_VALUE);
+            }
+            int maxDate = table.date(row);
+            for (; row < endRow && table.date(row) < nextMonth; row++) {
+                maxDate = table.date(row);
+                for (CostField field : fields) {
+                    int code = table.codes(field).get(row);
+                    int f = field.ordinal();
+                    minCodes[f] = Math.min(minCodes[f], code);
+                    maxCodes[f] = Math.max(maxCodes[f], code);
+                    addToBloom(blooms, f, code);
+                }
+            }
+            partitions.add(new Partition(start, row, minDate, maxDate, minCodes, maxCodes, blooms));
+        }
+        return partitions.toArray(new Partition[0]);
+    }
+
+    /**
+     * @return The first row of the partition.
+     */
+    public int startRow() {
+        return startRow;
+    }
+
+    /**
+     * @return The end (exclusive) of the partition's rows.
+     */
+    public int endRow() {
+        return endRow;
+    }
+
+    /**
+     * @return The earliest date of the partition's rows, as an epoch day.
+     */
+    public int minDate() {
+        return minDate;
+    }
+
+    /**
+     * @return The latest date of the partition's rows, as an epoch day.
+     */
+    public int maxDate() {
+        return maxDate;
+    }
+
+    /**
+     * @param fromDay The first day of a range.
+     * @param toDay   The last day of the range.
+     * @return True if some rows of the partition may be dated within the range.
+     */
+    public boolean overlaps(int fromDay, int toDay) {
+        return minDate <= toDay && maxDate >= fromDay;
+    }
+
+    /**
+     * @param field The field.
+     * @param code  A dictionary code of the field.
+     * @return False if no row of the partition has the code; true if some row may have it.
+     */
+    public boolean mightContain(CostField field, int code) {
+        int f = field.ordinal();
+        if (code < minCodes[f] || code > maxCodes[f]) {
+            return false;
+        }
+        int hash = code * 0x9E3779B1;
+        return bloomBit(blooms, f, hash >>> 24) && bloomBit(blooms, f, (hash >>> 16) & 0xFF);
+    }
+
+    // Minimum codes, maximum codes and bloom words, for the segment file
+    int[] minCodes() {
+        return minCodes;
+    }
+
+    int[] maxCodes() {
+        return maxCodes;
+    }
+
+    long[] blooms() {
+        return blooms;
+    }
+
+    // Sets the two bits of a code in a field's bloom filter
+    private static void addToBloom(long[] blooms, int field, int code) {
+        int hash = code * 0x9E3779B1;
+        setBloomBit(blooms, field, hash >>> 24);
+        setBloomBit(blooms, field, (hash >>> 16) & 0xFF);
+    }
+
+    private static void setBloomBit(long[] blooms, int field, int bit) {
+        blooms[field * BLOOM_WORDS + (bit >>> 6)] |= 1L << bit;
+    }
+
+    private static boolean bloomBit(long[] blooms, int field, int bit) {
+        return (blooms[field * BLOOM_WORDS + (bit >>> 6)] & (1L << bit)) != 0;
+    }
+}
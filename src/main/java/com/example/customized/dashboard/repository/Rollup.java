@@ -0,0 +1,261 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.TimeGrain;
+
+import java.util.Arrays;
+
+/**
+ * Pre-aggregated consumption of one dimension at one time grain.
+ * Each bucket holds the (key, total, first row) cells of the keys that have data in it, so a
+ * query over whole buckets costs O(cells) instead of O(rows). Rollups are immutable; appended
+ * rows produce a new rollup that shares every block they do not touch.
+ */
+public class Rollup {
+
+    // Bucket id of the first block
+    private final int firstBucket;
+
+    // One block per bucket from firstBucket on; null for buckets without data
+    private final Block[] blocks;
+
+    private Rollup(int firstBucket, Block[] blocks) {
+        this.firstBucket = firstBucket;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Builds the daily rollup of a dimension from a slice of fact rows.
+     *
+     * @param table    The fact table.
+     * @param keys     The dimension's row-to-key mapping.
+     * @param startRow The first row, inclusive.
+     * @param endRow   The last row, exclusive; rows in [startRow, endRow) are sorted by date.
+     * @return The daily rollup.
+     */
+    static Rollup daily(FactTable table, DimensionKeys keys, int startRow, int endRow) {
+        Accumulator accumulator = new Accumulator(keys.size());
+        RollupBuilder builder = new RollupBuilder();
+        for (int row = startRow; row < endRow; row++) {
+            int day = table.date(row);
+            if (day != builder.currentBucket) {
+                builder.flush(accumulator);
+                builder.currentBucket = day;
+            }
+            accumulator.add(keys.keyOf(row), table.consumption(row), day, row);
+        }
+        builder.flush(accumulator);
+        return builder.build();
+    }
+
+    /**
+     * Rolls a finer rollup up to a coarser grain by summing its blocks in chronological order.
+     *
+     * @param finer      The finer rollup.
+     * @param finerGrain The grain of the finer rollup.
+     * @param grain      The coarser grain to build.
+     * @param keyCount   The number of dimension keys.
+     * @return The coarser rollup.
+     */
+    static Rollup coarsen(Rollup finer, TimeGrain finerGrain, TimeGrain grain, int keyCount) {
+        Accumulator accumulator = new Accumulator(keyCount);
+        RollupBuilder builder = new RollupBuilder();
+        for (int i = 0; i < finer.blocks.length; i++) {
+            Block block = finer.blocks[i];
+            if (block == null) {
+                continue;
+            }
+            int bucket = grain.bucketOf(finerGrain.firstDay(finer.firstBucket + i));
+            if (bucket != builder.currentBucket) {
+                builder.flush(accumulator);
+                builder.currentBucket = bucket;
+            }
+            for (int cell = 0; cell < block.keys.length; cell++) {
+                accumulator.add(block.keys[cell], block.sums[cell], block.firstDates[cell], block.firstRows[cell]);
+            }
+        }
+        builder.flush(accumulator);
+        return builder.build();
+    }
+
+    /**
+     * Adds a slice of appended fact rows to this rollup. Only the blocks of the buckets the rows
+     * fall into are rebuilt, starting from their current cells; the others are shared.
+     *
+     * @param table    The fact table holding the rows.
+     * @param keys     The dimension's row-to-key mapping, covering the rows.
+     * @param grain    The grain of this rollup.
+     * @param startRow The first row, inclusive.
+     * @param endRow   The last row, exclusive; rows in [startRow, endRow) are sorted by date.
+     * @return The updated rollup.
+     */
+    Rollup withRows(FactTable table, DimensionKeys keys, TimeGrain grain, int startRow, int endRow) {
+        if (startRow == endRow) {
+            return this;
+        }
+        int low = grain.bucketOf(table.date(startRow));
+        int high = grain.bucketOf(table.date(endRow - 1));
+        int first = blocks.length == 0 ? low : Math.min(firstBucket, low);
+        int end = blocks.length == 0 ? high + 1 : Math.max(firstBucket + blocks.length, high + 1);
+        Block[] merged = new Block[end - first];
+        System.arraycopy(blocks, 0, merged, firstBucket - first, blocks.length);
+
+        Accumulator accumulator = new Accumulator(keys.size());
+        int bucket = Integer.MIN_VALUE;
+        int lastDate = Integer.MIN_VALUE;
+        for (int row = startRow; row < endRow; row++) {
+            int date = table.date(row);
+            if (date != lastDate) {
+                lastDate = date;
+                int rowBucket = grain.bucketOf(date);
+                if (rowBucket != bucket) {
+                    if (bucket != Integer.MIN_VALUE) {
+                        merged[bucket - first] = accumulator.drain();
+                    }
+                    bucket = rowBucket;
+
+                    // Start from the bucket's current cells, keeping their order
+                    Block current = merged[bucket - first];
+                    if (current != null) {
+                        for (int cell = 0; cell < current.keys.length; cell++) {
+                            accumulator.add(current.keys[cell], current.sums[cell], current.firstDates[cell],
+                                    current.firstRows[cell]);
+                        }
+                    }
+                }
+            }
+            accumulator.add(keys.keyOf(row), table.consumption(row), date, row);
+        }
+        merged[bucket - first] = accumulator.drain();
+        return new Rollup(first, merged);
+    }
+
+    /**
+     * @param bucket The bucket id.
+     * @return The cells of the bucket, or null if no row falls into it.
+     */
+    public Block block(int bucket) {
+        int index = bucket - firstBucket;
+        return index < 0 || index >= blocks.length ? null : blocks[index];
+    }
+
+    /**
+     * Cells of one bucket: parallel arrays of key codes, consumption totals and the first
+     * fact row that contributed to each cell, with that row's date. The first row is the
+     * earliest dated one, ties broken by the lowest row index.
+     */
+    public static final class Block {
+
+        private final int[] keys;
+        private final double[] sums;
+        private final int[] firstRows;
+        private final int[] firstDates;
+
+        private Block(int[] keys, double[] sums, int[] firstRows, int[] firstDates) {
+            this.keys = keys;
+            this.sums = sums;
+            this.firstRows = firstRows;
+            this.firstDates = firstDates;
+        }
+
+        public int size() {
+            return keys.length;
+        }
+
+        public int key(int cell) {
+            return keys[cell];
+        }
+
+        public double sum(int cell) {
+            return sums[cell];
+        }
+
+        public int firstRow(int cell) {
+            return firstRows[cell];
+        }
+
+        public int firstDate(int cell) {
+            return firstDates[cell];
+        }
+    }
+
+    // Dense per-key accumulator for the bucket currently being built
+    private static final class Accumulator {
+
+        private final double[] sums;
+        private final int[] firstRows;
+        private final int[] firstDates;
+        private final int[] touched;
+        private int touchedCount;
+
+        Accumulator(int keyCount) {
+            this.sums = new double[keyCount];
+            this.firstRows = new int[keyCount];
+            this.firstDates = new int[keyCount];
+            this.touched = new int[keyCount];
+            Arrays.fill(firstRows, -1);
+        }
+
+        void add(int key, double amount, int firstDate, int firstRow) {
+            if (firstRows[key] < 0) {
+                touched[touchedCount++] = key;
+                firstRows[key] = firstRow;
+                firstDates[key] = firstDate;
+            } else if (firstDate < firstDates[key] || (firstDate == firstDates[key] && firstRow < firstRows[key])) {
+                firstRows[key] = firstRow;
+                firstDates[key] = firstDate;
+            }
+            sums[key] += amount;
+        }
+
+        // Emits the touched keys as a block, in first-seen order, and resets them
+        Block drain() {
+            int[] keys = Arrays.copyOf(touched, touchedCount);
+            double[] blockSums = new double[touchedCount];
+            int[] blockFirstRows = new int[touchedCount];
+            int[] blockFirstDates = new int[touchedCount];
+            for (int cell = 0; cell < touchedCount; cell++) {
+                int key = keys[cell];
+                blockSums[cell] = sums[key];
+                blockFirstRows[cell] = firstRows[key];
+                blockFirstDates[cell] = firstDates[key];
+                sums[key] = 0.0;
+                firstRows[key] = -1;
+            }
+            touchedCount = 0;
+            return new Block(keys, blockSums, blockFirstRows, blockFirstDates);
+        }
+    }
+
+    // Collects blocks in ascending bucket order
+    private static final class RollupBuilder {
+
+        private int currentBucket = Integer.MIN_VALUE;
+        private int firstBucket = Integer.MIN_VALUE;
+        private Block[] blocks = new Block[16];
+
+        void flush(Accumulator accumulator) {
+            if (accumulator.touchedCount == 0) {
+                return;
+            }
+            if (firstBucket == Integer.MIN_VALUE) {
+                firstBucket = currentBucket;
+            }
+            int index = currentBucket - firstBucket;
+            if (index >= blocks.length) {
+                blocks = Arrays.copyOf(blocks, Math.max(blocks.length * 2, index + 1));
+            }
+            blocks[index] = accumulator.drain();
+        }
+
+        Rollup build() {
+            if (firstBucket == Integer.MIN_VALUE) {
+                return new Rollup(0, new Block[0]);
+            }
+            int length = blocks.length;
+            while (length > 0 && blocks[length - 1] == null) {
+                length--;
+            }
+            return new Rollup(firstBucket, Arrays.copyOf(blocks, length));
+        }
+    }
+}
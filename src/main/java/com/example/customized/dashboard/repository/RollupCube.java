@@ -0,0 +1,83 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.TimeGrain;
+
+/**
+ * Materialized rollups of a fact table: daily totals per dimension key, rolled up to
+ * month, quarter and year. Built once when the table is loaded, then extended block by block as
+ * rows are appended.
+ */
+public class RollupCube {
+
+    // Rollups indexed by Dimension ordinal, then TimeGrain ordinal
+    private final Rollup[][] rollups;
+
+    private RollupCube(Rollup[][] rollups) {
+        this.rollups = rollups;
+    }
+
+    /**
+     * Builds every rollup of a table. Each dimension costs one pass over the rows of the first
+     * run for the daily rollup; coarser grains are derived from the next finer rollup. The rows
+     * of any further runs are then added as if they had been appended.
+     *
+     * @param table The fact table.
+     * @return The rollups.
+     */
+    public static RollupCube build(FactTable table) {
+        TimeGrain[] grains = TimeGrain.values();
+        int firstRunEnd = table.runCount() == 0 ? 0 : table.runEnd(0);
+        Rollup[][] rollups = new Rollup[Dimension.values().length][grains.length];
+        for (Dimension dimension : Dimension.values()) {
+            DimensionKeys keys = table.keys(dimension);
+            Rollup[] byGrain = rollups[dimension.ordinal()];
+            byGrain[TimeGrain.DAY.ordinal()] = Rollup.daily(table, keys, 0, firstRunEnd);
+            for (int grain = TimeGrain.DAY.ordinal() + 1; grain < grains.length; grain++) {
+                byGrain[grain] = Rollup.coarsen(byGrain[grain - 1], grains[grain - 1], grains[grain], keys.size());
+            }
+        }
+        RollupCube cube = new RollupCube(rollups);
+        return cube.append(table, firstRunEnd);
+    }
+
+    /**
+     * Adds the rows appended to a table to every rollup. Each run is added separately, since
+     * only the rows within a run are sorted by date.
+     *
+     * @param table   The table the rows were appended to; its keys cover the new rows.
+     * @param fromRow The first appended row; every later row is added.
+     * @return The rollups of the table, sharing the blocks the rows do not touch.
+     */
+    RollupCube append(FactTable table, int fromRow) {
+        if (fromRow == table.size()) {
+            return this;
+        }
+        TimeGrain[] grains = TimeGrain.values();
+        Rollup[][] updated = new Rollup[rollups.length][];
+        for (Dimension dimension : Dimension.values()) {
+            DimensionKeys keys = table.keys(dimension);
+            Rollup[] byGrain = rollups[dimension.ordinal()].clone();
+            for (int run = 0; run < table.runCount(); run++) {
+                int startRow = Math.max(fromRow, table.runStart(run));
+                int endRow = table.runEnd(run);
+                if (startRow < endRow) {
+                    for (TimeGrain grain : grains) {
+                        byGrain[grain.ordinal()] = byGrain[grain.ordinal()].withRows(table, keys, grain, startRow, endRow);
+                    }
+                }
+            }
+            updated[dimension.ordinal()] = byGrain;
+        }
+        return new RollupCube(updated);
+    }
+
+    /**
+     * @param dimension The dimension.
+     * @param grain     The time grain.
+     * @return The rollup of the dimension at the grain.
+     */
+    public Rollup get(Dimension dimension, TimeGrain grain) {
+        return rollups[dimension.ordinal()][grain.ordinal()];
+    }
+}
@@ -0,0 +1,373 @@
+package com.example.customized.dashboard.repository;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compressed set of row numbers in the style of a roaring bitmap: rows are split into
+ * containers of 65536 by their high 16 bits, and a container holds the low 16 bits of its rows
+ * as a sorted array while it has at most 4096 of them, and as a 65536-bit bitmap otherwise.
+ * Sparse and dense sets both stay small, and unions and intersections work a container at a
+ * time, with word-wide operations on bitmap containers.
+ * Bitmaps are immutable once built; containers are shared between bitmaps that hold the same rows.
+ */
+final class RowBitmap {
+
+    // Rows per container, and the number of 64-bit words of a bitmap container
+    private static final int CONTAINER_BITS = 16;
+    private static final int BITMAP_WORDS = (1 << CONTAINER_BITS) / 64;
+
+    // Rows above which a container is stored as a bitmap; both forms then take 8 KB
+    private static final int ARRAY_LIMIT = 4096;
+
+    static final RowBitmap EMPTY = new RowBitmap(new char[0][], new long[0][], new int[0], 0);
+
+    // Per container, the sorted low bits of its rows when stored as an array, otherwise null
+    private final char[][] arrays;
+
+    // Per container, the bitmap of its rows when stored as a bitmap, otherwise null
+    private final long[][] bitmaps;
+
+    // Number of rows in each container
+    private final int[] counts;
+
+    // Number of rows in the set
+    private final int cardinality;
+
+    private RowBitmap(char[][] arrays, long[][] bitmaps, int[] counts, int cardinality) {
+        this.arrays = arrays;
+        this.bitmaps = bitmaps;
+        this.counts = counts;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * @return The number of rows in the set.
+     */
+    int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * @param row A row number.
+     * @return True if the row is in the set.
+     */
+    boolean contains(int row) {
+        int high = row >>> CONTAINER_BITS;
+        if (high >= counts.length || counts[high] == 0) {
+            return false;
+        }
+        char low = (char) row;
+        if (bitmaps[high] != null) {
+            return (bitmaps[high][low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch(arrays[high], 0, counts[high], low) >= 0;
+    }
+
+    /**
+     * @param fromRow The first row of a range.
+     * @param toRow   The end (exclusive) of the range.
+     * @return The rows of the set within the range, in ascending order.
+     */
+    int[] rows(int fromRow, int toRow) {
+        if (fromRow >= toRow) {
+            return new int[0];
+        }
+        int[] rows = new int[Math.min(toRow - fromRow, cardinality)];
+        int size = 0;
+        int last = Math.min((toRow - 1) >>> CONTAINER_BITS, counts.length - 1);
+        for (int high = fromRow >>> CONTAINER_BITS; high <= last; high++) {
+            if (counts[high] == 0) {
+                continue;
+            }
+            int base = high << CONTAINER_BITS;
+            // Bounds of the range within this container, as low bits
+            int from = Math.max(fromRow - base, 0);
+            int to = Math.min(toRow - base, 1 << CONTAINER_BITS);
+            if (bitmaps[high] != null) {
+                long[] words = bitmaps[high];
+                for (int word = from >>> 6; word < BITMAP_WORDS && word << 6 < to; word++) {
+                    long bits = words[word];
+                    while (bits != 0) {
+                        int low = (word << 6) + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        if (low >= from && low < to) {
+                            rows[size++] = base + low;
+                        }
+                    }
+                }
+            } else {
+                char[] array = arrays[high];
+                int i = Arrays.binarySearch(array, 0, counts[high], (char) from);
+                for (i = i < 0 ? -i - 1 : i; i < counts[high] && array[i] < to; i++) {
+                    rows[size++] = base + array[i];
+                }
+            }
+        }
+        return size == rows.length ? rows : Arrays.copyOf(rows, size);
+    }
+
+    /**
+     * @param other Another bitmap.
+     * @return The rows in both this bitmap and the other.
+     */
+    RowBitmap and(RowBitmap other) {
+        int length = Math.min(counts.length, other.counts.length);
+        char[][] resultArrays = new char[length][];
+        long[][] resultBitmaps = new long[length][];
+        int[] resultCounts = new int[length];
+        int resultCardinality = 0;
+        long[] words = new long[BITMAP_WORDS];
+        for (int high = 0; high < length; high++) {
+            if (counts[high] == 0 || other.counts[high] == 0) {
+                continue;
+            }
+            if (bitmaps[high] != null && other.bitmaps[high] != null) {
+                int count = 0;
+                for (int word = 0; word < BITMAP_WORDS; word++) {
+                    words[word] = bitmaps[high][word] & other.bitmaps[high][word];
+                    count += Long.bitCount(words[word]);
+                }
+                store(resultArrays, resultBitmaps, high, words, count);
+                resultCounts[high] = count;
+            } else {
+                // At least one side is an array: keep the array's rows found in the other side
+                boolean thisArray = bitmaps[high] == null;
+                char[] array = thisArray ? arrays[high] : other.arrays[high];
+                int arrayCount = thisArray ? counts[high] : other.counts[high];
+                RowBitmap probe = thisArray ? other : this;
+                char[] matched = new char[arrayCount];
+                int count = 0;
+                for (int i = 0; i < arrayCount; i++) {
+                    if (probe.containsLow(high, array[i])) {
+                        matched[count++] = array[i];
+                    }
+                }
+                if (count > 0) {
+                    resultArrays[high] = Arrays.copyOf(matched, count);
+                    resultCounts[high] = count;
+                }
+            }
+            resultCardinality += resultCounts[high];
+        }
+        return new RowBitmap(resultArrays, resultBitmaps, resultCounts, resultCardinality);
+    }
+
+    /**
+     * @param bitmaps Bitmaps to combine.
+     * @return The rows in any of the bitmaps.
+     */
+    static RowBitmap or(List<RowBitmap> bitmaps) {
+        if (bitmaps.isEmpty()) {
+            return EMPTY;
+        }
+        if (bitmaps.size() == 1) {
+            return bitmaps.get(0);
+        }
+        int length = 0;
+        for (RowBitmap bitmap : bitmaps) {
+            length = Math.max(length, bitmap.counts.length);
+        }
+        char[][] resultArrays = new char[length][];
+        long[][] resultBitmaps = new long[length][];
+        int[] resultCounts = new int[length];
+        int resultCardinality = 0;
+        long[] words = new long[BITMAP_WORDS];
+        for (int high = 0; high < length; high++) {
+            RowBitmap only = null;
+            int sources = 0;
+            for (RowBitmap bitmap : bitmaps) {
+                if (high < bitmap.counts.length && bitmap.counts[high] > 0) {
+                    only = bitmap;
+                    sources++;
+                }
+            }
+            if (sources == 1) {
+                // A container found in one bitmap only is shared as it is
+                resultArrays[high] = only.arrays[high];
+                resultBitmaps[high] = only.bitmaps[high];
+                resultCounts[high] = only.counts[high];
+            } else if (sources > 1) {
+                Arrays.fill(words, 0);
+                for (RowBitmap bitmap : bitmaps) {
+                    if (high < bitmap.counts.length && bitmap.counts[high] > 0) {
+                        bitmap.orInto(high, words);
+                    }
+                }
+                int count = 0;
+                for (long word : words) {
+                    count += Long.bitCount(word);
+                }
+                store(resultArrays, resultBitmaps, high, words, count);
+                resultCounts[high] = count;
+            }
+            resultCardinality += resultCounts[high];
+        }
+        return new RowBitmap(resultArrays, resultBitmaps, resultCounts, resultCardinality);
+    }
+
+    // True if the container holds a row with the given low bits
+    private boolean containsLow(int high, char low) {
+        if (bitmaps[high] != null) {
+            return (bitmaps[high][low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch(arrays[high], 0, counts[high], low) >= 0;
+    }
+
+    // Sets the bits of a container's rows in a bitmap
+    private void orInto(int high, long[] words) {
+        if (bitmaps[high] != null) {
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                words[word] |= bitmaps[high][word];
+            }
+        } else {
+            for (int i = 0; i < counts[high]; i++) {
+                char low = arrays[high][i];
+                words[low >>> 6] |= 1L << low;
+            }
+        }
+    }
+
+    // Stores the rows of a scratch bitmap as a container in the cheaper of the two forms
+    private static void store(char[][] arrays, long[][] bitmaps, int high, long[] words, int count) {
+        if (count > ARRAY_LIMIT) {
+            bitmaps[high] = words.clone();
+        } else if (count > 0) {
+            char[] array = new char[count];
+            int size = 0;
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    array[size++] = (char) ((word << 6) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            arrays[high] = array;
+        }
+    }
+
+    /**
+     * Collects rows in ascending order into a bitmap.
+     */
+    static final class Builder {
+
+        private char[][] arrays;
+        private long[][] bitmaps;
+        private int[] counts;
+        private int cardinality;
+
+        // Number of containers in use, and the last row added
+        private int length;
+        private int lastRow = -1;
+
+        // Whether the last container was created by this builder and may be written in place;
+        // containers taken from a base bitmap are copied before they are written
+        private boolean ownsLast;
+
+        Builder() {
+            this(EMPTY);
+        }
+
+        /**
+         * Starts from the rows of a bitmap, sharing its containers; rows added later must
+         * come after every row in it.
+         *
+         * @param base The bitmap to extend.
+         */
+        Builder(RowBitmap base) {
+            int capacity = Math.max(base.counts.length, 4);
+            this.arrays = Arrays.copyOf(base.arrays, capacity);
+            this.bitmaps = Arrays.copyOf(base.bitmaps, capacity);
+            this.counts = Arrays.copyOf(base.counts, capacity);
+            this.cardinality = base.cardinality;
+            this.length = base.counts.length;
+            for (int high = length - 1; high >= 0 && lastRow < 0; high--) {
+                if (counts[high] > 0) {
+                    lastRow = (high << CONTAINER_BITS)
+                            + (bitmaps[high] != null ? lastBit(bitmaps[high]) : arrays[high][counts[high] - 1]);
+                }
+            }
+        }
+
+        /**
+         * Adds a row.
+         *
+         * @param row The row number; greater than every row added before.
+         */
+        void add(int row) {
+            if (row <= lastRow) {
+                throw new IllegalArgumentException("Rows must be added in ascending order: " + row);
+            }
+            lastRow = row;
+            int high = row >>> CONTAINER_BITS;
+            char low = (char) row;
+            if (high >= length) {
+                if (high >= counts.length) {
+                    int capacity = Math.max(high + 1, counts.length * 2);
+                    arrays = Arrays.copyOf(arrays, capacity);
+                    bitmaps = Arrays.copyOf(bitmaps, capacity);
+                    counts = Arrays.copyOf(counts, capacity);
+                }
+                trimLast();
+                length = high + 1;
+                ownsLast = true;
+            } else if (!ownsLast) {
+                // The first row added to a container of the base bitmap: copy it before writing
+                arrays[high] = arrays[high] == null ? null : Arrays.copyOf(arrays[high], Math.min(counts[high] * 2, ARRAY_LIMIT));
+                bitmaps[high] = bitmaps[high] == null ? null : bitmaps[high].clone();
+                ownsLast = true;
+            }
+
+            int count = counts[high];
+            if (bitmaps[high] == null && count == ARRAY_LIMIT) {
+                // The container outgrows the array form
+                long[] words = new long[BITMAP_WORDS];
+                for (int i = 0; i < count; i++) {
+                    words[arrays[high][i] >>> 6] |= 1L << arrays[high][i];
+                }
+                bitmaps[high] = words;
+                arrays[high] = null;
+            }
+            if (bitmaps[high] != null) {
+                bitmaps[high][low >>> 6] |= 1L << low;
+            } else {
+                if (arrays[high] == null) {
+                    arrays[high] = new char[16];
+                } else if (count == arrays[high].length) {
+                    arrays[high] = Arrays.copyOf(arrays[high], Math.min(count * 2, ARRAY_LIMIT));
+                }
+                arrays[high][count] = low;
+            }
+            counts[high] = count + 1;
+            cardinality++;
+        }
+
+        /**
+         * @return The bitmap of the rows added so far; the builder can keep adding rows.
+         */
+        RowBitmap build() {
+            trimLast();
+            ownsLast = false;
+            return new RowBitmap(Arrays.copyOf(arrays, length), Arrays.copyOf(bitmaps, length),
+                    Arrays.copyOf(counts, length), cardinality);
+        }
+
+        // Drops the spare capacity of the last container's array
+        private void trimLast() {
+            int high = length - 1;
+            if (high >= 0 && arrays[high] != null && arrays[high].length > counts[high]) {
+                arrays[high] = Arrays.copyOf(arrays[high], counts[high]);
+            }
+        }
+
+        // The highest bit set in a bitmap container
+        private static int lastBit(long[] words) {
+            for (int word = BITMAP_WORDS - 1; word >= 0; word--) {
+                if (words[word] != 0) {
+                    return (word << 6) + 63 - Long.numberOfLeadingZeros(words[word]);
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.CostField;
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.FilterCondition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The conditions of a query compiled against one fact table. Each field condition becomes a
+ * bitset of the accepted dictionary codes, so testing a row reads ints and bits, never strings.
+ * When the field conditions are selective, the rows satisfying them are also taken from the
+ * inverted indexes by intersecting bitmaps, and only those rows are read.
+ * A filter is immutable and can be shared by the threads of a parallel scan.
+ */
+public final class RowFilter {
+
+    // Field conditions matching at most this fraction of the rows are answered from the indexes
+    private static final int SELECTIVE_FRACTION = 16;
+
+    // The table the filter was compiled against
+    private final FactTable table;
+
+    // Accepted codes of each field as a bitset, indexed by CostField ordinal; null if not filtered
+    private final long[][] codeSets;
+
+    // The filtered fields and their per-row codes, for testing rows
+    private final CostField[] fields;
+    private final IntColumn[] columns;
+
+    // Budget bounds (inclusive), infinite when not bounded
+    private final double minBudget;
+    private final double maxBudget;
+    private final boolean budgetFiltered;
+
+    // Rows satisfying every field condition, or null when rows are tested one by one
+    private final RowBitmap candidates;
+
+    // True if no row can satisfy the conditions
+    private final boolean empty;
+
+    private RowFilter(FactTable table, long[][] codeSets, double minBudget, double maxBudget, boolean budgetFiltered,
+                      RowBitmap candidates, boolean empty) {
+        this.table = table;
+        this.codeSets = codeSets;
+        List<CostField> filtered = new ArrayList<>();
+        for (CostField field : CostField.values()) {
+            if (codeSets[field.ordinal()] != null) {
+                filtered.add(field);
+            }
+        }
+        this.fields = filtered.toArray(new CostField[0]);
+        this.columns = new IntColumn[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            columns[i] = table.codes(fields[i]);
+        }
+        this.minBudget = minBudget;
+        this.maxBudget = maxBudget;
+        this.budgetFiltered = budgetFiltered;
+        this.candidates = candidates;
+        this.empty = empty;
+    }
+
+    /**
+     * Compiles conditions against a table. Values are looked up in the field dictionaries once;
+     * values that never occur accept nothing. The inverted indexes of the filtered fields are
+     * built on the first filter that needs them.
+     *
+     * @param table      The fact table.
+     * @param conditions Normalized conditions, as produced by {@link FilterCondition#parseAll}.
+     * @return The compiled filter.
+     */
+    public static RowFilter compile(FactTable table, List<FilterCondition> conditions) {
+        long[][] codeSets = new long[CostField.values().length][];
+        double minBudget = Double.NEGATIVE_INFINITY;
+        double maxBudget = Double.POSITIVE_INFINITY;
+        boolean budgetFiltered = false;
+        boolean empty = false;
+        for (FilterCondition condition : conditions) {
+            switch (condition.operator()) {
+                case IN:
+                    CostField field = condition.field();
+                    Dictionary dictionary = table.dictionary(field);
+                    long[] codes = new long[(dictionary.size() + 63) >>> 6];
+                    for (String value : condition.values()) {
+                        int code = dictionary.codeOf(value);
+                        if (code >= 0 && code < dictionary.size()) {
+                            codes[code >>> 6] |= 1L << code;
+                        }
+                    }
+                    // Several conditions on one field accept the codes accepted by all of them
+                    long[] previous = codeSets[field.ordinal()];
+                    if (previous != null) {
+                        for (int word = 0; word < codes.length; word++) {
+                            codes[word] &= previous[word];
+                        }
+                    }
+                    codeSets[field.ordinal()] = codes;
+                    empty |= isEmpty(codes);
+                    break;
+                case MIN_BUDGET:
+                    minBudget = Math.max(minBudget, condition.threshold());
+                    budgetFiltered = true;
+                    break;
+                case MAX_BUDGET:
+                    maxBudget = Math.min(maxBudget, condition.threshold());
+                    budgetFiltered = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported condition: " + condition.operator());
+            }
+        }
+        empty |= minBudget > maxBudget;
+        return new RowFilter(table, codeSets, minBudget, maxBudget, budgetFiltered,
+                empty ? null : candidates(table, codeSets), empty);
+    }
+
+    /**
+     * Intersects the rows of the accepted codes of every filtered field, if the most selective
+     * field accepts few enough rows for reading them by index to beat testing every row.
+     */
+    private static RowBitmap candidates(FactTable table, long[][] codeSets) {
+        // The bitmaps of the accepted codes of each field, and the number of rows they hold
+        List<List<RowBitmap>> fieldRows = new ArrayList<>();
+        List<Integer> fieldCounts = new ArrayList<>();
+        for (CostField field : CostField.values()) {
+            long[] codes = codeSets[field.ordinal()];
+            if (codes == null) {
+                continue;
+            }
+            InvertedIndex index = table.invertedIndex(field);
+            List<RowBitmap> rows = new ArrayList<>();
+            int count = 0;
+            for (int code = nextCode(codes, 0); code >= 0; code = nextCode(codes, code + 1)) {
+                RowBitmap codeRows = index.rows(code);
+                rows.add(codeRows);
+                count += codeRows.cardinality();
+            }
+            fieldRows.add(rows);
+            fieldCounts.add(count);
+        }
+        if (fieldRows.isEmpty() || (long) Collections.min(fieldCounts) * SELECTIVE_FRACTION > table.size()) {
+            return null;
+        }
+
+        // Intersect starting from the field with the fewest rows, which bounds every later step
+        Integer[] order = new Integer[fieldRows.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(fieldCounts::get));
+        RowBitmap result = RowBitmap.or(fieldRows.get(order[0]));
+        for (int i = 1; i < order.length && result.cardinality() > 0; i++) {
+            result = result.and(RowBitmap.or(fieldRows.get(order[i])));
+        }
+        return result;
+    }
+
+    /**
+     * @return True if no row can satisfy the conditions.
+     */
+    public boolean matchesNone() {
+        return empty;
+    }
+
+    /**
+     * @return True if the rows satisfying the field conditions are read from the indexes;
+     *         {@link #candidateRows} then gives them and {@link #matchesBudget} tests the rest.
+     */
+    public boolean usesIndex() {
+        return candidates != null;
+    }
+
+    /**
+     * @param fromRow The first row of a range.
+     * @param toRow   The end (exclusive) of the range.
+     * @return The rows of the range satisfying every field condition, in ascending order; only
+     *         available when {@link #usesIndex()} is true.
+     */
+    public int[] candidateRows(int fromRow, int toRow) {
+        return candidates.rows(fromRow, toRow);
+    }
+
+    /**
+     * @param row A row of the table.
+     * @return True if the row satisfies every condition.
+     */
+    public boolean matches(int row) {
+        for (int i = 0; i < columns.length; i++) {
+            int code = columns[i].get(row);
+            long[] codes = codeSets[fields[i].ordinal()];
+            if ((code >>> 6) >= codes.length || (codes[code >>> 6] & (1L << code)) == 0) {
+                return false;
+            }
+        }
+        return matchesBudget(row);
+    }
+
+    /**
+     * @param row A row of the table.
+     * @return True if the row satisfies the budget conditions.
+     */
+    public boolean matchesBudget(int row) {
+        if (!budgetFiltered) {
+            return true;
+        }
+        double budget = table.budget(row);
+        // NaN (no budget) fails both comparisons
+        return budget >= minBudget && budget <= maxBudget;
+    }
+
+    /**
+     * @param partition A partition of the table.
+     * @return False if no row of the partition can satisfy the field conditions, judged from
+     *         the partition's code ranges and bloom filters alone.
+     */
+    public boolean mightMatch(Partition partition) {
+        for (CostField field : fields) {
+            long[] codes = codeSets[field.ordinal()];
+            boolean found = false;
+            for (int code = nextCode(codes, 0); code >= 0 && !found; code = nextCode(codes, code + 1)) {
+                found = partition.mightContain(field, code);
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decides the conditions per grouping key, when they only test the fields the key is built
+     * from: every row of a key then satisfies them or none does, and pre-aggregated totals of
+     * the accepted keys can be used as they are.
+     *
+     * @param dimension The grouping dimension, or null.
+     * @param keys      The table's keys of the dimension.
+     * @return Whether each key code satisfies the conditions, or null if some condition tests a
+     *         field outside the key or the budget.
+     */
+    public boolean[] keyMask(Dimension dimension, DimensionKeys keys) {
+        if (dimension == null || budgetFiltered) {
+            return null;
+        }
+        for (CostField field : fields) {
+            if (field != dimension.getFirst() && field != dimension.getSecond()) {
+                return null;
+            }
+        }
+        boolean[] mask = new boolean[keys.size()];
+        int[] pairs = dimension.getSecond() == null ? null : keys.pairs();
+        for (int key = 0; key < mask.length; key++) {
+            int first = pairs == null ? key : pairs[2 * key];
+            mask[key] = !empty && accepts(dimension.getFirst(), first)
+                    && (pairs == null || accepts(dimension.getSecond(), pairs[2 * key + 1]));
+        }
+        return mask;
+    }
+
+    // True if a field is not filtered or accepts the code
+    private boolean accepts(CostField field, int code) {
+        long[] codes = codeSets[field.ordinal()];
+        return codes == null || ((code >>> 6) < codes.length && (codes[code >>> 6] & (1L << code)) != 0);
+    }
+
+    private static boolean isEmpty(long[] codes) {
+        for (long word : codes) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The first code at or after from in a code bitset, or -1 if there is none
+    private static int nextCode(long[] codes, int from) {
+        int word = from >>> 6;
+        if (word >= codes.length) {
+            return -1;
+        }
+        long bits = codes[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == codes.length) {
+                return -1;
+            }
+            bits = codes[word];
+        }
+    }
+}
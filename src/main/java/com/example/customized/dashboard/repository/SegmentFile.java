@@ -0,0 +1,333 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.CostField;
+import com.example.customized.dashboard.model.Dimension;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary columnar file holding a fact table, read through memory mapping.
+ * <p>
+ * Layout, little-endian:
+ * <pre>
+ * header    magic "DSEG", version, rowCount, fieldCount (int32 each), metadataOffset (int64),
+ *           8 reserved bytes
+ * columns   dates int32[rowCount], codes int32[rowCount] per field in CostField order,
+ *           padding to 8 bytes, consumption float64[rowCount], budget float64[rowCount]
+ * metadata  runCount, runEnds int32[runCount];
+ *           per run: partition count, then per partition startRow, endRow, minDate, maxDate,
+ *           per field minCode and maxCode, and the bloom words int64[fieldCount * BLOOM_WORDS];
+ *           per field: value count, then per value its UTF-8 length and bytes, in code order;
+ *           dimension count, then per dimension in Dimension order: pair count (-1 when keys
+ *           are not composite) and the (first, second) codes of each key in key code order
+ * </pre>
+ * Each column is mapped separately, so the rows stay off the heap and are paged in on demand;
+ * only the metadata, including the partitions used to prune date ranges, is read into memory.
+ * A column is limited to 2 GB, i.e. about 268 million rows. Version 1 files have no partitions;
+ * they are computed from the rows when such a file is read.
+ */
+final class SegmentFile {
+
+    // "DSEG" read as a little-endian int
+    private static final int MAGIC = 0x47455344;
+
+    private static final int VERSION = 2;
+
+    private static final int HEADER_BYTES = 32;
+
+    // Rows written per buffer when writing a column
+    private static final int WRITE_CHUNK_ROWS = 8192;
+
+    private SegmentFile() {
+    }
+
+    /**
+     * Writes a table to a segment file. The file is written next to the target, synced and
+     * moved into place, so readers never see a partial file.
+     *
+     * @param table The table.
+     * @param path  The segment file.
+     * @throws IOException If the file cannot be written.
+     */
+    static void write(FactTable table, Path path) throws IOException {
+        int rows = table.size();
+        CostField[] fields = CostField.values();
+        if (rows > Integer.MAX_VALUE / Double.BYTES) {
+            throw new IllegalArgumentException("Too many rows for a segment file: " + rows);
+        }
+        long codesEnd = HEADER_BYTES + (long) Integer.BYTES * rows * (1 + fields.length);
+        long doublesStart = (codesEnd + 7) & ~7L;
+        long metadataOffset = doublesStart + 2L * Double.BYTES * rows;
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(fields.length).putLong(metadataOffset);
+            writeFully(channel, header.clear());
+
+            ByteBuffer chunk = ByteBuffer.allocate(WRITE_CHUNK_ROWS * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            writeInts(channel, chunk, rows, table::date);
+            for (CostField field : fields) {
+                IntColumn codes = table.codes(field);
+                writeInts(channel, chunk, rows, codes::get);
+            }
+            writeFully(channel, ByteBuffer.allocate((int) (doublesStart - codesEnd)));
+            writeDoubles(channel, chunk, rows, table::consumption);
+            writeDoubles(channel, chunk, rows, table::budget);
+            writeFully(channel, metadata(table));
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps a segment file as a fact table. The file must not be modified while the table is in use.
+     *
+     * @param path The segment file.
+     * @return The table, without rollups.
+     * @throws IOException If the file cannot be read or is not a valid segment file.
+     */
+    static FactTable read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            header.flip();
+            int magic = header.getInt();
+            int version = header.getInt();
+            if (magic != MAGIC || version < 1 || version > VERSION) {
+                throw new IOException("Not a segment file of version " + VERSION + " or older: " + path);
+            }
+            int rows = header.getInt();
+            int fieldCount = header.getInt();
+            long metadataOffset = header.getLong();
+            if (fieldCount != CostField.values().length) {
+                throw new IOException("Segment file " + path + " has " + fieldCount + " fields, expected "
+                        + CostField.values().length);
+            }
+
+            long offset = HEADER_BYTES;
+            IntBuffer dates = map(channel, offset, (long) Integer.BYTES * rows).asIntBuffer();
+            offset += (long) Integer.BYTES * rows;
+            IntBuffer[] codes = new IntBuffer[fieldCount];
+            for (int field = 0; field < fieldCount; field++) {
+                codes[field] = map(channel, offset, (long) Integer.BYTES * rows).asIntBuffer();
+                offset += (long) Integer.BYTES * rows;
+            }
+            offset = (offset + 7) & ~7L;
+            DoubleBuffer consumption = map(channel, offset, (long) Double.BYTES * rows).asDoubleBuffer();
+            offset += (long) Double.BYTES * rows;
+            DoubleBuffer budget = map(channel, offset, (long) Double.BYTES * rows).asDoubleBuffer();
+
+            ByteBuffer metadata = ByteBuffer.allocate((int) (channel.size() - metadataOffset))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, metadata, metadataOffset);
+            metadata.flip();
+            int[] runEnds = new int[metadata.getInt()];
+            for (int run = 0; run < runEnds.length; run++) {
+                runEnds[run] = metadata.getInt();
+            }
+            Partition[][] partitions = version < 2 ? null : readPartitions(metadata, runEnds.length, fieldCount);
+            Dictionary[] dictionaries = new Dictionary[fieldCount];
+            for (int field = 0; field < fieldCount; field++) {
+                dictionaries[field] = new Dictionary();
+                int values = metadata.getInt();
+                for (int code = 0; code < values; code++) {
+                    byte[] value = new byte[metadata.getInt()];
+                    metadata.get(value);
+                    dictionaries[field].encode(new String(value, StandardCharsets.UTF_8));
+                }
+            }
+            int[][] keyPairs = new int[metadata.getInt()][];
+            for (int dimension = 0; dimension < keyPairs.length; dimension++) {
+                int pairs = metadata.getInt();
+                if (pairs >= 0) {
+                    keyPairs[dimension] = new int[2 * pairs];
+                    metadata.asIntBuffer().get(keyPairs[dimension]);
+                    metadata.position(metadata.position() + Integer.BYTES * 2 * pairs);
+                }
+            }
+            return FactTable.mapped(dates, codes, dictionaries, consumption, budget, runEnds, partitions, keyPairs);
+        }
+    }
+
+    // Serializes the runs, dictionaries and composite keys of a table
+    private static ByteBuffer metadata(FactTable table) {
+        ByteArrayBuilder out = new ByteArrayBuilder();
+        out.putInt(table.runCount());
+        for (int run = 0; run < table.runCount(); run++) {
+            out.putInt(table.runEnd(run));
+        }
+        for (int run = 0; run < table.runCount(); run++) {
+            Partition[] partitions = table.partitions(run);
+            out.putInt(partitions.length);
+            for (Partition partition : partitions) {
+                out.putInt(partition.startRow());
+                out.putInt(partition.endRow());
+                out.putInt(partition.minDate());
+                out.putInt(partition.maxDate());
+                for (int field = 0; field < CostField.values().length; field++) {
+                    out.putInt(partition.minCodes()[field]);
+                    out.putInt(partition.maxCodes()[field]);
+                }
+                for (long word : partition.blooms()) {
+                    out.putLong(word);
+                }
+            }
+        }
+        for (CostField field : CostField.values()) {
+            Dictionary dictionary = table.dictionary(field);
+            int values = dictionary.size();
+            out.putInt(values);
+            for (int code = 0; code < values; code++) {
+                byte[] value = dictionary.decode(code).getBytes(StandardCharsets.UTF_8);
+                out.putInt(value.length);
+                out.put(value);
+            }
+        }
+        out.putInt(Dimension.values().length);
+        for (Dimension dimension : Dimension.values()) {
+            int[] pairs = table.keys(dimension).pairs();
+            out.putInt(pairs == null ? -1 : pairs.length / 2);
+            if (pairs != null) {
+                for (int code : pairs) {
+                    out.putInt(code);
+                }
+            }
+        }
+        return out.toByteBuffer();
+    }
+
+    // Reads the partitions of every run from the metadata block
+    private static Partition[][] readPartitions(ByteBuffer metadata, int runCount, int fieldCount) {
+        Partition[][] partitions = new Partition[runCount][];
+        for (int run = 0; run < runCount; run++) {
+            partitions[run] = new Partition[metadata.getInt()];
+            for (int i = 0; i < partitions[run].length; i++) {
+                int startRow = metadata.getInt();
+                int endRow = metadata.getInt();
+                int minDate = metadata.getInt();
+                int maxDate = metadata.getInt();
+                int[] minCodes = new int[fieldCount];
+                int[] maxCodes = new int[fieldCount];
+                for (int field = 0; field < fieldCount; field++) {
+                    minCodes[field] = metadata.getInt();
+                    maxCodes[field] = metadata.getInt();
+                }
+                long[] blooms = new long[fieldCount * Partition.BLOOM_WORDS];
+                for (int word = 0; word < blooms.length; word++) {
+                    blooms[word] = metadata.getLong();
+                }
+                partitions[run][i] = new Partition(startRow, endRow, minDate, maxDate, minCodes, maxCodes, blooms);
+            }
+        }
+        return partitions;
+    }
+
+    // Maps a read-only region of the file, in the file's byte order
+    private static MappedByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        if (offset + length > channel.size()) {
+            throw new IOException("Segment file is truncated");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private interface IntGetter {
+        int get(int row);
+    }
+
+    private interface DoubleGetter {
+        double get(int row);
+    }
+
+    // Writes rows [0, rows) of an int column through the chunk buffer
+    private static void writeInts(FileChannel channel, ByteBuffer chunk, int rows, IntGetter column)
+            throws IOException {
+        chunk.clear();
+        for (int row = 0; row < rows; row++) {
+            if (chunk.remaining() < Integer.BYTES) {
+                writeFully(channel, chunk.flip());
+                chunk.clear();
+            }
+            chunk.putInt(column.get(row));
+        }
+        writeFully(channel, chunk.flip());
+    }
+
+    // Writes rows [0, rows) of a double column through the chunk buffer
+    private static void writeDoubles(FileChannel channel, ByteBuffer chunk, int rows, DoubleGetter column)
+            throws IOException {
+        chunk.clear();
+        for (int row = 0; row < rows; row++) {
+            if (chunk.remaining() < Double.BYTES) {
+                writeFully(channel, chunk.flip());
+                chunk.clear();
+            }
+            chunk.putDouble(column.get(row));
+        }
+        writeFully(channel, chunk.flip());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Segment file is truncated");
+            }
+        }
+    }
+
+    /**
+     * Growable little-endian byte buffer for the metadata block.
+     */
+    private static final class ByteArrayBuilder {
+
+        private ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+
+        void putInt(int value) {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void put(byte[] bytes) {
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return buffer.flip();
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                larger.put(buffer.flip());
+                buffer = larger;
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.Chart;
+import com.example.customized.dashboard.model.Dashboard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A user's dashboard together with the versions needed to answer conditional and delta reads:
+ * the version of the last change, and per chart the versions at which it was added, last
+ * changed or removed. Versions come from one store-wide counter, so they only grow, also for a
+ * user that is removed and created again. Only the latest removals are remembered; forgetting
+ * older ones raises createdAt, so deltas from before them fall back to the whole dashboard.
+ *
+ * @param version        The version of the last change to the dashboard.
+ * @param dashboard      The dashboard, as an immutable snapshot.
+ * @param createdAt      The version from which the chart versions are complete; a delta from an
+ *                       earlier version cannot be computed.
+ * @param orderChangedAt The version of the last change to the charts listed in dashboardOrder
+ *                       or to their order.
+ * @param charts         The versions of each chart on the dashboard.
+ * @param removedAt      The version at which each removed chart was removed.
+ */
+public record VersionedDashboard(long version, Dashboard dashboard, long createdAt, long orderChangedAt,
+                                 Map<String, ChartVersion> charts, Map<String, Long> removedAt) {
+
+    // Removed charts remembered per dashboard, the latest ones
+    static final int MAX_TOMBSTONES = 64;
+
+    /**
+     * Versions of one chart.
+     *
+     * @param addedAt   The version at which the chart was added.
+     * @param changedAt The version at which the chart or its layout last changed; at least addedAt.
+     */
+    public record ChartVersion(long addedAt, long changedAt) {
+    }
+
+    /**
+     * Creates the versions of a dashboard whose history is unknown, e.g. loaded at startup.
+     *
+     * @param version   The version to give the dashboard and all of its charts.
+     * @param dashboard The dashboard snapshot.
+     * @return The versioned dashboard.
+     */
+    static VersionedDashboard of(long version, Dashboard dashboard) {
+        Map<String, ChartVersion> charts = new HashMap<>();
+        ChartVersion chartVersion = new ChartVersion(version, version);
+        for (String chartId : dashboard.charts().keySet()) {
+            charts.put(chartId, chartVersion);
+        }
+        return new VersionedDashboard(version, dashboard, version, version, charts, Map.of());
+    }
+
+    /**
+     * Derives the versions of the dashboard produced by a mutation. Adds, updates and deletes
+     * only touch the chart they name; a put is compared with the current dashboard chart by chart.
+     * The version maps are shared with the current versions when the mutation leaves them as they are.
+     *
+     * @param current   The user's current dashboard, or null if the user has none.
+     * @param version   The version of the mutation.
+     * @param mutation  The mutation.
+     * @param dashboard The dashboard snapshot the mutation produced.
+     * @return The versioned dashboard.
+     */
+    static VersionedDashboard next(VersionedDashboard current, long version, ChartMutation mutation,
+                                   Dashboard dashboard) {
+        if (current == null) {
+            // A new user: every chart is new from this version on
+            return of(version, dashboard);
+        }
+
+        Map<String, ChartVersion> charts = current.charts;
+        Map<String, Long> removedAt = current.removedAt;
+        long orderChangedAt = current.orderChangedAt;
+        String chartId = mutation.chartId();
+        switch (mutation.op()) {
+            case "add":
+                ChartVersion added = charts.get(chartId);
+                charts = new HashMap<>(charts);
+                charts.put(chartId, new ChartVersion(added == null ? version : added.addedAt(), version));
+                if (removedAt.containsKey(chartId)) {
+                    removedAt = new HashMap<>(removedAt);
+                    removedAt.remove(chartId);
+                }
+                if (added == null) {
+                    orderChangedAt = version;
+                }
+                break;
+            case "update":
+                ChartVersion updated = charts.get(chartId);
+                if (updated != null) {
+                    charts = new HashMap<>(charts);
+                    charts.put(chartId, new ChartVersion(updated.addedAt(), version));
+                }
+                break;
+            case "delete":
+                if (charts.containsKey(chartId)) {
+                    charts = new HashMap<>(charts);
+                    charts.remove(chartId);
+                    removedAt = new HashMap<>(removedAt);
+                    removedAt.put(chartId, version);
+                    orderChangedAt = version;
+                }
+                break;
+            default:
+                // A replaced dashboard: compare it with the current one chart by chart
+                charts = new HashMap<>(charts);
+                removedAt = new HashMap<>(removedAt);
+                Map<String, Chart> oldCharts = current.dashboard.charts();
+                Map<String, Chart> newCharts = dashboard.charts();
+                for (String id : oldCharts.keySet()) {
+                    if (!newCharts.containsKey(id)) {
+                        charts.remove(id);
+                        removedAt.put(id, version);
+                    }
+                }
+                for (Map.Entry<String, Chart> entry : newCharts.entrySet()) {
+                    String id = entry.getKey();
+                    ChartVersion previous = charts.get(id);
+                    if (previous == null) {
+                        charts.put(id, new ChartVersion(version, version));
+                        removedAt.remove(id);
+                    } else if (!Objects.equals(oldCharts.get(id), entry.getValue())
+                            || !Objects.equals(current.dashboard.layout(id), dashboard.layout(id))) {
+                        charts.put(id, new ChartVersion(previous.addedAt(), version));
+                    }
+                }
+                if (!chartIds(current.dashboard).equals(chartIds(dashboard))) {
+                    orderChangedAt = version;
+                }
+                break;
+        }
+        long createdAt = current.createdAt;
+        if (removedAt.size() > MAX_TOMBSTONES) {
+            // Forget the oldest removals; changes since before them can no longer be listed
+            List<Long> versions = new ArrayList<>(removedAt.values());
+            versions.sort(null);
+            long floor = versions.get(versions.size() - MAX_TOMBSTONES - 1);
+            removedAt.values().removeIf(removed -> removed <= floor);
+            createdAt = Math.max(createdAt, floor);
+        }
+        return new VersionedDashboard(version, dashboard, createdAt, orderChangedAt, charts, removedAt);
+    }
+
+    /**
+     * @param since A version previously returned for this user.
+     * @return True if the changes made after the version are known, so a delta can be computed.
+     */
+    public boolean tracksChangesSince(long since) {
+        return since >= createdAt && since <= version;
+    }
+
+    // The chart IDs listed in dashboardOrder, in order and without duplicates
+    private static List<String> chartIds(Dashboard dashboard) {
+        List<Chart.Layout> order = dashboard.dashboardOrder();
+        List<String> ids = new ArrayList<>(order.size());
+        for (int i = 0; i < order.size(); i++) {
+            if (dashboard.indexOf(order.get(i).id()) == i) {
+                ids.add(order.get(i).id());
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.TimeGrain;
+import com.example.customized.dashboard.repository.DimensionKeys;
+
+/**
+ * Aggregated consumption for the keys selected by a filter query, in response order.
+ * Values are kept in flat primitive arrays: the buckets of key i occupy
+ * [bucketOffsets[i], bucketOffsets[i + 1]) in the bucket and sum arrays, in chronological order.
+ */
+public class AggregationResult {
+
+    // Resolves key codes to the names returned by the API
+    private final DimensionKeys keys;
+
+    // Dimension the keys belong to, or null if the requested name was not recognised
+    private final Dimension dimension;
+
+    // Formats bucket ids as time period labels
+    private final TimeGrain grain;
+
+    // Selected key codes, in response order
+    private final int[] keyCodes;
+
+    // Budget of each selected key, NaN when absent; null when budgets are not part of the result
+    private final double[] budgets;
+
+    // Start of each key's buckets; has keyCodes.length + 1 entries
+    private final int[] bucketOffsets;
+
+    // Bucket ids, grouped by key
+    private final int[] buckets;
+
+    // Consumption totals, parallel to buckets
+    private final double[] sums;
+
+    // Half-width of the 95% confidence interval of each estimated total, parallel to buckets;
+    // null when the totals are exact
+    private final double[] errors;
+
+    AggregationResult(DimensionKeys keys, Dimension dimension, TimeGrain grain, int[] keyCodes, double[] budgets,
+                      int[] bucketOffsets, int[] buckets, double[] sums) {
+        this(keys, dimension, grain, keyCodes, budgets, bucketOffsets, buckets, sums, null);
+    }
+
+    AggregationResult(DimensionKeys keys, Dimension dimension, TimeGrain grain, int[] keyCodes, double[] budgets,
+                      int[] bucketOffsets, int[] buckets, double[] sums, double[] errors) {
+        this.keys = keys;
+        this.dimension = dimension;
+        this.grain = grain;
+        this.keyCodes = keyCodes;
+        this.budgets = budgets;
+        this.bucketOffsets = bucketOffsets;
+        this.buckets = buckets;
+        this.sums = sums;
+        this.errors = errors;
+    }
+
+    /**
+     * @return The dimension the keys belong to, or null if the requested name was not recognised.
+     */
+    public Dimension dimension() {
+        return dimension;
+    }
+
+    /**
+     * @return The time grouping of the result.
+     */
+    public TimeGrain grain() {
+        return grain;
+    }
+
+    /**
+     * @return The number of keys in the result.
+     */
+    public int keyCount() {
+        return keyCodes.length;
+    }
+
+    /**
+     * @return The number of (key, time period) values in the result, over all keys.
+     */
+    public int bucketCount() {
+        return buckets.length;
+    }
+
+    /**
+     * @param index The position of the key in the result.
+     * @return The key as returned by the API.
+     */
+    public String keyName(int index) {
+        return keys.name(keyCodes[index]);
+    }
+
+    /**
+     * @return True if the result carries a budget per key.
+     */
+    public boolean hasBudgets() {
+        return budgets != null;
+    }
+
+    /**
+     * Records of a key may carry different budgets; the budget of the key's earliest record in
+     * the query's range is used, and of records with the same date the one loaded first.
+     *
+     * @param index The position of the key in the result.
+     * @return The key's budget, or NaN if it has none.
+     */
+    public double budget(int index) {
+        return budgets[index];
+    }
+
+    /**
+     * @param index The position of the key in the result.
+     * @return The index of the key's first bucket.
+     */
+    public int bucketStart(int index) {
+        return bucketOffsets[index];
+    }
+
+    /**
+     * @param index The position of the key in the result.
+     * @return The index after the key's last bucket.
+     */
+    public int bucketEnd(int index) {
+        return bucketOffsets[index + 1];
+    }
+
+    /**
+     * @param bucketIndex An index between bucketStart and bucketEnd of some key.
+     * @return The time period label of the bucket.
+     */
+    public String timePeriod(int bucketIndex) {
+        return grain.label(buckets[bucketIndex]);
+    }
+
+    /**
+     * @param bucketIndex An index between bucketStart and bucketEnd of some key.
+     * @return The bucket id, which increases with time within a key.
+     */
+    int bucket(int bucketIndex) {
+        return buckets[bucketIndex];
+    }
+
+    /**
+     * @param bucketIndex An index between bucketStart and bucketEnd of some key.
+     * @return The consumption total of the bucket.
+     */
+    public double totalConsumption(int bucketIndex) {
+        return sums[bucketIndex];
+    }
+
+    /**
+     * @return True if the totals are estimates, each with an error bound.
+     */
+    public boolean hasErrors() {
+        return errors != null;
+    }
+
+    /**
+     * @param bucketIndex An index between bucketStart and bucketEnd of some key.
+     * @return The half-width of the 95% confidence interval of the bucket's estimated total.
+     */
+    public double error(int bucketIndex) {
+        return errors[bucketIndex];
+    }
+}
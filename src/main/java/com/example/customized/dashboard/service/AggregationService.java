@@ -0,0 +1,558 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.FilterCondition;
+import com.example.customized.dashboard.model.FilterQuery;
+import com.example.customized.dashboard.model.TimeGrain;
+import com.example.customized.dashboard.repository.DimensionKeys;
+import com.example.customized.dashboard.repository.FactTable;
+import com.example.customized.dashboard.repository.Partition;
+import com.example.customized.dashboard.repository.Rollup;
+import com.example.customized.dashboard.repository.RollupCube;
+import com.example.customized.dashboard.repository.RowFilter;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Marks this class as a Spring Service; it aggregates the fact data for filter queries
+@Service
+public class AggregationService {
+
+    // Standard normal quantile of the 95% confidence intervals of estimated totals
+    static final double Z_95 = 1.96;
+
+    // Rows per chunk; each chunk is aggregated into its own partial table
+    private final int chunkRows;
+
+    // Minimum number of rows in range before chunks are aggregated in parallel
+    private final int parallelThreshold;
+
+    // Dedicated pool for parallel aggregation, so scans do not compete with the common pool
+    private final ForkJoinPool pool;
+
+    // Records the aggregate and select stages, rows scanned and groups produced
+    private final DashboardMetrics metrics;
+
+    /**
+     * Creates a service that records no metrics.
+     *
+     * @param chunkRows         Rows per chunk.
+     * @param parallelThreshold Rows in range above which chunks run in parallel.
+     * @param parallelism       Worker threads for parallel aggregation; 0 uses one per core.
+     */
+    public AggregationService(int chunkRows, int parallelThreshold, int parallelism) {
+        this(chunkRows, parallelThreshold, parallelism, DashboardMetrics.NOOP);
+    }
+
+    /**
+     * @param chunkRows         Rows per chunk.
+     * @param parallelThreshold Rows in range above which chunks run in parallel.
+     * @param parallelism       Worker threads for parallel aggregation; 0 uses one per core.
+     * @param metrics           Records the hot-path metrics.
+     */
+    @Autowired
+    public AggregationService(
+            @Value("${dashboard.aggregation.chunk-rows:65536}") int chunkRows,
+            @Value("${dashboard.aggregation.parallel-threshold:262144}") int parallelThreshold,
+            @Value("${dashboard.aggregation.parallelism:0}") int parallelism,
+            DashboardMetrics metrics) {
+        if (chunkRows <= 0) {
+            throw new IllegalArgumentException("dashboard.aggregation.chunk-rows must be positive");
+        }
+        this.chunkRows = chunkRows;
+        this.parallelThreshold = parallelThreshold;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.metrics = metrics;
+    }
+
+    /**
+     * Stops the aggregation workers when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Aggregates the rows of a query's date range by dimension key and time bucket in a single
+     * pass, then selects the keys to return.
+     *
+     * @param table The fact data.
+     * @param query The normalized filter query.
+     * @return The aggregated result, in response order.
+     */
+    public AggregationResult aggregate(FactTable table, FilterQuery query) {
+        return aggregateAll(table, List.of(query)).get(query);
+    }
+
+    /**
+     * Aggregates several queries over the same fact data. Queries that only differ in maxDisplay
+     * share one aggregation, and all queries over the same date range and conditions that cannot
+     * be answered from the rollups are aggregated together in a single pass over the rows.
+     * Conditions are compiled once per distinct set; conditions that only test the fields of the
+     * grouping key are applied to the rollups per key, others need a pass over the rows, which
+     * skips partitions that cannot match and reads only the indexed rows of selective filters.
+     * The time and rows of a shared pass are recorded against every aggregation it serves.
+     *
+     * @param table   The fact data.
+     * @param queries The normalized filter queries; duplicates are answered once.
+     * @return The result of each distinct query, in the order the queries were given.
+     */
+    public Map<FilterQuery, AggregationResult> aggregateAll(FactTable table, Collection<FilterQuery> queries) {
+        RollupCube rollups = table.rollups();
+
+        // Aggregations that need a scan, grouped by the slice of rows and conditions they cover
+        Map<Aggregation, AggregationTable> aggregations = new HashMap<>();
+        Map<Scan, List<Aggregation>> scans = new LinkedHashMap<>();
+        Map<List<FilterCondition>, RowFilter> filters = new HashMap<>();
+        for (FilterQuery query : queries) {
+            Aggregation aggregation = Aggregation.of(query);
+            if (aggregations.containsKey(aggregation)) {
+                continue;
+            }
+            long start = System.nanoTime();
+            RowFilter filter = query.isFiltered()
+                    ? filters.computeIfAbsent(query.conditions(), conditions -> RowFilter.compile(table, conditions))
+                    : null;
+            boolean[] keyMask = filter == null ? null : filter.keyMask(query.dimension(), table.keys(query.dimension()));
+            if (rollups != null && query.dimension() != null && (filter == null || keyMask != null)) {
+                // Answer from the pre-aggregated buckets, keeping the keys the conditions accept
+                aggregations.put(aggregation, aggregateRollups(table, rollups, table.keys(query.dimension()), aggregation, keyMask));
+                metrics.stage(DashboardMetrics.Stage.AGGREGATE, query.dimension(), query.grain(), start);
+            } else {
+                aggregations.put(aggregation, null);
+                Scan scan = new Scan(aggregation.fromDay(), aggregation.toDay(), aggregation.conditions());
+                scans.computeIfAbsent(scan, s -> new ArrayList<>()).add(aggregation);
+            }
+        }
+
+        for (Map.Entry<Scan, List<Aggregation>> entry : scans.entrySet()) {
+            Scan slice = entry.getKey();
+            List<Aggregation> scan = entry.getValue();
+            long start = System.nanoTime();
+            RowFilter filter = slice.conditions().isEmpty() ? null : filters.get(slice.conditions());
+
+            // Rows are sorted by date within each run, so the range is one slice per run; a
+            // filter drops the partitions that cannot hold a matching row
+            List<int[]> slices = new ArrayList<>();
+            long rows = 0;
+            for (int run = 0; run < table.runCount() && (filter == null || !filter.matchesNone()); run++) {
+                int startRow = table.lowerBound(run, slice.fromDay());
+                int endRow = slice.fromDay() > slice.toDay() ? startRow : table.upperBound(run, slice.toDay());
+                if (filter == null) {
+                    slices.add(new int[]{startRow, endRow});
+                    rows += endRow - startRow;
+                    continue;
+                }
+                for (Partition partition : table.partitions(run)) {
+                    int from = Math.max(startRow, partition.startRow());
+                    int to = Math.min(endRow, partition.endRow());
+                    if (from >= to || !filter.mightMatch(partition)) {
+                        continue;
+                    }
+                    int[] last = slices.isEmpty() ? null : slices.get(slices.size() - 1);
+                    if (last != null && last[1] == from) {
+                        last[1] = to;
+                    } else {
+                        slices.add(new int[]{from, to});
+                    }
+                    rows += to - from;
+                }
+            }
+            int[] startRows = new int[slices.size()];
+            int[] endRows = new int[slices.size()];
+            for (int i = 0; i < slices.size(); i++) {
+                startRows[i] = slices.get(i)[0];
+                endRows[i] = slices.get(i)[1];
+            }
+            DimensionKeys[] keys = new DimensionKeys[scan.size()];
+            TimeGrain[] grains = new TimeGrain[scan.size()];
+            for (int i = 0; i < scan.size(); i++) {
+                keys[i] = table.keys(scan.get(i).dimension());
+                grains[i] = scan.get(i).grain();
+            }
+            AggregationTable[] tables = aggregateChunks(table, keys, grains, startRows, endRows, filter);
+            for (int i = 0; i < scan.size(); i++) {
+                aggregations.put(scan.get(i), tables[i]);
+                metrics.stage(DashboardMetrics.Stage.AGGREGATE, scan.get(i).dimension(), scan.get(i).grain(), start);
+                metrics.rowsScanned(scan.get(i).dimension(), scan.get(i).grain(), rows);
+            }
+        }
+
+        Map<FilterQuery, AggregationResult> results = new LinkedHashMap<>();
+        for (FilterQuery query : queries) {
+            if (!results.containsKey(query)) {
+                long start = System.nanoTime();
+                AggregationTable aggregation = aggregations.get(Aggregation.of(query));
+                AggregationResult result = buildResult(table, table.keys(query.dimension()), query, aggregation, null, null);
+                results.put(query, result);
+                metrics.stage(DashboardMetrics.Stage.SELECT, query.dimension(), query.grain(), start);
+                metrics.groups(query.dimension(), query.grain(), result.bucketCount());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Aggregates a query from the rollups. The range is walked from start to end; at each
+     * position the coarsest rollup (no coarser than the query's grain) whose bucket starts there
+     * and lies entirely inside the range is used, so whole years, quarters and months are read as
+     * one block each and only partial edge periods fall back to daily totals.
+     * Cost is O(buckets + cells) regardless of how many rows the range covers.
+     * With a key mask, only the cells of the accepted keys are added.
+     */
+    private static AggregationTable aggregateRollups(FactTable table, RollupCube rollups, DimensionKeys keys,
+                                                     Aggregation query, boolean[] keyMask) {
+        AggregationTable aggregation = new AggregationTable(keys.size());
+        if (table.size() == 0) {
+            return aggregation;
+        }
+
+        // Days outside the loaded history hold no data
+        int fromDay = Math.max(query.fromDay(), table.minDate());
+        int toDay = Math.min(query.toDay(), table.maxDate());
+        TimeGrain[] grains = TimeGrain.values();
+        int day = fromDay;
+        while (day <= toDay) {
+            TimeGrain grain = TimeGrain.DAY;
+            for (int candidate = query.grain().ordinal(); candidate > TimeGrain.DAY.ordinal(); candidate--) {
+                TimeGrain coarser = grains[candidate];
+                int bucket = coarser.bucketOf(day);
+                if (coarser.firstDay(bucket) == day && coarser.firstDay(bucket + 1) - 1 <= toDay) {
+                    grain = coarser;
+                    break;
+                }
+            }
+
+            int bucket = grain.bucketOf(day);
+            Rollup.Block block = rollups.get(query.dimension(), grain).block(bucket);
+            if (block != null) {
+                int outputBucket = query.grain().bucketOf(day);
+                for (int cell = 0; cell < block.size(); cell++) {
+                    if (keyMask == null || keyMask[block.key(cell)]) {
+                        aggregation.add(block.key(cell), outputBucket, block.sum(cell), block.firstDate(cell),
+                                block.firstRow(cell));
+                    }
+                }
+            }
+            day = grain.firstDay(bucket + 1);
+        }
+        return aggregation;
+    }
+
+    /**
+     * Aggregates a query from the rollups alone, as aggregateAll does whenever it can.
+     *
+     * @param table  The fact data.
+     * @param query  The normalized filter query.
+     * @param filter The query's compiled conditions, or null if it has none.
+     * @return The aggregation, or null if the rollups are not built yet or the conditions need a
+     *         pass over the rows.
+     */
+    AggregationTable aggregateFromRollups(FactTable table, FilterQuery query, RowFilter filter) {
+        RollupCube rollups = table.rollups();
+        if (rollups == null || query.dimension() == null) {
+            return null;
+        }
+        DimensionKeys keys = table.keys(query.dimension());
+        boolean[] keyMask = filter == null ? null : filter.keyMask(query.dimension(), keys);
+        if (filter != null && keyMask == null) {
+            return null;
+        }
+        return aggregateRollups(table, rollups, keys, Aggregation.of(query), keyMask);
+    }
+
+    /**
+     * Aggregates slices of rows chunk by chunk, into one table per (keys, grain) pair, and
+     * merges the partial tables in chunk order.
+     * Chunk boundaries only depend on the slices, never on the thread count, and the merge order
+     * is fixed, so the parallel and sequential paths produce bit-for-bit identical sums.
+     */
+    private AggregationTable[] aggregateChunks(FactTable table, DimensionKeys[] keys, TimeGrain[] grains,
+                                               int[] startRows, int[] endRows, RowFilter filter) {
+        // Split every slice into chunks, in slice order
+        List<int[]> chunks = new ArrayList<>();
+        long rows = 0;
+        for (int slice = 0; slice < startRows.length; slice++) {
+            rows += endRows[slice] - startRows[slice];
+            for (int chunkStart = startRows[slice]; chunkStart < endRows[slice]; chunkStart += chunkRows) {
+                chunks.add(new int[]{chunkStart, Math.min(chunkStart + chunkRows, endRows[slice])});
+            }
+        }
+
+        if (rows < parallelThreshold || chunks.size() <= 1) {
+            // Sequential path: same chunks, aggregated on the calling thread
+            AggregationTable[] result = null;
+            for (int[] chunk : chunks) {
+                result = mergeInto(result, scan(table, keys, grains, chunk[0], chunk[1], filter));
+            }
+            return result != null ? result : scan(table, keys, grains, 0, 0, null);
+        }
+
+        // Parallel path: aggregate every chunk on the pool, then merge as they complete, in order
+        List<Future<AggregationTable[]>> partials = new ArrayList<>();
+        for (int[] chunk : chunks) {
+            partials.add(pool.submit(() -> scan(table, keys, grains, chunk[0], chunk[1], filter)));
+        }
+        AggregationTable[] result = null;
+        try {
+            for (Future<AggregationTable[]> partial : partials) {
+                result = mergeInto(result, partial.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            partials.forEach(partial -> partial.cancel(true));
+            throw new IllegalStateException("Interrupted while aggregating", e);
+        } catch (ExecutionException e) {
+            partials.forEach(partial -> partial.cancel(true));
+            throw new IllegalStateException("Parallel aggregation failed", e.getCause());
+        }
+        return result;
+    }
+
+    // Merges partial tables into the running result; the first partials become the result
+    private static AggregationTable[] mergeInto(AggregationTable[] result, AggregationTable[] partial) {
+        if (result == null) {
+            return partial;
+        }
+        for (int i = 0; i < result.length; i++) {
+            result[i].merge(partial[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Accumulates a slice of rows into one new aggregation table per (keys, grain) pair, so
+     * several aggregations over the same rows share the pass.
+     * With a filter, only matching rows are accumulated: either the slice's rows from the
+     * filter's index, tested for the budget only, or every row of the slice, tested in full.
+     */
+    private static AggregationTable[] scan(FactTable table, DimensionKeys[] keys, TimeGrain[] grains, int startRow,
+                                           int endRow, RowFilter filter) {
+        AggregationTable[] aggregations = new AggregationTable[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            aggregations[i] = new AggregationTable(keys[i].size());
+        }
+        int[] buckets = new int[grains.length];
+        int lastDate = Integer.MIN_VALUE;
+        if (filter == null) {
+            for (int row = startRow; row < endRow; row++) {
+                lastDate = accumulate(table, keys, grains, aggregations, buckets, lastDate, row);
+            }
+        } else if (filter.usesIndex()) {
+            for (int row : filter.candidateRows(startRow, endRow)) {
+                if (filter.matchesBudget(row)) {
+                    lastDate = accumulate(table, keys, grains, aggregations, buckets, lastDate, row);
+                }
+            }
+        } else {
+            for (int row = startRow; row < endRow; row++) {
+                if (filter.matches(row)) {
+                    lastDate = accumulate(table, keys, grains, aggregations, buckets, lastDate, row);
+                }
+            }
+        }
+        return aggregations;
+    }
+
+    /**
+     * Adds one row to every aggregation table and returns its date. The time buckets are only
+     * recomputed when the date differs from the previous row's, which is rare on sorted rows.
+     */
+    private static int accumulate(FactTable table, DimensionKeys[] keys, TimeGrain[] grains,
+                                  AggregationTable[] aggregations, int[] buckets, int lastDate, int row) {
+        int date = table.date(row);
+        if (date != lastDate) {
+            for (int i = 0; i < grains.length; i++) {
+                buckets[i] = grains[i].bucketOf(date);
+            }
+        }
+        double consumption = table.consumption(row);
+        for (int i = 0; i < aggregations.length; i++) {
+            aggregations[i].add(keys[i].keyOf(row), buckets[i], consumption, date, row);
+        }
+        return date;
+    }
+
+    /**
+     * Selects the keys to return and lays out their buckets in chronological order.
+     * An aggregation of sampled rows comes with a table of the variances of its estimated
+     * totals, filled by the same sequence of adds so that its cells line up with the
+     * aggregation's; each bucket then gets the half-width of its 95% confidence interval.
+     * Its budgets are taken from the given first rows, as the first sampled row of a key is not
+     * the key's first row in range.
+     */
+    AggregationResult buildResult(FactTable table, DimensionKeys keys, FilterQuery query, AggregationTable aggregation,
+                                  AggregationTable variances, int[] firstRows) {
+        int[] selected = query.maxDisplay() == FilterQuery.ALL
+                ? presentKeys(aggregation)
+                : topKeys(aggregation, query.maxDisplay());
+
+        // Position of each selected key in the response, -1 for keys that are left out
+        int[] rank = new int[aggregation.keyCount()];
+        Arrays.fill(rank, -1);
+        for (int i = 0; i < selected.length; i++) {
+            rank[selected[i]] = i;
+        }
+
+        // Order the cells of the selected keys by (rank, bucket); each cell is packed with its
+        // bucket in the high bits and its index in the low bits so a primitive sort can be used
+        int[] bucketOffsets = new int[selected.length + 1];
+        for (int cell = 0; cell < aggregation.cellCount(); cell++) {
+            int keyRank = rank[aggregation.cellKey(cell)];
+            if (keyRank >= 0) {
+                bucketOffsets[keyRank + 1]++;
+            }
+        }
+        for (int i = 0; i < selected.length; i++) {
+            bucketOffsets[i + 1] += bucketOffsets[i];
+        }
+        long[] packed = new long[bucketOffsets[selected.length]];
+        int[] fill = Arrays.copyOf(bucketOffsets, selected.length);
+        for (int cell = 0; cell < aggregation.cellCount(); cell++) {
+            int keyRank = rank[aggregation.cellKey(cell)];
+            if (keyRank >= 0) {
+                packed[fill[keyRank]++] = ((long) aggregation.cellBucket(cell) << 32) | cell;
+            }
+        }
+        int[] buckets = new int[packed.length];
+        double[] sums = new double[packed.length];
+        double[] errors = variances == null ? null : new double[packed.length];
+        for (int i = 0; i < selected.length; i++) {
+            Arrays.sort(packed, bucketOffsets[i], bucketOffsets[i + 1]);
+        }
+        for (int i = 0; i < packed.length; i++) {
+            int cell = (int) packed[i];
+            buckets[i] = aggregation.cellBucket(cell);
+            sums[i] = aggregation.cellSum(cell);
+            if (errors != null) {
+                errors[i] = Z_95 * Math.sqrt(variances.cellSum(cell));
+            }
+        }
+
+        // Budget information is only included for FinancialDomain
+        double[] budgets = null;
+        if (query.includesBudget()) {
+            budgets = new double[selected.length];
+            for (int i = 0; i < selected.length; i++) {
+                budgets[i] = table.budget(firstRows != null ? firstRows[selected[i]] : aggregation.keyFirstRow(selected[i]));
+            }
+        }
+        return new AggregationResult(keys, query.dimension(), query.grain(), selected, budgets, bucketOffsets, buckets, sums,
+                errors);
+    }
+
+    // Returns every key that received at least one row, in key code order
+    private int[] presentKeys(AggregationTable aggregation) {
+        int[] present = new int[aggregation.keyCount()];
+        int count = 0;
+        for (int key = 0; key < aggregation.keyCount(); key++) {
+            if (aggregation.keyFirstRow(key) >= 0) {
+                present[count++] = key;
+            }
+        }
+        return Arrays.copyOf(present, count);
+    }
+
+    /**
+     * Selects the limit keys with the highest total consumption using a bounded min-heap,
+     * in O(keys * log(limit)) instead of sorting every key. Ties are broken by key code.
+     *
+     * @return The selected keys, highest total first.
+     */
+    private int[] topKeys(AggregationTable aggregation, int limit) {
+        int[] heap = new int[Math.min(limit, aggregation.keyCount())];
+        int size = 0;
+        for (int key = 0; key < aggregation.keyCount() && heap.length > 0; key++) {
+            if (aggregation.keyFirstRow(key) < 0) {
+                continue;
+            }
+            if (size < heap.length) {
+                heap[size] = key;
+                siftUp(aggregation, heap, size++);
+            } else if (ranksHigher(aggregation, key, heap[0])) {
+                heap[0] = key;
+                siftDown(aggregation, heap, size);
+            }
+        }
+
+        // Drain the heap from the lowest ranked key, filling the result from the back
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(aggregation, heap, size);
+        }
+        return result;
+    }
+
+    // True if key a should be listed before key b
+    private static boolean ranksHigher(AggregationTable aggregation, int a, int b) {
+        int compare = Double.compare(aggregation.keyTotal(a), aggregation.keyTotal(b));
+        return compare > 0 || (compare == 0 && a < b);
+    }
+
+    // Restores the min-heap order (lowest ranked key at the root) after an insertion
+    private static void siftUp(AggregationTable aggregation, int[] heap, int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!ranksHigher(aggregation, heap[parent], heap[index])) {
+                break;
+            }
+            swap(heap, parent, index);
+            index = parent;
+        }
+    }
+
+    // Restores the min-heap order after the root has been replaced
+    private static void siftDown(AggregationTable aggregation, int[] heap, int size) {
+        int index = 0;
+        while (true) {
+            int lowest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && ranksHigher(aggregation, heap[lowest], heap[left])) {
+                lowest = left;
+            }
+            if (right < size && ranksHigher(aggregation, heap[lowest], heap[right])) {
+                lowest = right;
+            }
+            if (lowest == index) {
+                return;
+            }
+            swap(heap, index, lowest);
+            index = lowest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    // The part of a query that determines its aggregation; maxDisplay only affects key selection
+    private record Aggregation(Dimension dimension, TimeGrain grain, int fromDay, int toDay,
+                               List<FilterCondition> conditions) {
+
+        static Aggregation of(FilterQuery query) {
+            return new Aggregation(query.dimension(), query.grain(), query.fromDay(), query.toDay(), query.conditions());
+        }
+    }
+
+    // The rows a pass reads: a date range, restricted by conditions
+    private record Scan(int fromDay, int toDay, List<FilterCondition> conditions) {
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.customized.dashboard.service;
+
+import java.util.Arrays;
+
+/**
+ * Primitive accumulator for (dimension key, time bucket) consumption totals.
+ * Cells live in parallel arrays in insertion order and are located through an open-addressing
+ * hash of the packed (key, bucket) pair, so accumulating a row never allocates. Per-key totals
+ * and the first contributing row of each key are maintained in the same pass; "first" means
+ * earliest date, ties broken by the lowest row index, since appended runs may hold rows dated
+ * before those already loaded.
+ */
+public class AggregationTable {
+
+    // Marks an empty hash slot
+    private static final int EMPTY = -1;
+
+    // Hash slots holding cell indexes; the length is always a power of two
+    private int[] slots;
+
+    // Packed (key, bucket) pair of each cell
+    private long[] cellKeys;
+
+    // Consumption total of each cell
+    private double[] cellSums;
+
+    // Number of cells in use
+    private int cellCount;
+
+    // Total consumption per key, indexed by key code
+    private final double[] keyTotals;
+
+    // First row (earliest date, then lowest index) that contributed to each key, or -1
+    private final int[] keyFirstRows;
+
+    // Date of each key's first row
+    private final int[] keyFirstDates;
+
+    /**
+     * @param keyCount The number of distinct dimension keys.
+     */
+    public AggregationTable(int keyCount) {
+        this.slots = new int[64];
+        Arrays.fill(slots, EMPTY);
+        this.cellKeys = new long[32];
+        this.cellSums = new double[32];
+        this.keyTotals = new double[keyCount];
+        this.keyFirstRows = new int[keyCount];
+        this.keyFirstDates = new int[keyCount];
+        Arrays.fill(keyFirstRows, -1);
+    }
+
+    /**
+     * Adds an amount to the (key, bucket) cell.
+     *
+     * @param key    The dimension key code.
+     * @param bucket The time bucket id.
+     * @param amount The amount to add.
+     * @param date   The epoch day of the contributing row.
+     * @param row    The contributing row, used with its date to track each key's first row.
+     */
+    public void add(int key, int bucket, double amount, int date, int row) {
+        // Resolve the cell first: inserting it may reallocate the sum array
+        int cell = cellFor(key, bucket);
+        cellSums[cell] += amount;
+        keyTotals[key] += amount;
+        updateFirstRow(key, date, row);
+    }
+
+    /**
+     * Adds every cell, key total and first row of another table to this one.
+     * Cells are visited in the other table's insertion order, so merging the same partial
+     * tables in the same order always yields bit-for-bit identical sums.
+     *
+     * @param other A table built for the same dimension keys.
+     */
+    public void merge(AggregationTable other) {
+        for (int cell = 0; cell < other.cellCount; cell++) {
+            int target = cellFor(other.cellKey(cell), other.cellBucket(cell));
+            cellSums[target] += other.cellSums[cell];
+        }
+        for (int key = 0; key < keyTotals.length; key++) {
+            int row = other.keyFirstRows[key];
+            if (row < 0) {
+                continue;
+            }
+            keyTotals[key] += other.keyTotals[key];
+            updateFirstRow(key, other.keyFirstDates[key], row);
+        }
+    }
+
+    /**
+     * @return The number of (key, bucket) cells.
+     */
+    public int cellCount() {
+        return cellCount;
+    }
+
+    /**
+     * @param cell The cell index, in insertion order.
+     * @return The dimension key code of the cell.
+     */
+    public int cellKey(int cell) {
+        return (int) (cellKeys[cell] >>> 32);
+    }
+
+    /**
+     * @param cell The cell index, in insertion order.
+     * @return The time bucket id of the cell.
+     */
+    public int cellBucket(int cell) {
+        return (int) cellKeys[cell];
+    }
+
+    /**
+     * @param cell The cell index, in insertion order.
+     * @return The consumption total of the cell.
+     */
+    public double cellSum(int cell) {
+        return cellSums[cell];
+    }
+
+    /**
+     * @return The number of key codes tracked by the table.
+     */
+    public int keyCount() {
+        return keyTotals.length;
+    }
+
+    /**
+     * @param key The dimension key code.
+     * @return The total consumption of the key across all buckets.
+     */
+    public double keyTotal(int key) {
+        return keyTotals[key];
+    }
+
+    /**
+     * @param key The dimension key code.
+     * @return The first row that contributed to the key, or -1 if no row did.
+     */
+    public int keyFirstRow(int key) {
+        return keyFirstRows[key];
+    }
+
+    // Keeps the earlier of the key's current first row and the given row
+    private void updateFirstRow(int key, int date, int row) {
+        int first = keyFirstRows[key];
+        if (first < 0 || date < keyFirstDates[key] || (date == keyFirstDates[key] && row < first)) {
+            keyFirstRows[key] = row;
+            keyFirstDates[key] = date;
+        }
+    }
+
+    // Finds the cell for a (key, bucket) pair, inserting an empty cell if needed
+    private int cellFor(int key, int bucket) {
+        long packed = ((long) key << 32) | (bucket & 0xffffffffL);
+        int mask = slots.length - 1;
+        int slot = hash(packed) & mask;
+        while (true) {
+            int cell = slots[slot];
+            if (cell == EMPTY) {
+                break;
+            }
+            if (cellKeys[cell] == packed) {
+                return cell;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // Insert a new cell, growing the arrays as needed
+        if (cellCount == cellKeys.length) {
+            cellKeys = Arrays.copyOf(cellKeys, cellCount * 2);
+            cellSums = Arrays.copyOf(cellSums, cellCount * 2);
+        }
+        int cell = cellCount++;
+        cellKeys[cell] = packed;
+        slots[slot] = cell;
+        if (cellCount * 2 > slots.length) {
+            rehash();
+        }
+        return cell;
+    }
+
+    // Doubles the slot array and re-inserts every cell
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, EMPTY);
+        int mask = slots.length - 1;
+        for (int cell = 0; cell < cellCount; cell++) {
+            int slot = hash(cellKeys[cell]) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = cell;
+        }
+    }
+
+    // Mixes the packed pair so that consecutive buckets spread over the slots
+    private static int hash(long packed) {
+        long h = packed * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.FilterQuery;
+import com.example.customized.dashboard.model.TimeGrain;
+import com.example.customized.dashboard.repository.DimensionKeys;
+import com.example.customized.dashboard.repository.FactTable;
+import com.example.customized.dashboard.repository.Partition;
+import com.example.customized.dashboard.repository.RowFilter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Marks this class as a Spring Service; it answers filter queries approximately from a sample of the rows
+@Service
+public class ApproximateAggregationService {
+
+    // Answers queries with few rows in range exactly
+    private final AggregationService aggregationService;
+
+    // Rows read per query on average; bounds the time of a query
+    private final int sampleRows;
+
+    // Records the aggregate stage and the rows read
+    private final DashboardMetrics metrics;
+
+    // Distinct accounts of each partition, built in the background on first use; dropped with the partition
+    private final Cache<Partition, CompletableFuture<AccountSketches>> accountSketches =
+            Caffeine.newBuilder().weakKeys().build();
+
+    // Builds the account sketches off the request threads, one partition at a time
+    private final ExecutorService sketchBuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "account-sketches");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a service that records no metrics.
+     *
+     * @param aggregationService Answers queries with few rows in range.
+     * @param sampleRows         Rows read per query at most.
+     */
+    public ApproximateAggregationService(AggregationService aggregationService, int sampleRows) {
+        this(aggregationService, sampleRows, DashboardMetrics.NOOP);
+    }
+
+    /**
+     * @param aggregationService Answers queries with few rows in range.
+     * @param sampleRows         Rows read per query at most.
+     * @param metrics            Records the hot-path metrics.
+     */
+    @Autowired
+    public ApproximateAggregationService(
+            AggregationService aggregationService,
+            @Value("${dashboard.approx.sample-rows:100000}") int sampleRows,
+            DashboardMetrics metrics) {
+        if (sampleRows <= 0) {
+            throw new IllegalArgumentException("dashboard.approx.sample-rows must be positive");
+        }
+        this.aggregationService = aggregationService;
+        this.sampleRows = sampleRows;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Answers a filter query from a random sample of the rows in its range. Every row in range
+     * is sampled independently with the same probability (Bernoulli sampling), chosen so that
+     * the sample size is sampleRows on average; the gaps between sampled rows are drawn from the
+     * geometric distribution, so only the sampled rows are visited. A total is the sum of its
+     * cell's sampled rows weighted by the inverse of the probability (the Horvitz-Thompson
+     * estimate); its error bound follows from the unbiased variance estimate of that sum for
+     * Bernoulli sampling. Neither depends on the order the rows are stored in, so periodic
+     * layouts such as the same accounts recorded in the same order every day cannot bias them.
+     * Keys are ranked for maxDisplay by their estimated totals. Ranges with no more rows than
+     * the sample size are aggregated exactly. Distinct accounts are counted by merging sketches
+     * precomputed per partition, and per day for the partitions at the edges of the range, so no
+     * rows are read for them; until the sketches of the range are built they are left out.
+     *
+     * @param table The fact data.
+     * @param query The normalized filter query.
+     * @return The approximate result.
+     */
+    public ApproximateResult aggregate(FactTable table, FilterQuery query) {
+        long start = System.nanoTime();
+        RowFilter filter = query.isFiltered() ? RowFilter.compile(table, query.conditions()) : null;
+
+        // The slices of rows to sample: the part of each partition inside the range
+        List<int[]> slices = new ArrayList<>();
+        long rowsInRange = 0;
+        for (int run = 0; run < table.runCount() && (filter == null || !filter.matchesNone()); run++) {
+            int startRow = table.lowerBound(run, query.fromDay());
+            int endRow = query.fromDay() > query.toDay() ? startRow : table.upperBound(run, query.toDay());
+            for (Partition partition : table.partitions(run)) {
+                int from = Math.max(startRow, partition.startRow());
+                int to = Math.min(endRow, partition.endRow());
+                if (from < to && (filter == null || filter.mightMatch(partition))) {
+                    slices.add(new int[]{from, to});
+                    rowsInRange += to - from;
+                }
+            }
+        }
+        HyperLogLog accounts = filter == null ? countAccounts(table, query) : null;
+        if (rowsInRange <= sampleRows) {
+            return new ApproximateResult(aggregationService.aggregate(table, query), rowsInRange, rowsInRange, accounts);
+        }
+
+        DimensionKeys keys = table.keys(query.dimension());
+        TimeGrain grain = query.grain();
+        AggregationTable sums = new AggregationTable(keys.size());
+        AggregationTable variances = new AggregationTable(keys.size());
+        // Each row is sampled with probability rate and then stands for weight rows; the
+        // variance of a sampled row's contribution, (1 - rate) / rate^2 * y^2, is estimated
+        // without bias by its square times the same factor
+        double rate = (double) sampleRows / rowsInRange;
+        double weight = 1 / rate;
+        double varianceFactor = weight * weight - weight;
+        double logSkipRate = Math.log1p(-rate);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long sampledRows = 0;
+        for (int[] slice : slices) {
+            for (long row = slice[0] + skip(random, logSkipRate); row < slice[1]; row += 1 + skip(random, logSkipRate)) {
+                sampledRows++;
+                int r = (int) row;
+                if (filter != null && !filter.matches(r)) {
+                    continue;
+                }
+                double consumption = table.consumption(r);
+                int key = keys.keyOf(r);
+                int date = table.date(r);
+                int bucket = grain.bucketOf(date);
+                sums.add(key, bucket, consumption * weight, date, r);
+                variances.add(key, bucket, varianceFactor * consumption * consumption, date, r);
+            }
+        }
+        metrics.stage(DashboardMetrics.Stage.AGGREGATE, query.dimension(), grain, start);
+        metrics.rowsScanned(query.dimension(), grain, sampledRows);
+        int[] firstRows = query.includesBudget() ? firstRows(table, query, filter, slices, sums) : null;
+        AggregationResult result = aggregationService.buildResult(table, keys, query, sums, variances, firstRows);
+        return new ApproximateResult(result, rowsInRange, sampledRows, accounts);
+    }
+
+    // The first row in range (earliest date, then lowest index) of every sampled key, by key
+    // code, whose budget an exact answer reports. Read from the rollups when the conditions
+    // allow; otherwise each run is scanned in date order until every sampled key was seen in it
+    private int[] firstRows(FactTable table, FilterQuery query, RowFilter filter, List<int[]> slices,
+                            AggregationTable sample) {
+        int keyCount = sample.keyCount();
+        int[] firstRows = new int[keyCount];
+        AggregationTable exact = aggregationService.aggregateFromRollups(table, query, filter);
+        if (exact != null) {
+            for (int key = 0; key < keyCount; key++) {
+                firstRows[key] = exact.keyFirstRow(key);
+            }
+            return firstRows;
+        }
+
+        Arrays.fill(firstRows, -1);
+        int[] firstDates = new int[keyCount];
+        int wanted = 0;
+        for (int key = 0; key < keyCount; key++) {
+            if (sample.keyFirstRow(key) >= 0) {
+                wanted++;
+            }
+        }
+        DimensionKeys keys = table.keys(query.dimension());
+        boolean[] seen = new boolean[keyCount];
+        int seenCount = 0;
+        int run = -1;
+        for (int[] slice : slices) {
+            if (run < 0 || slice[0] >= table.runEnd(run)) {
+                // The slices of a run are in date order; the first row of a key seen in a run is its earliest there
+                while (slice[0] >= table.runEnd(++run)) {
+                    // Skip runs without rows in range
+                }
+                Arrays.fill(seen, false);
+                seenCount = 0;
+            }
+            for (int row = slice[0]; row < slice[1] && seenCount < wanted; row++) {
+                int key = keys.keyOf(row);
+                if (seen[key] || sample.keyFirstRow(key) < 0 || (filter != null && !filter.matches(row))) {
+                    continue;
+                }
+                seen[key] = true;
+                seenCount++;
+                int date = table.date(row);
+                if (firstRows[key] < 0 || date < firstDates[key] || (date == firstDates[key] && row < firstRows[key])) {
+                    firstRows[key] = row;
+                    firstDates[key] = date;
+                }
+            }
+        }
+        return firstRows;
+    }
+
+    // The number of rows skipped before the next sampled row: geometric, with the log of the
+    // probability that a row is skipped as parameter
+    private static long skip(ThreadLocalRandom random, double logSkipRate) {
+        // Capped, as row numbers are ints; a skip past the end of a slice ends it either way
+        return (long) Math.min(Integer.MAX_VALUE, Math.log(1 - random.nextDouble()) / logSkipRate);
+    }
+
+    // Sketches the distinct accounts of the range by merging the sketches of the partitions it
+    // covers and of its days in the partitions it only partly covers; null while some of them
+    // are still being built
+    private HyperLogLog countAccounts(FactTable table, FilterQuery query) {
+        HyperLogLog sketch = new HyperLogLog();
+        boolean complete = true;
+        for (int run = 0; run < table.runCount(); run++) {
+            for (Partition partition : table.partitions(run)) {
+                if (!partition.overlaps(query.fromDay(), query.toDay())) {
+                    continue;
+                }
+                AccountSketches sketches = accountSketches
+                        .get(partition, p -> CompletableFuture.supplyAsync(() -> AccountSketches.build(table, p), sketchBuilder))
+                        .getNow(null);
+                if (sketches == null) {
+                    // Keep requesting the remaining partitions, so they are all built together
+                    complete = false;
+                } else if (complete) {
+                    sketches.mergeInto(sketch, query.fromDay(), query.toDay());
+                }
+            }
+        }
+        return complete ? sketch : null;
+    }
+
+    /**
+     * Stops building account sketches.
+     */
+    @PreDestroy
+    public void shutdown() {
+        sketchBuilder.shutdownNow();
+    }
+
+    // The distinct accounts of a partition, as a whole and per day
+    private record AccountSketches(int minDate, HyperLogLog partition, HyperLogLog[] days) {
+
+        // Reads the partition's rows once; each account's name is hashed once
+        static AccountSketches build(FactTable table, Partition partition) {
+            DimensionKeys accounts = table.keys(Dimension.ACCOUNT);
+            long[] hashes = new long[accounts.size()];
+            boolean[] hashed = new boolean[hashes.length];
+            HyperLogLog whole = new HyperLogLog();
+            HyperLogLog[] days = new HyperLogLog[partition.maxDate() - partition.minDate() + 1];
+            for (int row = partition.startRow(); row < partition.endRow(); row++) {
+                int code = accounts.keyOf(row);
+                if (!hashed[code]) {
+                    hashes[code] = HyperLogLog.hash(accounts.name(code));
+                    hashed[code] = true;
+                }
+                int day = table.date(row) - partition.minDate();
+                if (days[day] == null) {
+                    days[day] = new HyperLogLog();
+                }
+                days[day].addHash(hashes[code]);
+                whole.addHash(hashes[code]);
+            }
+            return new AccountSketches(partition.minDate(), whole, days);
+        }
+
+        // Merges the accounts of the days in [fromDay, toDay] into a sketch
+        void mergeInto(HyperLogLog sketch, int fromDay, int toDay) {
+            int first = Math.max(fromDay - minDate, 0);
+            int last = Math.min(toDay - minDate, days.length - 1);
+            if (first == 0 && last == days.length - 1) {
+                sketch.merge(partition);
+                return;
+            }
+            for (int day = first; day <= last; day++) {
+                if (days[day] != null) {
+                    sketch.merge(days[day]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.customized.dashboard.service;
+
+/**
+ * An approximate answer to a filter query.
+ *
+ * @param result      The totals; estimates with error bounds unless the answer is exact.
+ * @param rowsInRange Rows in the query's date range that could match its conditions.
+ * @param sampledRows Rows read; equal to rowsInRange when the answer is exact.
+ * @param accounts    Sketch of the distinct accounts in the range, or null for queries with
+ *                    conditions, whose matching accounts are not sketched, and while the
+ *                    sketches of the range's partitions are still being built.
+ */
+public record ApproximateResult(AggregationResult result, long rowsInRange, long sampledRows, HyperLogLog accounts) {
+
+    /**
+     * @return True if the range was aggregated without sampling, so the totals are exact. A
+     *         sample may by chance include every row, but its totals are still estimates.
+     */
+    public boolean isExact() {
+        return !result.hasErrors();
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.TimeGrain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Running consumption and budget of every FinancialDomain per calendar month, updated one
+ * record at a time. A record's budget is its domain's monthly budget as of the record's date:
+ * the latest record of a month sets the month's budget, which stays in force in the following
+ * months until a record changes it. Quarters and years are read as the sum of their months, so
+ * a lookup reads at most twelve months, however long the history is.
+ * A ledger is not thread-safe; {@link BudgetService} guards it.
+ */
+public final class BudgetLedger {
+
+    // Ledger of each domain by name
+    private final Map<String, DomainLedger> domains = new HashMap<>();
+
+    // Date of the latest record, as an epoch day; projections are made as of this day by default
+    private int latestDay = Integer.MIN_VALUE;
+
+    /**
+     * Adds a cost record.
+     *
+     * @param domain      The record's FinancialDomain.
+     * @param epochDay    The record's date.
+     * @param consumption The record's consumption.
+     * @param budget      The domain's monthly budget as of the record's date, or NaN if the
+     *                    record has none.
+     */
+    public void add(String domain, int epochDay, double consumption, double budget) {
+        domains.computeIfAbsent(domain, name -> new DomainLedger()).add(epochDay, consumption, budget);
+        latestDay = Math.max(latestDay, epochDay);
+    }
+
+    /**
+     * @return The date of the latest record, as an epoch day, or Integer.MIN_VALUE if the ledger is empty.
+     */
+    public int latestDay() {
+        return latestDay;
+    }
+
+    /**
+     * Evaluates a domain's budget in the period containing a day.
+     *
+     * @param domain   The FinancialDomain.
+     * @param grain    The length of the period: MONTH, QUARTER or YEAR.
+     * @param epochDay A day of the period.
+     * @param asOfDay  The day up to which the period has elapsed, for the burn rate.
+     * @return The utilization, or null if the domain has no records.
+     */
+    public BudgetUtilization utilization(String domain, TimeGrain grain, int epochDay, int asOfDay) {
+        DomainLedger ledger = domains.get(domain);
+        return ledger == null ? null : ledger.evaluate(domain, grain, epochDay, asOfDay);
+    }
+
+    /**
+     * Evaluates the budget of every domain in the period containing a day.
+     *
+     * @param grain    The length of the period: MONTH, QUARTER or YEAR.
+     * @param epochDay A day of the period.
+     * @param asOfDay  The day up to which the period has elapsed, for the burn rate.
+     * @return The utilization of each domain, ordered by domain name.
+     */
+    public List<BudgetUtilization> utilizationAll(TimeGrain grain, int epochDay, int asOfDay) {
+        List<BudgetUtilization> utilizations = new ArrayList<>(domains.size());
+        new TreeMap<>(domains).forEach((domain, ledger) ->
+                utilizations.add(ledger.evaluate(domain, grain, epochDay, asOfDay)));
+        return utilizations;
+    }
+
+    // The months of one domain, in arrays indexed by month id - firstMonth
+    private static final class DomainLedger {
+
+        // Month id (TimeGrain.MONTH bucket) of index 0
+        private int firstMonth;
+
+        // Consumption of each month
+        private double[] consumption = new double[0];
+
+        // Budget set by the latest record of each month, NaN if no record of the month has one
+        private double[] budgets = new double[0];
+
+        // Date of the record that set each month's budget
+        private int[] budgetDays = new int[0];
+
+        // Budget in force in each month: its own, or that of the latest earlier month with one
+        private double[] effective = new double[0];
+
+        void add(int epochDay, double amount, double budget) {
+            int index = indexOf(TimeGrain.MONTH.bucketOf(epochDay));
+            consumption[index] += amount;
+            if (Double.isNaN(budget) || (!Double.isNaN(budgets[index]) && epochDay < budgetDays[index])) {
+                return;
+            }
+            budgets[index] = budget;
+            budgetDays[index] = epochDay;
+            if (Double.compare(effective[index], budget) != 0) {
+                // Carry the new budget forward up to the next month that sets its own; an
+                // unchanged budget, the common case, costs nothing
+                effective[index] = budget;
+                for (int i = index + 1; i < effective.length && Double.isNaN(budgets[i]); i++) {
+                    effective[i] = budget;
+                }
+            }
+        }
+
+        BudgetUtilization evaluate(String domain, TimeGrain grain, int epochDay, int asOfDay) {
+            int bucket = grain.bucketOf(epochDay);
+            int firstDay = grain.firstDay(bucket);
+            int lastDay = grain.firstDay(bucket + 1) - 1;
+            double total = 0;
+            double budget = 0;
+            boolean budgeted = false;
+            for (int month = TimeGrain.MONTH.bucketOf(firstDay); month <= TimeGrain.MONTH.bucketOf(lastDay); month++) {
+                total += consumption(month);
+                double monthBudget = budget(month);
+                if (!Double.isNaN(monthBudget)) {
+                    budget += monthBudget;
+                    budgeted = true;
+                }
+            }
+
+            // Project the elapsed part of the period over its remaining days
+            int length = lastDay - firstDay + 1;
+            int elapsed = Math.min(asOfDay, lastDay) - firstDay + 1;
+            double burnRate = elapsed > 0 ? total / elapsed : 0;
+            double projected = elapsed > 0 && elapsed < length ? total + burnRate * (length - elapsed) : total;
+            boolean divisible = budgeted && budget != 0;
+            return new BudgetUtilization(domain, grain.label(bucket), total, budgeted ? budget : null,
+                    divisible ? total / budget : null, burnRate, projected, divisible ? projected / budget : null);
+        }
+
+        private double consumption(int month) {
+            int index = month - firstMonth;
+            return index >= 0 && index < consumption.length ? consumption[index] : 0;
+        }
+
+        // The budget in force in a month; months after the last recorded one keep its budget
+        private double budget(int month) {
+            int index = month - firstMonth;
+            if (index < 0 || effective.length == 0) {
+                return Double.NaN;
+            }
+            return effective[Math.min(index, effective.length - 1)];
+        }
+
+        // The index of a month, growing the arrays to cover it
+        private int indexOf(int month) {
+            if (consumption.length == 0) {
+                firstMonth = month;
+                resize(0, 1);
+            } else if (month < firstMonth) {
+                resize(firstMonth - month, consumption.length + firstMonth - month);
+                firstMonth = month;
+            } else if (month - firstMonth >= consumption.length) {
+                resize(0, month - firstMonth + 1);
+            }
+            return month - firstMonth;
+        }
+
+        // Copies the arrays into arrays of a new length, shifted right by shift months
+        private void resize(int shift, int length) {
+            int oldLength = consumption.length;
+            double[] newConsumption = new double[length];
+            double[] newBudgets = new double[length];
+            int[] newBudgetDays = new int[length];
+            double[] newEffective = new double[length];
+            Arrays.fill(newBudgets, Double.NaN);
+            Arrays.fill(newEffective, Double.NaN);
+            System.arraycopy(consumption, 0, newConsumption, shift, oldLength);
+            System.arraycopy(budgets, 0, newBudgets, shift, oldLength);
+            System.arraycopy(budgetDays, 0, newBudgetDays, shift, oldLength);
+            System.arraycopy(effective, 0, newEffective, shift, oldLength);
+            if (oldLength > 0) {
+                // New months at the end keep the last budget in force
+                Arrays.fill(newEffective, shift + oldLength, length, effective[oldLength - 1]);
+            }
+            consumption = newConsumption;
+            budgets = newBudgets;
+            budgetDays = newBudgetDays;
+            effective = newEffective;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.TimeGrain;
+import com.example.customized.dashboard.repository.DimensionKeys;
+import com.example.customized.dashboard.repository.FactTable;
+import com.example.customized.dashboard.repository.JsonRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// Marks this class as a Spring Service; it tracks the consumption of each FinancialDomain against its budget
+@Service
+public class BudgetService {
+
+    @Autowired
+    private JsonRepository jsonRepository; // Provides the fact table snapshots
+
+    // Totals of the rows of tracked
+    private BudgetLedger ledger;
+
+    // The table the ledger was last brought up to
+    private FactTable tracked;
+
+    // Guards the ledger; a lock rather than a monitor, so virtual threads waiting for a catch-up
+    // under it do not pin their carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Evaluates a domain's budget in the period containing a day.
+     *
+     * @param domain   The FinancialDomain.
+     * @param grain    The length of the period: MONTH, QUARTER or YEAR.
+     * @param epochDay A day of the period, or null for the date of the latest record.
+     * @param asOfDay  The day up to which the period has elapsed, or null for the date of the latest record.
+     * @return The utilization, or null if the domain has no records.
+     * @throws IOException If there is an issue reading the data
+     */
+    public BudgetUtilization getUtilization(String domain, TimeGrain grain, Integer epochDay, Integer asOfDay)
+            throws IOException {
+        return read(ledger -> ledger.utilization(domain, grain, dayOr(epochDay, ledger), dayOr(asOfDay, ledger)));
+    }
+
+    /**
+     * Evaluates the budget of every domain in the period containing a day.
+     *
+     * @param grain    The length of the period: MONTH, QUARTER or YEAR.
+     * @param epochDay A day of the period, or null for the date of the latest record.
+     * @param asOfDay  The day up to which the period has elapsed, or null for the date of the latest record.
+     * @return The utilization of each domain, ordered by domain name; empty without data.
+     * @throws IOException If there is an issue reading the data
+     */
+    public List<BudgetUtilization> getUtilizations(TimeGrain grain, Integer epochDay, Integer asOfDay)
+            throws IOException {
+        return read(ledger -> ledger.utilizationAll(grain, dayOr(epochDay, ledger), dayOr(asOfDay, ledger)));
+    }
+
+    // Reads the ledger brought up to the latest snapshot. Rows appended since the last read are
+    // added; any other change (a reload, or ingested runs merged into new rows) rebuilds it
+    private <T> T read(Function<BudgetLedger, T> reader) throws IOException {
+        FactTable table = jsonRepository.getFactTable();
+        lock.lock();
+        try {
+            if (tracked == null || !table.extendsTable(tracked)) {
+                ledger = new BudgetLedger();
+                addRows(table, 0);
+            } else if (table.size() > tracked.size()) {
+                addRows(table, tracked.size());
+            }
+            tracked = table;
+            return reader.apply(ledger);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Adds the rows from startRow to the end of the table to the ledger
+    private void addRows(FactTable table, int startRow) {
+        DimensionKeys domains = table.keys(Dimension.FINANCIAL_DOMAIN);
+        for (int row = startRow; row < table.size(); row++) {
+            ledger.add(domains.name(domains.keyOf(row)), table.date(row), table.consumption(row), table.budget(row));
+        }
+    }
+
+    // A requested day, defaulting to the date of the latest record
+    private static int dayOr(Integer epochDay, BudgetLedger ledger) {
+        return epochDay != null ? epochDay : ledger.latestDay();
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.customized.dashboard.service;
+
+/**
+ * Consumption of a FinancialDomain against its budget in one time period, with a projection
+ * of the period's end at the current burn rate.
+ *
+ * @param domain                 The FinancialDomain.
+ * @param timePeriod             The period label (e.g., "2024-06", "2024-Q2", "2024").
+ * @param consumption            Consumption recorded in the period.
+ * @param budget                 The period's budget, or null if no budget is known yet.
+ * @param utilization            consumption / budget, or null without a budget.
+ * @param burnRate               Average consumption per day over the elapsed part of the period.
+ * @param projectedConsumption   Consumption at the end of the period if the burn rate holds.
+ * @param projectedUtilization   projectedConsumption / budget, or null without a budget.
+ */
+public record BudgetUtilization(String domain, String timePeriod, double consumption, Double budget,
+                                Double utilization, double burnRate, double projectedConsumption,
+                                Double projectedUtilization) {
+}
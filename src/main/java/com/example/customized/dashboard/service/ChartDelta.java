@@ -0,0 +1,161 @@
+package com.example.customized.dashboard.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The (key, time period) cells in which two results of the same query differ. Cells carry
+ * their new totals rather than increments, so applying a delta twice, or after a snapshot that
+ * already contains it, leaves a chart unchanged. Keys are identified by name, so results of
+ * tables with different key codes can be compared.
+ */
+final class ChartDelta {
+
+    // The newer result
+    private final AggregationResult current;
+
+    // Bucket indexes of the newer result whose totals are new or changed
+    private final int[] cells;
+
+    // Key positions of the newer result whose budget is new or changed
+    private final int[] budgets;
+
+    // True if the selected keys or their order changed
+    private final boolean keysChanged;
+
+    // False if a cell of a kept key disappeared, which a delta of totals cannot express
+    private final boolean expressible;
+
+    private ChartDelta(AggregationResult current, int[] cells, int[] budgets, boolean keysChanged, boolean expressible) {
+        this.current = current;
+        this.cells = cells;
+        this.budgets = budgets;
+        this.keysChanged = keysChanged;
+        this.expressible = expressible;
+    }
+
+    /**
+     * Compares two results of a query, walking the buckets of each key in chronological order.
+     *
+     * @param previous The older result.
+     * @param current  The newer result.
+     * @return The changes from previous to current.
+     */
+    static ChartDelta between(AggregationResult previous, AggregationResult current) {
+        Map<String, Integer> previousKeys = new HashMap<>();
+        for (int i = 0; i < previous.keyCount(); i++) {
+            previousKeys.put(previous.keyName(i), i);
+        }
+        List<Integer> cells = new ArrayList<>();
+        List<Integer> budgets = new ArrayList<>();
+        boolean keysChanged = previous.keyCount() != current.keyCount();
+        boolean expressible = true;
+        for (int i = 0; i < current.keyCount(); i++) {
+            Integer old = previousKeys.get(current.keyName(i));
+            keysChanged |= old == null || old != i;
+            if (current.hasBudgets() && (old == null || Double.compare(previous.budget(old), current.budget(i)) != 0)) {
+                budgets.add(i);
+            }
+            int oldBucket = old == null ? 0 : previous.bucketStart(old);
+            int oldEnd = old == null ? 0 : previous.bucketEnd(old);
+            for (int bucket = current.bucketStart(i); bucket < current.bucketEnd(i); bucket++) {
+                // Buckets are sorted by id, so the previous key's buckets are walked alongside
+                while (oldBucket < oldEnd && previous.bucket(oldBucket) < current.bucket(bucket)) {
+                    expressible = false;
+                    oldBucket++;
+                }
+                if (oldBucket < oldEnd && previous.bucket(oldBucket) == current.bucket(bucket)) {
+                    if (Double.compare(previous.totalConsumption(oldBucket), current.totalConsumption(bucket)) != 0) {
+                        cells.add(bucket);
+                    }
+                    oldBucket++;
+                } else {
+                    cells.add(bucket);
+                }
+            }
+            expressible &= oldBucket == oldEnd;
+        }
+        return new ChartDelta(current, toArray(cells), toArray(budgets), keysChanged, expressible);
+    }
+
+    /**
+     * @return True if the results are equal.
+     */
+    boolean isEmpty() {
+        return expressible && cells.length == 0 && budgets.length == 0 && !keysChanged;
+    }
+
+    /**
+     * @return False if a time period of a kept key disappeared, e.g. after the data was
+     *         reloaded; the chart then has to be replaced as a whole.
+     */
+    boolean isExpressible() {
+        return expressible;
+    }
+
+    /**
+     * Writes the delta as {"dataVersion":..,"keys":[..],"cells":[{"key","timePeriod",
+     * "totalConsumption"},..],"budgets":{..}}. keys, the selected keys in response order, is only
+     * present if they changed; keys missing from it are no longer shown. budgets is only present
+     * for FinancialDomain charts whose budgets changed.
+     *
+     * @param factory     Creates the generator.
+     * @param dataVersion The data version of the newer result.
+     * @return The JSON object.
+     */
+    String toJson(JsonFactory factory, long dataVersion) {
+        StringWriter out = new StringWriter(64 + cells.length * 64);
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeNumberField("dataVersion", dataVersion);
+            if (keysChanged) {
+                generator.writeArrayFieldStart("keys");
+                for (int i = 0; i < current.keyCount(); i++) {
+                    generator.writeString(current.keyName(i));
+                }
+                generator.writeEndArray();
+            }
+            generator.writeArrayFieldStart("cells");
+            int key = 0;
+            for (int bucket : cells) {
+                while (bucket >= current.bucketEnd(key)) {
+                    key++;
+                }
+                generator.writeStartObject();
+                generator.writeStringField("key", current.keyName(key));
+                generator.writeStringField("timePeriod", current.timePeriod(bucket));
+                generator.writeNumberField("totalConsumption", current.totalConsumption(bucket));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            if (budgets.length > 0) {
+                generator.writeObjectFieldStart("budgets");
+                for (int i : budgets) {
+                    double budget = current.budget(i);
+                    if (Double.isNaN(budget)) {
+                        generator.writeNullField(current.keyName(i));
+                    } else {
+                        generator.writeNumberField(current.keyName(i), budget);
+                    }
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
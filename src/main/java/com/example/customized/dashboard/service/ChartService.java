@@ -1,15 +1,28 @@
 package com.example.customized.dashboard.service;
 
+import com.example.customized.dashboard.model.Chart;
+import com.example.customized.dashboard.model.ChartEntry;
+import com.example.customized.dashboard.model.Dashboard;
+import com.example.customized.dashboard.model.FilterQuery;
+import com.example.customized.dashboard.repository.ChartMutation;
 import com.example.customized.dashboard.repository.ChartRepository;
+import com.example.customized.dashboard.repository.FactTable;
 import com.example.customized.dashboard.repository.JsonRepository;
+import com.example.customized.dashboard.repository.VersionedDashboard;
+import com.fasterxml.jackson.databind.util.RawValue;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 // Marks this class as a Spring Service, indicating it contains business logic
 @Service
@@ -21,6 +34,19 @@ public class ChartService {
     @Autowired
     private ChartRepository chartRepository; // Handles chart data persistence
 
+    @Autowired
+    private AggregationService aggregationService; // Aggregates the fact data for chart queries
+
+    @Autowired
+    private FilterResultCache filterResultCache; // Shares serialized results with the filter endpoint
+
+    @Autowired
+    private FilterResultWriter filterResultWriter; // Serializes aggregation results
+
+    // Results with more (key, time period) values than this are not cached, as in the filter endpoint
+    @Value("${dashboard.response.stream-threshold:65536}")
+    private int streamThreshold;
+
     /**
      * Retrieves mock data from the repository.
      * 
@@ -35,41 +61,185 @@ public class ChartService {
      * Retrieves the dashboard data for a specific user.
      * 
      * @param userId The ID of the user
-     * @return A map containing the user's dashboard data
+     * @return The user's dashboard data
      * @throws IOException If there is an issue reading the dashboard data
      */
-    public Map<String, Object> getDashboard(String userId) throws IOException {
+    public Dashboard getDashboard(String userId) throws IOException {
         return chartRepository.readDashboard(userId);
     }
 
     /**
-     * Adds a new chart to the user's dashboard.
-     * 
-     * @param userId         The ID of the user
-     * @param dashboardInfo  Information about the chart's layout (position, size)
-     * @param chartInfo      Information about the chart's data and configuration
-     * @throws IOException   If there is an issue writing to the charts file
+     * Retrieves the dashboard of a user together with its version, which changes with every
+     * change to the dashboard and serves as its entity tag.
+     *
+     * @param userId The ID of the user
+     * @return The user's dashboard and its versions
+     */
+    public VersionedDashboard getVersionedDashboard(String userId) {
+        return chartRepository.readVersionedDashboard(userId);
+    }
+
+    /**
+     * Retrieves the changes to a user's dashboard after a version returned by an earlier read.
+     * The result holds the current version and, with full set to false, the charts added and
+     * updated since then with their layouts, the IDs of the charts removed since then and, only
+     * if the charts listed in it or their order changed, the new dashboardOrder.
+     * If the changes since the version are not known, e.g. because the store was restarted in
+     * between, full is true and the result holds the whole dashboardOrder and charts instead.
+     *
+     * @param userId The ID of the user
+     * @param since  A version returned by an earlier read of the user's dashboard
+     * @return A map containing version, full and either the changes or the whole dashboard
+     */
+    public Map<String, Object> getDashboardChanges(String userId, long since) {
+        VersionedDashboard versioned = chartRepository.readVersionedDashboard(userId);
+        Dashboard dashboard = versioned.dashboard();
+        Map<String, Object> changes = new LinkedHashMap<>();
+        changes.put("version", versioned.version());
+
+        if (!versioned.tracksChangesSince(since)) {
+            changes.put("full", true);
+            changes.put("dashboardOrder", dashboard.dashboardOrder());
+            changes.put("charts", dashboard.charts());
+            return changes;
+        }
+
+        Map<String, ChartEntry> added = new LinkedHashMap<>();
+        Map<String, ChartEntry> updated = new LinkedHashMap<>();
+        versioned.charts().forEach((chartId, chartVersion) -> {
+            if (chartVersion.changedAt() > since) {
+                ChartEntry chart = new ChartEntry(dashboard.layout(chartId), dashboard.chart(chartId));
+                (chartVersion.addedAt() > since ? added : updated).put(chartId, chart);
+            }
+        });
+        List<String> removed = new ArrayList<>();
+        versioned.removedAt().forEach((chartId, removedAt) -> {
+            if (removedAt > since) {
+                removed.add(chartId);
+            }
+        });
+
+        changes.put("full", false);
+        changes.put("added", added);
+        changes.put("updated", updated);
+        changes.put("removed", removed);
+        if (versioned.orderChangedAt() > since) {
+            changes.put("dashboardOrder", dashboard.dashboardOrder());
+        }
+        return changes;
+    }
+
+    /**
+     * Retrieves the dashboard of a user together with the data of every chart on it, as if each
+     * chart had been requested from the filter endpoint with the given date range.
+     * The fact data is read once; charts with the same query share one result, and charts whose
+     * results are not cached are aggregated together, sharing a single pass over the rows.
+     * Results are cached like those of the filter endpoint: concurrent renders and filter
+     * requests missing the same query wait for one computation, and results above the
+     * streaming threshold are not cached.
+     *
+     * @param userId The ID of the user
+     * @param from   Start date for filtering data, "yyyy-MM-dd"
+     * @param to     End date for filtering data, "yyyy-MM-dd"
+     * @return A map containing dashboardOrder, charts and the data of each chart by chart ID
+     * @throws IOException If there is an issue reading the dashboard or the fact data
+     * @throws IllegalArgumentException If a chart has to be computed and from or to is not a date
      */
-    public void addChartToDashboard(String userId, Map<String, Object> dashboardInfo, Map<String, Object> chartInfo) throws IOException {
-        Map<String, Object> chartsData = chartRepository.readCharts();
+    public Map<String, Object> renderDashboard(String userId, String from, String to) throws IOException {
+        Dashboard dashboard = chartRepository.readDashboard(userId);
+        Map<String, FilterQuery> chartQueries = chartQueries(dashboard, from, to);
 
-        // Ensure the user ID exists in the charts data
-        if (!chartsData.containsKey(userId)) {
-            chartsData.put(userId, Map.of("dashboardOrder", new ArrayList<>(), "charts", new HashMap<>()));
+        // Serve cached results, then aggregate the remaining queries in one batch. Each query is
+        // read from the cache once, so it counts as a single hit or miss
+        FactTable table = jsonRepository.getFactTable();
+        Set<FilterQuery> queries = new LinkedHashSet<>(chartQueries.values());
+        List<FilterQuery> missing = new ArrayList<>();
+        for (FilterQuery query : queries) {
+            if (!filterResultCache.contains(query, table.version())) {
+                missing.add(query);
+            }
+        }
+        // The first query this request has to compute aggregates all the missing ones
+        Map<FilterQuery, byte[]> bodies = new HashMap<>();
+        Map<FilterQuery, AggregationResult> batch = new HashMap<>();
+        for (FilterQuery query : queries) {
+            byte[] body = filterResultCache.get(query, table.version(), () -> {
+                if (batch.isEmpty() && missing.contains(query)) {
+                    batch.putAll(aggregationService.aggregateAll(table, missing));
+                }
+                // A query cached when the batch was planned may have been evicted since
+                AggregationResult result = batch.containsKey(query) ? batch.get(query) : aggregationService.aggregate(table, query);
+                return result.bucketCount() > streamThreshold ? null : filterResultWriter.toJson(result);
+            });
+            if (body == null) {
+                // Too large to cache; a result computed by another request was not shared
+                AggregationResult result = batch.containsKey(query) ? batch.get(query) : aggregationService.aggregate(table, query);
+                body = filterResultWriter.toJson(result);
+            }
+            bodies.put(query, body);
         }
 
-        // Retrieve user's dashboard order and charts
-        Map<String, Object> userDashboard = (Map<String, Object>) chartsData.get(userId);
-        List<Map<String, Object>> dashboardOrder = (List<Map<String, Object>>) userDashboard.get("dashboardOrder");
-        Map<String, Map<String, Object>> charts = (Map<String, Map<String, Object>>) userDashboard.get("charts");
+        // The serialized results are embedded as they are, without being parsed again
+        Map<String, Object> data = new LinkedHashMap<>();
+        chartQueries.forEach((chartId, query) ->
+                data.put(chartId, new RawValue(new String(bodies.get(query), StandardCharsets.UTF_8))));
+
+        Map<String, Object> rendered = new LinkedHashMap<>();
+        rendered.put("dashboardOrder", dashboard.dashboardOrder());
+        rendered.put("charts", dashboard.charts());
+        rendered.put("data", data);
+        return rendered;
+    }
 
-        // Add the new chart to the dashboardOrder and charts
-        dashboardOrder.add(dashboardInfo);
-        String chartId = (String) dashboardInfo.get("id");
-        charts.put(chartId, chartInfo);
+    /**
+     * Builds the filter query of every chart of a dashboard that has data to compute.
+     *
+     * @param dashboard The dashboard
+     * @param from      Start date for filtering data
+     * @param to        End date for filtering data
+     * @return The query of each chart by chart ID; charts without a dimension or groupBy are left out
+     */
+    Map<String, FilterQuery> chartQueries(Dashboard dashboard, String from, String to) {
+        Map<String, FilterQuery> chartQueries = new LinkedHashMap<>();
+        for (Map.Entry<String, Chart> entry : dashboard.charts().entrySet()) {
+            FilterQuery query = chartQuery(entry.getValue(), from, to);
+            if (query != null) {
+                chartQueries.put(entry.getKey(), query);
+            }
+        }
+        return chartQueries;
+    }
+
+    /**
+     * Builds the filter query of a chart. A chart's filters restrict its records like the
+     * conditions of the filter endpoint, e.g. {"providerName": ["AWS"], "minBudget": 1000}.
+     * The chart's properties were validated when it was stored, so only the dates can fail.
+     *
+     * @param chart The chart configuration
+     * @param from  Start date for filtering data
+     * @param to    End date for filtering data
+     * @return The query, or null if the chart has no dimension or groupBy or is not recognized
+     */
+    private FilterQuery chartQuery(Chart chart, String from, String to) {
+        if (chart.dimension() == null || chart.groupBy() == null || !chart.recognized()) {
+            return null;
+        }
+        String maxDisplay = chart.maxDisplay() == null ? "all" : chart.maxDisplay().toString();
+        return FilterQuery.of(chart.dimension().getApiName(), chart.groupBy().getApiName(), from, to, maxDisplay,
+                chart.filters());
+    }
 
-        // Save the updated charts data back to the file
-        chartRepository.writeCharts(chartsData);
+    /**
+     * Adds a new chart to the user's dashboard.
+     * 
+     * @param userId         The ID of the user
+     * @param dashboardInfo  Information about the chart's layout (position, size)
+     * @param chartInfo      Information about the chart's data and configuration
+     * @throws IOException   If there is an issue storing the change
+     */
+    public void addChartToDashboard(String userId, Chart.Layout dashboardInfo, Chart chartInfo) throws IOException {
+        // Add the new chart to the dashboardOrder and charts; only the change itself is logged
+        chartRepository.apply(ChartMutation.add(userId, dashboardInfo, chartInfo));
     }
 
     /**
@@ -77,23 +247,12 @@ public class ChartService {
      * 
      * @param userId   The ID of the user
      * @param chartId  The ID of the chart to delete
-     * @throws IOException If there is an issue writing to the charts file
+     * @return False if the user has no dashboard
+     * @throws IOException If there is an issue storing the change
      */
-    public void deleteChart(String userId, String chartId) throws IOException {
-        Map<String, Object> dashboard = chartRepository.readDashboard(userId);
-
-        // Remove the chart from the charts map
-        Map<String, Object> charts = (Map<String, Object>) dashboard.getOrDefault("charts", new HashMap<>());
-        charts.remove(chartId);
-        dashboard.put("charts", charts);
-
-        // Remove the chart from the dashboardOrder list
-        List<Map<String, Object>> dashboardOrder = (List<Map<String, Object>>) dashboard.getOrDefault("dashboardOrder", new ArrayList<>());
-        dashboardOrder.removeIf(order -> order.get("id").equals(chartId));
-        dashboard.put("dashboardOrder", dashboardOrder);
-
-        // Save the updated dashboard data back to the file
-        chartRepository.writeDashboard(userId, dashboard);
+    public boolean deleteChart(String userId, String chartId) throws IOException {
+        // Remove the chart from the charts map and the dashboardOrder list
+        return chartRepository.apply(ChartMutation.delete(userId, chartId));
     }
 
     /**
@@ -103,32 +262,11 @@ public class ChartService {
      * @param chartId        The ID of the chart to update
      * @param dashboardInfo  Updated layout information for the chart
      * @param chartInfo      Updated configuration and data for the chart
-     * @throws IOException   If there is an issue writing to the charts file
+     * @return False if the user has no dashboard
+     * @throws IOException   If there is an issue storing the change
      */
-    public void updateChart(String userId, String chartId, Map<String, Object> dashboardInfo, Map<String, Object> chartInfo) throws IOException {
-        // Retrieve the user's current dashboard data
-        Map<String, Object> dashboard = chartRepository.readDashboard(userId);
-
-        // Update the chart's information in the charts map
-        Map<String, Object> charts = (Map<String, Object>) dashboard.getOrDefault("charts", new HashMap<>());
-        if (charts.containsKey(chartId)) {
-            charts.put(chartId, chartInfo);
-        }
-
-        // Update the chart's layout in the dashboardOrder list
-        List<Map<String, Object>> dashboardOrder = (List<Map<String, Object>>) dashboard.getOrDefault("dashboardOrder", new ArrayList<>());
-        for (Map<String, Object> layout : dashboardOrder) {
-            if (layout.get("id").equals(chartId)) {
-                layout.put("x", dashboardInfo.get("x"));
-                layout.put("y", dashboardInfo.get("y"));
-                layout.put("width", dashboardInfo.get("width"));
-                layout.put("height", dashboardInfo.get("height"));
-            }
-        }
-
-        // Save the updated dashboard data back to the file
-        dashboard.put("charts", charts);
-        dashboard.put("dashboardOrder", dashboardOrder);
-        chartRepository.writeDashboard(userId, dashboard);
+    public boolean updateChart(String userId, String chartId, Chart.Layout dashboardInfo, Chart chartInfo) throws IOException {
+        // Update the chart's information and its layout (position, size)
+        return chartRepository.apply(ChartMutation.update(userId, chartId, dashboardInfo, chartInfo));
     }
 }
@@ -0,0 +1,188 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.TimeGrain;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hot-path metrics of filter queries: per-stage timers, rows scanned, groups produced and bytes
+ * written, tagged by dimension and groupBy. A (stage, dimension, groupBy) meter is registered the
+ * first time it records a value and then looked up by enum ordinals, so recording costs an array
+ * read and an atomic add, with no tag resolution or allocation per request, and only the
+ * combinations actually queried publish series. Queries whose dimension is not recognised are not
+ * recorded.
+ * Timers and summaries publish histogram buckets over a bounded expected range rather than
+ * client-side percentiles, so percentiles are computed by the monitoring system and recording
+ * stays cheap enough to leave on in production.
+ */
+// Marks this class as a Spring Service; it records the hot-path metrics of filter queries
+@Service
+public class DashboardMetrics {
+
+    private static final Dimension[] DIMENSIONS = Dimension.values();
+    private static final TimeGrain[] GRAINS = TimeGrain.values();
+
+    // Expected ranges of the histograms: results may be streamed past the response cache's size
+    private static final double MAX_GROUPS = 10_000_000;
+    private static final double MIN_RESPONSE_BYTES = 64;
+    private static final double MAX_RESPONSE_BYTES = 256 * 1024 * 1024;
+
+    // Records nothing; used by services created outside of Spring, e.g. in tests and benchmarks;
+    // declared after the constants the constructor reads
+    static final DashboardMetrics NOOP = new DashboardMetrics(new CompositeMeterRegistry());
+
+    /**
+     * Stages of a filter request, in the order they run.
+     */
+    public enum Stage {
+        // Normalizing the request parameters, including the date parsing
+        PARSE,
+        // Scanning the rows or reading the rollups into per-(key, period) sums
+        AGGREGATE,
+        // Selecting the keys to return and sorting their periods
+        SELECT,
+        // Writing the JSON response
+        SERIALIZE
+    }
+
+    private final MeterRegistry registry;
+
+    // Stage timers, indexed by (stage, dimension, grain) ordinals; null until first recorded
+    private final AtomicReferenceArray<Timer> stageTimers;
+
+    // Rows read by scans, indexed by (dimension, grain) ordinals
+    private final AtomicReferenceArray<Counter> rowsScanned;
+
+    // (key, time period) values per result, indexed by (dimension, grain) ordinals
+    private final AtomicReferenceArray<DistributionSummary> groups;
+
+    // Size of serialized responses, buffered for the cache or streamed to the client
+    private final DistributionSummary bufferedBytes;
+    private final DistributionSummary streamedBytes;
+
+    /**
+     * @param registry The registry the meters are registered with.
+     */
+    public DashboardMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        stageTimers = new AtomicReferenceArray<>(Stage.values().length * DIMENSIONS.length * GRAINS.length);
+        rowsScanned = new AtomicReferenceArray<>(DIMENSIONS.length * GRAINS.length);
+        groups = new AtomicReferenceArray<>(DIMENSIONS.length * GRAINS.length);
+        bufferedBytes = responseBytes(registry, "buffered");
+        streamedBytes = responseBytes(registry, "streamed");
+    }
+
+    private static DistributionSummary responseBytes(MeterRegistry registry, String mode) {
+        return DistributionSummary.builder("dashboard.filter.response.bytes")
+                .description("Size of serialized filter responses")
+                .baseUnit("bytes")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MIN_RESPONSE_BYTES)
+                .maximumExpectedValue(MAX_RESPONSE_BYTES)
+                .register(registry);
+    }
+
+    /**
+     * Records the time of a stage that started at startNanos and ends now.
+     *
+     * @param stage      The stage.
+     * @param dimension  The query's dimension, or null if it is not recognised; then nothing is recorded.
+     * @param grain      The query's time grouping.
+     * @param startNanos The start of the stage, from System.nanoTime().
+     * @return The end of the stage, so consecutive stages can be timed from one clock read each.
+     */
+    public long stage(Stage stage, Dimension dimension, TimeGrain grain, long startNanos) {
+        long now = System.nanoTime();
+        if (dimension != null) {
+            int index = stage.ordinal() * DIMENSIONS.length * GRAINS.length + index(dimension, grain);
+            Timer timer = stageTimers.get(index);
+            if (timer == null) {
+                // Registering again returns the same meter, so threads racing here agree on it
+                timer = Timer.builder("dashboard.filter.stage")
+                        .description("Time spent in each stage of a filter query")
+                        .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                        .tags(tags(dimension, grain))
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofNanos(1000))
+                        .maximumExpectedValue(Duration.ofSeconds(10))
+                        .register(registry);
+                stageTimers.set(index, timer);
+            }
+            timer.record(now - startNanos, TimeUnit.NANOSECONDS);
+        }
+        return now;
+    }
+
+    /**
+     * @param dimension The query's dimension, or null if it is not recognised; then nothing is recorded.
+     * @param grain     The query's time grouping.
+     * @param rows      The number of rows read to answer the query.
+     */
+    public void rowsScanned(Dimension dimension, TimeGrain grain, long rows) {
+        if (dimension == null) {
+            return;
+        }
+        int index = index(dimension, grain);
+        Counter counter = rowsScanned.get(index);
+        if (counter == null) {
+            counter = Counter.builder("dashboard.filter.rows.scanned")
+                    .description("Fact rows read to answer filter queries")
+                    .tags(tags(dimension, grain))
+                    .register(registry);
+            rowsScanned.set(index, counter);
+        }
+        counter.increment(rows);
+    }
+
+    /**
+     * @param dimension The query's dimension, or null if it is not recognised; then nothing is recorded.
+     * @param grain     The query's time grouping.
+     * @param count     The number of (key, time period) values in the query's result.
+     */
+    public void groups(Dimension dimension, TimeGrain grain, int count) {
+        if (dimension == null) {
+            return;
+        }
+        int index = index(dimension, grain);
+        DistributionSummary summary = groups.get(index);
+        if (summary == null) {
+            summary = DistributionSummary.builder("dashboard.filter.groups")
+                    .description("(key, time period) values produced per filter query")
+                    .tags(tags(dimension, grain))
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(1.0)
+                    .maximumExpectedValue(MAX_GROUPS)
+                    .register(registry);
+            groups.set(index, summary);
+        }
+        summary.record(count);
+    }
+
+    /**
+     * @param streamed True if the response was written straight to the client rather than buffered.
+     * @param bytes    The size of the serialized response.
+     */
+    public void responseBytes(boolean streamed, long bytes) {
+        (streamed ? streamedBytes : bufferedBytes).record(bytes);
+    }
+
+    private static int index(Dimension dimension, TimeGrain grain) {
+        return dimension.ordinal() * GRAINS.length + grain.ordinal();
+    }
+
+    private static Tags tags(Dimension dimension, TimeGrain grain) {
+        return Tags.of("dimension", dimension.getApiName(), "groupBy", grain.getApiName());
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.FilterQuery;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Marks this class as a Spring Service; it caches serialized filter responses
+@Service
+public class FilterResultCache implements MeterBinder {
+
+    // Serialized responses keyed by normalized query and data version; bounded by total bytes.
+    // Entries are futures, so a response is computed outside of the map's locks: with virtual
+    // threads, concurrent misses park on the future instead of pinning a carrier on a monitor
+    private final AsyncCache<Key, byte[]> cache;
+
+    // Highest data version seen so far; entries of older versions are dropped when it changes
+    private final AtomicLong currentVersion = new AtomicLong();
+
+    /**
+     * @param maxWeightBytes Maximum total size of the cached responses, in bytes.
+     */
+    public FilterResultCache(@Value("${dashboard.cache.max-weight-bytes:67108864}") long maxWeightBytes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                .weigher((Key key, byte[] value) -> value.length)
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * Returns the cached response of a query, computing and caching it on a miss.
+     * Concurrent misses for the same key compute the response only once, on the thread of the
+     * first miss; the others wait for it. A null response is returned to every waiter and not
+     * cached, and neither is a response of a data version older than one already seen, as it
+     * could never be hit again.
+     *
+     * @param query   The normalized filter query.
+     * @param version The version of the data the response is computed from.
+     * @param compute Produces the serialized response on a miss.
+     * @return The serialized JSON response.
+     */
+    public byte[] get(FilterQuery query, long version, Supplier<byte[]> compute) {
+        observe(version);
+        if (version < currentVersion.get()) {
+            return compute.get();
+        }
+        Key key = new Key(query, version);
+        CompletableFuture<byte[]> cached = cache.getIfPresent(key);
+        if (cached == null) {
+            CompletableFuture<byte[]> computing = new CompletableFuture<>();
+            cached = cache.asMap().putIfAbsent(key, computing);
+            if (cached == null) {
+                // This request computes the response; failed and null results are not kept
+                try {
+                    computing.complete(compute.get());
+                } catch (RuntimeException | Error e) {
+                    computing.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    // Newer data arrived meanwhile, possibly after its stale entries were dropped
+                    if (version < currentVersion.get()) {
+                        cache.asMap().remove(key, computing);
+                    }
+                }
+                cached = computing;
+            }
+        }
+        return join(cached);
+    }
+
+    /**
+     * Returns the cached response of a query without computing it on a miss.
+     *
+     * @param query   The normalized filter query.
+     * @param version The version of the data the response is computed from.
+     * @return The serialized JSON response, or null if it is not cached.
+     */
+    public byte[] getIfPresent(FilterQuery query, long version) {
+        observe(version);
+        CompletableFuture<byte[]> cached = cache.getIfPresent(new Key(query, version));
+        return cached == null ? null : join(cached);
+    }
+
+    /**
+     * Tells whether the response of a query is cached, without counting a hit or a miss; the
+     * response may still be evicted before it is read.
+     *
+     * @param query   The normalized filter query.
+     * @param version The version of the data the response is computed from.
+     * @return True if the response is cached or being computed.
+     */
+    public boolean contains(FilterQuery query, long version) {
+        return cache.asMap().containsKey(new Key(query, version));
+    }
+
+    /**
+     * @return Hit, miss and eviction counts along with the current size of the cache.
+     */
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.synchronous().stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("evictedBytes", stats.evictionWeight());
+        result.put("entries", cache.synchronous().estimatedSize());
+        result.put("dataVersion", currentVersion.get());
+        return result;
+    }
+
+    /**
+     * Publishes the cache's hit, miss, eviction and size metrics along with its hit ratio;
+     * called by Spring Boot for the application's meter registry.
+     *
+     * @param registry The registry to publish to.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "filterResults");
+        Gauge.builder("dashboard.filter.cache.hit.ratio", cache.synchronous(), c -> c.stats().hitRate())
+                .description("Fraction of filter requests answered from the result cache")
+                .register(registry);
+    }
+
+    // Drops the entries of older versions the first time a newer data version is seen. Entries
+    // of the new version, which concurrent requests may already be computing, are kept
+    private void observe(long version) {
+        long previous = currentVersion.getAndAccumulate(version, Math::max);
+        if (version > previous) {
+            // The data has changed; responses of older versions can never be hit again
+            cache.asMap().keySet().removeIf(key -> key.version() < version);
+        }
+    }
+
+    // Waits for a response computed by another request, rethrowing its failure as is
+    private static byte[] join(CompletableFuture<byte[]> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Cache key: the normalized query and the data version it was answered from
+    private record Key(FilterQuery query, long version) {
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.customized.dashboard.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+// Marks this class as a Spring Service; it serializes aggregation results into filter responses
+@Service
+public class FilterResultWriter {
+
+    // Approximate size of one serialized time period, used to presize buffers
+    private static final int BYTES_PER_BUCKET = 56;
+
+    // Largest magnitude up to which every whole double is exactly a long (2^53)
+    private static final double MAX_EXACT_LONG = 9007199254740992.0;
+
+    // Spring's configured ObjectMapper; its factory creates the streaming generators
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Records the serialize stage and response sizes; records nothing when created outside of Spring
+    @Autowired(required = false)
+    private DashboardMetrics metrics = DashboardMetrics.NOOP;
+
+    /**
+     * Serializes an aggregation result into the JSON body of a filter response.
+     *
+     * @param result The aggregation result.
+     * @return The serialized JSON array, one entry per key.
+     */
+    public byte[] toJson(AggregationResult result) {
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + result.bucketCount() * BYTES_PER_BUCKET);
+        try {
+            writeJson(result, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        metrics.stage(DashboardMetrics.Stage.SERIALIZE, result.dimension(), result.grain(), start);
+        metrics.responseBytes(false, out.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes an aggregation result as the JSON body of a filter response, token by token,
+     * straight from the result's arrays. No intermediate maps are built, so the heap used does
+     * not grow with the size of the result; the stream is not closed.
+     * The shape and field order are those of the original map based response:
+     * [{"aggregatedValues":[{"timePeriod":..,"totalConsumption":..}, ..],"key":..,"budget":..}, ..]
+     * A key's budget is that of its earliest record in the query's range; whole budgets are
+     * written as integers.
+     *
+     * @param result The aggregation result.
+     * @param out    The stream to write to.
+     * @throws IOException If an error occurs while writing.
+     */
+    public void write(AggregationResult result, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        CountingOutputStream counting = new CountingOutputStream(out);
+        writeJson(result, counting);
+        metrics.stage(DashboardMetrics.Stage.SERIALIZE, result.dimension(), result.grain(), start);
+        metrics.responseBytes(true, counting.count);
+    }
+
+    /**
+     * Serializes an approximate answer into the JSON body of a filter response:
+     * {"approximate":..,"rowsInRange":..,"sampledRows":..,"distinctAccounts":{"estimate":..,
+     * "error":..},"data":[..]}. data has the shape of an exact response; estimated values also
+     * carry "error", the half-width of their 95% confidence interval. distinctAccounts is left
+     * out for queries with conditions, and while the account sketches of the range are built.
+     *
+     * @param approximate The approximate result.
+     * @return The serialized JSON object.
+     */
+    public byte[] toJson(ApproximateResult approximate) {
+        long start = System.nanoTime();
+        AggregationResult result = approximate.result();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128 + result.bucketCount() * BYTES_PER_BUCKET);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeBooleanField("approximate", !approximate.isExact());
+            generator.writeNumberField("rowsInRange", approximate.rowsInRange());
+            generator.writeNumberField("sampledRows", approximate.sampledRows());
+            if (approximate.accounts() != null) {
+                long estimate = approximate.accounts().estimate();
+                generator.writeObjectFieldStart("distinctAccounts");
+                generator.writeNumberField("estimate", estimate);
+                generator.writeNumberField("error",
+                        Math.round(AggregationService.Z_95 * HyperLogLog.relativeError() * estimate));
+                generator.writeEndObject();
+            }
+            generator.writeFieldName("data");
+            writeEntries(result, generator);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        metrics.stage(DashboardMetrics.Stage.SERIALIZE, result.dimension(), result.grain(), start);
+        metrics.responseBytes(false, out.size());
+        return out.toByteArray();
+    }
+
+    // Writes the response tokens; the generator buffers them and flushes in large chunks
+    private void writeJson(AggregationResult result, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            writeEntries(result, generator);
+        }
+    }
+
+    // Writes the array of keys with their time periods
+    private static void writeEntries(AggregationResult result, JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        for (int i = 0; i < result.keyCount(); i++) {
+            generator.writeStartObject();
+
+            // One entry per time period, in chronological order
+            generator.writeArrayFieldStart("aggregatedValues");
+            for (int bucket = result.bucketStart(i); bucket < result.bucketEnd(i); bucket++) {
+                generator.writeStartObject();
+                generator.writeStringField("timePeriod", result.timePeriod(bucket));
+                generator.writeNumberField("totalConsumption", result.totalConsumption(bucket));
+                if (result.hasErrors()) {
+                    generator.writeNumberField("error", result.error(bucket));
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            generator.writeStringField("key", result.keyName(i));
+            if (result.hasBudgets()) {
+                // Include budget information for FinancialDomain
+                double budget = result.budget(i);
+                if (Double.isNaN(budget)) {
+                    generator.writeNullField("budget");
+                } else if (budget == Math.rint(budget) && Math.abs(budget) <= MAX_EXACT_LONG) {
+                    // Written as in mockData.json, where budgets are integers (800, not 800.0)
+                    generator.writeNumberField("budget", (long) budget);
+                } else {
+                    generator.writeNumberField("budget", budget);
+                }
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    // Counts the bytes written through it to the response
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.customized.dashboard.service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HyperLogLog sketch of the number of distinct values added to it. The 4096 one-byte registers
+ * give a standard error of about 1.6% at any cardinality, in 4 KiB. Sketches merge by keeping
+ * the larger of each register, so the sketches of disjoint parts of the data can be combined
+ * without reading the data again. Values are hashed with the 64-bit MurmurHash3 of their UTF-8
+ * bytes, so distinct values collide about as rarely as random 64-bit numbers.
+ */
+public final class HyperLogLog {
+
+    // Bits of the hash that select the register
+    private static final int PRECISION = 12;
+
+    private static final int REGISTERS = 1 << PRECISION;
+
+    // Bias correction constant for the register count
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    // Highest number of leading zeros, plus one, seen in the hashes of each register
+    private final byte[] registers = new byte[REGISTERS];
+
+    /**
+     * @param value A value to count.
+     */
+    public void add(String value) {
+        addHash(hash(value));
+    }
+
+    /**
+     * Counts a value by its hash, for callers that hash each value once and add it repeatedly.
+     *
+     * @param hash The value's {@link #hash(String)}.
+     */
+    void addHash(long hash) {
+        int register = (int) (hash >>> (64 - PRECISION));
+        // The remaining bits; the guard bit caps the rank when they are all zero
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[register]) {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    /**
+     * Adds the values counted by another sketch to this one.
+     *
+     * @param other The other sketch.
+     */
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return The estimated number of distinct values added. Small cardinalities are estimated
+     *         by linear counting of the empty registers, which is more accurate for them.
+     */
+    public long estimate() {
+        double sum = 0;
+        int empty = 0;
+        for (byte rank : registers) {
+            sum += 1.0 / (1L << rank);
+            if (rank == 0) {
+                empty++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && empty > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / empty);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return The standard error of the estimate, relative to the true cardinality.
+     */
+    public static double relativeError() {
+        return 1.04 / Math.sqrt(REGISTERS);
+    }
+
+    /**
+     * @param value A value.
+     * @return The first 64 bits of the 128-bit MurmurHash3 (x64 variant, seed 0) of the value's
+     *         UTF-8 bytes.
+     */
+    static long hash(String value) {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        long c1 = 0x87c37b91114253d5L;
+        long c2 = 0x4cf5ad432745937fL;
+        long h1 = 0;
+        long h2 = 0;
+        int blocks = data.length / 16;
+        for (int i = 0; i < blocks; i++) {
+            long k1 = littleEndianLong(data, i * 16);
+            long k2 = littleEndianLong(data, i * 16 + 8);
+            h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+            h1 = (Long.rotateLeft(h1, 27) + h2) * 5 + 0x52dce729;
+            h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+            h2 = (Long.rotateLeft(h2, 31) + h1) * 5 + 0x38495ab5;
+        }
+        // The last 0 to 15 bytes
+        int tail = blocks * 16;
+        int remaining = data.length - tail;
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = remaining - 1; i >= 8; i--) {
+            k2 ^= (data[tail + i] & 0xffL) << ((i - 8) * 8);
+        }
+        for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+            k1 ^= (data[tail + i] & 0xffL) << (i * 8);
+        }
+        if (remaining > 8) {
+            h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+        }
+        if (remaining > 0) {
+            h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+        }
+        h1 ^= data.length;
+        h2 ^= data.length;
+        h1 += h2;
+        h2 += h1;
+        h1 = mix(h1);
+        h2 = mix(h2);
+        return h1 + h2;
+    }
+
+    private static long littleEndianLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xffL);
+        }
+        return value;
+    }
+
+    // The MurmurHash3 finalizer, which spreads every input bit over the whole hash
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
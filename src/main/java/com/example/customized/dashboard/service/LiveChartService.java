@@ -0,0 +1,527 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.Dashboard;
+import com.example.customized.dashboard.model.FilterQuery;
+import com.example.customized.dashboard.repository.FactTable;
+import com.example.customized.dashboard.repository.JsonRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Marks this class as a Spring Service; it pushes changes of chart data to open dashboards
+@Service
+public class LiveChartService {
+
+    private static final Logger log = LoggerFactory.getLogger(LiveChartService.class);
+
+    // Queued in place of a subscriber's events; sent as a snapshot of all its charts
+    private static final Event RESET = new Event("snapshot", null);
+
+    // Queued periodically; sent as an SSE comment so idle connections are not closed
+    private static final Event HEARTBEAT = new Event(null, null);
+
+    @Autowired
+    private JsonRepository jsonRepository; // Provides the fact table and its versions
+
+    @Autowired
+    private ChartService chartService; // Reads dashboards and builds their chart queries
+
+    @Autowired
+    private AggregationService aggregationService; // Aggregates the fact data for chart queries
+
+    @Autowired
+    private FilterResultWriter filterResultWriter; // Serializes the results of snapshots
+
+    @Autowired
+    private ObjectMapper objectMapper; // Its factory creates the generators of deltas
+
+    // Time after which a live connection is closed; clients reconnect and get a new snapshot
+    @Value("${dashboard.live.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    // Events queued for a slow client before they are replaced by a single snapshot
+    @Value("${dashboard.live.max-pending-events:16}")
+    private int maxPendingEvents;
+
+    // Interval of the keep-alive comments sent on idle connections
+    @Value("${dashboard.live.heartbeat-ms:15000}")
+    private long heartbeatMs;
+
+    // Threads writing events to the connections, shared by all subscribers
+    @Value("${dashboard.live.sender-threads:8}")
+    private int senderThreads;
+
+    // Time a single event may take to write before its connection is dropped as stalled
+    @Value("${dashboard.live.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    // One channel per distinct chart query of the open dashboards, shared by their subscribers
+    private final Map<FilterQuery, Channel> channels = new HashMap<>();
+
+    // Open connections; iterated without the lock to send heartbeats and find stalled sends
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    // Guards channels and their subscriber lists. Only held to look up and update them, never
+    // while aggregating, so subscribing and refreshing do not wait for each other's scans
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Set while a refresh is queued, so a burst of ingested batches is diffed once
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+
+    // Recomputes the channels after data changes, sends the heartbeats and drops stalled connections
+    private final ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "live-chart-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Writes queued events to the connections, one task per subscriber with pending events.
+    // Fixed in size, so slow clients cannot claim a thread each; sends stuck longer than the
+    // send timeout get their connection dropped
+    private ExecutorService sender;
+
+    @PostConstruct
+    void start() {
+        sender = Executors.newFixedThreadPool(senderThreads, task -> {
+            Thread thread = new Thread(task, "live-chart-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleAtFixedRate(() -> subscribers.forEach(subscriber -> subscriber.enqueue(HEARTBEAT)),
+                heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        long checkMs = Math.max(1, sendTimeoutMs / 2);
+        publisher.scheduleAtFixedRate(this::dropStalled, checkMs, checkMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a live connection to a user's dashboard. The first event, "snapshot", holds the
+     * data of every chart as the render endpoint returns it:
+     * {"dataVersion":..,"data":{chartId:[..],..}}. After data is ingested or reloaded, each
+     * chart query whose result changed sends a "delta" event, {"charts":[chartId,..],
+     * "delta":{"dataVersion":..,"keys":[..],"cells":[..],"budgets":{..}}}, holding only the
+     * changed (key, time period) totals; the delta is computed and serialized once for all
+     * subscribers of the query. A client that falls behind, or a change a delta cannot express,
+     * gets a new snapshot instead. Totals are absolute, so events at or below the dataVersion of
+     * the latest snapshot can be applied again or skipped. Charts changed after subscribing are
+     * picked up by subscribing again. A client whose connection stops taking events for longer
+     * than the send timeout is disconnected.
+     *
+     * @param userId The ID of the user
+     * @param from   Start date for filtering data
+     * @param to     End date for filtering data
+     * @return The event stream
+     * @throws IOException If there is an issue reading the dashboard or the data
+     * @throws IllegalArgumentException If a chart has to be computed and from or to is not a date
+     */
+    public SseEmitter subscribe(String userId, String from, String to) throws IOException {
+        Dashboard dashboard = chartService.getDashboard(userId);
+        Map<String, FilterQuery> chartQueries = chartService.chartQueries(dashboard, from, to);
+        FactTable table = jsonRepository.getFactTable();
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, table.version());
+
+        // Aggregate the queries no one is subscribed to yet in one batch, without the lock. A
+        // channel found open may lose its last subscriber and close before this one registers,
+        // so the queries still missing at registration are aggregated in another round
+        Map<FilterQuery, AggregationResult> results = new HashMap<>();
+        while (true) {
+            List<FilterQuery> missing = new ArrayList<>();
+            lock.lock();
+            try {
+                for (FilterQuery query : chartQueries.values()) {
+                    if (!channels.containsKey(query) && !results.containsKey(query) && !missing.contains(query)) {
+                        missing.add(query);
+                    }
+                }
+                if (missing.isEmpty()) {
+                    // A concurrent subscriber may have opened the same channel meanwhile; it is shared
+                    results.forEach((query, result) ->
+                            channels.putIfAbsent(query, new Channel(query, new ChannelState(result, table))));
+                    chartQueries.forEach((chartId, query) -> subscriber.add(chartId, channels.get(query)));
+                    subscriber.channelCharts.keySet().forEach(channel -> channel.subscribers.add(subscriber));
+                    subscribers.add(subscriber);
+                    break;
+                }
+            } finally {
+                lock.unlock();
+            }
+            results.putAll(aggregationService.aggregateAll(table, missing));
+        }
+        // The channels are registered, so a refresh queued from now on updates them. If the data
+        // changed since it was read, its refresh may have run before, so queue another one
+        if (jsonRepository.getFactTable() != table) {
+            publish();
+        }
+
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+        subscriber.enqueue(RESET);
+        return emitter;
+    }
+
+    /**
+     * Announces that the fact table changed. The open charts are recomputed in the background;
+     * a burst of calls is coalesced into one refresh of the latest table. The refresh finds the
+     * channels behind the table under the lock that subscribers register under, so a subscriber
+     * registering concurrently is either computed on the new table or refreshed.
+     */
+    public void publish() {
+        if (refreshQueued.compareAndSet(false, true)) {
+            publisher.execute(this::refresh);
+        }
+    }
+
+    // Recomputes the channels behind the latest table and sends the changes to their subscribers
+    private void refresh() {
+        refreshQueued.set(false);
+        try {
+            FactTable table = jsonRepository.getFactTable();
+            // Collect the channels to recompute. If rows were only appended since a channel's
+            // table, a query whose dates miss the new rows keeps its result
+            Map<Channel, ChannelState> affected = new LinkedHashMap<>();
+            Map<FactTable, int[]> appendedDays = new IdentityHashMap<>();
+            lock.lock();
+            try {
+                for (Channel channel : channels.values()) {
+                    ChannelState state = channel.state;
+                    if (state.table == table) {
+                        continue;
+                    }
+                    int[] days = appendedDays.computeIfAbsent(state.table, base -> appendedDays(base, table));
+                    if (days == null || (channel.query.fromDay() <= days[1] && channel.query.toDay() >= days[0])) {
+                        affected.put(channel, state);
+                    } else {
+                        channel.state = state.at(table);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (affected.isEmpty()) {
+                return;
+            }
+
+            Map<FilterQuery, AggregationResult> results = aggregationService.aggregateAll(table,
+                    affected.keySet().stream().map(channel -> channel.query).toList());
+            lock.lock();
+            try {
+                affected.forEach((channel, state) -> {
+                    // Skip channels closed meanwhile
+                    if (channels.get(channel.query) == channel) {
+                        update(channel, state, results.get(channel.query), table);
+                    }
+                });
+            } finally {
+                lock.unlock();
+            }
+        } catch (RuntimeException | IOException e) {
+            log.warn("Failed to refresh live charts", e);
+        }
+    }
+
+    // The first and last day of the rows appended to a table, or null if the table was not only appended to
+    private static int[] appendedDays(FactTable base, FactTable table) {
+        if (!table.extendsTable(base)) {
+            return null;
+        }
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        for (int row = base.size(); row < table.size(); row++) {
+            minDay = Math.min(minDay, table.date(row));
+            maxDay = Math.max(maxDay, table.date(row));
+        }
+        return new int[]{minDay, maxDay};
+    }
+
+    // Replaces a channel's result and queues the change for its subscribers; called with the lock held
+    private void update(Channel channel, ChannelState previous, AggregationResult result, FactTable table) {
+        ChartDelta delta = ChartDelta.between(previous.result, result);
+        channel.state = new ChannelState(result, table);
+        if (delta.isEmpty()) {
+            return;
+        }
+        if (!delta.isExpressible()) {
+            channel.subscribers.forEach(subscriber -> subscriber.enqueue(RESET));
+            return;
+        }
+        // Serialized once; each subscriber only adds the IDs of its charts
+        String json = delta.toJson(objectMapper.getFactory(), table.version());
+        for (Subscriber subscriber : channel.subscribers) {
+            subscriber.enqueue(new Event("delta",
+                    "{\"charts\":" + subscriber.channelCharts.get(channel) + ",\"delta\":" + json + "}"));
+        }
+    }
+
+    // Disconnects subscribers whose current send has not finished within the send timeout. Their
+    // channels are released at once; the blocked write ends when the container closes the connection
+    private void dropStalled() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            long started = subscriber.sendStartedNanos;
+            if (started != 0 && now - started > TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs)) {
+                log.debug("Dropping a live dashboard connection whose send stalled for over {} ms", sendTimeoutMs);
+                unsubscribe(subscriber);
+                subscriber.emitter.completeWithError(new IOException("Live dashboard send timed out"));
+            }
+        }
+    }
+
+    // Removes a closed connection and the channels no one else is subscribed to
+    private void unsubscribe(Subscriber subscriber) {
+        subscriber.close();
+        lock.lock();
+        try {
+            if (!subscribers.remove(subscriber)) {
+                return;
+            }
+            for (Channel channel : subscriber.channelCharts.keySet()) {
+                channel.subscribers.remove(subscriber);
+                if (channel.subscribers.isEmpty()) {
+                    channels.remove(channel.query);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the background threads and closes the open connections when the application shuts down.
+     */
+    @PreDestroy
+    public void close() {
+        publisher.shutdownNow();
+        sender.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    // An SSE event; a null name is sent as a comment, a null data is built when it is sent
+    private record Event(String name, String data) {
+    }
+
+    // The subscribers of one chart query and the query's latest result
+    private static final class Channel {
+
+        private final FilterQuery query;
+
+        private final List<Subscriber> subscribers = new ArrayList<>();
+
+        // Replaced on every refresh; read by senders without the lock
+        private volatile ChannelState state;
+
+        private Channel(FilterQuery query, ChannelState state) {
+            this.query = query;
+            this.state = state;
+        }
+    }
+
+    // A result of a channel and the table it is current at
+    private final class ChannelState {
+
+        private final AggregationResult result;
+
+        private final FactTable table;
+
+        private final long dataVersion;
+
+        // The filter response of the result, serialized for the first snapshot that needs it
+        private volatile String body;
+
+        private ChannelState(AggregationResult result, FactTable table) {
+            this.result = result;
+            this.table = table;
+            this.dataVersion = table.version();
+        }
+
+        // The same result at a later table, sharing the serialized body
+        private ChannelState at(FactTable newTable) {
+            ChannelState state = new ChannelState(result, newTable);
+            state.body = body;
+            return state;
+        }
+
+        private String body() {
+            String json = body;
+            if (json == null) {
+                json = new String(filterResultWriter.toJson(result), StandardCharsets.UTF_8);
+                body = json;
+            }
+            return json;
+        }
+    }
+
+    // A live connection and its queue of events not yet sent
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+
+        // The data version at subscription, reported by the snapshots of a dashboard without charts
+        private final long subscribedVersion;
+
+        // The subscribed charts, by ID
+        private final Map<String, Channel> charts = new LinkedHashMap<>();
+
+        // The IDs of the charts showing each channel, as a JSON array
+        private final Map<Channel, String> channelCharts = new LinkedHashMap<>();
+
+        private final ArrayDeque<Event> pending = new ArrayDeque<>();
+
+        // Guards pending, draining, resetPending and closed
+        private final ReentrantLock queueLock = new ReentrantLock();
+
+        // Set while a sender task is writing the pending events
+        private boolean draining;
+
+        // Set while a snapshot is queued; deltas queued after it would be contained in it
+        private boolean resetPending;
+
+        private boolean closed;
+
+        // When the send in progress started, or 0 while no send is in progress
+        private volatile long sendStartedNanos;
+
+        private Subscriber(SseEmitter emitter, long subscribedVersion) {
+            this.emitter = emitter;
+            this.subscribedVersion = subscribedVersion;
+        }
+
+        private void add(String chartId, Channel channel) {
+            charts.put(chartId, channel);
+            String ids = channelCharts.get(channel);
+            String quoted = quote(chartId);
+            channelCharts.put(channel, ids == null ? "[" + quoted + "]" : ids.substring(0, ids.length() - 1) + "," + quoted + "]");
+        }
+
+        // Queues an event, replacing the queue by a snapshot once it is full
+        private void enqueue(Event event) {
+            queueLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                if (event == HEARTBEAT && (draining || !pending.isEmpty())) {
+                    // The connection is busy, so it is not idle
+                    return;
+                }
+                if (event == RESET || pending.size() >= maxPendingEvents) {
+                    if (resetPending) {
+                        return;
+                    }
+                    pending.clear();
+                    pending.add(RESET);
+                    resetPending = true;
+                } else if (!resetPending || event == HEARTBEAT) {
+                    pending.add(event);
+                }
+                if (!draining) {
+                    draining = true;
+                    sender.execute(this::drain);
+                }
+            } finally {
+                queueLock.unlock();
+            }
+        }
+
+        // Sends the pending events in order until the queue is empty
+        private void drain() {
+            while (true) {
+                Event event;
+                queueLock.lock();
+                try {
+                    event = closed ? null : pending.poll();
+                    if (event == null) {
+                        draining = false;
+                        return;
+                    }
+                    if (event == RESET) {
+                        resetPending = false;
+                    }
+                } finally {
+                    queueLock.unlock();
+                }
+                try {
+                    if (event == HEARTBEAT) {
+                        send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        String data = event == RESET ? snapshot() : event.data();
+                        send(SseEmitter.event().name(event.name()).data(data));
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // The client went away or the emitter completed; the container reports it too
+                    unsubscribe(this);
+                    return;
+                }
+            }
+        }
+
+        // Sends an event, timed so that a send that stalls can be found
+        private void send(SseEmitter.SseEventBuilder event) throws IOException {
+            sendStartedNanos = System.nanoTime();
+            try {
+                emitter.send(event);
+            } finally {
+                sendStartedNanos = 0;
+            }
+        }
+
+        // The data of all subscribed charts, at the lowest data version among them
+        private String snapshot() {
+            StringBuilder data = new StringBuilder();
+            long dataVersion = Long.MAX_VALUE;
+            for (Map.Entry<String, Channel> entry : charts.entrySet()) {
+                ChannelState state = entry.getValue().state;
+                dataVersion = Math.min(dataVersion, state.dataVersion);
+                data.append(data.isEmpty() ? "" : ",").append(quote(entry.getKey())).append(':').append(state.body());
+            }
+            if (charts.isEmpty()) {
+                dataVersion = subscribedVersion;
+            }
+            return "{\"dataVersion\":" + dataVersion + ",\"data\":{" + data + "}}";
+        }
+
+        private void close() {
+            queueLock.lock();
+            try {
+                closed = true;
+                pending.clear();
+            } finally {
+                queueLock.unlock();
+            }
+        }
+    }
+
+    // A string as a JSON string literal
+    private String quote(String value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
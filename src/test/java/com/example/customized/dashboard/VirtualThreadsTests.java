@@ -0,0 +1,44 @@
+package com.example.customized.dashboard;
+
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+// spring.threads.virtual.enabled only takes effect on Java 21+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@EnabledForJreRange(min = JRE.JAVA_21)
+class VirtualThreadsTests {
+
+	@Autowired
+	private ServletWebServerApplicationContext context;
+
+	@Test
+	void requestsAreServedOnVirtualThreads() throws Exception {
+		TomcatWebServer server = (TomcatWebServer) context.getWebServer();
+		Executor executor = server.getTomcat().getConnector().getProtocolHandler().getExecutor();
+		assertInstanceOf(VirtualThreadExecutor.class, executor);
+
+		// Thread.isVirtual is called reflectively, as the default build targets Java 17
+		CompletableFuture<Object> virtual = new CompletableFuture<>();
+		executor.execute(() -> {
+			try {
+				virtual.complete(Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+			} catch (ReflectiveOperationException e) {
+				virtual.completeExceptionally(e);
+			}
+		});
+		assertEquals(true, virtual.get(10, TimeUnit.SECONDS));
+	}
+}
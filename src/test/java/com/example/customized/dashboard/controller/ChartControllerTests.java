@@ -0,0 +1,144 @@
+package com.example.customized.dashboard.controller;
+
+import com.example.customized.dashboard.model.Chart;
+import com.example.customized.dashboard.model.Dashboard;
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.TimeGrain;
+import com.example.customized.dashboard.repository.ChartRepository;
+import com.example.customized.dashboard.repository.FactTable;
+import com.example.customized.dashboard.repository.JsonRepository;
+import com.example.customized.dashboard.repository.VersionedDashboard;
+import com.example.customized.dashboard.service.AggregationService;
+import com.example.customized.dashboard.service.ChartService;
+import com.example.customized.dashboard.service.FilterResultCache;
+import com.example.customized.dashboard.service.FilterResultWriter;
+import com.example.customized.dashboard.service.LiveChartService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(ChartController.class)
+@Import(ChartService.class)
+class ChartControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@MockBean
+	private ChartRepository chartRepository;
+
+	@MockBean
+	private JsonRepository jsonRepository;
+
+	@MockBean
+	private AggregationService aggregationService;
+
+	@MockBean
+	private FilterResultCache filterResultCache;
+
+	@MockBean
+	private FilterResultWriter filterResultWriter;
+
+	@MockBean
+	private LiveChartService liveChartService;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Chart chart = new Chart("Chart", Chart.Type.LINE, null, null, Dimension.REGION, TimeGrain.MONTH, null, List.of(), Map.of());
+		Dashboard dashboard = new Dashboard(List.of(new Chart.Layout("a", 0, 0, 6, 4)), Map.of("a", chart));
+		when(chartRepository.readDashboard("1")).thenReturn(dashboard);
+		// Created at 5; chart b was removed at 6 and chart a last changed at 7
+		when(chartRepository.readVersionedDashboard("1")).thenReturn(new VersionedDashboard(7, dashboard, 5, 6,
+				Map.of("a", new VersionedDashboard.ChartVersion(5, 7)), Map.of("b", 6L)));
+	}
+
+	@Test
+	void anUnchangedDashboardIsNotSentAgain() throws Exception {
+		mockMvc.perform(get("/api/dashboard/1"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"7\""))
+				.andExpect(jsonPath("$.charts.a.title").value("Chart"));
+
+		mockMvc.perform(get("/api/dashboard/1").header("If-None-Match", "\"7\""))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string("ETag", "\"7\""))
+				.andExpect(content().string(""));
+
+		mockMvc.perform(get("/api/dashboard/1").header("If-None-Match", "\"6\""))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void changesListTheChartsChangedSinceAVersion() throws Exception {
+		mockMvc.perform(get("/api/dashboard/1/changes").param("since", "\"6\""))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.version").value(7))
+				.andExpect(jsonPath("$.full").value(false))
+				.andExpect(jsonPath("$.added").isEmpty())
+				.andExpect(jsonPath("$.updated.a.chartInfo.title").value("Chart"))
+				.andExpect(jsonPath("$.removed").isEmpty())
+				.andExpect(jsonPath("$.dashboardOrder").doesNotExist());
+
+		mockMvc.perform(get("/api/dashboard/1/changes").param("since", "5"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.full").value(false))
+				.andExpect(jsonPath("$.removed[0]").value("b"))
+				.andExpect(jsonPath("$.dashboardOrder[0].id").value("a"));
+	}
+
+	@Test
+	void changesFromBeforeTheTrackedHistoryAreTheWholeDashboard() throws Exception {
+		mockMvc.perform(get("/api/dashboard/1/changes").param("since", "4"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.full").value(true))
+				.andExpect(jsonPath("$.dashboardOrder[0].id").value("a"))
+				.andExpect(jsonPath("$.charts.a.title").value("Chart"));
+
+		mockMvc.perform(get("/api/dashboard/1/changes").param("since", "latest"))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void renderingReadsEachQueryFromTheCacheOnce() throws Exception {
+		when(jsonRepository.getFactTable()).thenReturn(new FactTable.Builder().build());
+		when(filterResultCache.get(any(), anyLong(), any())).thenReturn("[]".getBytes(StandardCharsets.UTF_8));
+
+		mockMvc.perform(get("/api/dashboard/1/render?from=2023-01-01&to=2023-12-31"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.data.a").isArray());
+
+		// A single lookup per query, so a miss is not counted twice
+		verify(filterResultCache).get(any(), anyLong(), any());
+		verify(filterResultCache, never()).getIfPresent(any(), anyLong());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"from=2023-13-01&to=2023-12-31", "from=2023-01-01&to=yesterday"})
+	void renderingWithMalformedDatesIsRejected(String parameters) throws Exception {
+		mockMvc.perform(get("/api/dashboard/1/render?" + parameters)).andExpect(status().isBadRequest());
+
+		verifyNoInteractions(jsonRepository, aggregationService, filterResultCache);
+	}
+}
@@ -0,0 +1,79 @@
+package com.example.customized.dashboard.controller;
+
+import com.example.customized.dashboard.repository.JsonRepository;
+import com.example.customized.dashboard.service.AggregationService;
+import com.example.customized.dashboard.service.ApproximateAggregationService;
+import com.example.customized.dashboard.service.DashboardMetrics;
+import com.example.customized.dashboard.service.FilterResultCache;
+import com.example.customized.dashboard.service.FilterResultWriter;
+import com.example.customized.dashboard.service.LiveChartService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Map;
+
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(JsonController.class)
+class JsonControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@MockBean
+	private JsonRepository jsonRepository;
+
+	@MockBean
+	private AggregationService aggregationService;
+
+	@MockBean
+	private ApproximateAggregationService approximateAggregationService;
+
+	@MockBean
+	private FilterResultCache filterResultCache;
+
+	@MockBean
+	private FilterResultWriter filterResultWriter;
+
+	@MockBean
+	private LiveChartService liveChartService;
+
+	@MockBean
+	private DashboardMetrics metrics;
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"dimension=Planet&groupBy=month&from=2023-01-01&to=2023-12-31",
+			"dimension=Region&groupBy=month&from=2023-01-01&to=2023-12-31&maxDisplay=-1",
+			"dimension=Region&groupBy=month&from=2023-01-01&to=2023-12-31&maxDisplay=ten",
+			"dimension=Region&groupBy=month&from=2023-13-01&to=2023-12-31",
+			"dimension=Region&groupBy=month&from=2023-01-01&to=yesterday",
+			"dimension=Region&groupBy=month&from=2023-01-01&to=2023-12-31&minBudget=lots"
+	})
+	void malformedFilterRequestsAreRejectedBeforeAnyDataIsRead(String parameters) throws Exception {
+		mockMvc.perform(get("/api/data/filter?" + parameters)).andExpect(status().isBadRequest());
+
+		verifyNoInteractions(jsonRepository, aggregationService, approximateAggregationService, filterResultCache);
+	}
+
+	@Test
+	void cacheStatsAreServedAsJson() throws Exception {
+		when(filterResultCache.stats()).thenReturn(Map.of("hits", 3L, "misses", 1L, "evictedBytes", 2048L, "dataVersion", 7L));
+
+		mockMvc.perform(get("/api/data/cache/stats"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.hits").value(3))
+				.andExpect(jsonPath("$.misses").value(1))
+				.andExpect(jsonPath("$.evictedBytes").value(2048))
+				.andExpect(jsonPath("$.dataVersion").value(7));
+	}
+}
@@ -0,0 +1,87 @@
+package com.example.customized.dashboard.model;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DashboardCodecsTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void layoutsAcceptIntegralNumbersAndNumericStrings() throws Exception {
+		Chart.Layout layout = objectMapper.readValue(
+				"{\"id\":\"a\",\"x\":0,\"y\":\"2\",\"width\":6.0,\"height\":4}", Chart.Layout.class);
+
+		assertEquals(new Chart.Layout("a", 0, 2, 6, 4), layout);
+	}
+
+	@Test
+	void layoutsWithFractionalOrOutOfRangeNumbersAreRejected() {
+		assertThrows(MismatchedInputException.class, () -> objectMapper.readValue(
+				"{\"id\":\"a\",\"x\":1.5,\"y\":0,\"width\":6,\"height\":4}", Chart.Layout.class));
+		assertThrows(MismatchedInputException.class, () -> objectMapper.readValue(
+				"{\"id\":\"a\",\"x\":0,\"y\":0,\"width\":4294967302,\"height\":4}", Chart.Layout.class));
+	}
+
+	@Test
+	void layoutsWithoutPositionOrSizeAreRejected() {
+		assertThrows(MismatchedInputException.class, () -> objectMapper.readValue(
+				"{\"id\":\"a\",\"x\":0,\"y\":0,\"width\":6}", Chart.Layout.class));
+		assertThrows(MismatchedInputException.class, () -> objectMapper.readValue(
+				"{\"id\":\"a\"}", Chart.Layout.class));
+	}
+
+	@Test
+	void theShippedChartsRoundTripUnchanged() throws Exception {
+		File charts = new File("src/main/resources/data/charts.json");
+		Map<String, Dashboard> dashboards = objectMapper.readValue(charts, new TypeReference<Map<String, Dashboard>>() {});
+
+		assertEquals(objectMapper.readTree(charts), objectMapper.readTree(objectMapper.writeValueAsString(dashboards)));
+	}
+
+	@Test
+	void maxDisplayKeepsItsStoredForm() throws Exception {
+		for (String maxDisplay : new String[]{"5", "\"5\"", "\"all\"", "\"ALL\""}) {
+			String json = "{\"title\":\"t\",\"maxDisplay\":" + maxDisplay + "}";
+
+			assertEquals(objectMapper.readTree(json),
+					objectMapper.readTree(objectMapper.writeValueAsString(objectMapper.readValue(json, Chart.class))));
+		}
+		assertEquals(5, objectMapper.readValue("{\"maxDisplay\":5}", Chart.class).maxDisplay());
+		assertNull(objectMapper.readValue("{\"maxDisplay\":\"all\"}", Chart.class).maxDisplay());
+	}
+
+	@Test
+	void unrecognizedTypesDimensionsAndGroupingsAreKeptButNotRendered() throws Exception {
+		String json = "{\"title\":\"t\",\"type\":\"scatter\",\"dimension\":\"Team\",\"groupBy\":\"week\",\"color\":\"red\"}";
+
+		Chart chart = objectMapper.readValue(json, Chart.class);
+
+		assertNull(chart.type());
+		assertNull(chart.dimension());
+		assertNull(chart.groupBy());
+		assertFalse(chart.recognized());
+		JsonNode written = objectMapper.readTree(objectMapper.writeValueAsString(chart));
+		assertEquals(objectMapper.readTree(json), written);
+		// Written back in their place, before the client's own properties
+		List<String> names = new ArrayList<>();
+		written.fieldNames().forEachRemaining(names::add);
+		assertEquals(List.of("title", "type", "dimension", "groupBy", "color"), names);
+		assertTrue(objectMapper.readValue("{\"type\":\"line\",\"dimension\":\"Region\",\"groupBy\":\"month\"}",
+				Chart.class).recognized());
+	}
+}
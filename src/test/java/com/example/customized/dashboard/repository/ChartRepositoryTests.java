@@ -0,0 +1,342 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.Chart;
+import com.example.customized.dashboard.model.Dashboard;
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.FilterCondition;
+import com.example.customized.dashboard.model.TimeGrain;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChartRepositoryTests {
+
+	private static final int THREADS = 16;
+	private static final int CHARTS_PER_THREAD = 200;
+	private static final int USERS = 5;
+
+	@TempDir
+	Path dir;
+
+	private ChartRepository openRepository() throws Exception {
+		return openRepository(1000);
+	}
+
+	private ChartRepository openRepository(int compactThreshold) throws Exception {
+		ChartRepository repository = new ChartRepository(
+				dir.resolve("charts.json").toString(), dir.resolve("charts.wal").toString(), 0, true, compactThreshold);
+		repository.load();
+		return repository;
+	}
+
+	@Test
+	void parallelWritersDoNotLoseUpdates() throws Exception {
+		ChartRepository repository = openRepository();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> writers = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			int thread = t;
+			writers.add(executor.submit(() -> {
+				start.await();
+				for (int i = 0; i < CHARTS_PER_THREAD; i++) {
+					// Every thread writes to every user, so writers of the same user race constantly
+					String userId = "user" + (i % USERS);
+					String chartId = "chart-" + thread + "-" + i;
+					repository.apply(ChartMutation.add(userId, new Chart.Layout(chartId, 0, 0, 6, 4), chart(chartId)));
+					if (i % 3 == 0) {
+						repository.apply(ChartMutation.update(userId, chartId,
+								new Chart.Layout(chartId, i, thread, 6, 4), chart(chartId + "-updated")));
+					}
+				}
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> writer : writers) {
+			writer.get();
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertAllChartsPresent(repository);
+
+		// The same state must come back from the snapshot and log after a restart
+		repository.close();
+		ChartRepository reopened = openRepository();
+		assertAllChartsPresent(reopened);
+		reopened.close();
+	}
+
+	@Test
+	void versionsTrackChangesPerChart() throws Exception {
+		ChartRepository repository = openRepository();
+		assertEquals(0, repository.readVersionedDashboard("user").version());
+
+		repository.apply(ChartMutation.add("user", new Chart.Layout("a", 0, 0, 6, 4), chart("a")));
+		repository.apply(ChartMutation.add("user", new Chart.Layout("b", 6, 0, 6, 4), chart("b")));
+		long since = repository.readVersionedDashboard("user").version();
+
+		repository.apply(ChartMutation.update("user", "a", new Chart.Layout("a", 0, 4, 6, 4), chart("a2")));
+		repository.apply(ChartMutation.delete("user", "b"));
+		repository.apply(ChartMutation.add("user", new Chart.Layout("c", 0, 8, 6, 4), chart("c")));
+		VersionedDashboard versioned = repository.readVersionedDashboard("user");
+
+		assertTrue(versioned.version() > since);
+		assertTrue(versioned.tracksChangesSince(since));
+		assertTrue(versioned.charts().get("a").addedAt() <= since);
+		assertTrue(versioned.charts().get("a").changedAt() > since);
+		assertTrue(versioned.charts().get("c").addedAt() > since);
+		assertTrue(versioned.removedAt().get("b") > since);
+		assertTrue(versioned.orderChangedAt() > since);
+
+		// Versions from before a restart are not comparable with the reloaded dashboard
+		repository.close();
+		ChartRepository reopened = openRepository();
+		VersionedDashboard reloaded = reopened.readVersionedDashboard("user");
+		assertTrue(reloaded.version() > versioned.version());
+		assertFalse(reloaded.tracksChangesSince(versioned.version()));
+		assertEquals(versioned.dashboard(), reloaded.dashboard());
+		reopened.close();
+	}
+
+	@Test
+	void onlyTheLatestRemovalsAreRemembered() throws Exception {
+		ChartRepository repository = openRepository();
+		repository.apply(ChartMutation.add("user", new Chart.Layout("a", 0, 0, 6, 4), chart("a")));
+		long beforeRemovals = repository.readVersionedDashboard("user").version();
+		for (int i = 0; i <= VersionedDashboard.MAX_TOMBSTONES; i++) {
+			repository.apply(ChartMutation.add("user", new Chart.Layout("c" + i, 0, 0, 6, 4), chart("c" + i)));
+			repository.apply(ChartMutation.delete("user", "c" + i));
+		}
+		VersionedDashboard versioned = repository.readVersionedDashboard("user");
+
+		assertEquals(VersionedDashboard.MAX_TOMBSTONES, versioned.removedAt().size());
+		assertFalse(versioned.removedAt().containsKey("c0"));
+		// Changes since before the forgotten removal are answered with the whole dashboard
+		assertFalse(versioned.tracksChangesSince(beforeRemovals));
+		assertTrue(versioned.tracksChangesSince(versioned.removedAt().get("c1") - 1));
+		repository.close();
+	}
+
+	@Test
+	void snapshotsKeepTheJsonFormatOfCharts() throws Exception {
+		String json = "{\"1\":{\"dashboardOrder\":[{\"id\":\"a\",\"x\":0,\"y\":2,\"width\":6,\"height\":4,\"static\":true}],"
+				+ "\"charts\":{\"a\":{\"title\":\"Cost\",\"type\":\"treeMap\",\"xAxis\":\"time\",\"yAxis\":\"consumption\","
+				+ "\"dimension\":\"Region\",\"groupBy\":\"quarter\",\"maxDisplay\":\"3\","
+				+ "\"filters\":{\"providerName\":[\"AWS\"],\"minBudget\":1000.0},\"color\":{\"scheme\":\"blue\"}}}}}";
+		Files.writeString(dir.resolve("charts.json"), json);
+		ChartRepository repository = openRepository();
+
+		Dashboard dashboard = repository.readDashboard("1");
+		Chart chart = dashboard.chart("a");
+		assertEquals(Chart.Type.TREE_MAP, chart.type());
+		assertEquals(Dimension.REGION, chart.dimension());
+		assertEquals(TimeGrain.QUARTER, chart.groupBy());
+		assertEquals(3, chart.maxDisplay());
+		assertEquals(FilterCondition.parseAll(Map.of("providerName", "AWS", "minBudget", "1000")), chart.filters());
+		assertEquals(Map.of("scheme", "blue"), chart.extra().get("color"));
+		assertEquals(new Chart.Layout("a", 0, 2, 6, 4, Map.of("static", true)), dashboard.layout("a"));
+
+		// A logged change makes close write a new snapshot, which must match the original file
+		repository.apply(ChartMutation.add("2", new Chart.Layout("b", 0, 0, 6, 4), chart("b")));
+		repository.apply(ChartMutation.delete("2", "b"));
+		repository.close();
+		ObjectMapper objectMapper = new ObjectMapper();
+		JsonNode written = objectMapper.readTree(dir.resolve("charts.json").toFile());
+		assertEquals(objectMapper.readTree(json).get("1"), written.get("1"));
+
+		ChartRepository reopened = openRepository();
+		assertEquals(dashboard, reopened.readDashboard("1"));
+		reopened.close();
+	}
+
+	@Test
+	void writeBehindChangesAreVisibleAtOnceAndSurviveFlushAndReload() throws Exception {
+		ChartRepository repository = new ChartRepository(
+				dir.resolve("charts.json").toString(), dir.resolve("charts.wal").toString(), 50, false, 1000);
+		repository.load();
+		for (String chartId : List.of("a", "b", "c")) {
+			repository.apply(ChartMutation.add("user", new Chart.Layout(chartId, 0, 0, 6, 4), chart(chartId)));
+		}
+		repository.apply(ChartMutation.delete("user", "b"));
+
+		// Changes are served before the writer has logged them
+		assertEquals(List.of("a", "c"), chartIds(repository.readDashboard("user")));
+
+		// Closing flushes the queued changes
+		repository.close();
+		ChartRepository reopened = openRepository();
+		assertEquals(List.of("a", "c"), chartIds(reopened.readDashboard("user")));
+		reopened.close();
+	}
+
+	@Test
+	void dashboardsAreServedFromMemoryWithoutReadingTheFiles() throws Exception {
+		ChartRepository repository = openRepository();
+		repository.apply(ChartMutation.add("user", new Chart.Layout("a", 0, 0, 6, 4), chart("a")));
+		repository.close();
+
+		ChartRepository reopened = openRepository();
+		Dashboard loaded = reopened.readDashboard("user");
+		// Once loaded, neither the snapshot nor the log is read again
+		Files.writeString(dir.resolve("charts.json"), "not json");
+		assertEquals(loaded, reopened.readDashboard("user"));
+		assertEquals(Map.of("user", loaded), reopened.readCharts());
+		reopened.apply(ChartMutation.add("user", new Chart.Layout("b", 6, 0, 6, 4), chart("b")));
+		assertEquals(List.of("a", "b"), chartIds(reopened.readDashboard("user")));
+		reopened.close();
+	}
+
+	@Test
+	void replayDiscardsATornRecordAtTheEndOfTheLog() throws Exception {
+		String torn = logLine(ChartMutation.add("user", new Chart.Layout("c", 0, 8, 6, 4), chart("c")));
+		Files.writeString(dir.resolve("charts.wal"),
+				logLine(ChartMutation.add("user", new Chart.Layout("a", 0, 0, 6, 4), chart("a")))
+						+ logLine(ChartMutation.add("user", new Chart.Layout("b", 6, 0, 6, 4), chart("b")))
+						+ torn.substring(0, torn.length() / 2));
+		ChartRepository repository = openRepository();
+
+		assertEquals(List.of("a", "b"), chartIds(repository.readDashboard("user")));
+		// The next record follows the last complete one instead of the torn bytes
+		repository.apply(ChartMutation.add("user", new Chart.Layout("d", 0, 12, 6, 4), chart("d")));
+		assertEquals(3, readLog().size());
+		repository.close();
+	}
+
+	@Test
+	void replayStopsAtAnUnreadableRecord() throws Exception {
+		String unreadable = "{\"op\":\"add\",\"userId\":\"user\",\"layout\":{\"id\":\"b\"\n";
+		Files.writeString(dir.resolve("charts.wal"),
+				logLine(ChartMutation.add("user", new Chart.Layout("a", 0, 0, 6, 4), chart("a")))
+						+ unreadable
+						+ logLine(ChartMutation.add("user", new Chart.Layout("c", 0, 8, 6, 4), chart("c"))));
+		ChartRepository repository = openRepository();
+
+		assertEquals(List.of("a"), chartIds(repository.readDashboard("user")));
+		// The unreadable record and everything after it are kept aside for inspection
+		assertTrue(Files.readString(dir.resolve("charts.wal.corrupt")).startsWith(unreadable));
+		assertEquals(1, readLog().size());
+		repository.close();
+	}
+
+	@Test
+	void aFailedAppendIsCutFromTheLogAndRolledBack() throws Exception {
+		FailingFileChannel[] channel = new FailingFileChannel[1];
+		ChartRepository repository = new ChartRepository(
+				dir.resolve("charts.json").toString(), dir.resolve("charts.wal").toString(), 0, true, 1000) {
+			@Override
+			FileChannel openLog(Path walPath) throws IOException {
+				channel[0] = new FailingFileChannel(super.openLog(walPath));
+				return channel[0];
+			}
+		};
+		repository.load();
+		repository.apply(ChartMutation.add("user", new Chart.Layout("a", 0, 0, 6, 4), chart("a")));
+		VersionedDashboard before = repository.readVersionedDashboard("user");
+
+		channel[0].failNextWrite(10);
+		assertThrows(IOException.class,
+				() -> repository.apply(ChartMutation.add("user", new Chart.Layout("b", 6, 0, 6, 4), chart("b"))));
+		assertEquals(before, repository.readVersionedDashboard("user"));
+		repository.apply(ChartMutation.add("user", new Chart.Layout("c", 0, 8, 6, 4), chart("c")));
+
+		// Restarting after a crash replays the log without the failed change
+		assertEquals(2, readLog().size());
+		ChartRepository reopened = openRepository();
+		assertEquals(List.of("a", "c"), chartIds(reopened.readDashboard("user")));
+		repository.close();
+		reopened.close();
+	}
+
+	@Test
+	void chartChangesOfAUserWithoutADashboardAreNeitherAppliedNorLogged() throws Exception {
+		ChartRepository repository = openRepository();
+		repository.apply(ChartMutation.add("user", new Chart.Layout("a", 0, 0, 6, 4), chart("a")));
+
+		assertFalse(repository.apply(ChartMutation.update("nobody", "a", new Chart.Layout("a", 0, 4, 6, 4), chart("a2"))));
+		assertFalse(repository.apply(ChartMutation.delete("nobody", "a")));
+		assertEquals(Map.of("user", repository.readDashboard("user")), repository.readCharts());
+		assertEquals(1, readLog().size());
+		repository.close();
+	}
+
+	@Test
+	void compactionFoldsTheLogIntoTheSnapshot() throws Exception {
+		ChartRepository repository = openRepository(3);
+		for (String chartId : List.of("a", "b", "c", "d")) {
+			repository.apply(ChartMutation.add("user", new Chart.Layout(chartId, 0, 0, 6, 4), chart(chartId)));
+		}
+		// The writer compacts in the background once three records are logged
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!(Files.exists(dir.resolve("charts.json")) && readLog().size() < 4) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(Files.exists(dir.resolve("charts.json")));
+		assertTrue(readLog().size() < 4);
+
+		// The snapshot and the log tail together hold every change
+		ChartRepository reopened = openRepository(3);
+		assertEquals(List.of("a", "b", "c", "d"), chartIds(reopened.readDashboard("user")));
+		repository.close();
+		reopened.close();
+	}
+
+	// The records of the log, each of which must be readable
+	private List<ChartMutation> readLog() throws IOException {
+		ObjectMapper objectMapper = new ObjectMapper();
+		List<ChartMutation> records = new ArrayList<>();
+		for (String line : Files.readAllLines(dir.resolve("charts.wal"))) {
+			records.add(objectMapper.readValue(line, ChartMutation.class));
+		}
+		return records;
+	}
+
+	private static String logLine(ChartMutation mutation) throws IOException {
+		return new ObjectMapper().writeValueAsString(mutation) + "\n";
+	}
+
+	private static List<String> chartIds(Dashboard dashboard) {
+		return dashboard.dashboardOrder().stream().map(Chart.Layout::id).toList();
+	}
+
+	private static void assertAllChartsPresent(ChartRepository repository) {
+		int expectedPerUser = THREADS * CHARTS_PER_THREAD / USERS;
+		for (int u = 0; u < USERS; u++) {
+			Dashboard dashboard = repository.readDashboard("user" + u);
+			assertEquals(expectedPerUser, dashboard.dashboardOrder().size());
+			assertEquals(expectedPerUser, dashboard.charts().size());
+			for (Chart.Layout layout : dashboard.dashboardOrder()) {
+				String chartId = layout.id();
+				int i = Integer.parseInt(chartId.substring(chartId.lastIndexOf('-') + 1));
+				String expectedTitle = i % 3 == 0 ? chartId + "-updated" : chartId;
+				assertEquals(expectedTitle, dashboard.chart(chartId).title());
+				assertEquals(i % 3 == 0 ? i : 0, layout.x());
+				assertEquals(layout, dashboard.layout(chartId));
+			}
+		}
+	}
+
+	private static Chart chart(String title) {
+		return new Chart(title, null, null, null, null, null, null, List.of(), Map.of());
+	}
+}
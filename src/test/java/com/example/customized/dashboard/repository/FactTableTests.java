@@ -0,0 +1,156 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.CostField;
+import com.example.customized.dashboard.model.Dimension;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FactTableTests {
+
+	private static int day(String date) {
+		return (int) LocalDate.parse(date).toEpochDay();
+	}
+
+	private static FactTable sampleTable() {
+		FactTable.Builder builder = new FactTable.Builder();
+		builder.add(day("2023-03-01"), new String[]{"AWS", "us-east-1", "A", "Storage", "D1"}, 3.0, 100.0);
+		builder.add(day("2023-01-15"), new String[]{"Azure", "eu-west-1", "B", "Compute", "D2"}, 1.0, 200.0);
+		builder.add(day("2023-02-10"), new String[]{"AWS", "eu-west-1", "A", "Storage", "D1"}, 2.0, Double.NaN);
+		builder.add(day("2023-01-15"), new String[]{"AWS", "us-east-1", "C", "Compute", "D3"}, 4.0, 300.0);
+		return builder.build();
+	}
+
+	@Test
+	void rowsAreSortedByDateKeepingLoadOrderForTies() {
+		FactTable table = sampleTable();
+
+		assertEquals(4, table.size());
+		assertEquals(day("2023-01-15"), table.date(0));
+		assertEquals(1.0, table.consumption(0));
+		assertEquals(4.0, table.consumption(1));
+		assertEquals(2.0, table.consumption(2));
+		assertEquals(3.0, table.consumption(3));
+	}
+
+	@Test
+	void boundsSelectTheRowsInADateRange() {
+		FactTable table = sampleTable();
+
+		assertEquals(1, table.runCount());
+		assertEquals(0, table.lowerBound(0, day("2023-01-01")));
+		assertEquals(2, table.upperBound(0, day("2023-01-15")));
+		assertEquals(2, table.lowerBound(0, day("2023-01-16")));
+		assertEquals(3, table.upperBound(0, day("2023-02-28")));
+		assertEquals(4, table.lowerBound(0, day("2024-01-01")));
+	}
+
+	@Test
+	void compositeKeysCombineProviderAndField() {
+		FactTable table = sampleTable();
+		DimensionKeys keys = table.keys(Dimension.REGION);
+
+		assertEquals(3, keys.size());
+		assertEquals("Azure-eu-west-1", keys.name(keys.keyOf(0)));
+		assertEquals("AWS-us-east-1", keys.name(keys.keyOf(1)));
+		assertEquals("AWS-eu-west-1", keys.name(keys.keyOf(2)));
+		assertEquals(keys.keyOf(1), keys.keyOf(3));
+		assertEquals("Unknown", table.keys(null).name(table.keys(null).keyOf(2)));
+	}
+
+	@Test
+	void appendedBatchesExtendTheLastRunOrStartANewOne() {
+		FactTable table = sampleTable();
+
+		FactTable.Builder later = new FactTable.Builder();
+		later.add(day("2023-04-02"), new String[]{"AWS", "ap-south-1", "A", "Storage", "D1"}, 6.0, 100.0);
+		later.add(day("2023-03-05"), new String[]{"Azure", "eu-west-1", "B", "Compute", "D2"}, 5.0, 200.0);
+		FactTable extended = table.append(later, 16);
+
+		assertEquals(6, extended.size());
+		assertEquals(1, extended.runCount());
+		assertEquals(5.0, extended.consumption(4));
+		assertEquals(6.0, extended.consumption(5));
+		assertEquals(4, table.size());
+		assertTrue(extended.version() > table.version());
+
+		FactTable.Builder earlier = new FactTable.Builder();
+		earlier.add(day("2022-12-31"), new String[]{"AWS", "us-east-1", "A", "Storage", "D1"}, 7.0, 100.0);
+		FactTable appended = extended.append(earlier, 16);
+
+		assertEquals(2, appended.runCount());
+		assertEquals(6, appended.runStart(1));
+		assertEquals(day("2022-12-31"), appended.minDate());
+		assertEquals(6, appended.lowerBound(1, day("2022-01-01")));
+		assertEquals(6, appended.upperBound(0, day("2023-12-31")));
+
+		DimensionKeys keys = appended.keys(Dimension.REGION);
+		assertEquals(4, keys.size());
+		assertEquals("AWS-ap-south-1", keys.name(keys.keyOf(5)));
+		assertEquals(keys.keyOf(1), keys.keyOf(6));
+		assertEquals(3, table.keys(Dimension.REGION).size());
+	}
+
+	@Test
+	void appendingFromAnOlderSnapshotLeavesNewerSnapshotsIntact() {
+		FactTable table = sampleTable();
+		FactTable.Builder first = new FactTable.Builder();
+		first.add(day("2023-05-01"), new String[]{"AWS", "us-east-1", "A", "Storage", "D1"}, 8.0, 100.0);
+		FactTable.Builder second = new FactTable.Builder();
+		second.add(day("2023-05-01"), new String[]{"AWS", "us-east-1", "A", "Storage", "D1"}, 9.0, 100.0);
+
+		FactTable a = table.append(first, 16);
+		FactTable b = a.append(second, 16);
+		FactTable c = a.append(first, 16);
+
+		assertEquals(9.0, b.consumption(5));
+		assertEquals(8.0, c.consumption(5));
+	}
+
+	@Test
+	void tooManyRunsAreMergedIntoOne() {
+		FactTable table = sampleTable();
+		for (int i = 0; i < 3; i++) {
+			FactTable.Builder batch = new FactTable.Builder();
+			batch.add(day("2022-06-01") - i, new String[]{"AWS", "us-east-1", "A", "Storage", "D1"}, i, 100.0);
+			table = table.append(batch, 3);
+		}
+
+		assertEquals(1, table.runCount());
+		assertEquals(7, table.size());
+		assertEquals(day("2022-05-30"), table.date(0));
+		assertEquals(day("2023-03-01"), table.date(6));
+	}
+
+	@Test
+	void runsArePartitionedByMonthAndBoundsUseThePartitions() {
+		FactTable table = sampleTable();
+		FactTable.Builder batch = new FactTable.Builder();
+		batch.add(day("2023-03-20"), new String[]{"GCP", "us-central1", "E", "Storage", "D4"}, 5.0, 100.0);
+		batch.add(day("2023-05-02"), new String[]{"AWS", "us-east-1", "A", "Storage", "D1"}, 6.0, 100.0);
+		table = table.append(batch, 16);
+
+		Partition[] partitions = table.partitions(0);
+		assertEquals(4, partitions.length);
+		assertEquals(0, partitions[0].startRow());
+		assertEquals(2, partitions[0].endRow());
+		assertEquals(day("2023-03-01"), partitions[2].minDate());
+		assertEquals(day("2023-03-20"), partitions[2].maxDate());
+		assertEquals(5, partitions[3].startRow());
+		assertTrue(partitions[2].mightContain(CostField.PROVIDER_NAME, table.dictionary(CostField.PROVIDER_NAME).codeOf("GCP")));
+		assertFalse(partitions[0].mightContain(CostField.PROVIDER_NAME, table.dictionary(CostField.PROVIDER_NAME).codeOf("GCP")));
+		assertFalse(partitions[1].overlaps(day("2023-03-01"), day("2023-12-31")));
+
+		for (int from = day("2022-12-25"); from < day("2023-05-10"); from++) {
+			int expected = 0;
+			while (expected < table.size() && table.date(expected) < from) {
+				expected++;
+			}
+			assertEquals(expected, table.lowerBound(0, from));
+		}
+	}
+}
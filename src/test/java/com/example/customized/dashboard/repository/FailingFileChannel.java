@@ -0,0 +1,142 @@
+package com.example.customized.dashboard.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A file channel that can be told to fail its next write after writing part of the buffer,
+ * like a write interrupted by a full disk or an I/O error.
+ */
+class FailingFileChannel extends FileChannel {
+
+	private final FileChannel delegate;
+
+	// Bytes the next write gets to write before it fails, or -1 to write normally
+	private volatile int bytesBeforeFailure = -1;
+
+	FailingFileChannel(FileChannel delegate) {
+		this.delegate = delegate;
+	}
+
+	void failNextWrite(int bytesWritten) {
+		bytesBeforeFailure = bytesWritten;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		ByteBuffer part = partOfFailingWrite(src);
+		if (part == null) {
+			return delegate.write(src);
+		}
+		while (part.hasRemaining()) {
+			delegate.write(part);
+		}
+		throw new IOException("Injected write failure");
+	}
+
+	@Override
+	public int write(ByteBuffer src, long position) throws IOException {
+		ByteBuffer part = partOfFailingWrite(src);
+		if (part == null) {
+			return delegate.write(src, position);
+		}
+		while (part.hasRemaining()) {
+			position += delegate.write(part, position);
+		}
+		throw new IOException("Injected write failure");
+	}
+
+	// The part of the buffer written before the injected failure, or null if the write succeeds
+	private ByteBuffer partOfFailingWrite(ByteBuffer src) {
+		int bytes = bytesBeforeFailure;
+		if (bytes < 0) {
+			return null;
+		}
+		bytesBeforeFailure = -1;
+		ByteBuffer part = src.duplicate();
+		part.limit(part.position() + Math.min(bytes, part.remaining()));
+		return part;
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		return delegate.read(dst);
+	}
+
+	@Override
+	public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+		return delegate.read(dsts, offset, length);
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+		return delegate.read(dst, position);
+	}
+
+	@Override
+	public long position() throws IOException {
+		return delegate.position();
+	}
+
+	@Override
+	public FileChannel position(long newPosition) throws IOException {
+		delegate.position(newPosition);
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		return delegate.size();
+	}
+
+	@Override
+	public FileChannel truncate(long size) throws IOException {
+		delegate.truncate(size);
+		return this;
+	}
+
+	@Override
+	public void force(boolean metaData) throws IOException {
+		delegate.force(metaData);
+	}
+
+	@Override
+	public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+		return delegate.transferTo(position, count, target);
+	}
+
+	@Override
+	public long transferFrom(ReadableByteChannel src, long position, long count) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+		return delegate.map(mode, position, size);
+	}
+
+	@Override
+	public FileLock lock(long position, long size, boolean shared) throws IOException {
+		return delegate.lock(position, size, shared);
+	}
+
+	@Override
+	public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+		return delegate.tryLock(position, size, shared);
+	}
+
+	@Override
+	protected void implCloseChannel() throws IOException {
+		delegate.close();
+	}
+}
@@ -0,0 +1,132 @@
+package com.example.customized.dashboard.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonRepositoryTests {
+
+	private static final String RECORDS =
+			"{\"date\":\"2024-03-01\",\"providerName\":\"AWS\",\"domain\":\"Storage\",\"consumption\":10}\n"
+					+ "{\"date\":\"2024-03-02\",\"providerName\":\"AWS\",\"domain\":\"Storage\",\"consumption\":20}\n";
+
+	@TempDir
+	Path dir;
+
+	private FailingFileChannel ingestLog;
+
+	private JsonRepository openRepository() {
+		JsonRepository repository = new JsonRepository() {
+			@Override
+			FileChannel openIngestLog(Path path) throws IOException {
+				ingestLog = new FailingFileChannel(super.openIngestLog(path));
+				return ingestLog;
+			}
+		};
+		ReflectionTestUtils.setField(repository, "rollupsEnabled", false);
+		ReflectionTestUtils.setField(repository, "segmentPath", dir.resolve("mockData.seg").toString());
+		ReflectionTestUtils.setField(repository, "ingestLogPath", dir.resolve("ingested.ndjson").toString());
+		ReflectionTestUtils.setField(repository, "ingestSyncWrites", true);
+		ReflectionTestUtils.setField(repository, "ingestMaxRuns", 16);
+		return repository;
+	}
+
+	@Test
+	void aFailedIngestWriteIsCutFromTheLog() throws Exception {
+		JsonRepository repository = openRepository();
+		int mockRows = repository.getFactTable().size();
+		repository.ingest(body(RECORDS));
+
+		// The first record of the batch is written completely, the second one partly
+		ingestLog.failNextWrite(RECORDS.indexOf('\n') + 10);
+		assertThrows(IOException.class, () -> repository.ingest(body(RECORDS)));
+		assertEquals(mockRows + 2, repository.getFactTable().size());
+		repository.ingest(body(RECORDS));
+
+		// Only the two published batches are logged, each record on its own readable line
+		List<String> lines = Files.readAllLines(dir.resolve("ingested.ndjson"));
+		assertEquals(4, lines.size());
+		ObjectMapper objectMapper = new ObjectMapper();
+		for (String line : lines) {
+			objectMapper.readTree(line);
+		}
+		assertEquals(mockRows + 4, repository.reloadFactTable().size());
+		repository.close();
+
+		JsonRepository reopened = openRepository();
+		assertEquals(mockRows + 4, reopened.getFactTable().size());
+		reopened.close();
+	}
+
+	@Test
+	void aSegmentOlderThanTheJsonFileIsIgnored() throws Exception {
+		Path records = dir.resolve("records.json");
+		Files.writeString(records, "[" + RECORDS.replace("}\n{", "},{") + "]");
+		Path segment = dir.resolve("mockData.seg");
+		JsonRepository.writeSegment(records.toFile(), segment);
+		long jsonModified = Files.getLastModifiedTime(Path.of(JsonRepository.MOCK_DATA_FILE_PATH)).toMillis();
+		int jsonRows = new JsonRepository().readJsonFile(new File(JsonRepository.MOCK_DATA_FILE_PATH)).size();
+
+		Files.setLastModifiedTime(segment, FileTime.fromMillis(jsonModified + 1000));
+		JsonRepository repository = openRepository();
+		assertEquals(2, repository.getFactTable().size());
+
+		// Once the JSON file is newer, a reload parses it instead of mapping the segment
+		Files.setLastModifiedTime(segment, FileTime.fromMillis(jsonModified - 1000));
+		assertEquals(jsonRows, repository.reloadFactTable().size());
+		repository.close();
+	}
+
+	@Test
+	void recordsWithStructuredValuesAreRejected() throws Exception {
+		JsonRepository repository = openRepository();
+		int rows = repository.getFactTable().size();
+
+		for (String record : List.of(
+				"{\"date\":\"2023-02-01\",\"providerName\":{\"x\":\"AWS\"}}",
+				"{\"date\":[\"2023-02-01\"],\"providerName\":\"AWS\"}",
+				"{\"date\":\"2023-02-01\",\"consumption\":{\"value\":1}}",
+				"{\"date\":\"2023-02-01\",\"budget\":[800]}",
+				"{\"date\":\"2023-02-01\",\"domain\":[\"Storage\"]}")) {
+			assertThrows(IllegalArgumentException.class, () -> repository.ingest(body(record)), record);
+		}
+		// Unrelated properties may still hold any value
+		repository.ingest(body("{\"date\":\"2023-02-01\",\"tags\":{\"team\":[\"a\"]}}"));
+
+		assertEquals(rows + 1, repository.getFactTable().size());
+		repository.close();
+	}
+
+	@Test
+	void ingestedDatesMustExist() throws Exception {
+		JsonRepository repository = openRepository();
+		int rows = repository.getFactTable().size();
+
+		assertThrows(IllegalArgumentException.class,
+				() -> repository.ingest(body("{\"date\":\"2023-02-30\",\"providerName\":\"AWS\"}")));
+		repository.ingest(body("{\"date\":\"2024-02-29\",\"providerName\":\"AWS\"}"));
+
+		assertEquals(rows + 1, repository.getFactTable().size());
+		assertEquals(List.of("2024-02-29"), Files.readAllLines(dir.resolve("ingested.ndjson")).stream()
+				.map(line -> line.substring(9, 19)).toList());
+		repository.close();
+	}
+
+	private static ByteArrayInputStream body(String records) {
+		return new ByteArrayInputStream(records.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,141 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.CostField;
+import com.example.customized.dashboard.model.FilterCondition;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowFilterTests {
+
+	@Test
+	void bitmapsMatchBitSetsAcrossSparseAndDenseContainers() {
+		Random random = new Random(5);
+		// Densities on both sides of the array/bitmap threshold of 4096 rows per 65536
+		double[] densities = {0.001, 0.05, 0.07, 0.5};
+		List<RowBitmap> bitmaps = new ArrayList<>();
+		List<BitSet> expected = new ArrayList<>();
+		for (double density : densities) {
+			RowBitmap.Builder builder = new RowBitmap.Builder();
+			BitSet bits = new BitSet();
+			for (int row = 0; row < 300000; row++) {
+				if (random.nextDouble() < density) {
+					builder.add(row);
+					bits.set(row);
+				}
+			}
+			bitmaps.add(builder.build());
+			expected.add(bits);
+		}
+
+		for (int a = 0; a < bitmaps.size(); a++) {
+			assertEquals(expected.get(a).cardinality(), bitmaps.get(a).cardinality());
+			assertArrayEquals(rows(expected.get(a), 70000, 140001), bitmaps.get(a).rows(70000, 140001));
+			for (int b = 0; b < bitmaps.size(); b++) {
+				BitSet and = (BitSet) expected.get(a).clone();
+				and.and(expected.get(b));
+				assertArrayEquals(rows(and, 0, 300000), bitmaps.get(a).and(bitmaps.get(b)).rows(0, 300000));
+				BitSet or = (BitSet) expected.get(a).clone();
+				or.or(expected.get(b));
+				assertArrayEquals(rows(or, 0, 300000), RowBitmap.or(List.of(bitmaps.get(a), bitmaps.get(b))).rows(0, 300000));
+			}
+		}
+	}
+
+	@Test
+	void extendingABitmapLeavesTheBaseUnchanged() {
+		RowBitmap.Builder builder = new RowBitmap.Builder();
+		for (int row = 0; row < 70000; row += 3) {
+			builder.add(row);
+		}
+		RowBitmap base = builder.build();
+
+		RowBitmap.Builder extended = new RowBitmap.Builder(base);
+		extended.add(70001);
+		extended.add(200000);
+		RowBitmap bitmap = extended.build();
+
+		assertEquals(base.cardinality() + 2, bitmap.cardinality());
+		assertTrue(bitmap.contains(70001));
+		assertTrue(bitmap.contains(200000));
+		assertFalse(base.contains(70001));
+		assertEquals(base.cardinality(), base.rows(0, Integer.MAX_VALUE).length);
+	}
+
+	@Test
+	void filtersUseTheIndexForSelectiveConditionsAndPruneByPartition() {
+		FactTable.Builder builder = new FactTable.Builder();
+		int firstDay = (int) LocalDate.parse("2023-01-01").toEpochDay();
+		int rare = 0;
+		for (int i = 0; i < 2000; i++) {
+			// Account "rare" only occurs in February
+			int day = firstDay + (i % 90);
+			boolean february = LocalDate.ofEpochDay(day).getMonthValue() == 2;
+			String account = february && i % 10 == 0 ? "rare" : "common";
+			rare += "rare".equals(account) ? 1 : 0;
+			builder.add(day, new String[]{i % 2 == 0 ? "AWS" : "Azure", "r", account, "s", "d"}, 1.0, i);
+		}
+		FactTable table = builder.build();
+
+		RowFilter selective = RowFilter.compile(table, FilterCondition.parseAll(Map.of("accountId", "rare")));
+		RowFilter broad = RowFilter.compile(table, FilterCondition.parseAll(Map.of("providerName", "AWS", "maxBudget", "999")));
+		RowFilter unknown = RowFilter.compile(table, FilterCondition.parseAll(Map.of("accountId", "missing")));
+
+		assertTrue(selective.usesIndex());
+		assertFalse(broad.usesIndex());
+		assertTrue(unknown.matchesNone());
+		assertEquals(rare, selective.candidateRows(0, table.size()).length);
+		int matching = 0;
+		for (int row = 0; row < table.size(); row++) {
+			if (broad.matches(row)) {
+				matching++;
+				assertEquals("AWS", table.dictionary(CostField.PROVIDER_NAME).decode(table.codes(CostField.PROVIDER_NAME).get(row)));
+				assertTrue(table.budget(row) <= 999);
+			}
+		}
+		assertEquals(500, matching);
+
+		// Only the February partition can hold "rare" rows; AWS rows are in every month
+		for (Partition partition : table.partitions(0)) {
+			boolean february = LocalDate.ofEpochDay(partition.minDate()).getMonthValue() == 2;
+			assertEquals(february, selective.mightMatch(partition));
+			assertTrue(broad.mightMatch(partition));
+		}
+	}
+
+	@Test
+	void appendedRowsExtendTheInvertedIndex() {
+		FactTable.Builder builder = new FactTable.Builder();
+		int day = (int) LocalDate.parse("2023-01-01").toEpochDay();
+		for (int i = 0; i < 1000; i++) {
+			builder.add(day, new String[]{"AWS", "r", "a" + (i % 10), "s", "d"}, 1.0, 0.0);
+		}
+		FactTable table = builder.build();
+		assertEquals(100, table.invertedIndex(CostField.ACCOUNT_ID).rows(table.dictionary(CostField.ACCOUNT_ID).codeOf("a3")).cardinality());
+
+		FactTable.Builder batch = new FactTable.Builder();
+		for (int i = 0; i < 50; i++) {
+			batch.add(day + 1, new String[]{"AWS", "r", i % 2 == 0 ? "a3" : "new", "s", "d"}, 1.0, 0.0);
+		}
+		FactTable appended = table.append(batch, 16);
+
+		InvertedIndex index = appended.invertedIndex(CostField.ACCOUNT_ID);
+		assertEquals(125, index.rows(appended.dictionary(CostField.ACCOUNT_ID).codeOf("a3")).cardinality());
+		assertEquals(25, index.rows(appended.dictionary(CostField.ACCOUNT_ID).codeOf("new")).cardinality());
+		assertEquals(100, table.invertedIndex(CostField.ACCOUNT_ID).rows(table.dictionary(CostField.ACCOUNT_ID).codeOf("a3")).cardinality());
+	}
+
+	private static int[] rows(BitSet bits, int from, int to) {
+		return bits.get(0, to).stream().filter(row -> row >= from).toArray();
+	}
+}
@@ -0,0 +1,128 @@
+package com.example.customized.dashboard.repository;
+
+import com.example.customized.dashboard.model.CostField;
+import com.example.customized.dashboard.model.Dimension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentFileTests {
+
+	@TempDir
+	Path directory;
+
+	private static FactTable.Builder randomRows(Random random, int rows, int firstDay) {
+		String[] providers = {"AWS", "Azure", "GCP"};
+		String[] regions = {"us-east-1", "eu-west-1", "ap-south-1", "région-ü"};
+		FactTable.Builder builder = new FactTable.Builder();
+		for (int i = 0; i < rows; i++) {
+			String[] fields = {
+					providers[random.nextInt(providers.length)],
+					regions[random.nextInt(regions.length)],
+					"acct-" + random.nextInt(20),
+					"svc-" + random.nextInt(5),
+					"D" + random.nextInt(3)
+			};
+			builder.add(firstDay + random.nextInt(400), fields, random.nextInt(1000) / 8.0,
+					random.nextBoolean() ? Double.NaN : random.nextInt(500));
+		}
+		return builder;
+	}
+
+	private static void assertSameRows(FactTable expected, FactTable actual) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.runCount(), actual.runCount());
+		for (int run = 0; run < expected.runCount(); run++) {
+			assertEquals(expected.runEnd(run), actual.runEnd(run));
+		}
+		for (int row = 0; row < expected.size(); row++) {
+			assertEquals(expected.date(row), actual.date(row));
+			assertEquals(expected.consumption(row), actual.consumption(row));
+			assertEquals(expected.budget(row), actual.budget(row));
+			for (CostField field : CostField.values()) {
+				assertEquals(expected.dictionary(field).decode(expected.codes(field).get(row)),
+						actual.dictionary(field).decode(actual.codes(field).get(row)));
+			}
+			for (Dimension dimension : Dimension.values()) {
+				DimensionKeys expectedKeys = expected.keys(dimension);
+				DimensionKeys actualKeys = actual.keys(dimension);
+				assertEquals(expectedKeys.keyOf(row), actualKeys.keyOf(row));
+				assertEquals(expectedKeys.name(expectedKeys.keyOf(row)), actualKeys.name(actualKeys.keyOf(row)));
+			}
+		}
+	}
+
+	@Test
+	void mappedTableHoldsTheWrittenRowsAndKeys() throws IOException {
+		FactTable table = randomRows(new Random(7), 5000, (int) LocalDate.of(2023, 1, 1).toEpochDay()).build();
+		Path segment = directory.resolve("data.seg");
+
+		SegmentFile.write(table, segment);
+		FactTable mapped = SegmentFile.read(segment);
+
+		assertSameRows(table, mapped);
+		assertEquals(table.partitions(0).length, mapped.partitions(0).length);
+		for (int i = 0; i < table.partitions(0).length; i++) {
+			assertEquals(table.partitions(0)[i].startRow(), mapped.partitions(0)[i].startRow());
+			assertEquals(table.partitions(0)[i].maxDate(), mapped.partitions(0)[i].maxDate());
+		}
+		assertEquals(table.minDate(), mapped.minDate());
+		assertEquals(table.maxDate(), mapped.maxDate());
+	}
+
+	@Test
+	void rowsAppendedToAMappedTableMatchAHeapTable() throws IOException {
+		Random random = new Random(11);
+		int firstDay = (int) LocalDate.of(2023, 1, 1).toEpochDay();
+		FactTable heap = randomRows(random, 3000, firstDay).build();
+		Path segment = directory.resolve("data.seg");
+		SegmentFile.write(heap, segment);
+		FactTable mapped = SegmentFile.read(segment);
+
+		// Later batches extend the last run, earlier ones add runs until the heap rows are merged
+		for (int i = 0; i < 6; i++) {
+			FactTable.Builder batch = randomRows(new Random(100 + i), 200, firstDay + (i % 2 == 0 ? 400 : -400));
+			heap = heap.append(batch, 3);
+			mapped = mapped.append(randomRows(new Random(100 + i), 200, firstDay + (i % 2 == 0 ? 400 : -400)), 3);
+			assertTrue(mapped.runCount() <= 3);
+		}
+		assertEquals(3000, mapped.runEnd(0));
+
+		assertEquals(heap.size(), mapped.size());
+		for (int day = firstDay - 400; day < firstDay + 800; day++) {
+			double expected = 0;
+			double actual = 0;
+			for (int run = 0; run < heap.runCount(); run++) {
+				for (int row = heap.lowerBound(run, day); row < heap.upperBound(run, day); row++) {
+					expected += heap.consumption(row);
+				}
+			}
+			for (int run = 0; run < mapped.runCount(); run++) {
+				for (int row = mapped.lowerBound(run, day); row < mapped.upperBound(run, day); row++) {
+					actual += mapped.consumption(row);
+				}
+			}
+			assertEquals(expected, actual, 1e-6);
+		}
+
+		Map<String, Double> expectedByRegion = new HashMap<>();
+		Map<String, Double> actualByRegion = new HashMap<>();
+		DimensionKeys heapKeys = heap.keys(Dimension.REGION);
+		DimensionKeys mappedKeys = mapped.keys(Dimension.REGION);
+		for (int row = 0; row < heap.size(); row++) {
+			expectedByRegion.merge(heapKeys.name(heapKeys.keyOf(row)), heap.consumption(row), Double::sum);
+			actualByRegion.merge(mappedKeys.name(mappedKeys.keyOf(row)), mapped.consumption(row), Double::sum);
+		}
+		assertEquals(expectedByRegion.keySet(), actualByRegion.keySet());
+		expectedByRegion.forEach((key, total) -> assertEquals(total, actualByRegion.get(key), 1e-6));
+	}
+}
@@ -0,0 +1,329 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.CostField;
+import com.example.customized.dashboard.model.FilterCondition;
+import com.example.customized.dashboard.model.FilterQuery;
+import com.example.customized.dashboard.repository.FactTable;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggregationServiceTests {
+
+	private final AggregationService aggregationService = new AggregationService(65536, Integer.MAX_VALUE, 1);
+
+	private static FactTable sampleTable() {
+		FactTable.Builder builder = new FactTable.Builder();
+		String[][] rows = {
+				{"2023-01-05", "AWS", "D1", "10"},
+				{"2023-01-20", "Azure", "D2", "5"},
+				{"2023-02-03", "AWS", "D1", "7"},
+				{"2023-02-14", "Google Cloud", "D3", "30"},
+				{"2023-04-01", "Azure", "D2", "1"},
+				{"2023-07-09", "AWS", "D1", "2"},
+		};
+		for (String[] row : rows) {
+			int day = (int) LocalDate.parse(row[0]).toEpochDay();
+			builder.add(day, new String[]{row[1], "r", "a", "s", row[2]}, Double.parseDouble(row[3]), 500.0);
+		}
+		return builder.build();
+	}
+
+	@Test
+	void groupsByKeyAndBucketInChronologicalOrder() {
+		FilterQuery query = FilterQuery.of("CloudProvider", "month", "2023-01-01", "2023-03-31", "all");
+
+		AggregationResult result = aggregationService.aggregate(sampleTable(), query);
+
+		assertEquals(3, result.keyCount());
+		assertEquals("AWS", result.keyName(0));
+		assertEquals(2, result.bucketEnd(0) - result.bucketStart(0));
+		assertEquals("2023-01", result.timePeriod(result.bucketStart(0)));
+		assertEquals(10.0, result.totalConsumption(result.bucketStart(0)));
+		assertEquals("2023-02", result.timePeriod(result.bucketStart(0) + 1));
+		assertEquals(7.0, result.totalConsumption(result.bucketStart(0) + 1));
+		assertFalse(result.hasBudgets());
+	}
+
+	@Test
+	void maxDisplayKeepsTheLargestKeysInDescendingOrder() {
+		FilterQuery query = FilterQuery.of("FinancialDomain", "quarter", "2023-01-01", "2023-12-31", "2");
+
+		AggregationResult result = aggregationService.aggregate(sampleTable(), query);
+
+		assertEquals(2, result.keyCount());
+		assertEquals("D3", result.keyName(0));
+		assertEquals("D1", result.keyName(1));
+		assertTrue(result.hasBudgets());
+		assertEquals(500.0, result.budget(0));
+		assertEquals("2023-Q1", result.timePeriod(result.bucketStart(1)));
+		assertEquals("2023-Q3", result.timePeriod(result.bucketStart(1) + 1));
+	}
+
+	@Test
+	void aKeysBudgetIsThatOfItsEarliestRecordInRange() {
+		// Loaded out of date order: the June record comes first in the file
+		FactTable.Builder builder = new FactTable.Builder();
+		builder.add((int) LocalDate.parse("2023-06-01").toEpochDay(), new String[]{"AWS", "r", "a", "s", "D1"}, 1.0, 600.0);
+		builder.add((int) LocalDate.parse("2023-03-01").toEpochDay(), new String[]{"AWS", "r", "a", "s", "D1"}, 1.0, 300.0);
+		builder.add((int) LocalDate.parse("2023-03-01").toEpochDay(), new String[]{"AWS", "r", "b", "s", "D1"}, 1.0, 310.0);
+		builder.add((int) LocalDate.parse("2023-01-01").toEpochDay(), new String[]{"AWS", "r", "a", "s", "D1"}, 1.0, 100.0);
+		FactTable table = builder.build();
+
+		assertEquals(100.0, aggregationService.aggregate(table,
+				FilterQuery.of("FinancialDomain", "year", "2023-01-01", "2023-12-31", "all")).budget(0));
+		// Of records with the same date, the one loaded first
+		assertEquals(300.0, aggregationService.aggregate(table,
+				FilterQuery.of("FinancialDomain", "year", "2023-02-01", "2023-12-31", "all")).budget(0));
+	}
+
+	@Test
+	void anIngestedEarlierRecordSetsTheBudgetLikeAFreshLoad() {
+		String[] storage = {"AWS", "r", "a", "Storage", "D1"};
+		for (boolean rolledUp : new boolean[]{false, true}) {
+			FactTable.Builder base = new FactTable.Builder();
+			base.add((int) LocalDate.parse("2023-03-01").toEpochDay(), storage, 1.0, 800.0);
+			base.add((int) LocalDate.parse("2024-03-01").toEpochDay(), storage, 1.0, 900.0);
+			FactTable appended = base.build();
+			if (rolledUp) {
+				appended.buildRollups();
+			}
+			// The ingested record lands in a later run but is dated before the loaded ones
+			FactTable.Builder ingested = new FactTable.Builder();
+			ingested.add((int) LocalDate.parse("2022-06-01").toEpochDay(), storage, 1.0, 1.0);
+			appended = appended.append(ingested, 16);
+
+			for (String groupBy : new String[]{"day", "month", "year"}) {
+				for (String[] range : new String[][]{{"2022-01-01", "2024-12-31"}, {"2022-05-15", "2024-06-30"}}) {
+					FilterQuery query = FilterQuery.of("FinancialDomain", groupBy, range[0], range[1], "all");
+
+					assertEquals(1.0, aggregationService.aggregate(appended, query).budget(0));
+				}
+			}
+		}
+	}
+
+	@Test
+	void parallelAggregationMatchesSequentialBitForBit() {
+		Random random = new Random(42);
+		FactTable.Builder builder = new FactTable.Builder();
+		int firstDay = (int) LocalDate.parse("2022-01-01").toEpochDay();
+		for (int i = 0; i < 20000; i++) {
+			String account = "Account " + random.nextInt(50);
+			builder.add(firstDay + random.nextInt(730), new String[]{"AWS", "r", account, "s", "d"}, random.nextDouble() * 1000, 0.0);
+		}
+		FactTable table = builder.build();
+		FilterQuery query = FilterQuery.of("Account", "day", "2022-03-01", "2023-10-31", "all");
+
+		AggregationService sequential = new AggregationService(700, Integer.MAX_VALUE, 1);
+		AggregationService parallel = new AggregationService(700, 0, 4);
+		try {
+			AggregationResult expected = sequential.aggregate(table, query);
+			AggregationResult actual = parallel.aggregate(table, query);
+
+			assertArrayEquals(flatten(expected), flatten(actual));
+		} finally {
+			sequential.shutdown();
+			parallel.shutdown();
+		}
+	}
+
+	@Test
+	void rollupsAnswerLikeTheRawRows() {
+		Random random = new Random(7);
+		FactTable.Builder builder = new FactTable.Builder();
+		int firstDay = (int) LocalDate.parse("2021-06-01").toEpochDay();
+		for (int i = 0; i < 5000; i++) {
+			String provider = "P" + random.nextInt(3);
+			String region = "R" + random.nextInt(6);
+			builder.add(firstDay + random.nextInt(1000), new String[]{provider, region, "a", "s", "d"}, random.nextInt(1000), 0.0);
+		}
+		FactTable raw = builder.build();
+		FactTable rolledUp = builder.build();
+		rolledUp.buildRollups();
+
+		for (String groupBy : new String[]{"day", "month", "quarter", "year"}) {
+			FilterQuery query = FilterQuery.of("Region", groupBy, "2021-08-17", "2023-11-03", "5");
+			AggregationResult expected = aggregationService.aggregate(raw, query);
+			AggregationResult actual = aggregationService.aggregate(rolledUp, query);
+
+			assertEquals(expected.keyCount(), actual.keyCount());
+			assertArrayEquals(flatten(expected), flatten(actual), 1e-6);
+		}
+	}
+
+	@Test
+	void batchedQueriesShareAScanAndMatchSingleQueries() {
+		FactTable table = sampleTable();
+		List<FilterQuery> queries = List.of(
+				FilterQuery.of("CloudProvider", "month", "2023-01-01", "2023-12-31", "all"),
+				FilterQuery.of("FinancialDomain", "quarter", "2023-01-01", "2023-12-31", "2"),
+				FilterQuery.of("CloudProvider", "month", "2023-01-01", "2023-12-31", "1"),
+				FilterQuery.of("Region", "year", "2023-02-01", "2023-12-31", "all"),
+				FilterQuery.of("CloudProvider", "month", "2023-01-01", "2023-12-31", "all"));
+
+		Map<FilterQuery, AggregationResult> results = aggregationService.aggregateAll(table, queries);
+
+		assertEquals(4, results.size());
+		for (FilterQuery query : queries) {
+			AggregationResult expected = aggregationService.aggregate(table, query);
+			AggregationResult actual = results.get(query);
+			assertEquals(expected.keyCount(), actual.keyCount());
+			assertArrayEquals(flatten(expected), flatten(actual));
+		}
+	}
+
+	@Test
+	void appendedRowsAnswerLikeAFreshlyLoadedTable() {
+		Random random = new Random(11);
+		int firstDay = (int) LocalDate.parse("2022-01-01").toEpochDay();
+		FactTable.Builder all = new FactTable.Builder();
+		FactTable.Builder base = new FactTable.Builder();
+		for (int i = 0; i < 3000; i++) {
+			addRandomRow(random, firstDay + random.nextInt(400), all, base);
+		}
+		FactTable appended = base.build();
+		appended.buildRollups();
+		for (int batch = 0; batch < 6; batch++) {
+			// Alternate between batches after the loaded history and batches inside it
+			FactTable.Builder rows = new FactTable.Builder();
+			int start = batch % 2 == 0 ? firstDay + 400 + batch * 30 : firstDay + random.nextInt(400);
+			for (int i = 0; i < 500; i++) {
+				addRandomRow(random, start + random.nextInt(30), all, rows);
+			}
+			appended = appended.append(rows, 16);
+		}
+		FactTable fresh = all.build();
+		fresh.buildRollups();
+
+		for (String dimension : new String[]{"Region", "FinancialDomain", "Bogus"}) {
+			for (String groupBy : new String[]{"day", "month", "year"}) {
+				FilterQuery query = FilterQuery.of(dimension, groupBy, "2022-02-11", "2022-12-20", "all");
+				Map<String, Double> expected = byKeyAndPeriod(aggregationService.aggregate(fresh, query));
+				Map<String, Double> actual = byKeyAndPeriod(aggregationService.aggregate(appended, query));
+
+				assertEquals(expected.keySet(), actual.keySet());
+				expected.forEach((cell, sum) -> assertEquals(sum, actual.get(cell), 1e-6));
+			}
+		}
+	}
+
+	@Test
+	void filteredQueriesMatchAggregatingOnlyTheMatchingRows() {
+		Random random = new Random(23);
+		int firstDay = (int) LocalDate.parse("2022-01-01").toEpochDay();
+		List<Map<String, Object>> filters = List.of(
+				Map.of("providerName", "P1"),
+				Map.of("providerName", List.of("P0", "P2"), "region", "R3"),
+				Map.of("accountId", "A7"),
+				Map.of("accountId", "A7,A12", "minBudget", "400"),
+				Map.of("maxBudget", 250),
+				Map.of("region", "Nowhere"));
+
+		FactTable.Builder all = new FactTable.Builder();
+		int[] days = new int[40000];
+		String[][] fields = new String[days.length][];
+		double[] budgets = new double[days.length];
+		for (int i = 0; i < days.length; i++) {
+			days[i] = firstDay + random.nextInt(700);
+			fields[i] = new String[]{"P" + random.nextInt(3), "R" + random.nextInt(5), "A" + random.nextInt(200), "s", "D" + random.nextInt(4)};
+			budgets[i] = random.nextInt(10) == 0 ? Double.NaN : random.nextInt(1000);
+			all.add(days[i], fields[i], i % 97, budgets[i]);
+		}
+		FactTable raw = all.build();
+		FactTable rolledUp = all.build();
+		rolledUp.buildRollups();
+
+		for (Map<String, Object> filter : filters) {
+			List<FilterCondition> conditions = FilterCondition.parseAll(filter);
+
+			// The same rows without the ones the conditions reject
+			FactTable.Builder matching = new FactTable.Builder();
+			for (int i = 0; i < days.length; i++) {
+				if (matches(conditions, fields[i], budgets[i])) {
+					matching.add(days[i], fields[i], i % 97, budgets[i]);
+				}
+			}
+			FactTable expectedTable = matching.build();
+
+			for (String dimension : new String[]{"CloudProvider", "Region", "Account"}) {
+				FilterQuery query = FilterQuery.of(dimension, "month", "2022-03-15", "2023-09-30", "all", conditions);
+				Map<String, Double> expected = byKeyAndPeriod(aggregationService.aggregate(expectedTable,
+						FilterQuery.of(dimension, "month", "2022-03-15", "2023-09-30", "all")));
+				for (FactTable table : new FactTable[]{raw, rolledUp}) {
+					Map<String, Double> actual = byKeyAndPeriod(aggregationService.aggregate(table, query));
+					assertEquals(expected.keySet(), actual.keySet(), filter + " by " + dimension);
+					expected.forEach((cell, sum) -> assertEquals(sum, actual.get(cell), 1e-6));
+				}
+			}
+		}
+	}
+
+	@Test
+	void conditionsAreNormalizedIntoEqualQueries() {
+		FilterQuery a = FilterQuery.of("Region", "month", "2023-01-01", "2023-12-31", "all",
+				FilterCondition.parseAll(Map.of("providerName", "Azure,AWS", "minBudget", List.of("10", "20"))));
+		FilterQuery b = FilterQuery.of("Region", "month", "2023-01-01", "2023-12-31", "all",
+				FilterCondition.parseAll(Map.of("minBudget", "20", "providerName", List.of("AWS", "Azure", "AWS"), "dimension", "x")));
+
+		assertEquals(a, b);
+		assertEquals(List.of(FilterCondition.in(CostField.PROVIDER_NAME, List.of("AWS", "Azure")), FilterCondition.minBudget(20)),
+				a.conditions());
+		assertThrows(IllegalArgumentException.class, () -> FilterCondition.parseAll(Map.of("maxBudget", "lots")));
+	}
+
+	// Evaluates conditions on a record directly, for comparison with the compiled filters
+	private static boolean matches(List<FilterCondition> conditions, String[] fields, double budget) {
+		for (FilterCondition condition : conditions) {
+			boolean match = switch (condition.operator()) {
+				case IN -> condition.values().contains(fields[condition.field().ordinal()]);
+				case MIN_BUDGET -> budget >= condition.threshold();
+				case MAX_BUDGET -> budget <= condition.threshold();
+			};
+			if (!match) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void addRandomRow(Random random, int day, FactTable.Builder... builders) {
+		String[] fields = {"P" + random.nextInt(3), "R" + random.nextInt(8), "a", "s", "D" + random.nextInt(5)};
+		double consumption = random.nextInt(1000);
+		for (FactTable.Builder builder : builders) {
+			builder.add(day, fields, consumption, 100.0);
+		}
+	}
+
+	// Indexes a result's sums by "key/timePeriod"
+	private static Map<String, Double> byKeyAndPeriod(AggregationResult result) {
+		Map<String, Double> sums = new HashMap<>();
+		for (int i = 0; i < result.keyCount(); i++) {
+			for (int bucket = result.bucketStart(i); bucket < result.bucketEnd(i); bucket++) {
+				sums.put(result.keyName(i) + "/" + result.timePeriod(bucket), result.totalConsumption(bucket));
+			}
+		}
+		return sums;
+	}
+
+	// Flattens a result into (bucket label hash, sum) values for exact comparison
+	private static double[] flatten(AggregationResult result) {
+		int size = result.bucketEnd(result.keyCount() - 1);
+		double[] values = new double[size * 2];
+		for (int i = 0; i < size; i++) {
+			values[2 * i] = result.timePeriod(i).hashCode();
+			values[2 * i + 1] = result.totalConsumption(i);
+		}
+		return values;
+	}
+}
@@ -0,0 +1,220 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.FilterCondition;
+import com.example.customized.dashboard.model.FilterQuery;
+import com.example.customized.dashboard.repository.FactTable;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApproximateAggregationServiceTests {
+
+	private final AggregationService aggregationService = new AggregationService(65536, Integer.MAX_VALUE, 1);
+
+	// Two years of rows; AWS spends about three times as much as Azure
+	private static FactTable randomTable(int rows, int accounts) {
+		Random random = new Random(7);
+		FactTable.Builder builder = new FactTable.Builder();
+		int firstDay = (int) LocalDate.parse("2022-01-01").toEpochDay();
+		for (int i = 0; i < rows; i++) {
+			boolean aws = random.nextInt(4) > 0;
+			String account = "Account " + random.nextInt(accounts);
+			builder.add(firstDay + random.nextInt(730), new String[]{aws ? "AWS" : "Azure", "r", account, "s", "d"},
+					random.nextDouble() * 100, 0.0);
+		}
+		return builder.build();
+	}
+
+	@Test
+	void smallRangesAreAnsweredExactly() {
+		FactTable table = randomTable(2000, 10);
+		FilterQuery query = FilterQuery.of("CloudProvider", "month", "2022-01-01", "2022-03-31", "all");
+
+		ApproximateResult approximate = new ApproximateAggregationService(aggregationService, 100000).aggregate(table, query);
+		AggregationResult exact = aggregationService.aggregate(table, query);
+
+		assertTrue(approximate.isExact());
+		assertFalse(approximate.result().hasErrors());
+		assertEquals(exact.bucketCount(), approximate.result().bucketCount());
+		for (int bucket = 0; bucket < exact.bucketCount(); bucket++) {
+			assertEquals(exact.totalConsumption(bucket), approximate.result().totalConsumption(bucket));
+		}
+	}
+
+	@Test
+	void sampledTotalsLieWithinTheirErrorBounds() {
+		FactTable table = randomTable(200000, 50);
+		FilterQuery query = FilterQuery.of("CloudProvider", "quarter", "2022-01-01", "2023-12-31", "all");
+
+		ApproximateResult approximate = new ApproximateAggregationService(aggregationService, 10000).aggregate(table, query);
+		AggregationResult exact = aggregationService.aggregate(table, query);
+		AggregationResult estimate = approximate.result();
+
+		assertFalse(approximate.isExact());
+		assertEquals(200000, approximate.rowsInRange());
+		// The sample size is binomial with a standard deviation just under 100
+		assertTrue(Math.abs(approximate.sampledRows() - 10000) <= 500, "sampled " + approximate.sampledRows());
+		assertTrue(estimate.hasErrors());
+		assertEquals(exact.bucketCount(), estimate.bucketCount());
+		for (int bucket = 0; bucket < exact.bucketCount(); bucket++) {
+			assertEquals(exact.timePeriod(bucket), estimate.timePeriod(bucket));
+			double difference = Math.abs(exact.totalConsumption(bucket) - estimate.totalConsumption(bucket));
+			assertTrue(estimate.error(bucket) > 0);
+			// Twice the 95% bound: about four standard errors
+			assertTrue(difference <= 2 * estimate.error(bucket), "bucket " + bucket + " off by " + difference);
+		}
+	}
+
+	@Test
+	void errorBoundsCoverTheTotalsOfPeriodicallyLaidOutRows() {
+		// Ten rows a day, always in the same order, where the first account spends the most:
+		// a sample taking every tenth row would see the same account every day
+		FactTable.Builder builder = new FactTable.Builder();
+		int firstDay = (int) LocalDate.parse("2022-01-01").toEpochDay();
+		for (int day = 0; day < 3 * 365; day++) {
+			for (int i = 0; i < 10; i++) {
+				builder.add(firstDay + day, new String[]{"AWS", "r", "Account " + i, "s", "d"}, i == 0 ? 1000.0 : 1.0, 0.0);
+			}
+		}
+		FactTable table = builder.build();
+		FilterQuery query = FilterQuery.of("CloudProvider", "year", "2022-01-01", "2024-12-31", "all");
+		AggregationResult exact = aggregationService.aggregate(table, query);
+		ApproximateAggregationService service = new ApproximateAggregationService(aggregationService, 1095);
+
+		int checks = 0;
+		int covered = 0;
+		for (int trial = 0; trial < 200; trial++) {
+			AggregationResult estimate = service.aggregate(table, query).result();
+			assertEquals(exact.bucketCount(), estimate.bucketCount());
+			for (int bucket = 0; bucket < exact.bucketCount(); bucket++) {
+				checks++;
+				if (Math.abs(exact.totalConsumption(bucket) - estimate.totalConsumption(bucket)) <= estimate.error(bucket)) {
+					covered++;
+				}
+			}
+		}
+		// The bounds are 95% intervals; a biased estimate or an understated bound covers far fewer
+		assertTrue(covered >= 0.9 * checks, covered + " of " + checks + " totals within their bounds");
+	}
+
+	@Test
+	void maxDisplayRanksKeysByTheirEstimatedTotals() {
+		FactTable table = randomTable(200000, 50);
+		FilterQuery query = FilterQuery.of("CloudProvider", "month", "2022-01-01", "2023-12-31", "1");
+
+		AggregationResult estimate = new ApproximateAggregationService(aggregationService, 10000).aggregate(table, query).result();
+
+		assertEquals(1, estimate.keyCount());
+		assertEquals("AWS", estimate.keyName(0));
+	}
+
+	@Test
+	void sampledBudgetsAreTheBudgetsOfTheEarliestRecords() {
+		for (boolean rolledUp : new boolean[]{false, true}) {
+			// Every record carries its own budget, so only the earliest one gives the exact answer
+			Random random = new Random(11);
+			FactTable.Builder builder = new FactTable.Builder();
+			int firstDay = (int) LocalDate.parse("2023-01-01").toEpochDay();
+			for (int i = 0; i < 20000; i++) {
+				builder.add(firstDay + random.nextInt(365), new String[]{"AWS", "r", "Account " + random.nextInt(2), "s",
+						"D" + random.nextInt(4)}, random.nextDouble() * 100, i);
+			}
+			FactTable table = builder.build();
+			if (rolledUp) {
+				table.buildRollups();
+			}
+			// An ingested record in a later run, dated before every loaded one
+			FactTable.Builder ingested = new FactTable.Builder();
+			ingested.add(firstDay - 1, new String[]{"AWS", "r", "Account 0", "s", "D2"}, 1.0, -1.0);
+			table = table.append(ingested, 16);
+
+			ApproximateAggregationService service = new ApproximateAggregationService(aggregationService, 500);
+			for (FilterQuery query : new FilterQuery[]{
+					FilterQuery.of("FinancialDomain", "month", "2022-12-01", "2023-12-31", "all"),
+					FilterQuery.of("FinancialDomain", "month", "2023-03-10", "2023-10-20", "all"),
+					FilterQuery.of("FinancialDomain", "month", "2022-12-01", "2023-12-31", "all",
+							FilterCondition.parseAll(Map.of("accountId", "Account 1")))}) {
+				ApproximateResult approximate = service.aggregate(table, query);
+				AggregationResult estimate = approximate.result();
+				AggregationResult exact = aggregationService.aggregate(table, query);
+
+				assertFalse(approximate.isExact());
+				assertEquals(exact.keyCount(), estimate.keyCount());
+				Map<String, Double> budgets = new HashMap<>();
+				for (int i = 0; i < exact.keyCount(); i++) {
+					budgets.put(exact.keyName(i), exact.budget(i));
+				}
+				for (int i = 0; i < estimate.keyCount(); i++) {
+					assertEquals(budgets.get(estimate.keyName(i)), estimate.budget(i), estimate.keyName(i));
+				}
+			}
+		}
+	}
+
+	@Test
+	void distinctAccountsAreEstimatedWithinTheSketchError() throws InterruptedException {
+		FactTable table = randomTable(50000, 5000);
+		FilterQuery query = FilterQuery.of("Account", "day", "2022-01-01", "2023-12-31", "all");
+		ApproximateAggregationService service = new ApproximateAggregationService(aggregationService, 1000);
+
+		// The first query only requests the sketches
+		assertNull(service.aggregate(table, query).accounts());
+		ApproximateResult approximate = aggregateWithAccounts(service, table, query);
+		AggregationResult exact = aggregationService.aggregate(table, query);
+
+		long estimate = approximate.accounts().estimate();
+		assertTrue(Math.abs(estimate - exact.keyCount()) <= 0.05 * exact.keyCount(),
+				"estimated " + estimate + " of " + exact.keyCount());
+		service.shutdown();
+	}
+
+	@Test
+	void distinctAccountsOfPartlyCoveredMonthsAreCountedPerDay() throws InterruptedException {
+		FactTable table = randomTable(50000, 20000);
+		FilterQuery query = FilterQuery.of("Account", "day", "2022-01-20", "2022-03-10", "all");
+		ApproximateAggregationService service = new ApproximateAggregationService(aggregationService, 1000);
+
+		ApproximateResult approximate = aggregateWithAccounts(service, table, query);
+		AggregationResult exact = aggregationService.aggregate(table, query);
+
+		// Whole edge months would hold about twice as many accounts
+		long estimate = approximate.accounts().estimate();
+		assertTrue(Math.abs(estimate - exact.keyCount()) <= 0.05 * exact.keyCount(),
+				"estimated " + estimate + " of " + exact.keyCount());
+		service.shutdown();
+	}
+
+	// Repeats the query until the account sketches of its range are built
+	private static ApproximateResult aggregateWithAccounts(ApproximateAggregationService service, FactTable table,
+			FilterQuery query) throws InterruptedException {
+		for (int attempt = 0; attempt < 500; attempt++) {
+			ApproximateResult result = service.aggregate(table, query);
+			if (result.accounts() != null) {
+				return result;
+			}
+			Thread.sleep(10);
+		}
+		throw new AssertionError("account sketches were not built");
+	}
+
+	@Test
+	void sketchesOfDisjointValuesMerge() {
+		HyperLogLog first = new HyperLogLog();
+		HyperLogLog second = new HyperLogLog();
+		for (int i = 0; i < 20000; i++) {
+			(i % 2 == 0 ? first : second).add("value-" + i);
+		}
+		first.merge(second);
+
+		assertTrue(Math.abs(first.estimate() - 20000) <= 20000 * 3 * HyperLogLog.relativeError(),
+				"estimated " + first.estimate());
+	}
+}
@@ -0,0 +1,84 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.TimeGrain;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BudgetLedgerTests {
+
+	private static int day(String date) {
+		return (int) LocalDate.parse(date).toEpochDay();
+	}
+
+	@Test
+	void projectsTheBurnRateToTheEndOfThePeriod() {
+		BudgetLedger ledger = new BudgetLedger();
+		ledger.add("Storage", day("2024-06-01"), 100, 1000);
+		ledger.add("Storage", day("2024-06-10"), 200, 1000);
+
+		BudgetUtilization utilization = ledger.utilization("Storage", TimeGrain.MONTH, day("2024-06-10"), ledger.latestDay());
+
+		assertEquals("2024-06", utilization.timePeriod());
+		assertEquals(300.0, utilization.consumption());
+		assertEquals(1000.0, utilization.budget());
+		assertEquals(0.3, utilization.utilization(), 1e-9);
+		assertEquals(30.0, utilization.burnRate(), 1e-9);
+		assertEquals(900.0, utilization.projectedConsumption(), 1e-9);
+		assertEquals(0.9, utilization.projectedUtilization(), 1e-9);
+	}
+
+	@Test
+	void theLatestRecordOfAMonthSetsItsBudgetUntilItChanges() {
+		BudgetLedger ledger = new BudgetLedger();
+		ledger.add("Compute", day("2024-05-20"), 10, 500);
+		ledger.add("Compute", day("2024-06-05"), 10, 800);
+		// Added later, but dated earlier in the month
+		ledger.add("Compute", day("2024-06-02"), 10, 700);
+
+		assertEquals(800.0, ledger.utilization("Compute", TimeGrain.MONTH, day("2024-06-15"), day("2024-06-30")).budget());
+		assertEquals(800.0, ledger.utilization("Compute", TimeGrain.MONTH, day("2024-07-15"), day("2024-07-31")).budget());
+		// April precedes the first budget, so the quarter only counts May and June
+		BudgetUtilization quarter = ledger.utilization("Compute", TimeGrain.QUARTER, day("2024-04-01"), day("2024-06-30"));
+		assertEquals("2024-Q2", quarter.timePeriod());
+		assertEquals(1300.0, quarter.budget());
+		assertEquals(30.0, quarter.consumption());
+		assertNull(ledger.utilization("Compute", TimeGrain.MONTH, day("2024-04-01"), day("2024-04-30")).budget());
+	}
+
+	@Test
+	void changedBudgetsCarryForwardToTheNextMonthWithItsOwn() {
+		BudgetLedger ledger = new BudgetLedger();
+		ledger.add("Networking", day("2024-03-01"), 1, 300);
+		// Prepends months to the ledger
+		ledger.add("Networking", day("2024-01-01"), 1, 100);
+		ledger.add("Networking", day("2024-01-31"), 1, 200);
+
+		assertEquals(200.0, ledger.utilization("Networking", TimeGrain.MONTH, day("2024-01-15"), day("2024-01-31")).budget());
+		assertEquals(200.0, ledger.utilization("Networking", TimeGrain.MONTH, day("2024-02-15"), day("2024-02-29")).budget());
+		assertEquals(300.0, ledger.utilization("Networking", TimeGrain.MONTH, day("2024-03-15"), day("2024-03-31")).budget());
+		assertEquals(300.0, ledger.utilization("Networking", TimeGrain.MONTH, day("2024-04-15"), day("2024-04-30")).budget());
+		assertEquals(0.0, ledger.utilization("Networking", TimeGrain.MONTH, day("2024-02-15"), day("2024-02-29")).consumption());
+	}
+
+	@Test
+	void evaluatesEveryDomainInNameOrder() {
+		BudgetLedger ledger = new BudgetLedger();
+		ledger.add("Storage", day("2023-01-11"), 204, 800);
+		ledger.add("Database", day("2023-01-20"), 50, Double.NaN);
+		ledger.add("Compute", day("2023-01-25"), 100, 1000);
+
+		List<BudgetUtilization> utilizations = ledger.utilizationAll(TimeGrain.YEAR, day("2023-06-01"), day("2023-12-31"));
+
+		assertEquals(List.of("Compute", "Database", "Storage"), utilizations.stream().map(BudgetUtilization::domain).toList());
+		assertNull(utilizations.get(1).budget());
+		assertNull(utilizations.get(1).utilization());
+		// Twelve months of the January budget
+		assertEquals(9600.0, utilizations.get(2).budget());
+		assertNull(ledger.utilization("Unknown", TimeGrain.YEAR, day("2023-06-01"), day("2023-12-31")));
+	}
+}
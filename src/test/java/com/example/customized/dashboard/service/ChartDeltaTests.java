@@ -0,0 +1,92 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.FilterQuery;
+import com.example.customized.dashboard.repository.FactTable;
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChartDeltaTests {
+
+	private final AggregationService aggregationService = new AggregationService(65536, Integer.MAX_VALUE, 1);
+
+	private final FilterQuery query = FilterQuery.of("CloudProvider", "month", "2023-01-01", "2023-03-31", "all");
+
+	private static FactTable.Builder rows(String[]... rows) {
+		FactTable.Builder builder = new FactTable.Builder();
+		for (String[] row : rows) {
+			int day = (int) LocalDate.parse(row[0]).toEpochDay();
+			builder.add(day, new String[]{row[1], "r", "a", "s", "d"}, Double.parseDouble(row[2]), 0.0);
+		}
+		return builder;
+	}
+
+	private static FactTable sampleTable() {
+		return rows(
+				new String[]{"2023-01-05", "AWS", "10"},
+				new String[]{"2023-01-20", "Azure", "5"},
+				new String[]{"2023-02-03", "AWS", "7"}
+		).build();
+	}
+
+	@Test
+	void appendedRowsOnlyChangeTheirCells() {
+		FactTable table = sampleTable();
+		FactTable appended = table.append(rows(new String[]{"2023-02-20", "AWS", "3"}), 16);
+
+		ChartDelta delta = ChartDelta.between(aggregationService.aggregate(table, query),
+				aggregationService.aggregate(appended, query));
+
+		assertFalse(delta.isEmpty());
+		assertTrue(delta.isExpressible());
+		assertEquals("{\"dataVersion\":7,\"cells\":[{\"key\":\"AWS\",\"timePeriod\":\"2023-02\",\"totalConsumption\":10.0}]}",
+				delta.toJson(new JsonFactory(), 7));
+	}
+
+	@Test
+	void newKeysAreListedWithTheirCells() {
+		FactTable table = sampleTable();
+		FactTable appended = table.append(rows(new String[]{"2023-03-01", "Google Cloud", "30"}), 16);
+
+		ChartDelta delta = ChartDelta.between(aggregationService.aggregate(table, query),
+				aggregationService.aggregate(appended, query));
+
+		String json = delta.toJson(new JsonFactory(), 1);
+		assertTrue(json.contains("\"keys\":["), json);
+		assertTrue(json.contains("\"Google Cloud\""), json);
+		assertTrue(json.contains("{\"key\":\"Google Cloud\",\"timePeriod\":\"2023-03\",\"totalConsumption\":30.0}"), json);
+		assertFalse(json.contains("\"key\":\"AWS\""), json);
+	}
+
+	@Test
+	void equalResultsGiveAnEmptyDelta() {
+		FactTable table = sampleTable();
+		// Outside the query's dates, so the result does not change
+		FactTable appended = table.append(rows(new String[]{"2023-06-01", "AWS", "3"}), 16);
+
+		ChartDelta delta = ChartDelta.between(aggregationService.aggregate(table, query),
+				aggregationService.aggregate(appended, query));
+
+		assertTrue(delta.isEmpty());
+	}
+
+	@Test
+	void removedTimePeriodsCannotBeExpressed() {
+		FactTable table = sampleTable();
+		FactTable reloaded = rows(
+				new String[]{"2023-01-05", "AWS", "10"},
+				new String[]{"2023-01-20", "Azure", "5"}
+		).build();
+
+		ChartDelta delta = ChartDelta.between(aggregationService.aggregate(table, query),
+				aggregationService.aggregate(reloaded, query));
+
+		assertFalse(delta.isEmpty());
+		assertFalse(delta.isExpressible());
+	}
+}
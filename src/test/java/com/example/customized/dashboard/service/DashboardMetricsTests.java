@@ -0,0 +1,88 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.FilterQuery;
+import com.example.customized.dashboard.model.TimeGrain;
+import com.example.customized.dashboard.repository.FactTable;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DashboardMetricsTests {
+
+	@Test
+	void recordsRowsScannedGroupsAndStagesByDimensionAndGroupBy() {
+		FactTable.Builder builder = new FactTable.Builder();
+		builder.add((int) LocalDate.parse("2022-12-30").toEpochDay(), new String[]{"AWS", "r", "a", "s", "D1"}, 1.0, 500.0);
+		builder.add((int) LocalDate.parse("2023-01-05").toEpochDay(), new String[]{"AWS", "r", "a", "s", "D1"}, 10.0, 500.0);
+		builder.add((int) LocalDate.parse("2023-02-07").toEpochDay(), new String[]{"Azure", "r", "a", "s", "D1"}, 2.5, 500.0);
+		FilterQuery query = FilterQuery.of("CloudProvider", "month", "2023-01-01", "2023-12-31", "all");
+
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		AggregationService aggregationService = new AggregationService(65536, Integer.MAX_VALUE, 1, new DashboardMetrics(registry));
+		try {
+			aggregationService.aggregate(builder.build(), query);
+
+			assertEquals(2.0, registry.get("dashboard.filter.rows.scanned")
+					.tag("dimension", "CloudProvider").tag("groupBy", "month").counter().count());
+			assertEquals(2.0, registry.get("dashboard.filter.groups")
+					.tag("dimension", "CloudProvider").tag("groupBy", "month").summary().totalAmount());
+			assertEquals(1, registry.get("dashboard.filter.stage").tag("stage", "aggregate")
+					.tag("dimension", "CloudProvider").tag("groupBy", "month").timer().count());
+			// Meters of combinations never queried are not registered
+			assertNull(registry.find("dashboard.filter.stage").tag("dimension", "Region").timer());
+			assertNull(registry.find("dashboard.filter.groups").tag("groupBy", "year").summary());
+		} finally {
+			aggregationService.shutdown();
+		}
+	}
+
+	@Test
+	void queriesOfUnknownDimensionsAreNotRecorded() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		DashboardMetrics metrics = new DashboardMetrics(registry);
+
+		metrics.stage(DashboardMetrics.Stage.PARSE, null, TimeGrain.MONTH, System.nanoTime());
+		metrics.rowsScanned(null, TimeGrain.MONTH, 10);
+		metrics.groups(null, TimeGrain.MONTH, 3);
+
+		assertNull(registry.find("dashboard.filter.stage").timer());
+		assertNull(registry.find("dashboard.filter.rows.scanned").counter());
+		assertNull(registry.find("dashboard.filter.groups").summary());
+	}
+
+	@Test
+	void histogramsCoverABoundedRange() {
+		// The simple registry publishes no histogram buckets, so the configured ranges are read as registered
+		Map<String, DistributionStatisticConfig> configs = new HashMap<>();
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		registry.config().meterFilter(new MeterFilter() {
+			@Override
+			public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+				configs.put(id.getName(), config);
+				return config;
+			}
+		});
+		DashboardMetrics metrics = new DashboardMetrics(registry);
+
+		metrics.stage(DashboardMetrics.Stage.AGGREGATE, Dimension.REGION, TimeGrain.DAY, System.nanoTime());
+		metrics.groups(Dimension.REGION, TimeGrain.DAY, 3);
+
+		for (String name : new String[]{"dashboard.filter.stage", "dashboard.filter.groups", "dashboard.filter.response.bytes"}) {
+			DistributionStatisticConfig config = configs.get(name);
+			assertTrue(config.isPercentileHistogram(), name);
+			assertTrue(config.getMinimumExpectedValueAsDouble() > 0, name);
+			assertTrue(config.getMaximumExpectedValueAsDouble() < Long.MAX_VALUE, name);
+		}
+	}
+}
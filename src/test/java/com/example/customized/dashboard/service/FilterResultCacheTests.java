@@ -0,0 +1,103 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.FilterQuery;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilterResultCacheTests {
+
+	private static FilterQuery query(int maxDisplay) {
+		return FilterQuery.of("Region", "month", "2023-01-01", "2023-12-31", Integer.toString(maxDisplay));
+	}
+
+	@Test
+	void responsesAreComputedOnceUntilTheDataVersionChanges() {
+		FilterResultCache cache = new FilterResultCache(1 << 20);
+		AtomicInteger computed = new AtomicInteger();
+		Supplier<byte[]> compute = () -> ("[" + computed.incrementAndGet() + "]").getBytes(StandardCharsets.UTF_8);
+
+		byte[] first = cache.get(query(1), 1, compute);
+		assertArrayEquals(first, cache.get(query(1), 1, compute));
+		assertEquals(1, computed.get());
+
+		// Reloaded data gets a new version, which drops the responses of the older ones
+		cache.get(query(1), 2, compute);
+		assertEquals(2, computed.get());
+		assertNull(cache.getIfPresent(query(1), 1));
+		assertNotNull(cache.getIfPresent(query(1), 2));
+	}
+
+	@Test
+	void responsesOfSupersededVersionsAreNotCached() {
+		FilterResultCache cache = new FilterResultCache(1 << 20);
+		cache.get(query(2), 1, () -> new byte[10]);
+
+		// Newer data is seen while a response of the old version is being computed
+		cache.get(query(1), 1, () -> {
+			cache.get(query(3), 2, () -> new byte[10]);
+			return new byte[10];
+		});
+		assertFalse(cache.contains(query(1), 1));
+		assertFalse(cache.contains(query(2), 1));
+		assertTrue(cache.contains(query(3), 2));
+
+		// Requests still reading the old data compute their responses without caching them
+		AtomicInteger computed = new AtomicInteger();
+		cache.get(query(1), 1, () -> new byte[computed.incrementAndGet()]);
+		cache.get(query(1), 1, () -> new byte[computed.incrementAndGet()]);
+		assertEquals(2, computed.get());
+		assertFalse(cache.contains(query(1), 1));
+		assertEquals(1L, cache.stats().get("entries"));
+	}
+
+	@Test
+	void responsesAreEvictedByTheirSizeInBytes() throws InterruptedException {
+		FilterResultCache cache = new FilterResultCache(1000);
+		for (int i = 0; i < 10; i++) {
+			cache.get(query(i), 1, () -> new byte[300]);
+		}
+
+		// The cache evicts in the background
+		long deadline = System.currentTimeMillis() + 5000;
+		while ((long) cache.stats().get("entries") > 3 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Map<String, Object> stats = cache.stats();
+		assertTrue((long) stats.get("entries") <= 3, "entries: " + stats.get("entries"));
+		assertTrue((long) stats.get("evictions") >= 7, "evictions: " + stats.get("evictions"));
+		assertTrue((long) stats.get("evictedBytes") >= 7 * 300, "evictedBytes: " + stats.get("evictedBytes"));
+	}
+
+	@Test
+	void statsCountHitsAndMissesOfTheCurrentDataVersion() {
+		FilterResultCache cache = new FilterResultCache(1 << 20);
+		cache.get(query(1), 3, () -> new byte[10]);
+		cache.get(query(1), 3, () -> new byte[10]);
+		cache.getIfPresent(query(2), 3);
+
+		Map<String, Object> stats = cache.stats();
+		assertEquals(1L, stats.get("hits"));
+		assertEquals(2L, stats.get("misses"));
+		assertEquals(1.0 / 3, (double) stats.get("hitRate"), 1e-9);
+		assertEquals(0L, stats.get("evictions"));
+		assertEquals(1L, stats.get("entries"));
+		assertEquals(3L, stats.get("dataVersion"));
+
+		// Checking whether a response is cached counts neither a hit nor a miss
+		assertTrue(cache.contains(query(1), 3));
+		assertFalse(cache.contains(query(2), 3));
+		assertEquals(1L, cache.stats().get("hits"));
+		assertEquals(2L, cache.stats().get("misses"));
+	}
+}
@@ -0,0 +1,59 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.model.FilterQuery;
+import com.example.customized.dashboard.repository.FactTable;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilterResultWriterTests {
+
+	@Test
+	void writesTheFilterResponseShape() {
+		FactTable.Builder builder = new FactTable.Builder();
+		builder.add((int) LocalDate.parse("2023-01-05").toEpochDay(), new String[]{"AWS", "r", "a", "s", "D1"}, 10.0, 500.0);
+		builder.add((int) LocalDate.parse("2023-02-07").toEpochDay(), new String[]{"AWS", "r", "a", "s", "D1"}, 2.5, 500.0);
+		builder.add((int) LocalDate.parse("2023-02-09").toEpochDay(), new String[]{"AWS", "r", "a", "s", "D2"}, 4.0, Double.NaN);
+		FilterQuery query = FilterQuery.of("FinancialDomain", "month", "2023-01-01", "2023-12-31", "all");
+
+		AggregationService aggregationService = new AggregationService(65536, Integer.MAX_VALUE, 1);
+		FilterResultWriter writer = new FilterResultWriter();
+		ReflectionTestUtils.setField(writer, "objectMapper", new ObjectMapper());
+		try {
+			byte[] json = writer.toJson(aggregationService.aggregate(builder.build(), query));
+
+			assertEquals("[{\"aggregatedValues\":[{\"timePeriod\":\"2023-01\",\"totalConsumption\":10.0},"
+							+ "{\"timePeriod\":\"2023-02\",\"totalConsumption\":2.5}],\"key\":\"D1\",\"budget\":500},"
+							+ "{\"aggregatedValues\":[{\"timePeriod\":\"2023-02\",\"totalConsumption\":4.0}],\"key\":\"D2\",\"budget\":null}]",
+					new String(json, StandardCharsets.UTF_8));
+		} finally {
+			aggregationService.shutdown();
+		}
+	}
+
+	@Test
+	void writesWholeBudgetsAsIntegers() {
+		FactTable.Builder builder = new FactTable.Builder();
+		builder.add((int) LocalDate.parse("2023-01-05").toEpochDay(), new String[]{"AWS", "r", "a", "s", "D1"}, 1.0, 800.0);
+		builder.add((int) LocalDate.parse("2023-01-05").toEpochDay(), new String[]{"AWS", "r", "a", "s", "D2"}, 1.0, 812.5);
+		FilterQuery query = FilterQuery.of("FinancialDomain", "year", "2023-01-01", "2023-12-31", "all");
+
+		AggregationService aggregationService = new AggregationService(65536, Integer.MAX_VALUE, 1);
+		FilterResultWriter writer = new FilterResultWriter();
+		ReflectionTestUtils.setField(writer, "objectMapper", new ObjectMapper());
+		try {
+			String json = new String(writer.toJson(aggregationService.aggregate(builder.build(), query)), StandardCharsets.UTF_8);
+
+			assertTrue(json.contains("\"key\":\"D1\",\"budget\":800}"), json);
+			assertTrue(json.contains("\"key\":\"D2\",\"budget\":812.5}"), json);
+		} finally {
+			aggregationService.shutdown();
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package com.example.customized.dashboard.service;
+
+import com.example.customized.dashboard.controller.ChartController;
+import com.example.customized.dashboard.model.Chart;
+import com.example.customized.dashboard.model.Dashboard;
+import com.example.customized.dashboard.model.Dimension;
+import com.example.customized.dashboard.model.TimeGrain;
+import com.example.customized.dashboard.repository.FactTable;
+import com.example.customized.dashboard.repository.JsonRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+class LiveChartServiceTests {
+
+	private final JsonRepository jsonRepository = mock(JsonRepository.class);
+
+	private final ChartService chartService = mock(ChartService.class);
+
+	private final FilterResultWriter filterResultWriter = mock(FilterResultWriter.class);
+
+	private final AggregationService aggregationService = spy(new AggregationService(65536, Integer.MAX_VALUE, 1));
+
+	private final LiveChartService liveChartService = new LiveChartService();
+
+	private final AtomicReference<FactTable> table = new AtomicReference<>();
+
+	private MockMvc mockMvc;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		FactTable.Builder builder = new FactTable.Builder();
+		addRow(builder, "2023-01-05", "AWS", 10.0);
+		addRow(builder, "2023-02-05", "Azure", 4.0);
+		table.set(builder.build());
+		when(jsonRepository.getFactTable()).thenAnswer(invocation -> table.get());
+		when(chartService.chartQueries(any(), any(), any())).thenCallRealMethod();
+		when(filterResultWriter.toJson(any(AggregationResult.class))).thenReturn("[]".getBytes(StandardCharsets.UTF_8));
+
+		ReflectionTestUtils.setField(liveChartService, "jsonRepository", jsonRepository);
+		ReflectionTestUtils.setField(liveChartService, "chartService", chartService);
+		ReflectionTestUtils.setField(liveChartService, "aggregationService", aggregationService);
+		ReflectionTestUtils.setField(liveChartService, "filterResultWriter", filterResultWriter);
+		ReflectionTestUtils.setField(liveChartService, "objectMapper", new ObjectMapper());
+		ReflectionTestUtils.setField(liveChartService, "timeoutMs", 60000L);
+		ReflectionTestUtils.setField(liveChartService, "maxPendingEvents", 16);
+		ReflectionTestUtils.setField(liveChartService, "heartbeatMs", 60000L);
+		// A single sender, so a task queued behind a drain runs once the queue is empty
+		ReflectionTestUtils.setField(liveChartService, "senderThreads", 1);
+		ReflectionTestUtils.setField(liveChartService, "sendTimeoutMs", 60000L);
+		liveChartService.start();
+
+		ChartController controller = new ChartController();
+		ReflectionTestUtils.setField(controller, "chartService", chartService);
+		ReflectionTestUtils.setField(controller, "liveChartService", liveChartService);
+		mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		liveChartService.close();
+		aggregationService.shutdown();
+	}
+
+	@Test
+	void subscribersGetASnapshotAndThenTheDeltasOfChangedCharts() throws Exception {
+		MvcResult result = open("1", chart(Dimension.CLOUD_PROVIDER), chart(Dimension.REGION));
+		awaitEvents(result, "snapshot", 1);
+		assertTrue(content(result).contains("\"data\":{\"chart0\":[],\"chart1\":[]}"));
+
+		append("2023-01-20", "AWS", 5.0);
+		refresh();
+		awaitEvents(result, "delta", 2);
+
+		// One delta per changed query, listing the charts that show it
+		String content = content(result);
+		assertTrue(content.contains("\"charts\":[\"chart0\"]"));
+		assertTrue(content.contains("\"charts\":[\"chart1\"]"));
+		assertTrue(content.contains("\"dataVersion\":" + table.get().version()));
+	}
+
+	@Test
+	void aBurstOfPublishesIsCoalescedIntoOneRefresh() throws Exception {
+		MvcResult result = open("1", chart(Dimension.CLOUD_PROVIDER));
+		awaitEvents(result, "snapshot", 1);
+		append("2023-01-20", "AWS", 5.0);
+
+		// Hold the first refresh at its start; the publishes made meanwhile queue a single one
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger refreshes = new AtomicInteger();
+		when(jsonRepository.getFactTable()).thenAnswer(invocation -> {
+			if (Thread.currentThread().getName().equals("live-chart-publisher")) {
+				refreshes.incrementAndGet();
+				release.await();
+			}
+			return table.get();
+		});
+		liveChartService.publish();
+		await(() -> refreshes.get() == 1);
+		for (int i = 0; i < 10; i++) {
+			liveChartService.publish();
+		}
+		release.countDown();
+		ExecutorService publisher = (ExecutorService) ReflectionTestUtils.getField(liveChartService, "publisher");
+		publisher.submit(() -> { }).get();
+
+		assertEquals(2, refreshes.get());
+		awaitEvents(result, "delta", 1);
+		drainSender();
+		assertEquals(1, count(result, "delta"));
+	}
+
+	@Test
+	void aSlowClientGetsASnapshotInsteadOfTheDeltasItFellBehindOn() throws Exception {
+		ReflectionTestUtils.setField(liveChartService, "maxPendingEvents", 1);
+		// The first snapshot stalls on its body, so the deltas pile up behind it
+		CountDownLatch release = new CountDownLatch(1);
+		when(filterResultWriter.toJson(any(AggregationResult.class))).thenAnswer(invocation -> {
+			release.await();
+			return "[]".getBytes(StandardCharsets.UTF_8);
+		});
+		MvcResult result = open("1", chart(Dimension.CLOUD_PROVIDER));
+
+		for (int i = 0; i < 3; i++) {
+			append("2023-01-20", "AWS", 5.0);
+			refresh();
+		}
+		release.countDown();
+		drainSender();
+
+		assertEquals(0, count(result, "delta"));
+		String content = content(result);
+		assertTrue(content.endsWith("\"dataVersion\":" + table.get().version() + ",\"data\":{\"chart0\":[]}}\n\n"), content);
+	}
+
+	@Test
+	void closedConnectionsReleaseTheirChannels() throws Exception {
+		MvcResult first = open("1", chart(Dimension.CLOUD_PROVIDER));
+		MvcResult second = open("2", chart(Dimension.CLOUD_PROVIDER), chart(Dimension.REGION));
+		awaitEvents(first, "snapshot", 1);
+		awaitEvents(second, "snapshot", 1);
+		assertEquals(2, channels().size());
+
+		first.getRequest().getAsyncContext().complete();
+		assertEquals(2, channels().size());
+
+		second.getRequest().getAsyncContext().complete();
+		assertTrue(channels().isEmpty());
+	}
+
+	@Test
+	void aChannelClosedWhileSubscribingIsOpenedAgain() throws Exception {
+		MvcResult first = open("1", chart(Dimension.CLOUD_PROVIDER));
+		awaitEvents(first, "snapshot", 1);
+
+		// The first subscriber leaves while the second aggregates its other chart
+		AtomicBoolean closed = new AtomicBoolean();
+		doAnswer(invocation -> {
+			if (closed.compareAndSet(false, true)) {
+				first.getRequest().getAsyncContext().complete();
+			}
+			return invocation.callRealMethod();
+		}).when(aggregationService).aggregateAll(any(), anyCollection());
+		MvcResult second = open("2", chart(Dimension.CLOUD_PROVIDER), chart(Dimension.REGION));
+		awaitEvents(second, "snapshot", 1);
+
+		assertTrue(closed.get());
+		assertEquals(2, channels().size());
+		assertTrue(content(second).contains("\"data\":{\"chart0\":[],\"chart1\":[]}"));
+	}
+
+	private MvcResult open(String userId, Chart... charts) throws Exception {
+		Map<String, Chart> byId = new LinkedHashMap<>();
+		for (int i = 0; i < charts.length; i++) {
+			byId.put("chart" + i, charts[i]);
+		}
+		when(chartService.getDashboard(userId)).thenReturn(new Dashboard(List.of(), byId));
+		return mockMvc.perform(get("/api/dashboard/" + userId + "/live")
+						.param("from", "2023-01-01")
+						.param("to", "2023-12-31"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+	}
+
+	private static Chart chart(Dimension dimension) {
+		return new Chart("Chart", Chart.Type.LINE, null, null, dimension, TimeGrain.MONTH, null, List.of(), Map.of());
+	}
+
+	private void append(String date, String provider, double consumption) {
+		FactTable.Builder batch = new FactTable.Builder();
+		addRow(batch, date, provider, consumption);
+		table.set(table.get().append(batch, 16));
+	}
+
+	private static void addRow(FactTable.Builder builder, String date, String provider, double consumption) {
+		builder.add((int) LocalDate.parse(date).toEpochDay(), new String[]{provider, "r", "a", "s", "d"}, consumption, 0.0);
+	}
+
+	// Runs a refresh on the calling thread
+	private void refresh() {
+		ReflectionTestUtils.invokeMethod(liveChartService, "refresh");
+	}
+
+	// Waits until the sender has written every queued event
+	private void drainSender() throws Exception {
+		ExecutorService sender = (ExecutorService) ReflectionTestUtils.getField(liveChartService, "sender");
+		sender.submit(() -> { }).get();
+	}
+
+	private Map<?, ?> channels() {
+		return (Map<?, ?>) ReflectionTestUtils.getField(liveChartService, "channels");
+	}
+
+	private static String content(MvcResult result) throws Exception {
+		return result.getResponse().getContentAsString();
+	}
+
+	private static int count(MvcResult result, String event) throws Exception {
+		String content = content(result);
+		String marker = "event:" + event + "\n";
+		int count = 0;
+		for (int index = content.indexOf(marker); index >= 0; index = content.indexOf(marker, index + 1)) {
+			count++;
+		}
+		return count;
+	}
+
+	private static void awaitEvents(MvcResult result, String event, int count) throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (count(result, event) < count) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("Expected " + count + " " + event + " events in: " + content(result));
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private static void await(BooleanSupplier condition) throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("Timed out");
+			}
+			Thread.sleep(10);
+		}
+	}
+}